@@ -0,0 +1,224 @@
+package com.nirzvi.virtualwhiteboard;
+
+import android.opengl.GLES20;
+
+/**
+ * Shows the board from an ETC1 texture while its content holds still, and from the streamed RGBA
+ * texture while it is being edited.
+ *
+ * Once the content has not changed for a while, the snapshot is handed to an Etc1BoardEncoder, and when
+ * its image comes back for the same version it replaces the RGBA texture, which is deleted: an eighth
+ * of the memory and of the bandwidth to sample it. ETC1 textures cannot be updated in part, so the next
+ * edit recreates the RGBA texture and streams it in under the TextureStreamer's budget while the
+ * compressed one is still shown. Content that changes again soon after being compressed doubles the
+ * wait before the next attempt, content that stayed compressed for the whole wait resets it. GL thread only.
+ */
+public class AdaptiveBoardTexture {
+
+    public static final long DEFAULT_STABLE_NANOS = 1500000000L;
+    public static final long MAX_STABLE_NANOS = 24000000000L;
+
+    private final GLBackend gl;
+    private final TextureStreamer streamer;
+    private final Etc1BoardEncoder encoder;
+
+    private boolean supported = false;
+    private long stableNanos = DEFAULT_STABLE_NANOS;
+
+    private TiledBoard.Snapshot content;
+    private long lastChange = 0;
+    private long requestedVersion = -1;
+    private long polledVersion = -1;
+
+    private int compressedTexture = 0;
+    private int compressedBytes = 0;
+    private long compressedAt = 0;
+
+    //metrics
+    private int compressCount = 0;
+    private int decompressCount = 0;
+
+    /**
+     * @param gl backend to upload through
+     * @param streamer keeps the RGBA texture, owned by this from now on
+     * @param encoder worker that encodes the content, started by the caller
+     */
+    public AdaptiveBoardTexture(GLBackend gl, TextureStreamer streamer, Etc1BoardEncoder encoder) {
+        this.gl = gl;
+        this.streamer = streamer;
+        this.encoder = encoder;
+    }//AdaptiveBoardTexture
+
+    /**
+     * Creates the RGBA texture holding the snapshot and checks for ETC1, call when the surface is created
+     * @param snapshot board content
+     * @param now System.nanoTime()
+     * @return texture to draw
+     */
+    public int init(TiledBoard.Snapshot snapshot, long now) {
+        int[] count = new int[1];
+        gl.glGetIntegerv(GLES20.GL_NUM_COMPRESSED_TEXTURE_FORMATS, count, 0);
+        int[] formats = new int[Math.max(count[0], 1)];
+        if (count[0] > 0) {
+            gl.glGetIntegerv(GLES20.GL_COMPRESSED_TEXTURE_FORMATS, formats, 0);
+        }//if
+        supported = false;
+        for (int i = 0; i < count[0]; i++) {
+            supported |= formats[i] == Etc1.GL_ETC1_RGB8_OES;
+        }//for
+
+        content = snapshot;
+        lastChange = now;
+        requestedVersion = -1;
+        polledVersion = -1;
+        return streamer.createTexture(snapshot);
+    }//init
+
+    /**
+     * Forgets both textures without deleting them, call when the GL context was lost
+     */
+    public void clear() {
+        compressedTexture = 0;
+        compressedBytes = 0;
+        streamer.clear();
+    }//clear
+
+    /**
+     * Takes the newest content, uploads what the budget allows and switches textures, call once per frame.
+     * The texture to draw may change, see getTexture.
+     * @param snapshot content newer than the last one given, or null if nothing changed
+     * @param now System.nanoTime()
+     */
+    public void update(TiledBoard.Snapshot snapshot, long now) {
+        if (snapshot != null) {
+            content = snapshot;
+            lastChange = now;
+            if (compressedTexture != 0 && streamer.getTexture() == 0) {
+                // Compressed content cannot take the edit, stream an RGBA copy in behind it
+                stableNanos = now - compressedAt < stableNanos
+                        ? Math.min(stableNanos * 2, MAX_STABLE_NANOS) : DEFAULT_STABLE_NANOS;
+                streamer.createTextureStreamed(snapshot);
+                decompressCount++;
+            } else {
+                streamer.queueChanges(snapshot);
+            }//else
+        }//if
+        streamer.upload();
+
+        if (compressedTexture != 0 && streamer.getTexture() != 0 && streamer.getQueueDepth() == 0) {
+            // The RGBA copy caught up
+            gl.glDeleteTextures(1, new int[]{compressedTexture}, 0);
+            compressedTexture = 0;
+            compressedBytes = 0;
+        }//if
+
+        if (!supported) {
+            return;
+        }//if
+
+        Etc1BoardEncoder.Image image = encoder.poll(polledVersion);
+        if (image != null) {
+            polledVersion = image.getVersion();
+            if (compressedTexture == 0 && image.getVersion() == content.getVersion() && image.isOpaque()
+                    && streamer.getQueueDepth() == 0) {
+                compress(image, now);
+            }//if
+        }//if
+
+        if (compressedTexture == 0 && requestedVersion != content.getVersion() && now - lastChange >= stableNanos) {
+            encoder.request(content);
+            requestedVersion = content.getVersion();
+        }//if
+    }//update
+
+    private void compress(Etc1BoardEncoder.Image image, long now) {
+        final int[] textureHandle = new int[1];
+        gl.glGenTextures(1, textureHandle, 0);
+
+        if (textureHandle[0] == 0) {
+            throw new RuntimeException("Error generating texture name.");
+        }//if
+
+        compressedTexture = textureHandle[0];
+        gl.glBindTexture(GLES20.GL_TEXTURE_2D, compressedTexture);
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        gl.glCompressedTexImage2D(GLES20.GL_TEXTURE_2D, 0, Etc1.GL_ETC1_RGB8_OES, image.getWidth(), image.getHeight(),
+                0, image.getSize(), image.getData());
+        compressedBytes = image.getSize();
+
+        streamer.release();
+        compressedAt = now;
+        compressCount++;
+    }//compress
+
+    /**
+     * @return texture to draw this frame
+     */
+    public int getTexture() {
+        return compressedTexture != 0 ? compressedTexture : streamer.getTexture();
+    }
+
+    /**
+     * @return whether the texture drawn shows the newest content given to update
+     */
+    public boolean isUpToDate() {
+        if (compressedTexture != 0) {
+            return streamer.getTexture() == 0;
+        }//if
+        return streamer.getQueueDepth() == 0;
+    }//isUpToDate
+
+    public boolean isCompressed() {
+        return compressedTexture != 0;
+    }
+
+    /**
+     * @return whether the context samples ETC1, without it the RGBA texture is always used
+     */
+    public boolean isSupported() {
+        return supported;
+    }
+
+    /**
+     * @return how long the content has to hold still before it is compressed
+     */
+    public long getStableNanos() {
+        return stableNanos;
+    }
+
+    public TextureStreamer getStreamer() {
+        return streamer;
+    }
+
+    /*******************
+     * METRICS
+     *******************/
+
+    /**
+     * @return bytes of texture memory held, both textures while switching back to RGBA
+     */
+    public long getTextureBytes() {
+        long bytes = compressedBytes;
+        if (streamer.getTexture() != 0) {
+            bytes += (long) content.getWidth() * content.getHeight() * 4;
+        }//if
+        return bytes;
+    }//getTextureBytes
+
+    /**
+     * @return times the board switched to ETC1
+     */
+    public int getCompressCount() {
+        return compressCount;
+    }
+
+    /**
+     * @return times an edit sent the board back to RGBA
+     */
+    public int getDecompressCount() {
+        return decompressCount;
+    }
+}
@@ -0,0 +1,228 @@
+package com.nirzvi.virtualwhiteboard;
+
+/**
+ * Collects the slot and model matrix of every board visible in a view so they can all be
+ * drawn from one static quad mesh, with the pose applied in the vertex shader.
+ */
+public class BoardBatch {
+
+    /** x, y, z, u, v, board index */
+    public static final int FLOATS_PER_VERTEX = 6;
+    public static final int VERTICES_PER_BOARD = 4;
+    public static final int INDICES_PER_BOARD = 6;
+    public static final int FLOATS_PER_MATRIX = 16;
+
+    /** Most quads an index stream of unsigned shorts can address. */
+    public static final int MAX_BOARDS_PER_DRAW = 65536 / VERTICES_PER_BOARD;
+
+    /** Half the size of a board in trackable units, it is centred on the trackable. */
+    public static final float HALF_WIDTH = 700;
+    public static final float HALF_HEIGHT = 579;
+
+    //board corners in trackable space, starting top-left, clockwise
+    private static final float[] CORNERS = {
+            -HALF_WIDTH, -HALF_HEIGHT, 0,
+            HALF_WIDTH, -HALF_HEIGHT, 0,
+            HALF_WIDTH, HALF_HEIGHT, 0,
+            -HALF_WIDTH, HALF_HEIGHT, 0
+    };
+
+    //texture coordinates for each corner, starting top-left, clockwise
+    private static final float[] CORNER_UVS = {
+            0.0f, 1.0f,
+            1.0f, 1.0f,
+            1.0f, 0.0f,
+            0.0f, 0.0f
+    };
+
+    //trackable units are scaled down to fit between the near and far planes
+    private static final float SCALE = 1 / 2000f;
+
+    private final int capacity;
+    private final float[] modelMatrices;
+    private final int[] slots;
+    private final int[] levels;
+    private final float[] areas;
+
+    private int boardCount = 0;
+
+    public BoardBatch(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Batch capacity must be positive");
+        }//if
+
+        this.capacity = capacity;
+        modelMatrices = new float[capacity * FLOATS_PER_MATRIX];
+        slots = new int[capacity];
+        levels = new int[capacity];
+        areas = new float[capacity];
+    }//BoardBatch
+
+    /**
+     * Builds the static mesh every draw call uses, one quad per model matrix.
+     * Each vertex carries the index of its board's model matrix within the draw call.
+     * @param boardsPerDraw how many model matrices the shader can take at once
+     * @return interleaved vertex data, FLOATS_PER_VERTEX floats per vertex
+     */
+    public static float[] buildQuadVertices(int boardsPerDraw) {
+        float[] vertices = new float[boardsPerDraw * VERTICES_PER_BOARD * FLOATS_PER_VERTEX];
+
+        int v = 0;
+        for (int i = 0; i < boardsPerDraw; i++) {
+            for (int c = 0; c < VERTICES_PER_BOARD; c++) {
+                vertices[v++] = CORNERS[c * 3];
+                vertices[v++] = CORNERS[c * 3 + 1];
+                vertices[v++] = CORNERS[c * 3 + 2];
+                vertices[v++] = CORNER_UVS[c * 2];
+                vertices[v++] = CORNER_UVS[c * 2 + 1];
+                vertices[v++] = i;
+            }//for
+        }//for
+
+        return vertices;
+    }//buildQuadVertices
+
+    /**
+     * Builds the index stream for buildQuadVertices
+     * @param boardsPerDraw how many model matrices the shader can take at once
+     * @return INDICES_PER_BOARD indices per quad
+     */
+    public static short[] buildQuadIndices(int boardsPerDraw) {
+        if (boardsPerDraw > MAX_BOARDS_PER_DRAW) {
+            throw new IllegalArgumentException("At most " + MAX_BOARDS_PER_DRAW + " boards per draw");
+        }//if
+
+        short[] indices = new short[boardsPerDraw * INDICES_PER_BOARD];
+
+        //top-left, bottom-left, top-right then bottom-left, bottom-right, top-right
+        for (int i = 0; i < boardsPerDraw; i++) {
+            int base = i * VERTICES_PER_BOARD;
+            int idx = i * INDICES_PER_BOARD;
+            indices[idx] = (short) base;
+            indices[idx + 1] = (short) (base + 3);
+            indices[idx + 2] = (short) (base + 1);
+            indices[idx + 3] = (short) (base + 3);
+            indices[idx + 4] = (short) (base + 2);
+            indices[idx + 5] = (short) (base + 1);
+        }//for
+
+        return indices;
+    }//buildQuadIndices
+
+    /**
+     * Empties the batch, ready for the next view
+     */
+    public void reset() {
+        boardCount = 0;
+    }//reset
+
+    /**
+     * Appends one board to the batch
+     * @param slot trackable slot of the board
+     * @param pose column-major GL pose of the trackable
+     * @param offset where the matrix starts in pose
+     * @return false if the batch is already full
+     */
+    public boolean addBoard(int slot, float[] pose, int offset) {
+        if (boardCount >= capacity) {
+            return false;
+        }//if
+
+        int m = boardCount * FLOATS_PER_MATRIX;
+        for (int col = 0; col < 4; col++) {
+            int src = offset + col * 4;
+            modelMatrices[m++] = pose[src] * SCALE;
+            modelMatrices[m++] = pose[src + 1] * SCALE;
+            modelMatrices[m++] = pose[src + 2] * SCALE;
+            modelMatrices[m++] = pose[src + 3];
+        }//for
+
+        slots[boardCount] = slot;
+        levels[boardCount] = 0;
+        areas[boardCount] = Float.MAX_VALUE;
+        boardCount++;
+        return true;
+    }//addBoard
+
+    /**
+     * Copies one board over another, for compacting the batch
+     * @param from index of the board to keep
+     * @param to index to keep it at, not after from
+     */
+    public void moveBoard(int from, int to) {
+        if (from == to) {
+            return;
+        }//if
+        System.arraycopy(modelMatrices, from * FLOATS_PER_MATRIX, modelMatrices, to * FLOATS_PER_MATRIX, FLOATS_PER_MATRIX);
+        slots[to] = slots[from];
+        levels[to] = levels[from];
+        areas[to] = areas[from];
+    }//moveBoard
+
+    /**
+     * Drops every board from index count on
+     */
+    public void truncate(int count) {
+        boardCount = Math.min(boardCount, count);
+    }
+
+    /**
+     * @param boardsPerDraw how many model matrices the shader can take at once
+     * @return fewest draw calls needed for the current batch if every board shares a texture
+     */
+    public int getDrawCallCount(int boardsPerDraw) {
+        return (boardCount + boardsPerDraw - 1) / boardsPerDraw;
+    }
+
+    public int getBoardCount() {
+        return boardCount;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @param board index of the board in the batch
+     * @return trackable slot of the board
+     */
+    public int getSlot(int board) {
+        return slots[board];
+    }
+
+    /**
+     * @param board index of the board in the batch
+     * @param level pyramid level to draw the board from, 0 for full resolution
+     */
+    public void setLevel(int board, int level) {
+        levels[board] = level;
+    }
+
+    /**
+     * @param board index of the board in the batch
+     * @return pyramid level the board is drawn from, 0 until setLevel
+     */
+    public int getLevel(int board) {
+        return levels[board];
+    }
+
+    /**
+     * @param board index of the board in the batch
+     * @param area pixels the board covers in the view
+     */
+    public void setArea(int board, float area) {
+        areas[board] = area;
+    }
+
+    /**
+     * @param board index of the board in the batch
+     * @return pixels the board covers in the view, Float.MAX_VALUE until setArea
+     */
+    public float getArea(int board) {
+        return areas[board];
+    }
+
+    public float[] getModelMatrices() {
+        return modelMatrices;
+    }
+}
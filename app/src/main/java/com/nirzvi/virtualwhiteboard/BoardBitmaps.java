@@ -0,0 +1,54 @@
+package com.nirzvi.virtualwhiteboard;
+
+import android.graphics.Bitmap;
+
+/**
+ * Moves pixels between Bitmaps and TiledBoards.
+ */
+public class BoardBitmaps {
+
+    private BoardBitmaps() {
+    }
+
+    /**
+     * Creates a board holding a bitmap's pixels, with an empty undo history
+     * @param bitmap content of the board
+     * @param historyBudget most bytes the undo history may keep
+     * @return the new board
+     */
+    public static TiledBoard fromBitmap(Bitmap bitmap, long historyBudget) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        TiledBoard board = new TiledBoard(width, height, 0, historyBudget);
+
+        // One row of tiles at a time keeps the scratch buffer small
+        int[] band = new int[width * TiledBoard.TILE_SIZE];
+        for (int y = 0; y < height; y += TiledBoard.TILE_SIZE) {
+            int rows = Math.min(TiledBoard.TILE_SIZE, height - y);
+            bitmap.getPixels(band, 0, width, 0, y, width, rows);
+            board.writePixels(band, 0, width, 0, y, width, rows);
+        }//for
+
+        board.clearHistory();
+        return board;
+    }//fromBitmap
+
+    /**
+     * @param snapshot board content
+     * @return a new ARGB_8888 bitmap holding the snapshot's pixels
+     */
+    public static Bitmap toBitmap(TiledBoard.Snapshot snapshot) {
+        Bitmap bitmap = Bitmap.createBitmap(snapshot.getWidth(), snapshot.getHeight(), Bitmap.Config.ARGB_8888);
+        int tilesX = (snapshot.getWidth() + TiledBoard.TILE_SIZE - 1) / TiledBoard.TILE_SIZE;
+
+        for (int tile = 0; tile < snapshot.getTileCount(); tile++) {
+            int x = (tile % tilesX) * TiledBoard.TILE_SIZE;
+            int y = (tile / tilesX) * TiledBoard.TILE_SIZE;
+            int w = Math.min(TiledBoard.TILE_SIZE, snapshot.getWidth() - x);
+            int h = Math.min(TiledBoard.TILE_SIZE, snapshot.getHeight() - y);
+            bitmap.setPixels(snapshot.getTile(tile), 0, TiledBoard.TILE_SIZE, x, y, w, h);
+        }//for
+
+        return bitmap;
+    }//toBitmap
+}
@@ -0,0 +1,91 @@
+package com.nirzvi.virtualwhiteboard;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Single-producer, single-consumer handoff of board content between threads.
+ *
+ * The producer publishes immutable snapshots, the consumer picks up the newest one whenever it looks.
+ * Neither side ever blocks or waits for the other, versions the consumer was too slow to see are
+ * simply skipped. Since snapshots share unchanged tiles, the consumer finds what changed by
+ * comparing tile references with the last version it took.
+ */
+public class BoardChannel {
+
+    private final AtomicReference<TiledBoard.Snapshot> latest = new AtomicReference<>();
+
+    private final AtomicLong published = new AtomicLong(0);
+    private volatile Runnable onPublish;
+    //only touched by the consumer
+    private long consumed = 0;
+
+    /**
+     * @param initial content the consumer sees until the first publish
+     */
+    public BoardChannel(TiledBoard.Snapshot initial) {
+        latest.set(initial);
+    }
+
+    /*******************
+     * PRODUCER
+     *******************/
+
+    /**
+     * Makes a snapshot the newest version, replacing any the consumer has not taken yet
+     */
+    public void publish(TiledBoard.Snapshot snapshot) {
+        latest.set(snapshot);
+        published.incrementAndGet();
+        Runnable listener = onPublish;
+        if (listener != null) {
+            listener.run();
+        }//if
+    }//publish
+
+    /**
+     * @param listener run on the producer's thread after every publish, so the consumer can be woken, or null
+     */
+    public void setOnPublish(Runnable listener) {
+        onPublish = listener;
+    }
+
+    /*******************
+     * CONSUMER
+     *******************/
+
+    /**
+     * @return the newest version, without marking it taken
+     */
+    public TiledBoard.Snapshot peek() {
+        return latest.get();
+    }
+
+    /**
+     * @param seenVersion version of the last snapshot the consumer took
+     * @return the newest snapshot if it is newer than seenVersion, null otherwise
+     */
+    public TiledBoard.Snapshot poll(long seenVersion) {
+        TiledBoard.Snapshot snapshot = latest.get();
+        if (snapshot.getVersion() <= seenVersion) {
+            return null;
+        }//if
+        consumed++;
+        return snapshot;
+    }//poll
+
+    /**
+     * @return snapshots published so far
+     */
+    public long getPublishedCount() {
+        return published.get();
+    }
+
+    /**
+     * Consumer thread only
+     * @return snapshots the consumer took, the rest were replaced before it looked
+     */
+    public long getConsumedCount() {
+        return consumed;
+    }
+}
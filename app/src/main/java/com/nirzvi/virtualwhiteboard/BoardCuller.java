@@ -0,0 +1,125 @@
+package com.nirzvi.virtualwhiteboard;
+
+/**
+ * Drops boards that cannot be seen from the batch before anything is drawn.
+ *
+ * Every board's corners are projected once per frame. A board entirely outside one plane of the view
+ * frustum, or covering fewer pixels than the minimum (far away or seen edge-on), is removed, so it costs
+ * no matrix upload, texture bind, text or ink. The boards left keep their order and the area they cover,
+ * which BoardLevelTextures picks their level from. GL thread only.
+ */
+public class BoardCuller {
+
+    public static final float DEFAULT_MIN_AREA = 16;
+    //stereo eyes see a little past the view boards are culled against
+    public static final float DEFAULT_MARGIN = 0.1f;
+
+    private final BoardLod lod = new BoardLod();
+    private final float minArea;
+    private final float margin;
+
+    //metrics
+    private int lastDrawn = 0;
+    private int lastOutside = 0;
+    private int lastTooSmall = 0;
+    private long totalDrawn = 0;
+    private long totalCulled = 0;
+    private long frames = 0;
+
+    public BoardCuller() {
+        this(DEFAULT_MIN_AREA, DEFAULT_MARGIN);
+    }
+
+    /**
+     * @param minArea fewest pixels a board has to cover to be drawn
+     * @param margin how far the sides of the view are moved out, as a fraction of its half size
+     */
+    public BoardCuller(float minArea, float margin) {
+        this.minArea = minArea;
+        this.margin = margin;
+    }//BoardCuller
+
+    /**
+     * Removes the boards that cannot be seen and gives the rest their area, call after the batch is
+     * prepared and before anything reads it
+     * @param projection projection of the view
+     * @param viewport x, y, width and height of the view
+     * @return boards left in the batch
+     */
+    public int cull(BoardBatch batch, float[] projection, int[] viewport) {
+        float[] models = batch.getModelMatrices();
+        int kept = 0;
+        lastOutside = 0;
+        lastTooSmall = 0;
+        for (int b = 0; b < batch.getBoardCount(); b++) {
+            float area = lod.projectedArea(projection, models, b * BoardBatch.FLOATS_PER_MATRIX, viewport);
+            if (lod.isOutsideFrustum(margin)) {
+                lastOutside++;
+            } else if (area < minArea) {
+                lastTooSmall++;
+            } else {
+                batch.moveBoard(b, kept);
+                batch.setArea(kept, area);
+                kept++;
+            }//else
+        }//for
+        batch.truncate(kept);
+
+        lastDrawn = kept;
+        countFrame();
+        return kept;
+    }//cull
+
+    /**
+     * Counts a frame that draws the batch the last cull left, as when no board moved since
+     */
+    public void countStillFrame() {
+        countFrame();
+    }
+
+    private void countFrame() {
+        totalDrawn += lastDrawn;
+        totalCulled += lastOutside + lastTooSmall;
+        frames++;
+    }//countFrame
+
+    /*******************
+     * METRICS
+     *******************/
+
+    /**
+     * @return boards left by the last cull
+     */
+    public int getLastDrawn() {
+        return lastDrawn;
+    }
+
+    /**
+     * @return boards the last cull found outside the view
+     */
+    public int getLastOutside() {
+        return lastOutside;
+    }
+
+    /**
+     * @return boards the last cull found too small to draw
+     */
+    public int getLastTooSmall() {
+        return lastTooSmall;
+    }
+
+    public long getTotalDrawn() {
+        return totalDrawn;
+    }
+
+    public long getTotalCulled() {
+        return totalCulled;
+    }
+
+    /**
+     * @return frames counted, culled or still, the totals are summed over
+     */
+    public long getFrames() {
+        return frames;
+    }
+}
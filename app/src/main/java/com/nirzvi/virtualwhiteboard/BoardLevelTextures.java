@@ -0,0 +1,316 @@
+package com.nirzvi.virtualwhiteboard;
+
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Keeps textures for the pyramid levels boards are drawn from, and only those.
+ *
+ * Each frame select() gives every board in the batch a level from the area BoardCuller found it
+ * covers. A level is made resident the first time a board wants it: its pyramid is requested from the
+ * BoardPyramidBuilder and uploaded a band of rows at a time under a byte budget. Boards use full
+ * resolution until their level is filled. A level no board has wanted for RESIDENT_FRAMES frames is
+ * deleted. Level 0 is the board texture itself and is not kept here. GL thread only.
+ */
+public class BoardLevelTextures {
+
+    public static final int RESIDENT_FRAMES = 120;
+
+    private final GLBackend gl;
+    private final BoardPyramidBuilder builder;
+    private final int bytesPerFrame;
+
+    private TiledBoard.Snapshot content;
+    private BoardPyramid pyramid;
+    private long requestedVersion = -1;
+    private long frame = 0;
+    private int minLevel = 0;
+
+    private int levelCount = 0;
+    private int[] widths = new int[0];
+    private int[] heights = new int[0];
+    //texture per level, and the same entries only once they are filled, for drawing
+    private int[] textures = new int[0];
+    private int[] usable = new int[0];
+    private long[] uploadedVersion = new long[0];
+    private long[] lastUsed = new long[0];
+    //next row to upload from the pyramid, -1 when not uploading
+    private int[] nextRow = new int[0];
+
+    //one band of rows converted to RGBA bytes
+    private int[] rgba = new int[0];
+    private IntBuffer pixels;
+
+    //metrics
+    private long uploadedBytes = 0;
+    private int lastFrameBytes = 0;
+
+    /**
+     * @param gl backend to upload through
+     * @param builder worker that builds the pyramids, started by the caller
+     * @param bytesPerFrame most bytes uploaded per update, at least one row is always sent
+     */
+    public BoardLevelTextures(GLBackend gl, BoardPyramidBuilder builder, int bytesPerFrame) {
+        this.gl = gl;
+        this.builder = builder;
+        this.bytesPerFrame = bytesPerFrame;
+    }//BoardLevelTextures
+
+    /**
+     * Sizes the levels for the board, call when the surface is created, after clear
+     * @param snapshot board content
+     */
+    public void init(TiledBoard.Snapshot snapshot) {
+        content = snapshot;
+        if (levelCount == BoardPyramid.getLevelCount(snapshot.getWidth(), snapshot.getHeight())
+                && widths[0] == snapshot.getWidth() && heights[0] == snapshot.getHeight()) {
+            return;
+        }//if
+
+        levelCount = BoardPyramid.getLevelCount(snapshot.getWidth(), snapshot.getHeight());
+        widths = new int[levelCount];
+        heights = new int[levelCount];
+        widths[0] = snapshot.getWidth();
+        heights[0] = snapshot.getHeight();
+        for (int l = 1; l < levelCount; l++) {
+            widths[l] = widths[l - 1] / 2;
+            heights[l] = heights[l - 1] / 2;
+        }//for
+
+        textures = new int[levelCount];
+        usable = new int[levelCount];
+        uploadedVersion = new long[levelCount];
+        lastUsed = new long[levelCount];
+        nextRow = new int[levelCount];
+        for (int l = 0; l < levelCount; l++) {
+            uploadedVersion[l] = -1;
+            lastUsed[l] = Long.MIN_VALUE / 2;
+            nextRow[l] = -1;
+        }//for
+
+        // Rows of level 1 are the widest
+        int bandPixels = Math.max(widths[0] / 2, bytesPerFrame / 4);
+        rgba = new int[bandPixels];
+        pixels = ByteBuffer.allocateDirect(bandPixels * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+    }//init
+
+    /**
+     * Forgets every texture without deleting it, call when the GL context was lost
+     */
+    public void clear() {
+        for (int l = 0; l < levelCount; l++) {
+            forget(l);
+        }//for
+    }//clear
+
+    /**
+     * Deletes every texture, call on the GL thread while the context is still current
+     */
+    public void release() {
+        for (int l = 1; l < levelCount; l++) {
+            if (textures[l] != 0) {
+                gl.glDeleteTextures(1, new int[]{textures[l]}, 0);
+            }//if
+        }//for
+        clear();
+    }//release
+
+    private void forget(int level) {
+        textures[level] = 0;
+        usable[level] = 0;
+        uploadedVersion[level] = -1;
+        nextRow[level] = -1;
+    }//forget
+
+    /**
+     * Gives every board in the batch the level matching its size in the view, or 0 while that level
+     * is not filled yet. Call after the batch is culled and before it is drawn.
+     */
+    public void select(BoardBatch batch) {
+        for (int b = 0; b < batch.getBoardCount(); b++) {
+            int level = Math.max(BoardLod.selectLevel(batch.getArea(b), widths[0], heights[0], levelCount),
+                    Math.min(minLevel, levelCount - 1));
+            lastUsed[level] = frame;
+            batch.setLevel(b, usable[level] != 0 ? level : 0);
+        }//for
+    }//select
+
+    /**
+     * @param level finest level select gives any board, 0 for full resolution up close
+     */
+    public void setMinLevel(int level) {
+        minLevel = level;
+    }
+
+    /**
+     * Takes the newest content and pyramid, uploads what the budget allows and deletes levels no longer
+     * wanted, call once per frame
+     * @param snapshot content newer than the last one given, or null if nothing changed
+     * @return bytes uploaded
+     */
+    public int update(TiledBoard.Snapshot snapshot) {
+        frame++;
+        lastFrameBytes = 0;
+        if (snapshot != null) {
+            content = snapshot;
+        }//if
+
+        BoardPyramid newer = builder.poll(pyramid == null ? -1 : pyramid.getVersion());
+        if (newer != null) {
+            pyramid = newer;
+        }//if
+
+        boolean wanted = false;
+        boolean uploading = false;
+        for (int l = 1; l < levelCount; l++) {
+            if (frame - lastUsed[l] > RESIDENT_FRAMES) {
+                if (textures[l] != 0) {
+                    gl.glDeleteTextures(1, new int[]{textures[l]}, 0);
+                    forget(l);
+                }//if
+                continue;
+            }//if
+
+            wanted = true;
+            if (textures[l] == 0) {
+                createTexture(l);
+            }//if
+            if (nextRow[l] < 0 && pyramid != null && uploadedVersion[l] < pyramid.getVersion()) {
+                nextRow[l] = 0;
+            }//if
+            uploading |= nextRow[l] >= 0;
+        }//for
+
+        // Coarse levels first, they are small and the farthest boards want them
+        for (int l = levelCount - 1; l >= 1 && lastFrameBytes < bytesPerFrame; l--) {
+            if (nextRow[l] >= 0) {
+                uploadRows(l);
+            }//if
+        }//for
+
+        // One pyramid at a time, the next is asked for once this one is in
+        if (wanted && !uploading && content.getVersion() != requestedVersion
+                && (pyramid == null || pyramid.getVersion() < content.getVersion())) {
+            builder.request(content);
+            requestedVersion = content.getVersion();
+        }//if
+
+        uploadedBytes += lastFrameBytes;
+        return lastFrameBytes;
+    }//update
+
+    private void createTexture(int level) {
+        final int[] textureHandle = new int[1];
+        gl.glGenTextures(1, textureHandle, 0);
+
+        if (textureHandle[0] == 0) {
+            throw new RuntimeException("Error generating texture name.");
+        }//if
+
+        textures[level] = textureHandle[0];
+        gl.glBindTexture(GLES20.GL_TEXTURE_2D, textures[level]);
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        // Levels are not powers of two, GLES2 only samples those with clamped wrapping
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        gl.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, widths[level], heights[level], 0,
+                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+    }//createTexture
+
+    //sends as many rows as fit in what is left of the budget
+    private void uploadRows(int level) {
+        int width = widths[level];
+        int height = heights[level];
+        int[] src = pyramid.getPixels(level);
+
+        int rows = Math.max(1, Math.min((bytesPerFrame - lastFrameBytes) / (width * 4), rgba.length / width));
+        int y = nextRow[level];
+        rows = Math.min(rows, height - y);
+
+        int count = rows * width;
+        for (int i = 0; i < count; i++) {
+            rgba[i] = TextureStreamer.toRGBA(src[y * width + i]);
+        }//for
+        pixels.position(0);
+        pixels.put(rgba, 0, count);
+        pixels.position(0);
+        gl.glBindTexture(GLES20.GL_TEXTURE_2D, textures[level]);
+        gl.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, y, width, rows, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, pixels);
+        lastFrameBytes += count * 4;
+
+        nextRow[level] = y + rows;
+        if (nextRow[level] >= height) {
+            nextRow[level] = -1;
+            uploadedVersion[level] = pyramid.getVersion();
+            usable[level] = textures[level];
+        }//if
+    }//uploadRows
+
+    /**
+     * @return texture per level, 0 for levels that cannot be drawn from yet, updated in place
+     */
+    public int[] getTextures() {
+        return usable;
+    }
+
+    public int getLevelCount() {
+        return levelCount;
+    }
+
+    /**
+     * @return whether every level drawn from shows the newest content
+     */
+    public boolean isUpToDate() {
+        for (int l = 1; l < levelCount; l++) {
+            if (usable[l] != 0 && lastUsed[l] == frame && uploadedVersion[l] != content.getVersion()) {
+                return false;
+            }//if
+        }//for
+        return true;
+    }//isUpToDate
+
+    /*******************
+     * METRICS
+     *******************/
+
+    /**
+     * @return levels holding a texture
+     */
+    public int getResidentLevels() {
+        int count = 0;
+        for (int l = 1; l < levelCount; l++) {
+            if (textures[l] != 0) {
+                count++;
+            }//if
+        }//for
+        return count;
+    }//getResidentLevels
+
+    /**
+     * @return bytes of texture memory held by the levels
+     */
+    public long getResidentBytes() {
+        long bytes = 0;
+        for (int l = 1; l < levelCount; l++) {
+            if (textures[l] != 0) {
+                bytes += (long) widths[l] * heights[l] * 4;
+            }//if
+        }//for
+        return bytes;
+    }//getResidentBytes
+
+    public long getUploadedBytes() {
+        return uploadedBytes;
+    }
+
+    /**
+     * @return bytes sent by the last update
+     */
+    public int getLastFrameBytes() {
+        return lastFrameBytes;
+    }
+}
@@ -0,0 +1,109 @@
+package com.nirzvi.virtualwhiteboard;
+
+/**
+ * Picks a pyramid level for a board from how large it appears on screen.
+ *
+ * The board's corners are projected into the viewport and the area of the quad they make is compared
+ * with the texels of the full-resolution board. Every level has a quarter of the texels of the one
+ * above, so the level is the base-4 log of texels per pixel, rounded down so a board never gets fewer
+ * texels than pixels. The same projection tells BoardCuller whether the board is in view at all.
+ */
+public class BoardLod {
+
+    //board corners in trackable space, in order around the quad
+    private static final float[] CORNERS = {
+            -BoardBatch.HALF_WIDTH, -BoardBatch.HALF_HEIGHT,
+            BoardBatch.HALF_WIDTH, -BoardBatch.HALF_HEIGHT,
+            BoardBatch.HALF_WIDTH, BoardBatch.HALF_HEIGHT,
+            -BoardBatch.HALF_WIDTH, BoardBatch.HALF_HEIGHT
+    };
+
+    //corners closer than this to the eye plane are treated as being behind it
+    private static final float MIN_W = 1e-6f;
+
+    private final float[] mvp = new float[PoseMath.MATRIX_SIZE];
+    //x, y, z and w of every corner in clip space
+    private final float[] clip = new float[16];
+    private final float[] screen = new float[8];
+
+    /**
+     * @param projection projection of the view
+     * @param models model matrices, as in BoardBatch
+     * @param modelOffset where the board's matrix starts
+     * @param viewport x, y, width and height of the view
+     * @return area of the board in pixels, Float.MAX_VALUE if it reaches behind the eye
+     */
+    public float projectedArea(float[] projection, float[] models, int modelOffset, int[] viewport) {
+        PoseMath.multiplyMM(mvp, 0, projection, 0, models, modelOffset);
+
+        boolean behind = false;
+        for (int c = 0; c < 4; c++) {
+            float x = CORNERS[c * 2];
+            float y = CORNERS[c * 2 + 1];
+            int i = c * 4;
+            for (int row = 0; row < 4; row++) {
+                clip[i + row] = mvp[row] * x + mvp[4 + row] * y + mvp[12 + row];
+            }//for
+            behind |= clip[i + 3] < MIN_W;
+        }//for
+        if (behind) {
+            return Float.MAX_VALUE;
+        }//if
+
+        for (int c = 0; c < 4; c++) {
+            float w = clip[c * 4 + 3];
+            screen[c * 2] = (clip[c * 4] / w + 1) * 0.5f * viewport[2];
+            screen[c * 2 + 1] = (clip[c * 4 + 1] / w + 1) * 0.5f * viewport[3];
+        }//for
+
+        // Shoelace formula, the winding flips with the view so only the size is kept
+        float twice = 0;
+        for (int c = 0; c < 4; c++) {
+            int n = (c + 1) % 4;
+            twice += screen[c * 2] * screen[n * 2 + 1] - screen[n * 2] * screen[c * 2 + 1];
+        }//for
+        return Math.abs(twice) * 0.5f;
+    }//projectedArea
+
+    /**
+     * @param margin how far the sides of the view are moved out, as a fraction of its half size
+     * @return whether every corner of the board last given to projectedArea is outside the same plane
+     * of the view frustum, so none of it can be seen
+     */
+    public boolean isOutsideFrustum(float margin) {
+        // Each bit is a plane: left, right, bottom, top, near, far
+        int outside = 0x3F;
+        for (int c = 0; c < 4; c++) {
+            float x = clip[c * 4];
+            float y = clip[c * 4 + 1];
+            float z = clip[c * 4 + 2];
+            float w = clip[c * 4 + 3];
+            float side = w * (1 + margin);
+            outside &= (x < -side ? 1 : 0) | (x > side ? 2 : 0) | (y < -side ? 4 : 0) | (y > side ? 8 : 0)
+                    | (z < -w ? 16 : 0) | (z > w ? 32 : 0);
+        }//for
+        return outside != 0;
+    }//isOutsideFrustum
+
+    /**
+     * @param area pixels the board covers
+     * @param width width of the full-resolution board, in texels
+     * @param height height of the full-resolution board, in texels
+     * @param levelCount levels available, counting level 0
+     * @return level from 0 to levelCount - 1
+     */
+    public static int selectLevel(float area, int width, int height, int levelCount) {
+        if (area <= 0) {
+            return levelCount - 1;
+        }//if
+
+        float texelsPerPixel = (float) width * height / area;
+        int level = 0;
+        // Each level quarters the texels
+        while (level < levelCount - 1 && texelsPerPixel >= 4) {
+            texelsPerPixel *= 0.25f;
+            level++;
+        }//while
+        return level;
+    }//selectLevel
+}
@@ -0,0 +1,66 @@
+package com.nirzvi.virtualwhiteboard;
+
+/**
+ * Reduced copies of a board snapshot, each level half the width and height of the one before.
+ *
+ * Level 0 is the snapshot itself and has no pixels here, the board texture holds it. Every level
+ * below is a 2x2 box filter of the level above, with odd rows and columns dropped. Immutable once
+ * published by a BoardPyramidBuilder.
+ */
+public class BoardPyramid {
+
+    /** Most levels, counting level 0 */
+    public static final int MAX_LEVELS = 6;
+    /** A level is only made while both its sides are at least this long */
+    public static final int MIN_LEVEL_SIZE = 16;
+
+    private final long version;
+    private final int[] widths;
+    private final int[] heights;
+    private final int[][] pixels;
+
+    BoardPyramid(long version, int[] widths, int[] heights, int[][] pixels) {
+        this.version = version;
+        this.widths = widths;
+        this.heights = heights;
+        this.pixels = pixels;
+    }
+
+    /**
+     * @return how many levels a board of that size gets, counting level 0
+     */
+    public static int getLevelCount(int width, int height) {
+        int levels = 1;
+        while (levels < MAX_LEVELS && (width >> levels) >= MIN_LEVEL_SIZE && (height >> levels) >= MIN_LEVEL_SIZE) {
+            levels++;
+        }//while
+        return levels;
+    }//getLevelCount
+
+    /**
+     * @return version of the snapshot the levels were made from
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int getLevelCount() {
+        return widths.length;
+    }
+
+    public int getWidth(int level) {
+        return widths[level];
+    }
+
+    public int getHeight(int level) {
+        return heights[level];
+    }
+
+    /**
+     * @param level 1 or more
+     * @return ARGB pixels of the level, row by row, do not modify
+     */
+    public int[] getPixels(int level) {
+        return pixels[level];
+    }
+}
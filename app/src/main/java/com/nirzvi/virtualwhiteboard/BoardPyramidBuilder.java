@@ -0,0 +1,215 @@
+package com.nirzvi.virtualwhiteboard;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Builds BoardPyramids from board snapshots on a background thread.
+ *
+ * Each pyramid starts as a copy of the last one, and only the area under tiles that are no longer the
+ * same array is filtered again, down through every level. Requests made while the worker is busy
+ * collapse into the newest one, and the newest pyramid waits in a single slot until the GL thread polls it.
+ */
+public class BoardPyramidBuilder {
+
+    private static final String LOGTAG = "BoardPyramidBuilder";
+
+    private final LinkedBlockingQueue<TiledBoard.Snapshot> pending = new LinkedBlockingQueue<>();
+    private final AtomicReference<BoardPyramid> latest = new AtomicReference<>();
+
+    private Thread worker;
+
+    //only touched by whoever builds, the worker or a caller of build
+    private int[][] tiles = new int[0][];
+    private BoardPyramid last;
+
+    //written by the building thread only
+    private volatile long filteredTiles = 0;
+    private volatile long lastBuildNanos = 0;
+
+    /**
+     * Starts the worker thread, it runs until stop
+     */
+    public synchronized void start() {
+        if (worker != null) {
+            return;
+        }//if
+
+        worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        buildNewest(pending.take());
+                    }//while
+                } catch (InterruptedException e) {
+                    // stopped
+                }//catch
+            }
+        }, LOGTAG);
+        worker.setDaemon(true);
+        worker.setPriority(Thread.MIN_PRIORITY);
+        worker.start();
+    }//start
+
+    /**
+     * Stops the worker, a request still pending is built after the next start
+     */
+    public synchronized void stop() throws InterruptedException {
+        if (worker == null) {
+            return;
+        }//if
+        worker.interrupt();
+        worker.join();
+        worker = null;
+    }//stop
+
+    /**
+     * Asks for a pyramid of the snapshot, never blocks
+     */
+    public void request(TiledBoard.Snapshot snapshot) {
+        pending.add(snapshot);
+    }
+
+    /**
+     * @param seenVersion version of the last pyramid the caller took
+     * @return the newest pyramid if it is newer than seenVersion, otherwise null
+     */
+    public BoardPyramid poll(long seenVersion) {
+        BoardPyramid pyramid = latest.get();
+        if (pyramid == null || pyramid.getVersion() <= seenVersion) {
+            return null;
+        }//if
+        return pyramid;
+    }//poll
+
+    /**
+     * Builds the newest pending request on the calling thread, for tests and for running without a worker
+     * @return whether anything was requested
+     */
+    boolean buildPending() {
+        TiledBoard.Snapshot snapshot = pending.poll();
+        if (snapshot == null) {
+            return false;
+        }//if
+        buildNewest(snapshot);
+        return true;
+    }//buildPending
+
+    //builds the newest of the snapshot and any requested after it and publishes the pyramid
+    private void buildNewest(TiledBoard.Snapshot snapshot) {
+        TiledBoard.Snapshot newer;
+        while ((newer = pending.poll()) != null) {
+            snapshot = newer;
+        }//while
+        latest.set(build(snapshot));
+    }//buildNewest
+
+    /**
+     * Builds on the calling thread without publishing, for tests and benchmarks. Not safe while the worker runs.
+     */
+    public BoardPyramid build(TiledBoard.Snapshot snapshot) {
+        long start = System.nanoTime();
+        int width = snapshot.getWidth();
+        int height = snapshot.getHeight();
+        int levels = BoardPyramid.getLevelCount(width, height);
+
+        int[] widths = new int[levels];
+        int[] heights = new int[levels];
+        int[][] pixels = new int[levels][];
+        widths[0] = width;
+        heights[0] = height;
+        boolean reuse = last != null && last.getWidth(0) == width && last.getHeight(0) == height;
+        for (int l = 1; l < levels; l++) {
+            widths[l] = widths[l - 1] / 2;
+            heights[l] = heights[l - 1] / 2;
+            // The last pyramid may still be uploading, so the unchanged areas are copied rather than shared
+            pixels[l] = reuse ? last.getPixels(l).clone() : new int[widths[l] * heights[l]];
+        }//for
+
+        int tileCount = snapshot.getTileCount();
+        if (!reuse) {
+            tiles = new int[tileCount][];
+        }//if
+
+        long filtered = 0;
+        for (int t = 0; t < tileCount; t++) {
+            int[] tile = snapshot.getTile(t);
+            if (tile != tiles[t]) {
+                filterTile(snapshot, t, widths, heights, pixels);
+                tiles[t] = tile;
+                filtered++;
+            }//if
+        }//for
+        filteredTiles += filtered;
+
+        last = new BoardPyramid(snapshot.getVersion(), widths, heights, pixels);
+        lastBuildNanos = System.nanoTime() - start;
+        return last;
+    }//build
+
+    //filters the area under one tile down through every level
+    private static void filterTile(TiledBoard.Snapshot snapshot, int t, int[] widths, int[] heights, int[][] pixels) {
+        int[] tile = snapshot.getTile(t);
+        int tileX = (t % snapshot.getTilesX()) * TiledBoard.TILE_SIZE;
+        int tileY = (t / snapshot.getTilesX()) * TiledBoard.TILE_SIZE;
+
+        // Level 1 reads the tile, a 2x2 footprint never leaves it since tiles have an even size
+        int x0 = tileX / 2, y0 = tileY / 2;
+        int x1 = Math.min(widths[1], x0 + TiledBoard.TILE_SIZE / 2);
+        int y1 = Math.min(heights[1], y0 + TiledBoard.TILE_SIZE / 2);
+        int[] dst = pixels[1];
+        for (int y = y0; y < y1; y++) {
+            int s = (2 * y - tileY) * TiledBoard.TILE_SIZE + 2 * x0 - tileX;
+            int d = y * widths[1] + x0;
+            for (int x = x0; x < x1; x++, s += 2, d++) {
+                dst[d] = average(tile[s], tile[s + 1], tile[s + TiledBoard.TILE_SIZE], tile[s + TiledBoard.TILE_SIZE + 1]);
+            }//for
+        }//for
+
+        // Deeper levels read the level above, the tile's area halves every time
+        for (int l = 2; l < widths.length; l++) {
+            int[] src = pixels[l - 1];
+            int srcWidth = widths[l - 1];
+            dst = pixels[l];
+            x0 = tileX >> l;
+            y0 = tileY >> l;
+            x1 = Math.min(widths[l], (tileX + TiledBoard.TILE_SIZE + (1 << l) - 1) >> l);
+            y1 = Math.min(heights[l], (tileY + TiledBoard.TILE_SIZE + (1 << l) - 1) >> l);
+            for (int y = y0; y < y1; y++) {
+                int s = 2 * y * srcWidth + 2 * x0;
+                int d = y * widths[l] + x0;
+                for (int x = x0; x < x1; x++, s += 2, d++) {
+                    dst[d] = average(src[s], src[s + 1], src[s + srcWidth], src[s + srcWidth + 1]);
+                }//for
+            }//for
+        }//for
+    }//filterTile
+
+    /**
+     * Rounded per channel mean of four ARGB pixels, two channels at a time
+     */
+    static int average(int a, int b, int c, int d) {
+        int rb = (a & 0xFF00FF) + (b & 0xFF00FF) + (c & 0xFF00FF) + (d & 0xFF00FF) + 0x20002;
+        int ag = ((a >>> 8) & 0xFF00FF) + ((b >>> 8) & 0xFF00FF) + ((c >>> 8) & 0xFF00FF) + ((d >>> 8) & 0xFF00FF) + 0x20002;
+        return ((rb >>> 2) & 0xFF00FF) | (((ag >>> 2) & 0xFF00FF) << 8);
+    }//average
+
+    /*******************
+     * METRICS
+     *******************/
+
+    /**
+     * @return tiles filtered so far
+     */
+    public long getFilteredTiles() {
+        return filteredTiles;
+    }
+
+    /**
+     * @return duration of the last build
+     */
+    public long getLastBuildNanos() {
+        return lastBuildNanos;
+    }
+}
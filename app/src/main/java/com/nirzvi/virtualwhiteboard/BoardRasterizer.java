@@ -0,0 +1,164 @@
+package com.nirzvi.virtualwhiteboard;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Owns a TiledBoard and applies edits to it on a background thread.
+ *
+ * Any thread can submit edits without waiting. The worker takes every edit that is pending,
+ * applies them in order, each as its own undo step, and publishes a single snapshot for the whole batch,
+ * so a burst of edits costs the GL thread one version instead of one per edit. An edit that throws is
+ * logged and skipped, the rest of the batch and the worker carry on.
+ */
+public class BoardRasterizer {
+
+    /** A change to the board, run on the rasterizer's thread. */
+    public interface Edit {
+        void apply(TiledBoard board);
+    }
+
+    private static final String LOGTAG = "BoardRasterizer";
+
+    private final TiledBoard board;
+    private final BoardChannel channel;
+
+    private final LinkedBlockingQueue<Edit> pending = new LinkedBlockingQueue<>();
+    //only touched by the worker
+    private final List<Edit> batch = new ArrayList<>();
+
+    private Thread worker;
+
+    //written by the worker only
+    private volatile long editCount = 0;
+    private volatile long batchCount = 0;
+    private volatile long failedCount = 0;
+    //first failure of the last batch, logged by the worker
+    private RuntimeException lastFailure;
+
+    /**
+     * @param board content to edit, only the rasterizer touches it from now on
+     */
+    public BoardRasterizer(TiledBoard board) {
+        this.board = board;
+        channel = new BoardChannel(board.snapshot());
+    }//BoardRasterizer
+
+    /**
+     * @return the channel the edited versions are published on
+     */
+    public BoardChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Starts the worker thread, it runs until stop
+     */
+    public synchronized void start() {
+        if (worker != null) {
+            return;
+        }//if
+
+        worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        batch.add(pending.take());
+                        applyBatch();
+                        if (lastFailure != null) {
+                            Log.e(LOGTAG, "Edit failed, skipped", lastFailure);
+                            lastFailure = null;
+                        }//if
+                    }//while
+                } catch (InterruptedException e) {
+                    // stopped
+                }//catch
+            }
+        }, LOGTAG);
+        worker.setDaemon(true);
+        worker.start();
+    }//start
+
+    /**
+     * Stops the worker, edits still pending are applied by the next start
+     */
+    public synchronized void stop() throws InterruptedException {
+        if (worker == null) {
+            return;
+        }//if
+        worker.interrupt();
+        worker.join();
+        worker = null;
+    }//stop
+
+    /**
+     * Queues an edit, never blocks
+     */
+    public void submit(Edit edit) {
+        pending.add(edit);
+    }
+
+    /**
+     * Applies everything pending on the calling thread, for tests and for running without a worker
+     * @return whether anything was applied
+     */
+    boolean applyPending() {
+        return applyBatch();
+    }
+
+    //applies the batch plus anything else pending and publishes the result once
+    private boolean applyBatch() {
+        pending.drainTo(batch);
+        if (batch.isEmpty()) {
+            return false;
+        }//if
+
+        int failed = 0;
+        for (Edit edit : batch) {
+            try {
+                edit.apply(board);
+            } catch (RuntimeException e) {
+                failed++;
+                if (lastFailure == null) {
+                    lastFailure = e;
+                }//if
+            }//catch
+            // Whatever a failed edit drew before throwing still gets its undo step
+            board.checkpoint();
+        }//for
+        editCount += batch.size() - failed;
+        failedCount += failed;
+        batchCount++;
+        batch.clear();
+
+        // The GL thread diffs tile references, the dirty set is not needed
+        board.clearDirty();
+        channel.publish(board.snapshot());
+        return true;
+    }//applyBatch
+
+    /**
+     * @return edits applied so far
+     */
+    public long getEditCount() {
+        return editCount;
+    }
+
+    /**
+     * @return snapshots published for those edits
+     */
+    public long getBatchCount() {
+        return batchCount;
+    }
+
+    /**
+     * @return edits that threw and were skipped
+     */
+    public long getFailedCount() {
+        return failedCount;
+    }
+}
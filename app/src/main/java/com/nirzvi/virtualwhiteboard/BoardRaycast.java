@@ -0,0 +1,71 @@
+package com.nirzvi.virtualwhiteboard;
+
+/**
+ * Maps a point on the screen to the texture coordinates of the board under it.
+ *
+ * The point is unprojected through the inverse of projection * model into a ray in trackable space,
+ * which is intersected with the board's plane, z = 0. Allocation free, keep one per thread.
+ */
+public class BoardRaycast {
+
+    private final float[] mvp = new float[PoseMath.MATRIX_SIZE];
+    private final float[] inverse = new float[PoseMath.MATRIX_SIZE];
+    private final float[] near = new float[4];
+    private final float[] far = new float[4];
+
+    /**
+     * @param projection projection of the view that was touched
+     * @param model model matrix of the board, as in BoardBatch.getModelMatrices
+     * @param modelOffset where the model matrix starts
+     * @param viewport x, y, width, height of the view in GL window coordinates
+     * @param surfaceHeight height of the surface, touch y runs down from its top
+     * @param screenX touch x in surface pixels
+     * @param screenY touch y in surface pixels
+     * @param uv receives u, v; inside the board when both are between 0 and 1
+     * @return false if the ray runs parallel to the board or it is behind the camera
+     */
+    public boolean screenToUV(float[] projection, float[] model, int modelOffset, int[] viewport, int surfaceHeight,
+                              float screenX, float screenY, float[] uv) {
+        PoseMath.multiplyMM(mvp, 0, projection, 0, model, modelOffset);
+        if (!PoseMath.invertM(inverse, 0, mvp, 0)) {
+            return false;
+        }//if
+
+        float ndcX = (screenX - viewport[0]) / viewport[2] * 2 - 1;
+        float ndcY = (surfaceHeight - screenY - viewport[1]) / viewport[3] * 2 - 1;
+        unproject(ndcX, ndcY, -1, near);
+        unproject(ndcX, ndcY, 1, far);
+
+        float dz = far[2] - near[2];
+        if (dz == 0) {
+            return false;
+        }//if
+        float t = -near[2] / dz;
+        if (t < 0 || t > 1) {
+            return false;
+        }//if
+
+        float x = near[0] + t * (far[0] - near[0]);
+        float y = near[1] + t * (far[1] - near[1]);
+        uv[0] = (x + BoardBatch.HALF_WIDTH) / (2 * BoardBatch.HALF_WIDTH);
+        uv[1] = (BoardBatch.HALF_HEIGHT - y) / (2 * BoardBatch.HALF_HEIGHT);
+        return true;
+    }//screenToUV
+
+    //normalized device coordinates to trackable space
+    private void unproject(float x, float y, float z, float[] out) {
+        for (int row = 0; row < 4; row++) {
+            out[row] = inverse[row] * x + inverse[4 + row] * y + inverse[8 + row] * z + inverse[12 + row];
+        }//for
+        out[0] /= out[3];
+        out[1] /= out[3];
+        out[2] /= out[3];
+    }//unproject
+
+    /**
+     * @return whether texture coordinates lie on the board
+     */
+    public static boolean isOnBoard(float[] uv) {
+        return uv[0] >= 0 && uv[0] <= 1 && uv[1] >= 0 && uv[1] <= 1;
+    }
+}
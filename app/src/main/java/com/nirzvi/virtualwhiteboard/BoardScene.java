@@ -0,0 +1,142 @@
+package com.nirzvi.virtualwhiteboard;
+
+/**
+ * Turns the poses of a frame into the board batch that gets drawn.
+ * All scratch storage is allocated up front so a steady-state frame allocates nothing.
+ * While no pose moves more than the epsilon the batch is left as it was, culled and all.
+ */
+public class BoardScene {
+
+    private final BoardBatch batch;
+
+    private PoseFilter poseFilter;
+    private double predictionTime = 0;
+    private float poseEpsilon = 0;
+
+    private final float[] pose = new float[PoseMath.POSE_SIZE];
+    //this frame's boards, and the ones the batch was last filled from
+    private final float[] matrices;
+    private final int[] slots;
+    private final float[] submittedMatrices;
+    private final int[] submittedSlots;
+    private int submittedCount = -1;
+
+    //metrics
+    private long stillFrames = 0;
+
+    public BoardScene(int maxBoards, int numSlots) {
+        batch = new BoardBatch(maxBoards);
+        poseFilter = PoseFilter.create(PoseFilter.NONE, numSlots);
+        matrices = new float[maxBoards * BoardBatch.FLOATS_PER_MATRIX];
+        slots = new int[maxBoards];
+        submittedMatrices = new float[maxBoards * BoardBatch.FLOATS_PER_MATRIX];
+        submittedSlots = new int[maxBoards];
+    }
+
+    /**
+     * @param poseFilter filter applied to every pose before it reaches the batch
+     */
+    public void setPoseFilter(PoseFilter poseFilter) {
+        this.poseFilter = poseFilter;
+    }
+
+    /**
+     * @param seconds expected time between a camera frame being captured and it being displayed
+     */
+    public void setPredictionTime(double seconds) {
+        predictionTime = seconds;
+    }
+
+    /**
+     * @param epsilon farthest a board's corner may move, in trackable units, and leave the batch as it was,
+     *                0 refills it whenever a pose changes at all
+     */
+    public void setPoseEpsilon(float epsilon) {
+        poseEpsilon = epsilon;
+    }
+
+    /**
+     * Refills the batch from the current tracking results, unless the same boards are tracked
+     * and none moved more than the pose epsilon since it was last filled
+     * @param source poses for this frame
+     * @return whether the batch was refilled, and has to be culled again
+     */
+    public boolean prepare(PoseSource source) {
+        // Poses are filtered every frame, the filters follow time whether the batch changes or not
+        double timestamp = source.getTimestamp();
+        int numPoses = source.getNumPoses();
+        int count = 0;
+        for (int i = 0; i < numPoses && count < slots.length; i++) {
+            int slot = source.getSlot(i);
+            if (slot < 0) {
+                continue;
+            }//if
+
+            source.getPose(i, pose, 0);
+            poseFilter.filter(slot, pose, 0, timestamp, timestamp + predictionTime);
+            PoseMath.poseToGL(pose, 0, matrices, count * BoardBatch.FLOATS_PER_MATRIX);
+            slots[count] = slot;
+            count++;
+        }//for
+
+        if (isStill(count)) {
+            stillFrames++;
+            return false;
+        }//if
+
+        batch.reset();
+        for (int b = 0; b < count; b++) {
+            batch.addBoard(slots[b], matrices, b * BoardBatch.FLOATS_PER_MATRIX);
+        }//for
+        System.arraycopy(matrices, 0, submittedMatrices, 0, count * BoardBatch.FLOATS_PER_MATRIX);
+        System.arraycopy(slots, 0, submittedSlots, 0, count);
+        submittedCount = count;
+        return true;
+    }//prepare
+
+    //whether this frame's boards are the submitted ones, within the epsilon
+    private boolean isStill(int count) {
+        if (count != submittedCount) {
+            return false;
+        }//if
+        for (int b = 0; b < count; b++) {
+            if (slots[b] != submittedSlots[b]) {
+                return false;
+            }//if
+        }//for
+        // A corner moves with the translation, and with the rotation times its distance from the centre
+        for (int b = 0; b < count; b++) {
+            int m = b * BoardBatch.FLOATS_PER_MATRIX;
+            float moved = 0;
+            for (int row = 0; row < 3; row++) {
+                moved += Math.abs(matrices[m + 12 + row] - submittedMatrices[m + 12 + row]);
+                for (int col = 0; col < 2; col++) {
+                    moved += Math.abs(matrices[m + col * 4 + row] - submittedMatrices[m + col * 4 + row])
+                            * BoardBatch.HALF_WIDTH;
+                }//for
+            }//for
+            if (moved > poseEpsilon) {
+                return false;
+            }//if
+        }//for
+        return true;
+    }//isStill
+
+    /**
+     * Fills the batch on the next prepare however little the poses moved
+     */
+    public void invalidate() {
+        submittedCount = -1;
+    }
+
+    /**
+     * @return frames prepare left the batch as it was
+     */
+    public long getStillFrames() {
+        return stillFrames;
+    }
+
+    public BoardBatch getBatch() {
+        return batch;
+    }
+}
@@ -0,0 +1,106 @@
+package com.nirzvi.virtualwhiteboard;
+
+/**
+ * Turns a coverage mask into a signed distance field, for text that stays sharp at any scale.
+ *
+ * Distances are exact Euclidean, from the two-pass transform of Felzenszwalb and Huttenlocher,
+ * computed once to the nearest covered pixel and once to the nearest uncovered one. The field is
+ * stored in a byte as 0.5 on the edge, rising inside the shape and falling outside, reaching 0 and
+ * 1 at spread pixels from the edge. A shader then draws the shape with a smoothstep around 0.5.
+ */
+public final class DistanceField {
+
+    private static final float INFINITY = 1e20f;
+
+    private DistanceField() {
+    }
+
+    /**
+     * @param mask coverage, 0 to 255, a pixel is in the shape from 128 up
+     * @param width mask width in pixels
+     * @param height mask height in pixels
+     * @param spread distance in pixels that the field's range covers on each side of the edge
+     * @param out width * height bytes starting at outOffset, rows outStride bytes apart
+     */
+    public static void generate(byte[] mask, int width, int height, int spread,
+                                byte[] out, int outOffset, int outStride) {
+        int size = width * height;
+        float[] toInside = new float[size];
+        float[] toOutside = new float[size];
+        for (int i = 0; i < size; i++) {
+            boolean inside = (mask[i] & 0xFF) >= 128;
+            toInside[i] = inside ? 0 : INFINITY;
+            toOutside[i] = inside ? INFINITY : 0;
+        }//for
+
+        int longest = Math.max(width, height);
+        float[] f = new float[longest];
+        float[] d = new float[longest];
+        int[] v = new int[longest];
+        float[] z = new float[longest + 1];
+        transform(toInside, width, height, f, d, v, z);
+        transform(toOutside, width, height, f, d, v, z);
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = y * width + x;
+                // Pixel centres sit half a pixel from the edge between two pixels
+                float distance = toInside[i] > 0
+                        ? (float) Math.sqrt(toInside[i]) - 0.5f
+                        : 0.5f - (float) Math.sqrt(toOutside[i]);
+                float value = 0.5f - distance / (2 * spread);
+                out[outOffset + y * outStride + x] = (byte) Math.round(Math.max(0, Math.min(1, value)) * 255);
+            }//for
+        }//for
+    }//generate
+
+    //squared distance transform of a grid, in place, columns first then rows
+    private static void transform(float[] grid, int width, int height, float[] f, float[] d, int[] v, float[] z) {
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                f[y] = grid[y * width + x];
+            }//for
+            transform1D(f, height, d, v, z);
+            for (int y = 0; y < height; y++) {
+                grid[y * width + x] = d[y];
+            }//for
+        }//for
+
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(grid, y * width, f, 0, width);
+            transform1D(f, width, d, v, z);
+            System.arraycopy(d, 0, grid, y * width, width);
+        }//for
+    }//transform
+
+    //lower envelope of the parabolas rooted at every sample
+    private static void transform1D(float[] f, int n, float[] d, int[] v, float[] z) {
+        int k = 0;
+        v[0] = 0;
+        z[0] = -INFINITY;
+        z[1] = INFINITY;
+        for (int q = 1; q < n; q++) {
+            float s = intersect(f, q, v[k]);
+            while (s <= z[k]) {
+                k--;
+                s = intersect(f, q, v[k]);
+            }//while
+            k++;
+            v[k] = q;
+            z[k] = s;
+            z[k + 1] = INFINITY;
+        }//for
+
+        k = 0;
+        for (int q = 0; q < n; q++) {
+            while (z[k + 1] < q) {
+                k++;
+            }//while
+            d[q] = (q - v[k]) * (q - v[k]) + f[v[k]];
+        }//for
+    }//transform1D
+
+    private static float intersect(float[] f, int q, int p) {
+        return ((f[q] + q * q) - (f[p] + p * p)) / (2f * q - 2f * p);
+    }
+}
@@ -0,0 +1,138 @@
+package com.nirzvi.virtualwhiteboard;
+
+import java.util.Arrays;
+
+/**
+ * Tries the camera view with every MSAA tier on the first run and keeps the best one that holds the
+ * frame budget.
+ *
+ * The view is created with each candidate in turn. Once a candidate's surface has warmed up, the 95th
+ * percentile of its frame times is measured over a fixed number of frames and the next candidate is
+ * tried. The most samples whose percentile fits the budget win, or the fastest candidate if none does.
+ * The caller persists the result so later launches skip the probing. Frames are recorded on the GL
+ * thread and candidates advanced on the UI thread.
+ *
+ * Frame times have to include the GPU, MSAA costs fill and the resolve rather than CPU time, so the
+ * renderer times every frame through GpuFrameTimer while calibrating. The calibration outlives a
+ * recreated activity, which picks up the candidate it was on through resume.
+ */
+public class EglCalibration {
+
+    //MSAA sample counts to try, 2x is rarely offered so it is left out
+    public static final int[] DEFAULT_SAMPLES = {4, 0};
+    public static final int DEFAULT_WARM_UP_FRAMES = 60;
+    public static final int DEFAULT_MEASURED_FRAMES = 120;
+
+    private final int[] candidates;
+    private final long[] p95;
+    private final int warmUpFrames;
+
+    private final long[] window;
+    private final long[] sorted;
+    private int current = -1;
+    private int frames = 0;
+    private boolean measuring = false;
+
+    public EglCalibration() {
+        this(DEFAULT_SAMPLES, DEFAULT_WARM_UP_FRAMES, DEFAULT_MEASURED_FRAMES);
+    }
+
+    /**
+     * @param candidates MSAA sample counts to try, in order
+     * @param warmUpFrames frames left out after every surface is created
+     * @param measuredFrames frames every candidate is measured over
+     */
+    public EglCalibration(int[] candidates, int warmUpFrames, int measuredFrames) {
+        this.candidates = candidates.clone();
+        this.warmUpFrames = warmUpFrames;
+        p95 = new long[candidates.length];
+        window = new long[measuredFrames];
+        sorted = new long[measuredFrames];
+    }//EglCalibration
+
+    /**
+     * Moves on to the next candidate, call before creating the view with it
+     * @return its MSAA samples, -1 once every candidate was measured
+     */
+    public synchronized int next() {
+        measuring = false;
+        if (current + 1 >= candidates.length) {
+            return -1;
+        }//if
+        current++;
+        frames = 0;
+        measuring = true;
+        return candidates[current];
+    }//next
+
+    /**
+     * Measures the current candidate again from its warm-up, call when the view is created anew without
+     * the candidate having changed, as after the activity was recreated. Before the first candidate, or
+     * once the current one is measured, moves on like next.
+     * @return MSAA samples of the candidate to create the view with, -1 once every candidate was measured
+     */
+    public synchronized int resume() {
+        if (!measuring) {
+            return next();
+        }//if
+        frames = 0;
+        return candidates[current];
+    }//resume
+
+    /**
+     * Call once per frame on the GL thread
+     * @param frameNanos time the frame took, GPU included
+     * @return true once, when the current candidate is measured, advance with next
+     */
+    public synchronized boolean recordFrame(long frameNanos) {
+        if (!measuring) {
+            return false;
+        }//if
+
+        frames++;
+        if (frames <= warmUpFrames) {
+            return false;
+        }//if
+        window[frames - warmUpFrames - 1] = frameNanos;
+        if (frames - warmUpFrames < window.length) {
+            return false;
+        }//if
+
+        System.arraycopy(window, 0, sorted, 0, window.length);
+        Arrays.sort(sorted);
+        p95[current] = QualityGovernor.percentile(sorted, 95);
+        measuring = false;
+        return true;
+    }//recordFrame
+
+    /**
+     * @param budgetNanos frame budget a candidate has to hold
+     * @return MSAA samples of the best candidate measured, 0 if none was
+     */
+    public synchronized int getBest(long budgetNanos) {
+        int best = -1;
+        int fastest = -1;
+        for (int c = 0; c <= current && c < candidates.length; c++) {
+            if (c == current && measuring) {
+                continue;
+            }//if
+            if (p95[c] <= budgetNanos && (best < 0 || candidates[c] > candidates[best])) {
+                best = c;
+            }//if
+            if (fastest < 0 || p95[c] < p95[fastest]) {
+                fastest = c;
+            }//if
+        }//for
+        if (best >= 0) {
+            return candidates[best];
+        }//if
+        return fastest >= 0 ? candidates[fastest] : 0;
+    }//getBest
+
+    /**
+     * @return 95th percentile frame time of the candidate, 0 until it is measured
+     */
+    public synchronized long getP95(int candidate) {
+        return p95[candidate];
+    }
+}
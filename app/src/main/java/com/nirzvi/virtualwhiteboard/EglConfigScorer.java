@@ -0,0 +1,85 @@
+package com.nirzvi.virtualwhiteboard;
+
+/**
+ * Ranks EGL configs for the camera view's surface, lower scores are better.
+ *
+ * Nothing is drawn with depth or stencil tests, so every bit of either beyond what was asked for is
+ * bandwidth spent for nothing and costs a little. In order of weight, a config loses for being marked
+ * slow by the driver, for lacking alpha on a translucent surface, for the number of MSAA samples being
+ * off from the tier asked for, for color bits short of the request, for depth and stencil bits, and
+ * for color bits beyond the request. Only configs without the depth or stencil asked for are unusable.
+ */
+public class EglConfigScorer {
+
+    public static final int UNUSABLE = Integer.MAX_VALUE;
+
+    private static final int SLOW_PENALTY = 1000000;
+    private static final int MISSING_ALPHA_PENALTY = 100000;
+    private static final int SAMPLE_WEIGHT = 5000;
+    private static final int MISSING_COLOR_WEIGHT = 1000;
+    private static final int DEPTH_STENCIL_WEIGHT = 50;
+    private static final int EXTRA_COLOR_WEIGHT = 10;
+
+    private final int red;
+    private final int green;
+    private final int blue;
+    private final int alpha;
+    private final int minDepth;
+    private final int minStencil;
+    private final int samples;
+
+    /**
+     * @param red wanted red bits
+     * @param green wanted green bits
+     * @param blue wanted blue bits
+     * @param alpha wanted alpha bits, 0 for an opaque surface
+     * @param minDepth fewest depth bits the drawing needs
+     * @param minStencil fewest stencil bits the drawing needs
+     * @param samples wanted MSAA samples, 0 for none
+     */
+    public EglConfigScorer(int red, int green, int blue, int alpha, int minDepth, int minStencil, int samples) {
+        this.red = red;
+        this.green = green;
+        this.blue = blue;
+        this.alpha = alpha;
+        this.minDepth = minDepth;
+        this.minStencil = minStencil;
+        this.samples = samples;
+    }//EglConfigScorer
+
+    /**
+     * @return the same request without a depth or stencil minimum, for when no config has them
+     */
+    public EglConfigScorer relaxed() {
+        return new EglConfigScorer(red, green, blue, alpha, 0, 0, samples);
+    }
+
+    /**
+     * @param slow whether the driver marks the config EGL_SLOW_CONFIG
+     * @return score of the config, UNUSABLE if it lacks the depth or stencil asked for
+     */
+    public int score(int r, int g, int b, int a, int depth, int stencil, int configSamples, boolean slow) {
+        if (depth < minDepth || stencil < minStencil) {
+            return UNUSABLE;
+        }//if
+
+        int score = 0;
+        if (slow) {
+            score += SLOW_PENALTY;
+        }//if
+        if (alpha > 0 && a == 0) {
+            score += MISSING_ALPHA_PENALTY;
+        }//if
+        score += Math.abs(configSamples - samples) * SAMPLE_WEIGHT;
+        score += (Math.max(0, red - r) + Math.max(0, green - g) + Math.max(0, blue - b) + Math.max(0, alpha - a))
+                * MISSING_COLOR_WEIGHT;
+        score += (depth - minDepth + stencil - minStencil) * DEPTH_STENCIL_WEIGHT;
+        score += (Math.max(0, r - red) + Math.max(0, g - green) + Math.max(0, b - blue) + Math.max(0, a - alpha))
+                * EXTRA_COLOR_WEIGHT;
+        return score;
+    }//score
+
+    public int getSamples() {
+        return samples;
+    }
+}
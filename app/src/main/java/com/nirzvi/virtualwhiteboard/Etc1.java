@@ -0,0 +1,274 @@
+package com.nirzvi.virtualwhiteboard;
+
+/**
+ * Pure Java ETC1 block encoder and decoder.
+ *
+ * ETC1 stores every 4x4 block of RGB pixels in 8 bytes, an eighth of RGBA8888, and every OpenGL ES 2.0
+ * Android device samples it natively. A block is two halves, side by side or one above the other, each
+ * with a base colour and one of eight tables of brightness offsets; every pixel picks one of its table's
+ * four offsets. The encoder tries both splits, both ways of storing the base colours and every table,
+ * and keeps the block with the smallest squared error. Alpha is ignored, so only opaque content fits.
+ *
+ * One instance per thread, it keeps scratch arrays.
+ */
+public class Etc1 {
+
+    /** GL_OES_compressed_ETC1_RGB8_texture */
+    public static final int GL_ETC1_RGB8_OES = 0x8D64;
+
+    public static final int BLOCK_SIZE = 4;
+    public static final int ENCODED_BLOCK_BYTES = 8;
+
+    //brightness offsets of every table, in the order of the pixel index values
+    private static final int[][] MODIFIERS = {
+            {2, 8, -2, -8},
+            {5, 17, -5, -17},
+            {9, 29, -9, -29},
+            {13, 42, -13, -42},
+            {18, 60, -18, -60},
+            {24, 80, -24, -80},
+            {33, 106, -33, -106},
+            {47, 183, -47, -183}
+    };
+
+    //channels of the block, pixel (x, y) at x * 4 + y, the order ETC1 stores indices in
+    private final int[] red = new int[16];
+    private final int[] green = new int[16];
+    private final int[] blue = new int[16];
+
+    //best half found by evaluate
+    private int halfTable;
+    private int halfIndices;
+
+    //best block so far
+    private int bestError;
+    private final byte[] best = new byte[ENCODED_BLOCK_BYTES];
+
+    //boards are mostly background, the last block of one colour is kept for the next
+    private int flatColor = -1;
+    private int flatError;
+    private final byte[] flatBlock = new byte[ENCODED_BLOCK_BYTES];
+
+    /**
+     * @return bytes of an ETC1 image of that size
+     */
+    public static int getEncodedSize(int width, int height) {
+        return ((width + BLOCK_SIZE - 1) / BLOCK_SIZE) * ((height + BLOCK_SIZE - 1) / BLOCK_SIZE) * ENCODED_BLOCK_BYTES;
+    }
+
+    /**
+     * Encodes one 4x4 block
+     * @param pixels ARGB pixels, the block's top left at offset, alpha is ignored
+     * @param stride pixels between rows
+     * @param out receives ENCODED_BLOCK_BYTES bytes at outOffset
+     * @return squared error of the encoded block over the three channels
+     */
+    public int encodeBlock(int[] pixels, int offset, int stride, byte[] out, int outOffset) {
+        boolean flat = true;
+        int first = pixels[offset] & 0xFFFFFF;
+        for (int y = 0; y < BLOCK_SIZE; y++) {
+            for (int x = 0; x < BLOCK_SIZE; x++) {
+                int argb = pixels[offset + y * stride + x];
+                int i = x * 4 + y;
+                red[i] = (argb >> 16) & 0xFF;
+                green[i] = (argb >> 8) & 0xFF;
+                blue[i] = argb & 0xFF;
+                flat &= (argb & 0xFFFFFF) == first;
+            }//for
+        }//for
+
+        if (flat && first == flatColor) {
+            System.arraycopy(flatBlock, 0, out, outOffset, ENCODED_BLOCK_BYTES);
+            return flatError;
+        }//if
+
+        bestError = Integer.MAX_VALUE;
+        // A block of one colour splits the same both ways
+        tryFlip(0);
+        if (!flat) {
+            tryFlip(1);
+        } else {
+            flatColor = first;
+            flatError = bestError;
+            System.arraycopy(best, 0, flatBlock, 0, ENCODED_BLOCK_BYTES);
+        }//else
+
+        System.arraycopy(best, 0, out, outOffset, ENCODED_BLOCK_BYTES);
+        return bestError;
+    }//encodeBlock
+
+    //tries both colour modes for one way of splitting the block
+    private void tryFlip(int flip) {
+        int r0 = 0, g0 = 0, b0 = 0, r1 = 0, g1 = 0, b1 = 0;
+        for (int i = 0; i < 16; i++) {
+            if (inSecondHalf(i, flip)) {
+                r1 += red[i];
+                g1 += green[i];
+                b1 += blue[i];
+            } else {
+                r0 += red[i];
+                g0 += green[i];
+                b0 += blue[i];
+            }//else
+        }//for
+
+        // Differential: 5 bit base colours, the second stored as an offset of -4 to 3 from the first
+        int dr0 = quantize(r0, 31), dg0 = quantize(g0, 31), db0 = quantize(b0, 31);
+        int dr1 = quantize(r1, 31), dg1 = quantize(g1, 31), db1 = quantize(b1, 31);
+        if (fitsOffset(dr1 - dr0) && fitsOffset(dg1 - dg0) && fitsOffset(db1 - db0)) {
+            tryColors(flip, true, dr0, dg0, db0, dr1, dg1, db1, expand5(dr0), expand5(dg0), expand5(db0),
+                    expand5(dr1), expand5(dg1), expand5(db1));
+        }//if
+
+        // Individual: two independent 4 bit base colours
+        int ir0 = quantize(r0, 15), ig0 = quantize(g0, 15), ib0 = quantize(b0, 15);
+        int ir1 = quantize(r1, 15), ig1 = quantize(g1, 15), ib1 = quantize(b1, 15);
+        tryColors(flip, false, ir0, ig0, ib0, ir1, ig1, ib1, expand4(ir0), expand4(ig0), expand4(ib0),
+                expand4(ir1), expand4(ig1), expand4(ib1));
+    }//tryFlip
+
+    private void tryColors(int flip, boolean differential, int qr0, int qg0, int qb0, int qr1, int qg1, int qb1,
+                           int r0, int g0, int b0, int r1, int g1, int b1) {
+        int error = evaluate(flip, 0, r0, g0, b0, bestError);
+        if (error >= bestError) {
+            return;
+        }//if
+        int table0 = halfTable;
+        int indices = halfIndices;
+
+        error += evaluate(flip, 1, r1, g1, b1, bestError - error);
+        if (error >= bestError) {
+            return;
+        }//if
+        int table1 = halfTable;
+        indices |= halfIndices;
+
+        bestError = error;
+        if (differential) {
+            best[0] = (byte) ((qr0 << 3) | ((qr1 - qr0) & 7));
+            best[1] = (byte) ((qg0 << 3) | ((qg1 - qg0) & 7));
+            best[2] = (byte) ((qb0 << 3) | ((qb1 - qb0) & 7));
+        } else {
+            best[0] = (byte) ((qr0 << 4) | qr1);
+            best[1] = (byte) ((qg0 << 4) | qg1);
+            best[2] = (byte) ((qb0 << 4) | qb1);
+        }//else
+        best[3] = (byte) ((table0 << 5) | (table1 << 2) | (differential ? 2 : 0) | flip);
+        best[4] = (byte) (indices >>> 24);
+        best[5] = (byte) (indices >>> 16);
+        best[6] = (byte) (indices >>> 8);
+        best[7] = (byte) indices;
+    }//tryColors
+
+    //finds the best table for one half, leaves it in halfTable and halfIndices, returns the error
+    private int evaluate(int flip, int half, int r, int g, int b, int limit) {
+        int bestHalf = Integer.MAX_VALUE;
+        for (int t = 0; t < MODIFIERS.length; t++) {
+            int[] modifiers = MODIFIERS[t];
+            int error = 0;
+            int indices = 0;
+            for (int i = 0; i < 16 && error < bestHalf && error < limit; i++) {
+                if (inSecondHalf(i, flip) != (half == 1)) {
+                    continue;
+                }//if
+
+                int pixelBest = Integer.MAX_VALUE;
+                int pixelIndex = 0;
+                for (int m = 0; m < 4; m++) {
+                    int dr = red[i] - clamp(r + modifiers[m]);
+                    int dg = green[i] - clamp(g + modifiers[m]);
+                    int db = blue[i] - clamp(b + modifiers[m]);
+                    int e = dr * dr + dg * dg + db * db;
+                    if (e < pixelBest) {
+                        pixelBest = e;
+                        pixelIndex = m;
+                    }//if
+                }//for
+                error += pixelBest;
+                indices |= ((pixelIndex >> 1) << (i + 16)) | ((pixelIndex & 1) << i);
+            }//for
+
+            if (error < bestHalf) {
+                bestHalf = error;
+                halfTable = t;
+                halfIndices = indices;
+            }//if
+        }//for
+        return bestHalf;
+    }//evaluate
+
+    private static boolean inSecondHalf(int i, int flip) {
+        // i is x * 4 + y, flip 0 splits left and right, flip 1 top and bottom
+        return flip == 0 ? i >= 8 : (i & 3) >= 2;
+    }
+
+    //sum of 8 channel values to the nearest of max + 1 levels
+    private static int quantize(int sum, int max) {
+        return (sum * max + 8 * 255 / 2) / (8 * 255);
+    }
+
+    private static boolean fitsOffset(int d) {
+        return d >= -4 && d <= 3;
+    }
+
+    private static int expand4(int c) {
+        return (c << 4) | c;
+    }
+
+    private static int expand5(int c) {
+        return (c << 3) | (c >> 2);
+    }
+
+    private static int clamp(int c) {
+        return c < 0 ? 0 : c > 255 ? 255 : c;
+    }
+
+    /**
+     * Decodes one block
+     * @param out receives opaque ARGB pixels, the block's top left at outOffset
+     * @param stride pixels between rows of out
+     */
+    public static void decodeBlock(byte[] in, int inOffset, int[] out, int outOffset, int stride) {
+        int b0 = in[inOffset] & 0xFF;
+        int b1 = in[inOffset + 1] & 0xFF;
+        int b2 = in[inOffset + 2] & 0xFF;
+        int b3 = in[inOffset + 3] & 0xFF;
+        int indices = ((in[inOffset + 4] & 0xFF) << 24) | ((in[inOffset + 5] & 0xFF) << 16)
+                | ((in[inOffset + 6] & 0xFF) << 8) | (in[inOffset + 7] & 0xFF);
+        int flip = b3 & 1;
+        int[] table0 = MODIFIERS[b3 >> 5];
+        int[] table1 = MODIFIERS[(b3 >> 2) & 7];
+
+        int r0, g0, bl0, r1, g1, bl1;
+        if ((b3 & 2) != 0) {
+            int qr = b0 >> 3, qg = b1 >> 3, qb = b2 >> 3;
+            r0 = expand5(qr);
+            g0 = expand5(qg);
+            bl0 = expand5(qb);
+            // Offsets are 3 bit two's complement
+            r1 = expand5(qr + ((b0 & 7) << 29 >> 29));
+            g1 = expand5(qg + ((b1 & 7) << 29 >> 29));
+            bl1 = expand5(qb + ((b2 & 7) << 29 >> 29));
+        } else {
+            r0 = expand4(b0 >> 4);
+            g0 = expand4(b1 >> 4);
+            bl0 = expand4(b2 >> 4);
+            r1 = expand4(b0 & 15);
+            g1 = expand4(b1 & 15);
+            bl1 = expand4(b2 & 15);
+        }//else
+
+        for (int x = 0; x < BLOCK_SIZE; x++) {
+            for (int y = 0; y < BLOCK_SIZE; y++) {
+                int i = x * 4 + y;
+                int index = (((indices >>> (i + 16)) & 1) << 1) | ((indices >>> i) & 1);
+                boolean second = inSecondHalf(i, flip);
+                int modifier = (second ? table1 : table0)[index];
+                int r = clamp((second ? r1 : r0) + modifier);
+                int g = clamp((second ? g1 : g0) + modifier);
+                int b = clamp((second ? bl1 : bl0) + modifier);
+                out[outOffset + y * stride + x] = 0xFF000000 | (r << 16) | (g << 8) | b;
+            }//for
+        }//for
+    }//decodeBlock
+}
@@ -0,0 +1,279 @@
+package com.nirzvi.virtualwhiteboard;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Encodes board snapshots to ETC1 images on a background thread.
+ *
+ * Encoded blocks are kept per tile and reused while the tile is the same array, so after a stroke only
+ * the tiles it touched are encoded again. Requests made while the worker is busy collapse into the
+ * newest one, and the newest finished image waits in a single slot until the GL thread polls it.
+ */
+public class Etc1BoardEncoder {
+
+    /** An encoded snapshot, immutable once published. */
+    public static class Image {
+
+        private final long version;
+        private final int width;
+        private final int height;
+        private final ByteBuffer data;
+
+        Image(long version, int width, int height, ByteBuffer data) {
+            this.version = version;
+            this.width = width;
+            this.height = height;
+            this.data = data;
+        }
+
+        /**
+         * @return version of the snapshot this was encoded from
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * ETC1 stores no alpha, a snapshot with any translucent pixel is not encoded
+         */
+        public boolean isOpaque() {
+            return data != null;
+        }
+
+        /**
+         * @return the blocks in glCompressedTexImage2D order, null if not opaque
+         */
+        public ByteBuffer getData() {
+            return data == null ? null : data.duplicate();
+        }
+
+        public int getSize() {
+            return data == null ? 0 : data.capacity();
+        }
+    }
+
+    private static final String LOGTAG = "Etc1BoardEncoder";
+
+    private static final int BLOCKS_PER_TILE = TiledBoard.TILE_SIZE / Etc1.BLOCK_SIZE;
+    private static final int TILE_ROW_BYTES = BLOCKS_PER_TILE * Etc1.ENCODED_BLOCK_BYTES;
+    static final int ENCODED_TILE_BYTES = BLOCKS_PER_TILE * TILE_ROW_BYTES;
+
+    private final LinkedBlockingQueue<TiledBoard.Snapshot> pending = new LinkedBlockingQueue<>();
+    private final AtomicReference<Image> latest = new AtomicReference<>();
+
+    private Thread worker;
+
+    //only touched by whoever encodes, the worker or a caller of encode
+    private final Etc1 etc1 = new Etc1();
+    private int[][] tiles = new int[0][];
+    private byte[][] encoded = new byte[0][];
+    private boolean[] opaque = new boolean[0];
+
+    //written by the encoding thread only
+    private volatile long encodedTiles = 0;
+    private volatile long reusedTiles = 0;
+    private volatile long lastEncodeNanos = 0;
+
+    /**
+     * Starts the worker thread, it runs until stop
+     */
+    public synchronized void start() {
+        if (worker != null) {
+            return;
+        }//if
+
+        worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        encodeNewest(pending.take());
+                    }//while
+                } catch (InterruptedException e) {
+                    // stopped
+                }//catch
+            }
+        }, LOGTAG);
+        worker.setDaemon(true);
+        worker.setPriority(Thread.MIN_PRIORITY);
+        worker.start();
+    }//start
+
+    /**
+     * Stops the worker, a request still pending is encoded after the next start
+     */
+    public synchronized void stop() throws InterruptedException {
+        if (worker == null) {
+            return;
+        }//if
+        worker.interrupt();
+        worker.join();
+        worker = null;
+    }//stop
+
+    /**
+     * Asks for the snapshot to be encoded, never blocks
+     */
+    public void request(TiledBoard.Snapshot snapshot) {
+        pending.add(snapshot);
+    }
+
+    /**
+     * @param seenVersion version of the last image the caller took
+     * @return the newest encoded image if it is newer than seenVersion, otherwise null
+     */
+    public Image poll(long seenVersion) {
+        Image image = latest.get();
+        if (image == null || image.getVersion() <= seenVersion) {
+            return null;
+        }//if
+        return image;
+    }//poll
+
+    /**
+     * Encodes the newest pending request on the calling thread, for tests and for running without a worker
+     * @return whether anything was requested
+     */
+    boolean encodePending() {
+        TiledBoard.Snapshot snapshot = pending.poll();
+        if (snapshot == null) {
+            return false;
+        }//if
+        encodeNewest(snapshot);
+        return true;
+    }//encodePending
+
+    //encodes the newest of the snapshot and any requested after it and publishes the image
+    private void encodeNewest(TiledBoard.Snapshot snapshot) {
+        TiledBoard.Snapshot newer;
+        while ((newer = pending.poll()) != null) {
+            snapshot = newer;
+        }//while
+        latest.set(encode(snapshot));
+    }//encodeNewest
+
+    /**
+     * Encodes on the calling thread without publishing, for tests and benchmarks. Not safe while the worker runs.
+     */
+    public Image encode(TiledBoard.Snapshot snapshot) {
+        long start = System.nanoTime();
+        int tileCount = snapshot.getTileCount();
+        if (tiles.length != tileCount) {
+            tiles = new int[tileCount][];
+            encoded = new byte[tileCount][];
+            opaque = new boolean[tileCount];
+        }//if
+
+        boolean allOpaque = true;
+        long encodedCount = 0;
+        for (int t = 0; t < tileCount; t++) {
+            int[] tile = snapshot.getTile(t);
+            if (tile != tiles[t]) {
+                if (encoded[t] == null) {
+                    encoded[t] = new byte[ENCODED_TILE_BYTES];
+                }//if
+                opaque[t] = encodeTile(snapshot, t, encoded[t]);
+                tiles[t] = tile;
+                encodedCount++;
+            }//if
+            allOpaque &= opaque[t];
+        }//for
+        encodedTiles += encodedCount;
+        reusedTiles += tileCount - encodedCount;
+
+        ByteBuffer data = allOpaque ? assemble(snapshot) : null;
+        lastEncodeNanos = System.nanoTime() - start;
+        return new Image(snapshot.getVersion(), snapshot.getWidth(), snapshot.getHeight(), data);
+    }//encode
+
+    //encodes every block of the tile, returns whether the part inside the board is opaque
+    private boolean encodeTile(TiledBoard.Snapshot snapshot, int t, byte[] out) {
+        int[] tile = snapshot.getTile(t);
+        int x = (t % snapshot.getTilesX()) * TiledBoard.TILE_SIZE;
+        int y = (t / snapshot.getTilesX()) * TiledBoard.TILE_SIZE;
+        int w = Math.min(TiledBoard.TILE_SIZE, snapshot.getWidth() - x);
+        int h = Math.min(TiledBoard.TILE_SIZE, snapshot.getHeight() - y);
+
+        boolean isOpaque = true;
+        for (int row = 0; row < h && isOpaque; row++) {
+            for (int col = 0; col < w; col++) {
+                if (tile[row * TiledBoard.TILE_SIZE + col] >>> 24 != 255) {
+                    isOpaque = false;
+                    break;
+                }//if
+            }//for
+        }//for
+        if (!isOpaque) {
+            return false;
+        }//if
+
+        // Blocks past the board's edge are never sampled, only encode the ones it covers
+        int blocksX = (w + Etc1.BLOCK_SIZE - 1) / Etc1.BLOCK_SIZE;
+        int blocksY = (h + Etc1.BLOCK_SIZE - 1) / Etc1.BLOCK_SIZE;
+        for (int by = 0; by < blocksY; by++) {
+            for (int bx = 0; bx < blocksX; bx++) {
+                etc1.encodeBlock(tile, by * Etc1.BLOCK_SIZE * TiledBoard.TILE_SIZE + bx * Etc1.BLOCK_SIZE,
+                        TiledBoard.TILE_SIZE, out, by * TILE_ROW_BYTES + bx * Etc1.ENCODED_BLOCK_BYTES);
+            }//for
+        }//for
+        return true;
+    }//encodeTile
+
+    //copies the tiles' blocks into one image, a row of blocks at a time
+    private ByteBuffer assemble(TiledBoard.Snapshot snapshot) {
+        int width = snapshot.getWidth();
+        int height = snapshot.getHeight();
+        int tilesX = snapshot.getTilesX();
+        int blocksX = (width + Etc1.BLOCK_SIZE - 1) / Etc1.BLOCK_SIZE;
+        int blocksY = (height + Etc1.BLOCK_SIZE - 1) / Etc1.BLOCK_SIZE;
+
+        // A new buffer per image, the GL thread may still be uploading the last one
+        ByteBuffer data = ByteBuffer.allocateDirect(Etc1.getEncodedSize(width, height)).order(ByteOrder.nativeOrder());
+        for (int by = 0; by < blocksY; by++) {
+            int tileRow = by / BLOCKS_PER_TILE;
+            int offset = (by % BLOCKS_PER_TILE) * TILE_ROW_BYTES;
+            for (int tx = 0; tx < tilesX; tx++) {
+                int blocks = Math.min(BLOCKS_PER_TILE, blocksX - tx * BLOCKS_PER_TILE);
+                data.put(encoded[tileRow * tilesX + tx], offset, blocks * Etc1.ENCODED_BLOCK_BYTES);
+            }//for
+        }//for
+        data.position(0);
+        return data;
+    }//assemble
+
+    /*******************
+     * METRICS
+     *******************/
+
+    /**
+     * @return tiles encoded so far
+     */
+    public long getEncodedTiles() {
+        return encodedTiles;
+    }
+
+    /**
+     * @return tiles whose blocks were reused from an earlier encode
+     */
+    public long getReusedTiles() {
+        return reusedTiles;
+    }
+
+    /**
+     * @return duration of the last encode
+     */
+    public long getLastEncodeNanos() {
+        return lastEncodeNanos;
+    }
+}
@@ -0,0 +1,205 @@
+package com.nirzvi.virtualwhiteboard;
+
+import java.util.Arrays;
+
+/**
+ * Low-overhead CPU profiler for the render loop.
+ *
+ * Stage boundaries are stamped with System.nanoTime() into a preallocated ring buffer,
+ * and every stage keeps a log2 histogram of its durations. Nothing is allocated while recording,
+ * and while disabled begin/end are a single field check, so it can stay in production builds.
+ * Only the CPU side is measured, GL work runs asynchronously on the GPU.
+ */
+public class FrameProfiler {
+
+    public static final int STAGE_FRAME = 0;
+    public static final int STAGE_UPDATE_STATE = 1;
+    public static final int STAGE_VIDEO_BACKGROUND = 2;
+    public static final int STAGE_SCENE = 3;
+    public static final int STAGE_DRAW_BOARDS = 4;
+    public static final int STAGE_TEXTURE_UPLOAD = 5;
+    //after the frame, finishing the GPU frame timing, a wait for the GPU without timer queries
+    public static final int STAGE_GPU_TIMING = 6;
+
+    public static final int NUM_STAGES = 7;
+
+    private static final String[] STAGE_NAMES = {
+            "frame",
+            "updateState",
+            "renderVideoBackground",
+            "scene",
+            "drawBoards",
+            "textureUpload",
+            "gpuTiming"
+    };
+
+    //bucket i holds durations in [2^(i-1), 2^i) microseconds, bucket 0 anything under 1us
+    public static final int NUM_BUCKETS = 32;
+
+    private volatile boolean enabled = true;
+
+    //ring buffer of finished stages
+    private final int capacity;
+    private final int[] eventStages;
+    private final long[] eventStarts;
+    private final long[] eventDurations;
+    private long eventCount = 0;
+
+    private final long[] openStarts = new long[NUM_STAGES];
+    private final long[][] histograms = new long[NUM_STAGES][NUM_BUCKETS];
+
+    public FrameProfiler(int capacity) {
+        this.capacity = capacity;
+        eventStages = new int[capacity];
+        eventStarts = new long[capacity];
+        eventDurations = new long[capacity];
+    }//FrameProfiler
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Switches recording on or off at runtime
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Marks the start of a stage
+     * @param stage one of the STAGE_ constants
+     */
+    public void begin(int stage) {
+        if (enabled) {
+            openStarts[stage] = System.nanoTime();
+        }//if
+    }//begin
+
+    /**
+     * Marks the end of a stage started with begin
+     * @param stage one of the STAGE_ constants
+     */
+    public void end(int stage) {
+        if (enabled) {
+            long start = openStarts[stage];
+            if (start != 0) {
+                record(stage, start, System.nanoTime() - start);
+                openStarts[stage] = 0;
+            }//if
+        }//if
+    }//end
+
+    void record(int stage, long start, long duration) {
+        int index = (int) (eventCount % capacity);
+        eventStages[index] = stage;
+        eventStarts[index] = start;
+        eventDurations[index] = duration;
+        eventCount++;
+
+        histograms[stage][bucketOf(duration)]++;
+    }//record
+
+    static int bucketOf(long durationNanos) {
+        long micros = durationNanos / 1000;
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, NUM_BUCKETS - 1);
+    }//bucketOf
+
+    /**
+     * @param stage one of the STAGE_ constants
+     * @return how many times the stage has been recorded
+     */
+    public long getCount(int stage) {
+        long count = 0;
+        for (long c : histograms[stage]) {
+            count += c;
+        }//for
+        return count;
+    }//getCount
+
+    /**
+     * Estimates a percentile from a stage's histogram
+     * @param stage one of the STAGE_ constants
+     * @param percentile between 0 and 100
+     * @return upper bound of the bucket holding the percentile, in microseconds, 0 if nothing was recorded
+     */
+    public long getPercentileMicros(int stage, double percentile) {
+        long total = getCount(stage);
+        if (total == 0) {
+            return 0;
+        }//if
+
+        long target = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int bucket = 0; bucket < NUM_BUCKETS; bucket++) {
+            seen += histograms[stage][bucket];
+            if (seen >= Math.max(1, target)) {
+                return 1L << bucket;
+            }//if
+        }//for
+        return 1L << (NUM_BUCKETS - 1);
+    }//getPercentileMicros
+
+    /**
+     * @param stage one of the STAGE_ constants
+     * @return copy of the stage's histogram, see NUM_BUCKETS
+     */
+    public long[] getHistogram(int stage) {
+        return histograms[stage].clone();
+    }
+
+    /**
+     * Clears the ring buffer and histograms
+     */
+    public void reset() {
+        eventCount = 0;
+        Arrays.fill(openStarts, 0);
+        for (long[] histogram : histograms) {
+            Arrays.fill(histogram, 0);
+        }//for
+    }//reset
+
+    public static String getStageName(int stage) {
+        return STAGE_NAMES[stage];
+    }
+
+    /**
+     * Writes the events still in the ring buffer in the Chrome trace event format,
+     * which chrome://tracing and Perfetto both open.
+     * Call from the thread that records, so the buffer is not written mid-export.
+     * @param out destination for the JSON
+     */
+    public void exportTrace(StringBuilder out) {
+        long first = Math.max(0, eventCount - capacity);
+
+        out.append("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+        for (long e = first; e < eventCount; e++) {
+            int index = (int) (e % capacity);
+            if (e > first) {
+                out.append(',');
+            }//if
+
+            out.append("{\"name\":\"").append(STAGE_NAMES[eventStages[index]])
+                    .append("\",\"cat\":\"render\",\"ph\":\"X\",\"pid\":1,\"tid\":1,\"ts\":");
+            appendMicros(out, eventStarts[index]);
+            out.append(",\"dur\":");
+            appendMicros(out, eventDurations[index]);
+            out.append('}');
+        }//for
+        out.append("]}");
+    }//exportTrace
+
+    //nanoseconds as fractional microseconds, without going through String.format
+    private static void appendMicros(StringBuilder out, long nanos) {
+        out.append(nanos / 1000).append('.');
+        long fraction = nanos % 1000;
+        if (fraction < 100) {
+            out.append('0');
+        }//if
+        if (fraction < 10) {
+            out.append('0');
+        }//if
+        out.append(fraction);
+    }//appendMicros
+}
@@ -0,0 +1,167 @@
+package com.nirzvi.virtualwhiteboard;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Asks the GL view for a frame when something on screen changed, instead of drawing at display rate.
+ *
+ * New camera frames, content edits and touches request a frame from whatever thread they arrive on.
+ * Requests made before the frame starts share it, requests made while it is drawn get the next one.
+ * Without a target the view draws continuously and requests are only counted. The display frames that
+ * were not drawn, and the CPU an average frame costs, are what rendering on demand saves.
+ */
+public class FrameScheduler {
+
+    /** What a frame is requested from, GLSurfaceView.requestRender is thread safe. */
+    public interface Target {
+        void requestRender();
+    }
+
+    public static final int REASON_CAMERA = 0;
+    public static final int REASON_CONTENT = 1;
+    public static final int REASON_TOUCH = 2;
+    //a frame left work for the next one, uploads under a budget or latencies to stamp after its swap
+    public static final int REASON_UNFINISHED = 3;
+
+    public static final int NUM_REASONS = 4;
+
+    private volatile Target target;
+    private volatile float displayRate = 60;
+    private final AtomicBoolean pending = new AtomicBoolean(false);
+
+    //metrics
+    private final AtomicLongArray requests = new AtomicLongArray(NUM_REASONS);
+    private long frames = 0;
+    private long cpuNanos = 0;
+    private long firstFrameNanos = -1;
+    private long lastFrameNanos = -1;
+
+    /**
+     * @param target view to ask for frames, null to draw continuously
+     */
+    public void setTarget(Target target) {
+        this.target = target;
+        pending.set(false);
+        if (target != null) {
+            request(REASON_CONTENT);
+        }//if
+    }//setTarget
+
+    /**
+     * @return whether frames are drawn only when requested
+     */
+    public boolean isOnDemand() {
+        return target != null;
+    }
+
+    /**
+     * @param hz refresh rate of the display, what continuous rendering would draw at
+     */
+    public void setDisplayRate(float hz) {
+        displayRate = hz;
+    }
+
+    /**
+     * Asks for a frame, any thread
+     * @param reason one of the REASON_ constants
+     */
+    public void request(int reason) {
+        requests.incrementAndGet(reason);
+        if (pending.compareAndSet(false, true)) {
+            Target t = target;
+            if (t != null) {
+                t.requestRender();
+            }//if
+        }//if
+    }//request
+
+    /**
+     * @param reason one of the REASON_ constants
+     * @return a Runnable that requests a frame, for callbacks that take one
+     */
+    public Runnable requester(final int reason) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                request(reason);
+            }
+        };
+    }//requester
+
+    /**
+     * Call on the GL thread before anything is read for the frame, requests from here on get another
+     * @param nowNanos System.nanoTime()
+     */
+    public void onFrameStart(long nowNanos) {
+        pending.set(false);
+        if (firstFrameNanos < 0) {
+            firstFrameNanos = nowNanos;
+        }//if
+        lastFrameNanos = nowNanos;
+    }//onFrameStart
+
+    /**
+     * Call on the GL thread once the frame is drawn
+     * @param frameCpuNanos CPU time the GL thread spent on the frame
+     */
+    public void onFrameEnd(long frameCpuNanos) {
+        frames++;
+        cpuNanos += frameCpuNanos;
+    }//onFrameEnd
+
+    /*******************
+     * METRICS
+     *******************/
+
+    /**
+     * @param reason one of the REASON_ constants
+     * @return frames requested for the reason, most shared a frame with others
+     */
+    public long getRequests(int reason) {
+        return requests.get(reason);
+    }
+
+    /**
+     * GL thread only
+     * @return frames drawn
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * GL thread only
+     * @return frames the display showed between the first and last frame drawn
+     */
+    public long getDisplayFrames() {
+        if (firstFrameNanos < 0) {
+            return 0;
+        }//if
+        return 1 + Math.round((lastFrameNanos - firstFrameNanos) * (double) displayRate / 1e9);
+    }//getDisplayFrames
+
+    /**
+     * GL thread only
+     * @return display frames nothing was drawn for
+     */
+    public long getSkippedFrames() {
+        return Math.max(0, getDisplayFrames() - frames);
+    }
+
+    /**
+     * GL thread only
+     * @return CPU time of the GL thread per frame drawn
+     */
+    public long getAverageFrameCpuNanos() {
+        return frames == 0 ? 0 : cpuNanos / frames;
+    }
+
+    /**
+     * GL thread only
+     * @return CPU time drawing every skipped frame would have cost
+     */
+    public long getSavedCpuNanos() {
+        return getSkippedFrames() * getAverageFrameCpuNanos();
+    }
+}
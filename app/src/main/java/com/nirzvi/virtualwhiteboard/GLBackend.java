@@ -0,0 +1,150 @@
+package com.nirzvi.virtualwhiteboard;
+
+import java.nio.Buffer;
+
+/**
+ * The OpenGL ES 2.0 calls the renderer makes.
+ * AndroidGLBackend forwards them to GLES20, RecordingGLBackend counts and logs them
+ * so the render path can be tested and benchmarked without a device.
+ * Method names and arguments mirror GLES20.
+ */
+public interface GLBackend {
+
+    /*******************
+     * STATE
+     *******************/
+
+    void glClear(int mask);
+
+    /** Blocks until the GPU has executed every command issued so far. */
+    void glFinish();
+
+    void glEnable(int cap);
+
+    void glDisable(int cap);
+
+    void glFrontFace(int mode);
+
+    void glBlendFunc(int sfactor, int dfactor);
+
+    void glViewport(int x, int y, int width, int height);
+
+    void glScissor(int x, int y, int width, int height);
+
+    void glGetIntegerv(int pname, int[] params, int offset);
+
+    String glGetString(int name);
+
+    /*******************
+     * SHADERS
+     *******************/
+
+    int glCreateShader(int type);
+
+    void glShaderSource(int shader, String source);
+
+    void glCompileShader(int shader);
+
+    void glGetShaderiv(int shader, int pname, int[] params, int offset);
+
+    String glGetShaderInfoLog(int shader);
+
+    void glDeleteShader(int shader);
+
+    int glCreateProgram();
+
+    void glAttachShader(int program, int shader);
+
+    void glBindAttribLocation(int program, int index, String name);
+
+    void glLinkProgram(int program);
+
+    void glGetProgramiv(int program, int pname, int[] params, int offset);
+
+    String glGetProgramInfoLog(int program);
+
+    void glDeleteProgram(int program);
+
+    void glUseProgram(int program);
+
+    int glGetAttribLocation(int program, String name);
+
+    int glGetUniformLocation(int program, String name);
+
+    void glUniform1i(int location, int x);
+
+    void glUniform1f(int location, float x);
+
+    void glUniform1fv(int location, int count, float[] v, int offset);
+
+    void glUniform4fv(int location, int count, float[] v, int offset);
+
+    void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset);
+
+    /*******************
+     * BUFFERS AND VERTICES
+     *******************/
+
+    void glGenBuffers(int n, int[] buffers, int offset);
+
+    void glDeleteBuffers(int n, int[] buffers, int offset);
+
+    void glBindBuffer(int target, int buffer);
+
+    void glBufferData(int target, int size, Buffer data, int usage);
+
+    void glEnableVertexAttribArray(int index);
+
+    void glDisableVertexAttribArray(int index);
+
+    void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer ptr);
+
+    void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset);
+
+    void glDrawElements(int mode, int count, int type, Buffer indices);
+
+    void glDrawElements(int mode, int count, int type, int offset);
+
+    void glDrawArrays(int mode, int first, int count);
+
+    /*******************
+     * TEXTURES
+     *******************/
+
+    void glGenTextures(int n, int[] textures, int offset);
+
+    void glDeleteTextures(int n, int[] textures, int offset);
+
+    void glActiveTexture(int texture);
+
+    void glBindTexture(int target, int texture);
+
+    void glTexParameteri(int target, int pname, int param);
+
+    void glTexImage2D(int target, int level, int internalformat, int width, int height, int border,
+                      int format, int type, Buffer pixels);
+
+    void glTexSubImage2D(int target, int level, int xoffset, int yoffset, int width, int height,
+                         int format, int type, Buffer pixels);
+
+    void glCompressedTexImage2D(int target, int level, int internalformat, int width, int height, int border,
+                                int imageSize, Buffer data);
+
+    /*******************
+     * QUERIES
+     *******************/
+
+    /*
+     * GLES3 entry points, only called once GpuFrameTimer found a GLES3 context with timer queries
+     */
+
+    void glGenQueries(int n, int[] ids, int offset);
+
+    void glDeleteQueries(int n, int[] ids, int offset);
+
+    void glBeginQuery(int target, int id);
+
+    void glEndQuery(int target);
+
+    void glGetQueryObjectuiv(int id, int pname, int[] params, int offset);
+}
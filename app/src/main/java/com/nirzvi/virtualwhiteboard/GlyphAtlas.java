@@ -0,0 +1,196 @@
+package com.nirzvi.virtualwhiteboard;
+
+/**
+ * One font's glyphs as signed distance fields, packed into a single alpha texture.
+ *
+ * Glyphs are packed on shelves in the order they are added. Every metric is in atlas texels, which
+ * are pixels of the font at getFontSize(); TextLayout scales them to any text size, and the distance
+ * field keeps the edges sharp when it does. Characters from FIRST_CHAR to LAST_CHAR can be stored,
+ * the rest are drawn as the fallback character.
+ *
+ * Built once, then only read, so it can be shared between threads after it is built.
+ */
+public class GlyphAtlas {
+
+    public static final char FIRST_CHAR = ' ';
+    public static final char LAST_CHAR = '\u00FF';
+    public static final char FALLBACK_CHAR = '?';
+
+    private static final int CHARS = LAST_CHAR - FIRST_CHAR + 1;
+    //empty texels between packed glyphs, so linear filtering never reads a neighbour
+    private static final int PADDING = 1;
+
+    private final int width;
+    private final int height;
+    private final byte[] pixels;
+
+    private final float fontSize;
+    private final int spread;
+    private final float ascent;
+    private final float descent;
+
+    //per character, x and y of the field in the atlas, its size, where its top left sits relative to the
+    //pen on the baseline, and how far the pen moves
+    private final int[] fieldX = new int[CHARS];
+    private final int[] fieldY = new int[CHARS];
+    private final int[] fieldWidth = new int[CHARS];
+    private final int[] fieldHeight = new int[CHARS];
+    private final float[] left = new float[CHARS];
+    private final float[] top = new float[CHARS];
+    private final float[] advance = new float[CHARS];
+    private final boolean[] present = new boolean[CHARS];
+
+    //shelf packing
+    private int shelfX = PADDING;
+    private int shelfY = PADDING;
+    private int shelfHeight = 0;
+
+    /**
+     * @param width atlas width in texels
+     * @param height atlas height in texels
+     * @param fontSize text size the glyphs are rasterized at, in texels
+     * @param spread texels the distance fields reach on each side of a glyph's edge
+     * @param ascent distance from the baseline to the top of the tallest glyphs, positive
+     * @param descent distance from the baseline to the bottom of the lowest glyphs, positive
+     */
+    public GlyphAtlas(int width, int height, float fontSize, int spread, float ascent, float descent) {
+        this.width = width;
+        this.height = height;
+        this.fontSize = fontSize;
+        this.spread = spread;
+        this.ascent = ascent;
+        this.descent = descent;
+        pixels = new byte[width * height];
+    }//GlyphAtlas
+
+    /**
+     * Adds a character's distance field
+     * @param field fieldWidth * fieldHeight bytes, see DistanceField
+     * @param glyphLeft x of the field's left edge relative to the pen, in texels
+     * @param glyphTop y of the field's top edge relative to the baseline, negative above it
+     * @param glyphAdvance how far the pen moves after the character
+     * @return false if the character is out of range or the atlas is full
+     */
+    public boolean add(char c, byte[] field, int fieldWidth, int fieldHeight,
+                       float glyphLeft, float glyphTop, float glyphAdvance) {
+        if (c < FIRST_CHAR || c > LAST_CHAR) {
+            return false;
+        }//if
+        int i = c - FIRST_CHAR;
+
+        if (fieldWidth > 0 && fieldHeight > 0) {
+            if (shelfX + fieldWidth + PADDING > width) {
+                shelfY += shelfHeight + PADDING;
+                shelfX = PADDING;
+                shelfHeight = 0;
+            }//if
+            if (fieldWidth + 2 * PADDING > width || shelfY + fieldHeight + PADDING > height) {
+                return false;
+            }//if
+
+            for (int row = 0; row < fieldHeight; row++) {
+                System.arraycopy(field, row * fieldWidth, pixels, (shelfY + row) * width + shelfX, fieldWidth);
+            }//for
+            fieldX[i] = shelfX;
+            fieldY[i] = shelfY;
+            shelfX += fieldWidth + PADDING;
+            shelfHeight = Math.max(shelfHeight, fieldHeight);
+        }//if
+
+        this.fieldWidth[i] = fieldWidth;
+        this.fieldHeight[i] = fieldHeight;
+        left[i] = glyphLeft;
+        top[i] = glyphTop;
+        advance[i] = glyphAdvance;
+        present[i] = true;
+        return true;
+    }//add
+
+    /**
+     * @return index of the character's metrics, the fallback's if it is not in the atlas, -1 if neither is
+     */
+    public int indexOf(char c) {
+        if (c >= FIRST_CHAR && c <= LAST_CHAR && present[c - FIRST_CHAR]) {
+            return c - FIRST_CHAR;
+        }//if
+        return present[FALLBACK_CHAR - FIRST_CHAR] ? FALLBACK_CHAR - FIRST_CHAR : -1;
+    }//indexOf
+
+    public boolean contains(char c) {
+        return c >= FIRST_CHAR && c <= LAST_CHAR && present[c - FIRST_CHAR];
+    }
+
+    /*******************
+     * METRICS BY INDEX
+     *******************/
+
+    public int getFieldX(int index) {
+        return fieldX[index];
+    }
+
+    public int getFieldY(int index) {
+        return fieldY[index];
+    }
+
+    public int getFieldWidth(int index) {
+        return fieldWidth[index];
+    }
+
+    public int getFieldHeight(int index) {
+        return fieldHeight[index];
+    }
+
+    public float getLeft(int index) {
+        return left[index];
+    }
+
+    public float getTop(int index) {
+        return top[index];
+    }
+
+    public float getAdvance(int index) {
+        return advance[index];
+    }
+
+    /*******************
+     * ATLAS
+     *******************/
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return one byte per texel, rows from the top
+     */
+    public byte[] getPixels() {
+        return pixels;
+    }
+
+    public float getFontSize() {
+        return fontSize;
+    }
+
+    public int getSpread() {
+        return spread;
+    }
+
+    public float getAscent() {
+        return ascent;
+    }
+
+    public float getDescent() {
+        return descent;
+    }
+
+    /**
+     * @return distance between two baselines, in texels
+     */
+    public float getLineHeight() {
+        return ascent + descent;
+    }
+}
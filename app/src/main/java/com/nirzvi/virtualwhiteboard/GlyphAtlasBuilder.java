@@ -0,0 +1,78 @@
+package com.nirzvi.virtualwhiteboard;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+
+/**
+ * Rasterizes a typeface's characters with Android's text renderer and packs them into a GlyphAtlas.
+ */
+public class GlyphAtlasBuilder {
+
+    private GlyphAtlasBuilder() {
+    }
+
+    /**
+     * Builds an atlas of every printable Latin-1 character, takes a few tens of
+     * milliseconds so do it once
+     * @param typeface font to rasterize
+     * @param atlasSize width and height of the atlas, in texels
+     * @param fontSize size to rasterize at, in texels
+     * @param spread texels the distance fields reach past each glyph's edge
+     * @return the atlas, characters that did not fit are drawn as GlyphAtlas.FALLBACK_CHAR
+     */
+    public static GlyphAtlas build(Typeface typeface, int atlasSize, float fontSize, int spread) {
+        Paint paint = new Paint();
+        paint.setTypeface(typeface);
+        paint.setTextSize(fontSize);
+        paint.setAntiAlias(true);
+        paint.setColor(Color.WHITE);
+
+        Paint.FontMetrics metrics = paint.getFontMetrics();
+        GlyphAtlas atlas = new GlyphAtlas(atlasSize, atlasSize, fontSize, spread, -metrics.ascent, metrics.descent);
+
+        // The fallback goes in first, so it is there even if the atlas fills up
+        addChar(atlas, paint, GlyphAtlas.FALLBACK_CHAR, spread);
+        for (char c = GlyphAtlas.FIRST_CHAR; c <= GlyphAtlas.LAST_CHAR; c++) {
+            if (c != GlyphAtlas.FALLBACK_CHAR && !Character.isISOControl(c)) {
+                addChar(atlas, paint, c, spread);
+            }//if
+        }//for
+        return atlas;
+    }//build
+
+    private static void addChar(GlyphAtlas atlas, Paint paint, char c, int spread) {
+        String text = String.valueOf(c);
+        float advance = paint.measureText(text);
+        Rect bounds = new Rect();
+        paint.getTextBounds(text, 0, 1, bounds);
+        if (bounds.isEmpty()) {
+            atlas.add(c, null, 0, 0, 0, 0, advance);
+            return;
+        }//if
+
+        // Room for the field to fall off on every side
+        int width = bounds.width() + 2 * spread;
+        int height = bounds.height() + 2 * spread;
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.drawText(text, spread - bounds.left, spread - bounds.top, paint);
+
+        byte[] mask = new byte[width * height];
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            for (int x = 0; x < width; x++) {
+                mask[y * width + x] = (byte) (row[x] >>> 24);
+            }//for
+        }//for
+        bitmap.recycle();
+
+        byte[] field = new byte[width * height];
+        DistanceField.generate(mask, width, height, spread, field, 0, width);
+        atlas.add(c, field, width, height, bounds.left - spread, bounds.top - spread, advance);
+    }//addChar
+}
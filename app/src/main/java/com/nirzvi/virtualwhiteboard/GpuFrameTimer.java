@@ -0,0 +1,151 @@
+package com.nirzvi.virtualwhiteboard;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+/**
+ * Times frames with the GPU's work in them, for the quality governor and the MSAA calibration.
+ *
+ * The commands of a frame only run on the GPU after render() returns, so its CPU time leaves out fill,
+ * blending and the MSAA resolve. On a GLES3 context with GL_EXT_disjoint_timer_query a timed frame is
+ * bracketed with a time elapsed query, read back frames later without waiting, and counts as the longer
+ * of its CPU and GPU time, whichever bounds the frame rate. Elsewhere a timed frame ends with glFinish,
+ * which waits until the GPU has drawn it and costs that frame the overlap of CPU and GPU, so the caller
+ * should time few frames. Call from the GL thread only.
+ */
+public class GpuFrameTimer {
+
+    public static final String EXTENSION = "GL_EXT_disjoint_timer_query";
+    public static final int GL_TIME_ELAPSED_EXT = 0x88BF;
+    public static final int GL_GPU_DISJOINT_EXT = 0x8FBB;
+    //queries in flight, a frame finds none free only if the GPU is this many timed frames behind
+    static final int QUERIES = 4;
+
+    private final GLBackend gl;
+    private boolean useQueries = false;
+
+    //ring of queries waiting for their results, with the CPU time and tag of their frames
+    private final int[] queries = new int[QUERIES];
+    private final long[] cpuNanos = new long[QUERIES];
+    private final int[] tags = new int[QUERIES];
+    private int pendingFirst = 0;
+    private int pendingCount = 0;
+
+    private long frameStart;
+    //tag of the frame being drawn, 0 if it is not timed
+    private int frameTag = 0;
+    //tag of the frame end last returned the time of
+    private int lastTag = 0;
+    private final int[] result = new int[1];
+
+    public GpuFrameTimer(GLBackend gl) {
+        this.gl = gl;
+    }
+
+    /**
+     * Call once a new context is current, queries from an old one are dropped
+     * @param queriesAllowed whether the GLES3 bindings exist, API 18 and up
+     */
+    public void init(boolean queriesAllowed) {
+        pendingFirst = 0;
+        pendingCount = 0;
+        frameTag = 0;
+
+        String version = gl.glGetString(GLES20.GL_VERSION);
+        String extensions = gl.glGetString(GLES20.GL_EXTENSIONS);
+        useQueries = queriesAllowed && version != null && version.startsWith("OpenGL ES 3")
+                && extensions != null && extensions.contains(EXTENSION);
+        if (useQueries) {
+            gl.glGenQueries(QUERIES, queries, 0);
+            // Clears a disjoint operation left from before, it would void the first results
+            gl.glGetIntegerv(GL_GPU_DISJOINT_EXT, result, 0);
+        }//if
+    }//init
+
+    /**
+     * Call first thing in a frame, before any GL command
+     * @param nowNanos System.nanoTime() at the start of the frame
+     * @param tag non-zero to time the frame, handed back by getTag with its time
+     * @return whether the frame is timed, false if the GPU has fallen too far behind the queries
+     */
+    public boolean begin(long nowNanos, int tag) {
+        frameStart = nowNanos;
+        frameTag = 0;
+        if (tag == 0) {
+            return false;
+        }//if
+        if (useQueries) {
+            if (pendingCount == QUERIES) {
+                return false;
+            }//if
+            gl.glBeginQuery(GL_TIME_ELAPSED_EXT, queries[(pendingFirst + pendingCount) % QUERIES]);
+        }//if
+        frameTag = tag;
+        return true;
+    }//begin
+
+    /**
+     * Call last thing in a frame, waits for the GPU only when timing the frame without queries
+     * @return time of a timed frame, this one or an earlier one, -1 if none is ready. See getTag
+     */
+    public long end() {
+        if (!useQueries) {
+            if (frameTag == 0) {
+                return -1;
+            }//if
+            gl.glFinish();
+            lastTag = frameTag;
+            frameTag = 0;
+            return System.nanoTime() - frameStart;
+        }//if
+
+        if (frameTag != 0) {
+            gl.glEndQuery(GL_TIME_ELAPSED_EXT);
+            int slot = (pendingFirst + pendingCount) % QUERIES;
+            cpuNanos[slot] = System.nanoTime() - frameStart;
+            tags[slot] = frameTag;
+            pendingCount++;
+            frameTag = 0;
+        }//if
+        return poll();
+    }//end
+
+    //the oldest query's frame time once its result is in, results finish in order
+    private long poll() {
+        if (pendingCount == 0) {
+            return -1;
+        }//if
+        int query = queries[pendingFirst];
+        gl.glGetQueryObjectuiv(query, GLES30.GL_QUERY_RESULT_AVAILABLE, result, 0);
+        if (result[0] == 0) {
+            return -1;
+        }//if
+        gl.glGetQueryObjectuiv(query, GLES30.GL_QUERY_RESULT, result, 0);
+        long gpuNanos = result[0] & 0xFFFFFFFFL;
+        long frameCpuNanos = cpuNanos[pendingFirst];
+        lastTag = tags[pendingFirst];
+        pendingFirst = (pendingFirst + 1) % QUERIES;
+        pendingCount--;
+
+        // A disjoint operation, such as the GPU changing clocks, leaves the results meaningless
+        gl.glGetIntegerv(GL_GPU_DISJOINT_EXT, result, 0);
+        if (result[0] != 0) {
+            return -1;
+        }//if
+        return Math.max(frameCpuNanos, gpuNanos);
+    }//poll
+
+    /**
+     * @return tag given to begin for the frame end last returned the time of
+     */
+    public int getTag() {
+        return lastTag;
+    }
+
+    /**
+     * @return whether frames are timed with queries rather than glFinish
+     */
+    public boolean isUsingQueries() {
+        return useQueries;
+    }
+}
@@ -0,0 +1,98 @@
+package com.nirzvi.virtualwhiteboard;
+
+/**
+ * Freehand ink drawn over a board's background, as a source of board content.
+ *
+ * The layer keeps the background snapshot and the strokes, and rasterizes into the TiledBoard
+ * incrementally: a new stroke is drawn on top of what is there, an erase restores the background
+ * under the erased strokes and redraws only the strokes crossing that area. The changed tiles then
+ * reach the WhiteBoard's texture like any other edit.
+ *
+ * Use it from BoardRasterizer edits, it lives on the rasterizer's thread.
+ * Undoing on the board does not change the strokes, redrawing brings them back.
+ * Touch input only adds strokes through LiveInk so far, eraseAt has no eraser tool calling it yet.
+ */
+public class InkLayer {
+
+    private final StrokeStore strokes;
+    private final StrokeRasterizer rasterizer = new StrokeRasterizer();
+    private TiledBoard.Snapshot background;
+
+    private int[] found = new int[1024];
+    private final float[] damage = new float[4];
+
+    /**
+     * @param background content under the ink
+     */
+    public InkLayer(TiledBoard.Snapshot background) {
+        this.background = background;
+        strokes = new StrokeStore(background.getWidth(), background.getHeight());
+    }//InkLayer
+
+    public StrokeStore getStrokes() {
+        return strokes;
+    }
+
+    public TiledBoard.Snapshot getBackground() {
+        return background;
+    }
+
+    /**
+     * Puts new content under the ink, e.g. after the text changed, and draws every stroke over it
+     * @param board board to draw into
+     * @param background snapshot of that board
+     */
+    public void setBackground(TiledBoard board, TiledBoard.Snapshot background) {
+        this.background = background;
+        redraw(board, 0, 0, board.getWidth(), board.getHeight());
+    }//setBackground
+
+    /**
+     * Stores a stroke and draws it on top of the board
+     * @param points StrokeStore.FLOATS_PER_POINT floats per point, in board pixels
+     * @return id of the stroke
+     */
+    public int addStroke(TiledBoard board, float[] points, int offset, int numPoints, int color, float width) {
+        int id = strokes.addStroke(points, offset, numPoints, color, width);
+        rasterizer.draw(board, strokes, id);
+        return id;
+    }//addStroke
+
+    /**
+     * Draws a stroke that was added to getStrokes() directly, e.g. point by point
+     */
+    public void drawStroke(TiledBoard board, int id) {
+        rasterizer.draw(board, strokes, id);
+    }
+
+    /**
+     * Erases every stroke passing within radius of a point and repairs the board under them
+     * @return number of strokes erased
+     */
+    public int eraseAt(TiledBoard board, float x, float y, float radius) {
+        int erased = strokes.eraseAt(x, y, radius, damage);
+        if (erased > 0) {
+            int left = (int) Math.floor(damage[0]);
+            int top = (int) Math.floor(damage[1]);
+            redraw(board, left, top, (int) Math.ceil(damage[2]) + 1 - left, (int) Math.ceil(damage[3]) + 1 - top);
+        }//if
+        return erased;
+    }//eraseAt
+
+    /**
+     * Restores the background in a rectangle and draws the strokes crossing it, in drawing order
+     */
+    public void redraw(TiledBoard board, int x, int y, int w, int h) {
+        board.restore(background, x, y, w, h);
+
+        int count = strokes.query(x, y, x + w, y + h, found);
+        if (count > found.length) {
+            found = new int[Integer.highestOneBit(count) * 2];
+            count = strokes.query(x, y, x + w, y + h, found);
+        }//if
+
+        for (int i = 0; i < count; i++) {
+            rasterizer.draw(board, strokes, found[i], x, y, w, h);
+        }//for
+    }//redraw
+}
@@ -0,0 +1,85 @@
+package com.nirzvi.virtualwhiteboard;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent latencies of some input and reports percentiles, in nanoseconds and in frames.
+ * Recording is allocation free, percentiles sort a copy and belong in reports, not in the frame loop.
+ */
+public class LatencyMeter {
+
+    private final long[] samples;
+    private long count = 0;
+
+    //moving average of the time between frames
+    private static final double FRAME_SMOOTHING = 0.1;
+    private long lastFrame = 0;
+    private double frameInterval = 0;
+
+    /**
+     * @param capacity how many recent latencies are kept
+     */
+    public LatencyMeter(int capacity) {
+        samples = new long[capacity];
+    }
+
+    public void record(long latencyNanos) {
+        samples[(int) (count % samples.length)] = latencyNanos;
+        count++;
+    }
+
+    /**
+     * Call once per frame to follow the frame interval
+     * @param nowNanos System.nanoTime()
+     */
+    public void recordFrame(long nowNanos) {
+        if (lastFrame != 0) {
+            long interval = nowNanos - lastFrame;
+            frameInterval = frameInterval == 0 ? interval : frameInterval + (interval - frameInterval) * FRAME_SMOOTHING;
+        }//if
+        lastFrame = nowNanos;
+    }//recordFrame
+
+    /**
+     * @return latencies recorded so far, more than are kept
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return average time between frames, 0 before two frames were recorded
+     */
+    public double getFrameInterval() {
+        return frameInterval;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return that percentile of the kept latencies, 0 if there are none
+     */
+    public long getPercentile(double percentile) {
+        int kept = (int) Math.min(count, samples.length);
+        if (kept == 0) {
+            return 0;
+        }//if
+
+        long[] sorted = Arrays.copyOf(samples, kept);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * kept) - 1;
+        return sorted[Math.max(0, Math.min(kept - 1, index))];
+    }//getPercentile
+
+    /**
+     * @return getPercentile in frames, 0 while the frame interval is unknown
+     */
+    public double getPercentileFrames(double percentile) {
+        return frameInterval == 0 ? 0 : getPercentile(percentile) / frameInterval;
+    }
+
+    public void reset() {
+        count = 0;
+        lastFrame = 0;
+        frameInterval = 0;
+    }//reset
+}
@@ -0,0 +1,319 @@
+package com.nirzvi.virtualwhiteboard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Turns touches on the camera view into ink on the tracked board, on the GL thread.
+ *
+ * Every frame the queued touch samples are cast onto the boards of the frame's batch and appended to
+ * the stroke being drawn, which LiveInkRenderer draws as geometry straight away. A finished stroke is
+ * handed to the board's rasterizer, and stays live until a board version holding it has been taken and
+ * fully uploaded, so it never blinks out between the two.
+ *
+ * Points are simplified as they arrive, with a tolerance in screen pixels, so a slow stroke does not
+ * pile up points that only cost memory and rasterization time.
+ *
+ * The latency meter records, for every sample, the time from the touch to the swap of the first
+ * frame that draws it. GLSurfaceView swaps after the renderer returns, so the samples of a frame wait
+ * for the start of the next one, which the renderer asks for straight away.
+ */
+public class LiveInk {
+
+    /** A stroke drawn as geometry until the board texture shows it. */
+    public static class Stroke {
+        private float[] points = new float[64 * StrokeStore.FLOATS_PER_POINT];
+        private int count = 0;
+        private final int slot;
+        private final int color;
+        private final float width;
+
+        //board version holding the stroke, set by the rasterizer's thread once it is drawn there
+        private volatile long committedVersion = -1;
+
+        Stroke(int slot, int color, float width) {
+            this.slot = slot;
+            this.color = color;
+            this.width = width;
+        }
+
+        void add(float x, float y, float pressure) {
+            if ((count + 1) * StrokeStore.FLOATS_PER_POINT > points.length) {
+                points = Arrays.copyOf(points, points.length * 2);
+            }//if
+            int p = count * StrokeStore.FLOATS_PER_POINT;
+            points[p] = x;
+            points[p + 1] = y;
+            points[p + 2] = pressure;
+            count++;
+        }//add
+
+        void replaceLast(float x, float y, float pressure) {
+            int p = (count - 1) * StrokeStore.FLOATS_PER_POINT;
+            points[p] = x;
+            points[p + 1] = y;
+            points[p + 2] = pressure;
+        }//replaceLast
+
+        /**
+         * @return x, y in board pixels and pressure of every point
+         */
+        public float[] getPoints() {
+            return points;
+        }
+
+        public int getPointCount() {
+            return count;
+        }
+
+        /**
+         * @return trackable slot of the board the stroke was started on
+         */
+        public int getSlot() {
+            return slot;
+        }
+
+        public int getColor() {
+            return color;
+        }
+
+        public float getWidth() {
+            return width;
+        }
+    }
+
+    //points closer than this to the last one add nothing visible
+    private static final float MIN_SPACING = 0.5f;
+    private static final int LATENCY_SAMPLES = 1024;
+    private static final float DEFAULT_TOLERANCE = 0.75f;
+
+    private final BoardRasterizer rasterizer;
+    private final InkLayer ink;
+    private final float boardWidth;
+    private final float boardHeight;
+
+    private int color = 0xFF000000;
+    private float width = 6;
+
+    private final BoardRaycast raycast = new BoardRaycast();
+    private final float[] uv = new float[2];
+    private final float[] nextUV = new float[2];
+
+    private final StrokeSimplifier simplifier = new StrokeSimplifier(0);
+    private float tolerance = DEFAULT_TOLERANCE;
+
+    //oldest first, the last one is active while a finger is down
+    private final List<Stroke> strokes = new ArrayList<>();
+    private Stroke active;
+
+    //touch times of the samples added this frame
+    private long[] frameSampleTimes = new long[64];
+    private int frameSamples = 0;
+    //touch times of the samples drawn by the last frame, waiting for its swap
+    private long[] drawnSampleTimes = new long[64];
+    private int drawnSamples = 0;
+    private final LatencyMeter latency = new LatencyMeter(LATENCY_SAMPLES);
+
+    /**
+     * @param rasterizer where finished strokes are drawn into the board
+     * @param ink ink layer of that board, only touched on the rasterizer's thread
+     */
+    public LiveInk(BoardRasterizer rasterizer, InkLayer ink) {
+        this.rasterizer = rasterizer;
+        this.ink = ink;
+        boardWidth = ink.getStrokes().getWidth();
+        boardHeight = ink.getStrokes().getHeight();
+    }//LiveInk
+
+    public void setColor(int color) {
+        this.color = color;
+    }
+
+    /**
+     * @param width stroke width at full pressure, in board pixels
+     */
+    public void setWidth(float width) {
+        this.width = width;
+    }
+
+    /**
+     * @param tolerance largest distance of a dropped touch point from the stroke, in screen pixels
+     */
+    public void setTolerance(float tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * @return strokes to draw as geometry this frame, oldest first
+     */
+    public List<Stroke> getStrokes() {
+        return strokes;
+    }
+
+    public LatencyMeter getLatency() {
+        return latency;
+    }
+
+    /**
+     * Drops strokes the texture shows by now and applies the queued touches, call once per frame
+     * after the batch is prepared
+     * @param touches samples from the UI thread
+     * @param batch boards of this frame
+     * @param projection projection of the view the touches are on
+     * @param viewport viewport of that view
+     * @param surfaceHeight height of the surface in pixels
+     * @param boardVersion version of the newest board content the GL thread took
+     * @param textureUpToDate whether every tile of that version has been uploaded
+     */
+    public void update(TouchSampleQueue touches, BoardBatch batch, float[] projection, int[] viewport,
+                       int surfaceHeight, long boardVersion, boolean textureUpToDate) {
+        while (!strokes.isEmpty() && strokes.get(0) != active) {
+            long committed = strokes.get(0).committedVersion;
+            if (committed < 0 || committed > boardVersion || !textureUpToDate) {
+                break;
+            }//if
+            strokes.remove(0);
+        }//while
+
+        int count = touches.available();
+        for (int i = 0; i < count; i++) {
+            int action = touches.getAction(i);
+            float x = touches.getX(i);
+            float y = touches.getY(i);
+            float pressure = Math.max(0.2f, Math.min(1, touches.getPressure(i)));
+
+            if (action == TouchSampleQueue.DOWN) {
+                // A DOWN without an UP for the last stroke, keep what was drawn
+                if (active != null) {
+                    commit(active);
+                    active = null;
+                }//if
+                int board = boardUnder(batch, projection, viewport, surfaceHeight, x, y);
+                if (board >= 0) {
+                    active = new Stroke(batch.getSlot(board), color, width);
+                    strokes.add(active);
+                    simplifier.setTolerance(tolerance * boardPixelsPerScreenPixel(batch, board, projection,
+                            viewport, surfaceHeight, x, y));
+                    simplifier.reset();
+                    addSample(active, pressure, touches.getTime(i));
+                }//if
+            } else if (active != null && action == TouchSampleQueue.CANCEL) {
+                strokes.remove(active);
+                active = null;
+            } else if (active != null) {
+                // Keep following the board the stroke started on, points off its edge are clipped later
+                int board = findSlot(batch, active.slot);
+                if (board >= 0 && raycast.screenToUV(projection, batch.getModelMatrices(),
+                        board * BoardBatch.FLOATS_PER_MATRIX, viewport, surfaceHeight, x, y, uv)) {
+                    addSample(active, pressure, touches.getTime(i));
+                }//if
+
+                if (action == TouchSampleQueue.UP) {
+                    commit(active);
+                    active = null;
+                }//if
+            }//else if
+        }//for
+        touches.release(count);
+    }//update
+
+    /**
+     * Hands the samples added this frame over to onFramePresented, call once the frame has been drawn
+     * @return whether any wait for the swap, the next frame should then start right after it
+     */
+    public boolean onFrameDrawn() {
+        long[] times = drawnSampleTimes;
+        drawnSampleTimes = frameSampleTimes;
+        drawnSamples = frameSamples;
+        frameSampleTimes = times;
+        frameSamples = 0;
+        return drawnSamples > 0;
+    }//onFrameDrawn
+
+    /**
+     * Records the latency of the samples the last frame drew, call once its buffers were swapped
+     * @param nowNanos System.nanoTime()
+     */
+    public void onFramePresented(long nowNanos) {
+        for (int i = 0; i < drawnSamples; i++) {
+            latency.record(nowNanos - drawnSampleTimes[i]);
+        }//for
+        drawnSamples = 0;
+        latency.recordFrame(nowNanos);
+    }//onFramePresented
+
+    //index in the batch of the first board under the point, -1 if none
+    private int boardUnder(BoardBatch batch, float[] projection, int[] viewport, int surfaceHeight, float x, float y) {
+        for (int b = 0; b < batch.getBoardCount(); b++) {
+            if (raycast.screenToUV(projection, batch.getModelMatrices(), b * BoardBatch.FLOATS_PER_MATRIX,
+                    viewport, surfaceHeight, x, y, uv) && BoardRaycast.isOnBoard(uv)) {
+                return b;
+            }//if
+        }//for
+        return -1;
+    }//boardUnder
+
+    //size on the board of a screen pixel at the point, uv holds the point's coordinates
+    private float boardPixelsPerScreenPixel(BoardBatch batch, int board, float[] projection, int[] viewport,
+                                            int surfaceHeight, float x, float y) {
+        if (!raycast.screenToUV(projection, batch.getModelMatrices(), board * BoardBatch.FLOATS_PER_MATRIX,
+                viewport, surfaceHeight, x + 1, y, nextUV)) {
+            return 1;
+        }//if
+        float dx = (nextUV[0] - uv[0]) * boardWidth;
+        float dy = (nextUV[1] - uv[1]) * boardHeight;
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }//boardPixelsPerScreenPixel
+
+    private static int findSlot(BoardBatch batch, int slot) {
+        for (int b = 0; b < batch.getBoardCount(); b++) {
+            if (batch.getSlot(b) == slot) {
+                return b;
+            }//if
+        }//for
+        return -1;
+    }//findSlot
+
+    //appends the point under uv
+    private void addSample(Stroke stroke, float pressure, long time) {
+        float px = uv[0] * boardWidth;
+        float py = uv[1] * boardHeight;
+        if (stroke.count > 0) {
+            int last = (stroke.count - 1) * StrokeStore.FLOATS_PER_POINT;
+            float dx = px - stroke.points[last];
+            float dy = py - stroke.points[last + 1];
+            if (dx * dx + dy * dy < MIN_SPACING * MIN_SPACING) {
+                return;
+            }//if
+        }//if
+        if (simplifier.add(px, py, pressure) == StrokeSimplifier.APPENDED) {
+            stroke.add(px, py, pressure);
+        } else {
+            stroke.replaceLast(px, py, pressure);
+        }//else
+
+        if (frameSamples == frameSampleTimes.length) {
+            frameSampleTimes = Arrays.copyOf(frameSampleTimes, frameSamples * 2);
+        }//if
+        frameSampleTimes[frameSamples++] = time;
+    }//addSample
+
+    //draws the stroke into the board on the rasterizer's thread
+    private void commit(final Stroke stroke) {
+        final float[] points = Arrays.copyOf(stroke.points, stroke.count * StrokeStore.FLOATS_PER_POINT);
+        final int count = stroke.count;
+
+        rasterizer.submit(new BoardRasterizer.Edit() {
+            @Override
+            public void apply(TiledBoard board) {
+                try {
+                    ink.addStroke(board, points, 0, count, stroke.color, stroke.width);
+                } finally {
+                    // Even a stroke that failed to draw has to leave the live list
+                    stroke.committedVersion = board.getVersion();
+                }//finally
+            }
+        });
+    }//commit
+}
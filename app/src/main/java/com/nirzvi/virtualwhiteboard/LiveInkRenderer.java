@@ -0,0 +1,224 @@
+package com.nirzvi.virtualwhiteboard;
+
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Draws the live strokes as triangles over the board they belong to, before the board texture has them.
+ *
+ * The geometry is built once per frame in trackable space, a quad per segment and a hexagon per point
+ * for round joints, and every view only draws it with the board's model matrix.
+ */
+public class LiveInkRenderer {
+
+    private static final String VERTEX_SHADER =
+            "uniform mat4 uMVPMatrix;" +
+            "uniform mat4 uModelMatrix;" +
+            "attribute vec2 vPosition;" +
+            "void main() {" +
+            "  gl_Position = uMVPMatrix * uModelMatrix * vec4(vPosition, 0.0, 1.0);" +
+            "}";
+
+    private static final String FRAGMENT_SHADER =
+            "precision mediump float;" +
+            "uniform vec4 uColor;" +
+            "void main() {" +
+            "  gl_FragColor = uColor;" +
+            "}";
+
+    private static final int FLOATS_PER_VERTEX = 2;
+    private static final int BYTES_PER_FLOAT = 4;
+    private static final int JOINT_SIDES = 6;
+    private static final int VERTICES_PER_SEGMENT = 6;
+    private static final int VERTICES_PER_JOINT = JOINT_SIDES * 3;
+
+    private final GLBackend gl;
+    private final ProgramCache programs;
+
+    private ShaderProgram program;
+    private int positionHandle;
+    private int mvpMatrixHandle;
+    private int modelMatrixHandle;
+    private int colorHandle;
+
+    //trackable units per board pixel
+    private final float scaleX;
+    private final float scaleY;
+
+    private float[] vertices = new float[1024];
+    private FloatBuffer vertexBuffer;
+
+    //first vertex and vertex count of every stroke prepared this frame
+    private int[] strokeFirst = new int[8];
+    private int[] strokeCount = new int[8];
+    private int preparedStrokes = 0;
+    private List<LiveInk.Stroke> strokes;
+
+    private final float[] color = new float[4];
+
+    /**
+     * @param boardWidth width of the board content in pixels
+     * @param boardHeight height of the board content in pixels
+     */
+    public LiveInkRenderer(GLBackend gl, ProgramCache programs, float boardWidth, float boardHeight) {
+        this.gl = gl;
+        this.programs = programs;
+        scaleX = 2 * BoardBatch.HALF_WIDTH / boardWidth;
+        scaleY = 2 * BoardBatch.HALF_HEIGHT / boardHeight;
+        vertexBuffer = allocate(vertices.length);
+    }//LiveInkRenderer
+
+    /**
+     * Compiles the shader, call once per context
+     */
+    public void init() {
+        program = programs.get(VERTEX_SHADER, FRAGMENT_SHADER, "vPosition");
+        positionHandle = program.getAttribLocation("vPosition");
+        mvpMatrixHandle = program.getUniformLocation("uMVPMatrix");
+        modelMatrixHandle = program.getUniformLocation("uModelMatrix");
+        colorHandle = program.getUniformLocation("uColor");
+    }//init
+
+    private static FloatBuffer allocate(int floats) {
+        return ByteBuffer.allocateDirect(floats * BYTES_PER_FLOAT).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    /**
+     * Builds the geometry of every live stroke, call once per frame
+     */
+    public void prepare(LiveInk ink) {
+        strokes = ink.getStrokes();
+        preparedStrokes = 0;
+        if (strokeFirst.length < strokes.size()) {
+            strokeFirst = new int[strokes.size() * 2];
+            strokeCount = new int[strokes.size() * 2];
+        }//if
+
+        int v = 0;
+        for (int s = 0; s < strokes.size(); s++) {
+            LiveInk.Stroke stroke = strokes.get(s);
+            int points = stroke.getPointCount();
+            int needed = (Math.max(0, points - 1) * VERTICES_PER_SEGMENT + points * VERTICES_PER_JOINT) * FLOATS_PER_VERTEX;
+            if (v * FLOATS_PER_VERTEX + needed > vertices.length) {
+                vertices = Arrays.copyOf(vertices, Math.max(vertices.length * 2, v * FLOATS_PER_VERTEX + needed));
+            }//if
+
+            strokeFirst[s] = v;
+            v = buildStroke(stroke, v);
+            strokeCount[s] = v - strokeFirst[s];
+            preparedStrokes++;
+        }//for
+
+        if (vertexBuffer.capacity() < vertices.length) {
+            vertexBuffer = allocate(vertices.length);
+        }//if
+        vertexBuffer.position(0);
+        vertexBuffer.put(vertices, 0, v * FLOATS_PER_VERTEX);
+        vertexBuffer.position(0);
+    }//prepare
+
+    //writes the stroke's triangles from vertex v, returns the next free vertex
+    private int buildStroke(LiveInk.Stroke stroke, int v) {
+        float[] points = stroke.getPoints();
+        float halfWidth = stroke.getWidth() * 0.5f;
+        int f = v * FLOATS_PER_VERTEX;
+
+        for (int i = 0; i < stroke.getPointCount(); i++) {
+            int p = i * StrokeStore.FLOATS_PER_POINT;
+            float x = points[p];
+            float y = points[p + 1];
+            float r = halfWidth * points[p + 2];
+
+            // Hexagon around the point, so segments meet with round-ish joints
+            for (int side = 0; side < JOINT_SIDES; side++) {
+                double a0 = 2 * Math.PI * side / JOINT_SIDES;
+                double a1 = 2 * Math.PI * (side + 1) / JOINT_SIDES;
+                f = put(f, x, y);
+                f = put(f, x + r * (float) Math.cos(a0), y + r * (float) Math.sin(a0));
+                f = put(f, x + r * (float) Math.cos(a1), y + r * (float) Math.sin(a1));
+            }//for
+
+            if (i == 0) {
+                continue;
+            }//if
+
+            // Quad from the previous point, widened along the segment's normal
+            float px = points[p - 3];
+            float py = points[p - 2];
+            float pr = halfWidth * points[p - 1];
+            float dx = x - px;
+            float dy = y - py;
+            float length = (float) Math.sqrt(dx * dx + dy * dy);
+            if (length == 0) {
+                length = 1;
+            }//if
+            float nx = -dy / length;
+            float ny = dx / length;
+
+            f = put(f, px + nx * pr, py + ny * pr);
+            f = put(f, px - nx * pr, py - ny * pr);
+            f = put(f, x + nx * r, y + ny * r);
+            f = put(f, px - nx * pr, py - ny * pr);
+            f = put(f, x - nx * r, y - ny * r);
+            f = put(f, x + nx * r, y + ny * r);
+        }//for
+        return f / FLOATS_PER_VERTEX;
+    }//buildStroke
+
+    //board pixels to trackable space, y runs up in trackable space
+    private int put(int f, float x, float y) {
+        vertices[f] = x * scaleX - BoardBatch.HALF_WIDTH;
+        vertices[f + 1] = BoardBatch.HALF_HEIGHT - y * scaleY;
+        return f + 2;
+    }
+
+    /**
+     * Draws the prepared strokes over every board in the batch they were started on
+     * @param batch boards of this frame
+     * @param mvpMatrix projection for the current view
+     */
+    public void draw(BoardBatch batch, float[] mvpMatrix) {
+        if (preparedStrokes == 0 || batch.getBoardCount() == 0) {
+            return;
+        }//if
+
+        program.use();
+
+        // The vertices come from client memory
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        gl.glVertexAttribPointer(positionHandle, FLOATS_PER_VERTEX, GLES20.GL_FLOAT, false,
+                FLOATS_PER_VERTEX * BYTES_PER_FLOAT, vertexBuffer);
+        gl.glEnableVertexAttribArray(positionHandle);
+        gl.glUniformMatrix4fv(mvpMatrixHandle, 1, false, mvpMatrix, 0);
+
+        for (int b = 0; b < batch.getBoardCount(); b++) {
+            boolean matrixSet = false;
+            for (int s = 0; s < preparedStrokes; s++) {
+                LiveInk.Stroke stroke = strokes.get(s);
+                if (stroke.getSlot() != batch.getSlot(b)) {
+                    continue;
+                }//if
+
+                if (!matrixSet) {
+                    gl.glUniformMatrix4fv(modelMatrixHandle, 1, false, batch.getModelMatrices(), b * BoardBatch.FLOATS_PER_MATRIX);
+                    matrixSet = true;
+                }//if
+
+                int argb = stroke.getColor();
+                color[0] = ((argb >> 16) & 0xFF) / 255f;
+                color[1] = ((argb >> 8) & 0xFF) / 255f;
+                color[2] = (argb & 0xFF) / 255f;
+                color[3] = (argb >>> 24) / 255f;
+                gl.glUniform4fv(colorHandle, 1, color, 0);
+                gl.glDrawArrays(GLES20.GL_TRIANGLES, strokeFirst[s], strokeCount[s]);
+            }//for
+        }//for
+
+        gl.glDisableVertexAttribArray(positionHandle);
+    }//draw
+}
@@ -5,24 +5,66 @@ import android.content.Intent;
 import android.content.res.Configuration;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.Typeface;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
+import android.view.MotionEvent;
 import android.view.View;
 import android.view.Window;
 import android.view.WindowManager;
 
 import com.vuforia.Device;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
 public class MainActivity extends AppCompatActivity {
 
+    private static final String LOGTAG = "MainActivity";
+    private static final String TRACE_FILE = "frame_trace.json";
+    // Draw when a camera frame, an edit or a touch arrives, not at display rate
+    private static final boolean RENDER_WHEN_DIRTY = true;
+    // Quality tier the last run ended at, the phone may still be hot
+    private static final String PREF_QUALITY_TIER = "quality_tier";
+    // MSAA samples the first run's calibration found best, -1 until it has run
+    private static final String PREF_EGL_SAMPLES = "egl_samples";
+
     private static Activity publicContext;
     private VuforiaGLView glView;
     private VuforiaRenderer render;
 
-    private static Bitmap whiteBoardBitmap;
+    // Board content is edited on the rasterizer's thread, blankWhiteBoard is how it looked before any edits
+    private static final long BOARD_HISTORY_BUDGET = 8 * 1024 * 1024;
+    private static BoardRasterizer whiteBoardRasterizer;
+    private static TiledBoard.Snapshot blankWhiteBoard;
+    // Freehand strokes over the board, used from rasterizer edits only
+    private static InkLayer whiteBoardInk;
+    // Compresses the board while it is not being edited
+    private static Etc1BoardEncoder whiteBoardEncoder;
+    // Reduced copies of the board for boards seen from far away
+    private static BoardPyramidBuilder whiteBoardPyramids;
+
+    // Text over the board, drawn from a distance field atlas built once
+    private static final int GLYPH_ATLAS_SIZE = 1024;
+    private static final float GLYPH_FONT_SIZE = 48;
+    private static final int GLYPH_SPREAD = 6;
+    private static GlyphAtlas glyphAtlas;
+    private static volatile String whiteBoardText = "";
+
+    // Wakes the GL view when something on screen changed
+    private static final FrameScheduler frameScheduler = new FrameScheduler();
+    // Picks the quality tier from frame times, created with the tier saved by the last run
+    private static QualityGovernor qualityGovernor;
+    // Probes the MSAA tiers on the first run, null once they were measured
+    private static EglCalibration eglCalibration;
+    private int eglSamples;
+    //set once destroyed, a recreated activity carries on with the calibration
+    private boolean destroyed = false;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -36,33 +78,205 @@ public class MainActivity extends AppCompatActivity {
 
         publicContext = this;
 
+        // Decoded once, before the renderer that reads it exists
+        if (whiteBoardRasterizer == null) {
+            Bitmap blank = BitmapFactory.decodeResource(getResources(), R.drawable.whiteboard);
+            TiledBoard whiteBoard = BoardBitmaps.fromBitmap(blank, BOARD_HISTORY_BUDGET);
+            blank.recycle();
+            blankWhiteBoard = whiteBoard.snapshot();
+            whiteBoardInk = new InkLayer(blankWhiteBoard);
+
+            whiteBoardRasterizer = new BoardRasterizer(whiteBoard);
+            whiteBoardRasterizer.getChannel().setOnPublish(frameScheduler.requester(FrameScheduler.REASON_CONTENT));
+            whiteBoardRasterizer.start();
+            whiteBoardEncoder = new Etc1BoardEncoder();
+            whiteBoardEncoder.start();
+            whiteBoardPyramids = new BoardPyramidBuilder();
+            whiteBoardPyramids.start();
+
+            glyphAtlas = GlyphAtlasBuilder.build(Typeface.DEFAULT, GLYPH_ATLAS_SIZE, GLYPH_FONT_SIZE, GLYPH_SPREAD);
+        }//if
+
+        if (qualityGovernor == null) {
+            qualityGovernor = new QualityGovernor();
+            qualityGovernor.setTier(getPreferences(MODE_PRIVATE).getInt(PREF_QUALITY_TIER, QualityTier.DEFAULT_TIER));
+        }//if
+        VuforiaManager.setVideoMode(qualityGovernor.getVideoMode());
+
+        // Later launches use what the first one measured, the tier may lower it
+        eglSamples = getPreferences(MODE_PRIVATE).getInt(PREF_EGL_SAMPLES, -1);
+        if (eglSamples < 0) {
+            if (eglCalibration == null) {
+                eglCalibration = new EglCalibration();
+            }//if
+            // A recreated activity measures the candidate it was on again, rather than skipping it
+            eglSamples = eglCalibration.resume();
+            if (eglSamples < 0) {
+                eglSamples = keepCalibration(eglCalibration);
+            }//if
+        } else {
+            eglSamples = Math.min(eglSamples, qualityGovernor.getTier().getMaxSamples());
+        }//else
+
         VuforiaManager.init(new Runnable() {
             @Override
             public void run() {
-                glView = new VuforiaGLView(MainActivity.this);
-                glView.init(true, 16, 0);
-
                 render = new VuforiaRenderer(MainActivity.this, Device.MODE.MODE_AR, false, 0.01f, 5f);
-                glView.setRenderer(render);
+                frameScheduler.setDisplayRate(getWindowManager().getDefaultDisplay().getRefreshRate());
+                if (eglCalibration != null) {
+                    render.setCalibration(eglCalibration, new Runnable() {
+                        @Override
+                        public void run() {
+                            onCalibrationMeasured();
+                        }
+                    });
+                }//if
+
+                createGLView(eglSamples);
+            }
+        });
+        VuforiaManager.addTrackables("FredTheStag.xml");
+
+    }
 
-                  setContentView(glView);
 
+    /**
+     * Shows a new camera view with its own surface, replacing any there was. The renderer sets itself
+     * up again for the new context.
+     * @param samples MSAA samples wanted, the closest config the device has is used
+     */
+    private void createGLView(int samples) {
+        if (glView != null) {
+            glView.onPause();
+        }//if
+
+        glView = new VuforiaGLView(MainActivity.this);
+        // Nothing is drawn with depth or stencil tests, so the surface has neither
+        glView.init(true, 0, 0, samples);
+        glView.setRenderer(render);
+        glView.setRenderWhenDirty(frameScheduler, RENDER_WHEN_DIRTY);
+
+        // Touching the camera view draws on the board under the finger
+        glView.setOnTouchListener(new View.OnTouchListener() {
+            @Override
+            public boolean onTouch(View view, MotionEvent event) {
+                queueTouch(render.getTouchQueue(), event);
+                frameScheduler.request(FrameScheduler.REASON_TOUCH);
+                return true;
             }
         });
-        VuforiaManager.addTrackables("FredTheStag.xml");
 
+        setContentView(glView);
+        eglSamples = samples;
+    }//createGLView
+
+    //a calibration candidate was measured, try the next or keep the best
+    private void onCalibrationMeasured() {
+        EglCalibration calibration = eglCalibration;
+        if (calibration == null || isFinishing() || destroyed) {
+            return;
+        }//if
+
+        int next = calibration.next();
+        if (next >= 0) {
+            createGLView(next);
+            return;
+        }//if
+
+        render.setCalibration(null, null);
+        int best = keepCalibration(calibration);
+        if (best != eglSamples) {
+            createGLView(best);
+        }//if
+    }//onCalibrationMeasured
+
+    //every candidate was measured, saves the best for later launches and returns it
+    private int keepCalibration(EglCalibration calibration) {
+        int best = calibration.getBest(qualityGovernor.getTier().getFrameBudgetNanos());
+        Log.i(LOGTAG, "EGL calibration picked " + best + " samples");
+        getPreferences(MODE_PRIVATE).edit().putInt(PREF_EGL_SAMPLES, best).apply();
+        eglCalibration = null;
+        return best;
+    }//keepCalibration
+
+    /**
+     * Edits submitted here are applied off the UI thread and reach the renderer through its channel
+     * @return the rasterizer owning the board content
+     */
+    public static BoardRasterizer getWhiteBoardRasterizer() {
+        return whiteBoardRasterizer;
+    }
 
-        whiteBoardBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.whiteboard).copy(Bitmap.Config.ARGB_8888, true);
+    /**
+     * @return the encoder compressing board snapshots to ETC1
+     */
+    public static Etc1BoardEncoder getWhiteBoardEncoder() {
+        return whiteBoardEncoder;
+    }
 
+    /**
+     * @return the builder of the board's resolution pyramids
+     */
+    public static BoardPyramidBuilder getWhiteBoardPyramids() {
+        return whiteBoardPyramids;
     }
 
+    /**
+     * Only use inside edits submitted to the rasterizer
+     * @return the ink drawn over the board
+     */
+    public static InkLayer getWhiteBoardInk() {
+        return whiteBoardInk;
+    }
 
-    public static Bitmap fetchWhiteBoardBitmap() {
-        return whiteBoardBitmap;
+    /**
+     * @return glyphs the board's text is drawn with
+     */
+    public static GlyphAtlas getGlyphAtlas() {
+        return glyphAtlas;
     }
 
-    public static void setWhiteBoardBitmap(Bitmap bit) {
-        whiteBoardBitmap = bit;
+    /**
+     * @return text drawn over the board, the renderer lays it out again when this changes
+     */
+    public static String getWhiteBoardText() {
+        return whiteBoardText;
+    }
+
+    public static void setWhiteBoardText(String text) {
+        whiteBoardText = text;
+        frameScheduler.request(FrameScheduler.REASON_CONTENT);
+    }
+
+    /**
+     * @return what asks the GL view for frames, and counts the ones it saved
+     */
+    public static FrameScheduler getFrameScheduler() {
+        return frameScheduler;
+    }
+
+    /**
+     * Only use on the GL thread
+     * @return what picks the quality tier from frame times
+     */
+    public static QualityGovernor getQualityGovernor() {
+        return qualityGovernor;
+    }
+
+    /**
+     * Remembers the tier for the next run, any thread
+     * @param activity this activity, whose preferences hold the tier
+     * @param tier index in QualityTier.TIERS
+     */
+    public static void saveQualityTier(Activity activity, int tier) {
+        activity.getPreferences(MODE_PRIVATE).edit().putInt(PREF_QUALITY_TIER, tier).apply();
+    }
+
+    /**
+     * @return the board as it was loaded, before any edits
+     */
+    public static TiledBoard.Snapshot getBlankWhiteBoard() {
+        return blankWhiteBoard;
     }
 
     @Override
@@ -92,6 +306,7 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        destroyed = true;
 
         VuforiaManager.destroy();
     }
@@ -124,6 +339,10 @@ public class MainActivity extends AppCompatActivity {
                 startActivity(editActivity);
                 return true;
 
+            case R.id.action_export_trace:
+                exportFrameTrace();
+                return true;
+
             default:
                 // If we got here, the user's action was not recognized.
                 // Invoke the superclass to handle it.
@@ -132,6 +351,95 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * Hands every sample of a touch event to the GL thread, historical ones first.
+     * Event times are uptimeMillis, which runs on the same clock as System.nanoTime.
+     */
+    private static void queueTouch(TouchSampleQueue touches, MotionEvent event) {
+        int action;
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                action = TouchSampleQueue.DOWN;
+                break;
+            case MotionEvent.ACTION_MOVE:
+                action = TouchSampleQueue.MOVE;
+                break;
+            case MotionEvent.ACTION_UP:
+                action = TouchSampleQueue.UP;
+                break;
+            case MotionEvent.ACTION_CANCEL:
+                action = TouchSampleQueue.CANCEL;
+                break;
+            default:
+                // Only the first finger draws
+                return;
+        }//switch
+
+        for (int i = 0; i < event.getHistorySize(); i++) {
+            touches.push(TouchSampleQueue.MOVE, event.getHistoricalX(i), event.getHistoricalY(i),
+                    event.getHistoricalPressure(i), event.getHistoricalEventTime(i) * 1000000L);
+        }//for
+        touches.push(action, event.getX(), event.getY(), event.getPressure(), event.getEventTime() * 1000000L);
+    }//queueTouch
+
+    /**
+     * Writes the frame profiler's trace to frame_trace.json in the app's external files directory.
+     * The JSON is built on the GL thread and written to disk on a background thread.
+     */
+    private void exportFrameTrace() {
+        if (glView == null || render == null) {
+            return;
+        }//if
+
+        final File traceFile = new File(getExternalFilesDir(null), TRACE_FILE);
+
+        glView.queueEvent(new Runnable() {
+            @Override
+            public void run() {
+                final StringBuilder trace = new StringBuilder();
+                render.getProfiler().exportTrace(trace);
+
+                LatencyMeter inkLatency = render.getInkLatency();
+                Log.i(LOGTAG, "Touch to ink: median " + inkLatency.getPercentileFrames(50) + " frames, 95th percentile "
+                        + inkLatency.getPercentileFrames(95) + " frames over " + inkLatency.getCount() + " samples");
+                Log.i(LOGTAG, "Drew " + frameScheduler.getFrames() + " of " + frameScheduler.getDisplayFrames()
+                        + " display frames, saved " + frameScheduler.getSavedCpuNanos() / 1000000 + " ms of CPU at "
+                        + frameScheduler.getAverageFrameCpuNanos() / 1000 + " us per frame, boards held still for "
+                        + render.getScene().getStillFrames() + " frames");
+                BoardCuller culler = render.getCuller();
+                Log.i(LOGTAG, "Boards drawn " + culler.getTotalDrawn() + " and culled " + culler.getTotalCulled()
+                        + " times over " + culler.getFrames() + " frames, last frame drew " + culler.getLastDrawn()
+                        + " and culled " + culler.getLastOutside() + " outside the view and " + culler.getLastTooSmall()
+                        + " too small");
+                QualityGovernor governor = render.getGovernor();
+                Log.i(LOGTAG, "Quality tier " + governor.getTier() + " after " + governor.getStepsDown() + " steps down and "
+                        + governor.getStepsUp() + " up, last frame time p95 " + governor.getLastP95() / 1000 + " us");
+                FrameProfiler profiler = render.getProfiler();
+                Log.i(LOGTAG, "Frames timed with " + (render.getGpuTimer().isUsingQueries() ? "timer queries" : "glFinish")
+                        + ", " + profiler.getCount(FrameProfiler.STAGE_GPU_TIMING) + " timed frames spent p50 "
+                        + profiler.getPercentileMicros(FrameProfiler.STAGE_GPU_TIMING, 50) + " us, p95 "
+                        + profiler.getPercentileMicros(FrameProfiler.STAGE_GPU_TIMING, 95) + " us finishing the timing");
+
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            FileWriter writer = new FileWriter(traceFile);
+                            try {
+                                writer.write(trace.toString());
+                            } finally {
+                                writer.close();
+                            }//finally
+                            Log.i(LOGTAG, "Frame trace written to " + traceFile.getAbsolutePath());
+                        } catch (IOException e) {
+                            Log.e(LOGTAG, "Could not write frame trace", e);
+                        }//catch
+                    }
+                }).start();
+            }
+        });
+    }//exportFrameTrace
+
     public static Activity fetchApp() {
         return publicContext;
     }
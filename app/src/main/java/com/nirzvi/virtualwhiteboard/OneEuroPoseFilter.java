@@ -0,0 +1,106 @@
+package com.nirzvi.virtualwhiteboard;
+
+import java.util.Arrays;
+
+/**
+ * One euro filter (Casiez et al.) over the translation and rotation quaternion of each trackable.
+ * Slow motion gets a low cutoff and so little jitter, fast motion raises the cutoff and so adds little lag.
+ */
+public class OneEuroPoseFilter extends PoseFilter {
+
+    //tx, ty, tz, qx, qy, qz, qw
+    private static final int CHANNELS = 7;
+
+    private final double minCutoff;
+    private final double translationBeta;
+    private final double rotationBeta;
+    private final double derivativeCutoff;
+
+    private final double[] values;
+    private final double[] derivatives;
+    private final double[] lastTime;
+    private final boolean[] initialized;
+
+    private final double[] raw = new double[CHANNELS];
+
+    public OneEuroPoseFilter(int numSlots) {
+        this(numSlots, 1.0, 0.01, 0.5, 1.0);
+    }
+
+    /**
+     * @param numSlots number of trackable slots
+     * @param minCutoff cutoff frequency in Hz while still
+     * @param translationBeta how fast the cutoff rises with translation speed (per trackable unit/s)
+     * @param rotationBeta how fast the cutoff rises with rotation speed
+     * @param derivativeCutoff cutoff frequency in Hz for the speed estimate
+     */
+    public OneEuroPoseFilter(int numSlots, double minCutoff, double translationBeta,
+                             double rotationBeta, double derivativeCutoff) {
+        this.minCutoff = minCutoff;
+        this.translationBeta = translationBeta;
+        this.rotationBeta = rotationBeta;
+        this.derivativeCutoff = derivativeCutoff;
+
+        values = new double[numSlots * CHANNELS];
+        derivatives = new double[numSlots * CHANNELS];
+        lastTime = new double[numSlots];
+        initialized = new boolean[numSlots];
+    }//OneEuroPoseFilter
+
+    @Override
+    public void filter(int slot, float[] pose, int offset, double timestamp, double displayTime) {
+        int base = slot * CHANNELS;
+
+        raw[0] = pose[offset + 3];
+        raw[1] = pose[offset + 7];
+        raw[2] = pose[offset + 11];
+        PoseMath.poseToQuaternion(pose, offset, raw, 3);
+
+        if (!initialized[slot] || timestamp - lastTime[slot] > RESET_AFTER) {
+            System.arraycopy(raw, 0, values, base, CHANNELS);
+            Arrays.fill(derivatives, base, base + CHANNELS, 0);
+            lastTime[slot] = timestamp;
+            initialized[slot] = true;
+        } else if (timestamp > lastTime[slot]) {
+            double dt = timestamp - lastTime[slot];
+            lastTime[slot] = timestamp;
+
+            //q and -q are the same rotation, stay on the side of the last value
+            double dot = 0;
+            for (int i = 3; i < CHANNELS; i++) {
+                dot += raw[i] * values[base + i];
+            }//for
+            if (dot < 0) {
+                for (int i = 3; i < CHANNELS; i++) {
+                    raw[i] = -raw[i];
+                }//for
+            }//if
+
+            double derivativeAlpha = alpha(derivativeCutoff, dt);
+            for (int i = 0; i < CHANNELS; i++) {
+                int c = base + i;
+                double speed = (raw[i] - values[c]) / dt;
+                derivatives[c] += derivativeAlpha * (speed - derivatives[c]);
+
+                double beta = i < 3 ? translationBeta : rotationBeta;
+                double cutoff = minCutoff + beta * Math.abs(derivatives[c]);
+                values[c] += alpha(cutoff, dt) * (raw[i] - values[c]);
+            }//for
+        }//else if
+
+        pose[offset + 3] = (float) values[base];
+        pose[offset + 7] = (float) values[base + 1];
+        pose[offset + 11] = (float) values[base + 2];
+        PoseMath.quaternionToPose(values, base + 3, pose, offset);
+    }//filter
+
+    @Override
+    public void reset(int slot) {
+        initialized[slot] = false;
+    }//reset
+
+    private static double alpha(double cutoff, double dt) {
+        double tau = 1.0 / (2 * Math.PI * cutoff);
+        return 1.0 / (1.0 + tau / dt);
+    }//alpha
+}
@@ -0,0 +1,92 @@
+package com.nirzvi.virtualwhiteboard;
+
+/**
+ * Smooths and/or predicts trackable poses between Vuforia and the boards.
+ * Filters keep their state per trackable slot in primitive arrays and never allocate while filtering.
+ */
+public abstract class PoseFilter {
+
+    /** Raw poses, exactly as Vuforia reports them. */
+    public static final int NONE = 0;
+
+    /** Speed-adaptive low-pass filter, removes jitter while holding still. */
+    public static final int ONE_EURO = 1;
+
+    /** Extrapolates the pose to the display time from its recent velocity. */
+    public static final int CONSTANT_VELOCITY = 2;
+
+    /** One euro smoothing followed by constant velocity prediction. */
+    public static final int ONE_EURO_PREDICTED = 3;
+
+    //a slot that has not been seen for this many seconds starts over
+    protected static final double RESET_AFTER = 0.25;
+
+    /**
+     * Creates one of the filters with its default tuning
+     * @param type NONE, ONE_EURO, CONSTANT_VELOCITY or ONE_EURO_PREDICTED
+     * @param numSlots number of trackable slots
+     * @return the filter
+     */
+    public static PoseFilter create(int type, int numSlots) {
+        switch (type) {
+            case NONE:
+                return new PassThrough();
+            case ONE_EURO:
+                return new OneEuroPoseFilter(numSlots);
+            case CONSTANT_VELOCITY:
+                return new PredictivePoseFilter(numSlots);
+            case ONE_EURO_PREDICTED:
+                return new Chain(new OneEuroPoseFilter(numSlots), new PredictivePoseFilter(numSlots));
+            default:
+                throw new IllegalArgumentException("Unknown pose filter " + type);
+        }//switch
+    }//create
+
+    /**
+     * Filters the pose of one trackable in place
+     * @param slot trackable slot
+     * @param pose 3x4 row-major pose
+     * @param offset where the pose starts
+     * @param timestamp seconds at which the camera frame was captured
+     * @param displayTime seconds at which the frame is expected to reach the display
+     */
+    public abstract void filter(int slot, float[] pose, int offset, double timestamp, double displayTime);
+
+    /**
+     * Forgets the history of one trackable
+     * @param slot trackable slot
+     */
+    public abstract void reset(int slot);
+
+    private static class PassThrough extends PoseFilter {
+        @Override
+        public void filter(int slot, float[] pose, int offset, double timestamp, double displayTime) {
+        }
+
+        @Override
+        public void reset(int slot) {
+        }
+    }
+
+    private static class Chain extends PoseFilter {
+        private final PoseFilter first;
+        private final PoseFilter second;
+
+        Chain(PoseFilter first, PoseFilter second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public void filter(int slot, float[] pose, int offset, double timestamp, double displayTime) {
+            first.filter(slot, pose, offset, timestamp, displayTime);
+            second.filter(slot, pose, offset, timestamp, displayTime);
+        }
+
+        @Override
+        public void reset(int slot) {
+            first.reset(slot);
+            second.reset(slot);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.nirzvi.virtualwhiteboard;
+
+/**
+ * Allocation-free pose and matrix helpers.
+ * Pure Java so the frame logic can run and be tested off-device.
+ */
+public final class PoseMath {
+
+    /** Floats in a Vuforia 3x4 row-major pose. */
+    public static final int POSE_SIZE = 12;
+
+    /** Floats in a 4x4 column-major GL matrix. */
+    public static final int MATRIX_SIZE = 16;
+
+    private PoseMath() {
+    }
+
+    /**
+     * Same as Tool.convertPose2GLMatrix without the JNI round trip or allocation
+     * @param pose 3x4 row-major pose
+     * @param poseOffset where the pose starts
+     * @param out 4x4 column-major matrix
+     * @param outOffset where the matrix is written
+     */
+    public static void poseToGL(float[] pose, int poseOffset, float[] out, int outOffset) {
+        for (int col = 0; col < 4; col++) {
+            int o = outOffset + col * 4;
+            out[o] = pose[poseOffset + col];
+            out[o + 1] = pose[poseOffset + 4 + col];
+            out[o + 2] = pose[poseOffset + 8 + col];
+            out[o + 3] = col == 3 ? 1f : 0f;
+        }//for
+    }//poseToGL
+
+    /**
+     * Extracts the rotation of a pose as angles about x, y and z
+     * @param pose 3x4 row-major pose
+     * @param poseOffset where the pose starts
+     * @param out thetaX, thetaY, thetaZ in radians
+     * @param outOffset where the angles are written
+     */
+    public static void poseToEuler(float[] pose, int poseOffset, double[] out, int outOffset) {
+        float r00 = pose[poseOffset];
+        float r10 = pose[poseOffset + 4];
+        float r20 = pose[poseOffset + 8];
+        float r21 = pose[poseOffset + 9];
+        float r22 = pose[poseOffset + 10];
+
+        out[outOffset] = Math.atan2(r21, r22);
+        out[outOffset + 1] = Math.atan2(-r20, Math.sqrt(r21 * r21 + r22 * r22));
+        out[outOffset + 2] = Math.atan2(r10, r00);
+    }//poseToEuler
+
+    /**
+     * Extracts the rotation of a pose as a unit quaternion
+     * @param pose 3x4 row-major pose
+     * @param poseOffset where the pose starts
+     * @param out x, y, z, w
+     * @param outOffset where the quaternion is written
+     */
+    public static void poseToQuaternion(float[] pose, int poseOffset, double[] out, int outOffset) {
+        double r00 = pose[poseOffset], r01 = pose[poseOffset + 1], r02 = pose[poseOffset + 2];
+        double r10 = pose[poseOffset + 4], r11 = pose[poseOffset + 5], r12 = pose[poseOffset + 6];
+        double r20 = pose[poseOffset + 8], r21 = pose[poseOffset + 9], r22 = pose[poseOffset + 10];
+
+        double x, y, z, w;
+        double trace = r00 + r11 + r22;
+        if (trace > 0) {
+            double s = Math.sqrt(trace + 1.0) * 2;
+            w = 0.25 * s;
+            x = (r21 - r12) / s;
+            y = (r02 - r20) / s;
+            z = (r10 - r01) / s;
+        } else if (r00 > r11 && r00 > r22) {
+            double s = Math.sqrt(1.0 + r00 - r11 - r22) * 2;
+            w = (r21 - r12) / s;
+            x = 0.25 * s;
+            y = (r01 + r10) / s;
+            z = (r02 + r20) / s;
+        } else if (r11 > r22) {
+            double s = Math.sqrt(1.0 + r11 - r00 - r22) * 2;
+            w = (r02 - r20) / s;
+            x = (r01 + r10) / s;
+            y = 0.25 * s;
+            z = (r12 + r21) / s;
+        } else {
+            double s = Math.sqrt(1.0 + r22 - r00 - r11) * 2;
+            w = (r10 - r01) / s;
+            x = (r02 + r20) / s;
+            y = (r12 + r21) / s;
+            z = 0.25 * s;
+        }//else
+
+        out[outOffset] = x;
+        out[outOffset + 1] = y;
+        out[outOffset + 2] = z;
+        out[outOffset + 3] = w;
+    }//poseToQuaternion
+
+    /**
+     * Writes a rotation into the 3x3 part of a pose, leaving the translation alone
+     * @param q x, y, z, w, normalized by this method
+     * @param qOffset where the quaternion starts
+     * @param pose 3x4 row-major pose
+     * @param poseOffset where the pose starts
+     */
+    public static void quaternionToPose(double[] q, int qOffset, float[] pose, int poseOffset) {
+        double x = q[qOffset], y = q[qOffset + 1], z = q[qOffset + 2], w = q[qOffset + 3];
+        double norm = Math.sqrt(x * x + y * y + z * z + w * w);
+        if (norm == 0) {
+            x = y = z = 0;
+            w = 1;
+        } else {
+            x /= norm;
+            y /= norm;
+            z /= norm;
+            w /= norm;
+        }//else
+
+        pose[poseOffset] = (float) (1 - 2 * (y * y + z * z));
+        pose[poseOffset + 1] = (float) (2 * (x * y - z * w));
+        pose[poseOffset + 2] = (float) (2 * (x * z + y * w));
+        pose[poseOffset + 4] = (float) (2 * (x * y + z * w));
+        pose[poseOffset + 5] = (float) (1 - 2 * (x * x + z * z));
+        pose[poseOffset + 6] = (float) (2 * (y * z - x * w));
+        pose[poseOffset + 8] = (float) (2 * (x * z - y * w));
+        pose[poseOffset + 9] = (float) (2 * (y * z + x * w));
+        pose[poseOffset + 10] = (float) (1 - 2 * (x * x + y * y));
+    }//quaternionToPose
+
+    /**
+     * Same as Matrix.multiplyMM, result = lhs * rhs, without allocating
+     * @param result 4x4 column-major matrix, must not overlap lhs or rhs
+     */
+    public static void multiplyMM(float[] result, int resultOffset, float[] lhs, int lhsOffset, float[] rhs, int rhsOffset) {
+        for (int col = 0; col < 4; col++) {
+            for (int row = 0; row < 4; row++) {
+                float sum = 0;
+                for (int k = 0; k < 4; k++) {
+                    sum += lhs[lhsOffset + k * 4 + row] * rhs[rhsOffset + col * 4 + k];
+                }//for
+                result[resultOffset + col * 4 + row] = sum;
+            }//for
+        }//for
+    }//multiplyMM
+
+    /**
+     * Same as Matrix.invertM, without allocating
+     * @param inv 4x4 column-major inverse, must not overlap m
+     * @return false if m is singular, inv is left undefined then
+     */
+    public static boolean invertM(float[] inv, int invOffset, float[] m, int mOffset) {
+        float a0 = m[mOffset] * m[mOffset + 5] - m[mOffset + 1] * m[mOffset + 4];
+        float a1 = m[mOffset] * m[mOffset + 6] - m[mOffset + 2] * m[mOffset + 4];
+        float a2 = m[mOffset] * m[mOffset + 7] - m[mOffset + 3] * m[mOffset + 4];
+        float a3 = m[mOffset + 1] * m[mOffset + 6] - m[mOffset + 2] * m[mOffset + 5];
+        float a4 = m[mOffset + 1] * m[mOffset + 7] - m[mOffset + 3] * m[mOffset + 5];
+        float a5 = m[mOffset + 2] * m[mOffset + 7] - m[mOffset + 3] * m[mOffset + 6];
+        float b0 = m[mOffset + 8] * m[mOffset + 13] - m[mOffset + 9] * m[mOffset + 12];
+        float b1 = m[mOffset + 8] * m[mOffset + 14] - m[mOffset + 10] * m[mOffset + 12];
+        float b2 = m[mOffset + 8] * m[mOffset + 15] - m[mOffset + 11] * m[mOffset + 12];
+        float b3 = m[mOffset + 9] * m[mOffset + 14] - m[mOffset + 10] * m[mOffset + 13];
+        float b4 = m[mOffset + 9] * m[mOffset + 15] - m[mOffset + 11] * m[mOffset + 13];
+        float b5 = m[mOffset + 10] * m[mOffset + 15] - m[mOffset + 11] * m[mOffset + 14];
+
+        float det = a0 * b5 - a1 * b4 + a2 * b3 + a3 * b2 - a4 * b1 + a5 * b0;
+        if (det == 0) {
+            return false;
+        }//if
+        float invDet = 1 / det;
+
+        inv[invOffset] = (m[mOffset + 5] * b5 - m[mOffset + 6] * b4 + m[mOffset + 7] * b3) * invDet;
+        inv[invOffset + 1] = (-m[mOffset + 1] * b5 + m[mOffset + 2] * b4 - m[mOffset + 3] * b3) * invDet;
+        inv[invOffset + 2] = (m[mOffset + 13] * a5 - m[mOffset + 14] * a4 + m[mOffset + 15] * a3) * invDet;
+        inv[invOffset + 3] = (-m[mOffset + 9] * a5 + m[mOffset + 10] * a4 - m[mOffset + 11] * a3) * invDet;
+        inv[invOffset + 4] = (-m[mOffset + 4] * b5 + m[mOffset + 6] * b2 - m[mOffset + 7] * b1) * invDet;
+        inv[invOffset + 5] = (m[mOffset] * b5 - m[mOffset + 2] * b2 + m[mOffset + 3] * b1) * invDet;
+        inv[invOffset + 6] = (-m[mOffset + 12] * a5 + m[mOffset + 14] * a2 - m[mOffset + 15] * a1) * invDet;
+        inv[invOffset + 7] = (m[mOffset + 8] * a5 - m[mOffset + 10] * a2 + m[mOffset + 11] * a1) * invDet;
+        inv[invOffset + 8] = (m[mOffset + 4] * b4 - m[mOffset + 5] * b2 + m[mOffset + 7] * b0) * invDet;
+        inv[invOffset + 9] = (-m[mOffset] * b4 + m[mOffset + 1] * b2 - m[mOffset + 3] * b0) * invDet;
+        inv[invOffset + 10] = (m[mOffset + 12] * a4 - m[mOffset + 13] * a2 + m[mOffset + 15] * a0) * invDet;
+        inv[invOffset + 11] = (-m[mOffset + 8] * a4 + m[mOffset + 9] * a2 - m[mOffset + 11] * a0) * invDet;
+        inv[invOffset + 12] = (-m[mOffset + 4] * b3 + m[mOffset + 5] * b1 - m[mOffset + 6] * b0) * invDet;
+        inv[invOffset + 13] = (m[mOffset] * b3 - m[mOffset + 1] * b1 + m[mOffset + 2] * b0) * invDet;
+        inv[invOffset + 14] = (-m[mOffset + 12] * a3 + m[mOffset + 13] * a1 - m[mOffset + 14] * a0) * invDet;
+        inv[invOffset + 15] = (m[mOffset + 8] * a3 - m[mOffset + 9] * a1 + m[mOffset + 10] * a0) * invDet;
+        return true;
+    }//invertM
+}
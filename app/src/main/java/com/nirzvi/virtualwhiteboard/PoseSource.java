@@ -0,0 +1,31 @@
+package com.nirzvi.virtualwhiteboard;
+
+/**
+ * The tracking results of one frame, as seen by the render loop.
+ */
+public interface PoseSource {
+
+    /**
+     * @return seconds at which the camera frame behind these poses was captured
+     */
+    double getTimestamp();
+
+    /**
+     * @return how many trackables have a pose this frame
+     */
+    int getNumPoses();
+
+    /**
+     * @param index which result, from 0 to getNumPoses() - 1
+     * @return the trackable slot of the result, or -1 if it is not registered
+     */
+    int getSlot(int index);
+
+    /**
+     * Copies a 3x4 row-major pose into out
+     * @param index which result, from 0 to getNumPoses() - 1
+     * @param out destination
+     * @param offset where the pose is written
+     */
+    void getPose(int index, float[] out, int offset);
+}
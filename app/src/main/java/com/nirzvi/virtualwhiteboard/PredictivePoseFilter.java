@@ -0,0 +1,150 @@
+package com.nirzvi.virtualwhiteboard;
+
+/**
+ * Constant velocity predictor. Tracks the linear and angular velocity of each trackable
+ * and extrapolates its pose from the camera timestamp to the expected display time,
+ * hiding part of the motion-to-photon latency.
+ */
+public class PredictivePoseFilter extends PoseFilter {
+
+    //never extrapolate further than this many seconds
+    private static final double MAX_PREDICTION = 0.1;
+
+    private final double velocitySmoothing;
+
+    //x, y, z per slot
+    private final double[] lastPosition;
+    private final double[] velocity;
+    private final double[] angularVelocity;
+
+    //x, y, z, w per slot
+    private final double[] lastRotation;
+
+    private final double[] lastTime;
+    private final boolean[] initialized;
+
+    private final double[] q = new double[4];
+    private final double[] delta = new double[4];
+
+    public PredictivePoseFilter(int numSlots) {
+        this(numSlots, 0.05);
+    }
+
+    /**
+     * @param numSlots number of trackable slots
+     * @param velocitySmoothing time constant in seconds of the velocity estimate
+     */
+    public PredictivePoseFilter(int numSlots, double velocitySmoothing) {
+        this.velocitySmoothing = velocitySmoothing;
+
+        lastPosition = new double[numSlots * 3];
+        velocity = new double[numSlots * 3];
+        angularVelocity = new double[numSlots * 3];
+        lastRotation = new double[numSlots * 4];
+        lastTime = new double[numSlots];
+        initialized = new boolean[numSlots];
+    }//PredictivePoseFilter
+
+    @Override
+    public void filter(int slot, float[] pose, int offset, double timestamp, double displayTime) {
+        int p = slot * 3;
+        int r = slot * 4;
+
+        PoseMath.poseToQuaternion(pose, offset, q, 0);
+
+        if (!initialized[slot] || timestamp - lastTime[slot] > RESET_AFTER) {
+            for (int i = 0; i < 3; i++) {
+                velocity[p + i] = 0;
+                angularVelocity[p + i] = 0;
+            }//for
+            initialized[slot] = true;
+        } else if (timestamp > lastTime[slot]) {
+            double dt = timestamp - lastTime[slot];
+            double alpha = 1 - Math.exp(-dt / velocitySmoothing);
+
+            velocity[p] += alpha * ((pose[offset + 3] - lastPosition[p]) / dt - velocity[p]);
+            velocity[p + 1] += alpha * ((pose[offset + 7] - lastPosition[p + 1]) / dt - velocity[p + 1]);
+            velocity[p + 2] += alpha * ((pose[offset + 11] - lastPosition[p + 2]) / dt - velocity[p + 2]);
+
+            //delta = q * conjugate(last), the rotation since the last frame
+            multiplyConjugate(q, lastRotation, r, delta);
+            if (delta[3] < 0) {
+                for (int i = 0; i < 4; i++) {
+                    delta[i] = -delta[i];
+                }//for
+            }//if
+
+            double sinHalf = Math.sqrt(delta[0] * delta[0] + delta[1] * delta[1] + delta[2] * delta[2]);
+            double angle = 2 * Math.atan2(sinHalf, delta[3]);
+            double scale = sinHalf > 1e-9 ? angle / (sinHalf * dt) : 2 / dt;
+            for (int i = 0; i < 3; i++) {
+                angularVelocity[p + i] += alpha * (delta[i] * scale - angularVelocity[p + i]);
+            }//for
+        } else {
+            //same camera frame as last time, only the extrapolation changes
+            extrapolate(slot, pose, offset, displayTime - timestamp);
+            return;
+        }//else
+
+        lastPosition[p] = pose[offset + 3];
+        lastPosition[p + 1] = pose[offset + 7];
+        lastPosition[p + 2] = pose[offset + 11];
+        System.arraycopy(q, 0, lastRotation, r, 4);
+        lastTime[slot] = timestamp;
+
+        extrapolate(slot, pose, offset, displayTime - timestamp);
+    }//filter
+
+    private void extrapolate(int slot, float[] pose, int offset, double horizon) {
+        int p = slot * 3;
+        int r = slot * 4;
+        horizon = Math.max(0, Math.min(MAX_PREDICTION, horizon));
+
+        pose[offset + 3] = (float) (lastPosition[p] + velocity[p] * horizon);
+        pose[offset + 7] = (float) (lastPosition[p + 1] + velocity[p + 1] * horizon);
+        pose[offset + 11] = (float) (lastPosition[p + 2] + velocity[p + 2] * horizon);
+
+        //rotate by angular velocity * horizon
+        double wx = angularVelocity[p], wy = angularVelocity[p + 1], wz = angularVelocity[p + 2];
+        double rate = Math.sqrt(wx * wx + wy * wy + wz * wz);
+        if (rate < 1e-9) {
+            PoseMath.quaternionToPose(lastRotation, r, pose, offset);
+            return;
+        }//if
+
+        double half = rate * horizon / 2;
+        double s = Math.sin(half) / rate;
+        delta[0] = wx * s;
+        delta[1] = wy * s;
+        delta[2] = wz * s;
+        delta[3] = Math.cos(half);
+
+        multiply(delta, lastRotation, r, q);
+        PoseMath.quaternionToPose(q, 0, pose, offset);
+    }//extrapolate
+
+    @Override
+    public void reset(int slot) {
+        initialized[slot] = false;
+    }//reset
+
+    //out = a * b, b starting at bOffset
+    private static void multiply(double[] a, double[] b, int bOffset, double[] out) {
+        double ax = a[0], ay = a[1], az = a[2], aw = a[3];
+        double bx = b[bOffset], by = b[bOffset + 1], bz = b[bOffset + 2], bw = b[bOffset + 3];
+        out[0] = aw * bx + ax * bw + ay * bz - az * by;
+        out[1] = aw * by - ax * bz + ay * bw + az * bx;
+        out[2] = aw * bz + ax * by - ay * bx + az * bw;
+        out[3] = aw * bw - ax * bx - ay * by - az * bz;
+    }//multiply
+
+    //out = a * conjugate(b), b starting at bOffset
+    private static void multiplyConjugate(double[] a, double[] b, int bOffset, double[] out) {
+        double ax = a[0], ay = a[1], az = a[2], aw = a[3];
+        double bx = -b[bOffset], by = -b[bOffset + 1], bz = -b[bOffset + 2], bw = b[bOffset + 3];
+        out[0] = aw * bx + ax * bw + ay * bz - az * by;
+        out[1] = aw * by - ax * bz + ay * bw + az * bx;
+        out[2] = aw * bz + ax * by - ay * bx + az * bw;
+        out[3] = aw * bw - ax * bx - ay * by - az * bz;
+    }//multiplyConjugate
+}
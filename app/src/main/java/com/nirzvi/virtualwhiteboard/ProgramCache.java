@@ -0,0 +1,122 @@
+package com.nirzvi.virtualwhiteboard;
+
+import android.opengl.GLES20;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compiles and links every shader program once per GL context.
+ * Asking again for the same sources returns the program already linked.
+ */
+public class ProgramCache {
+
+    private final GLBackend gl;
+    private final Map<String, ShaderProgram> programs = new HashMap<>();
+
+    public ProgramCache(GLBackend gl) {
+        this.gl = gl;
+    }
+
+    /**
+     * Returns the program for the sources, compiling and linking it the first time
+     * @param vertexShaderSrc vertex shader source
+     * @param fragmentShaderSrc fragment shader source
+     * @param attributes attribute names, bound to locations 0, 1, 2... before linking
+     * @return the linked program
+     * @throws RuntimeException if a shader does not compile or the program does not link
+     */
+    public ShaderProgram get(String vertexShaderSrc, String fragmentShaderSrc, String... attributes) {
+        String key = vertexShaderSrc + '\0' + fragmentShaderSrc;
+        ShaderProgram program = programs.get(key);
+        if (program == null) {
+            program = new ShaderProgram(gl, link(vertexShaderSrc, fragmentShaderSrc, attributes));
+            programs.put(key, program);
+        }//if
+        return program;
+    }//get
+
+    /**
+     * @return number of programs linked in the current context
+     */
+    public int size() {
+        return programs.size();
+    }
+
+    /**
+     * Forgets every program without deleting it, call when the GL context was lost and its handles with it
+     */
+    public void clear() {
+        programs.clear();
+    }
+
+    /**
+     * Deletes every program, call on the GL thread while the context is still current
+     */
+    public void release() {
+        for (ShaderProgram program : programs.values()) {
+            gl.glDeleteProgram(program.getHandle());
+        }//for
+        programs.clear();
+    }//release
+
+    private int link(String vertexShaderSrc, String fragmentShaderSrc, String[] attributes) {
+        int vertShader = compile(GLES20.GL_VERTEX_SHADER, vertexShaderSrc);
+        int fragShader;
+        try {
+            fragShader = compile(GLES20.GL_FRAGMENT_SHADER, fragmentShaderSrc);
+        } catch (RuntimeException e) {
+            gl.glDeleteShader(vertShader);
+            throw e;
+        }//catch
+
+        int program = gl.glCreateProgram();
+        if (program == 0) {
+            throw new RuntimeException("Error creating program.");
+        }//if
+
+        gl.glAttachShader(program, vertShader);
+        gl.glAttachShader(program, fragShader);
+
+        // Attribute locations only take effect at link time
+        for (int i = 0; i < attributes.length; i++) {
+            gl.glBindAttribLocation(program, i, attributes[i]);
+        }//for
+
+        gl.glLinkProgram(program);
+
+        // The program keeps what it needs, the shaders go once it is deleted
+        gl.glDeleteShader(vertShader);
+        gl.glDeleteShader(fragShader);
+
+        int[] status = { GLES20.GL_FALSE };
+        gl.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+        if (status[0] == GLES20.GL_FALSE) {
+            String log = gl.glGetProgramInfoLog(program);
+            gl.glDeleteProgram(program);
+            throw new RuntimeException("Could NOT link program : " + log);
+        }//if
+
+        return program;
+    }//link
+
+    private int compile(int type, String source) {
+        int shader = gl.glCreateShader(type);
+        if (shader == 0) {
+            throw new RuntimeException("Error creating shader " + type);
+        }//if
+
+        gl.glShaderSource(shader, source);
+        gl.glCompileShader(shader);
+
+        int[] status = { GLES20.GL_FALSE };
+        gl.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, status, 0);
+        if (status[0] == GLES20.GL_FALSE) {
+            String log = gl.glGetShaderInfoLog(shader);
+            gl.glDeleteShader(shader);
+            throw new RuntimeException("Could NOT compile shader " + type + " : " + log);
+        }//if
+
+        return shader;
+    }//compile
+}
@@ -0,0 +1,218 @@
+package com.nirzvi.virtualwhiteboard;
+
+/**
+ * Steps through QualityTiers to keep frame times inside the budget as the phone heats up and throttles.
+ *
+ * Frame times are collected in windows. At the end of each window its 95th percentile is compared with
+ * the frame budget of the current tier. Windows over the budget step down to a cheaper tier. Windows
+ * well under the budget of the next better tier step back up, but more of them are needed, and twice
+ * as many again each time a step up had to be taken back, so the tier does not swing back and forth
+ * while the phone stays hot. Pure Java, the renderer applies the tiers.
+ *
+ * Frame times have to include the GPU's work, the renderer times one frame every half second through
+ * GpuFrameTimer and records only those. A tier's video mode restarts the camera, which drops a second
+ * of video and tracking, so it follows the tier only once the tier held for VIDEO_DWELL_WINDOWS
+ * windows. Steps back and forth between tiers with different modes then leave the camera alone.
+ */
+public class QualityGovernor {
+
+    //timed frames, one every half second, so a window spans 10 seconds
+    public static final int DEFAULT_WINDOW_FRAMES = 20;
+    //windows over budget before stepping down
+    public static final int DOWN_WINDOWS = 2;
+    //windows under budget before stepping up, doubled up to MAX_UP_WINDOWS after a step up is taken back
+    public static final int DEFAULT_UP_WINDOWS = 5;
+    public static final int MAX_UP_WINDOWS = 80;
+    //fraction of the better tier's budget the 95th percentile has to stay under to step up
+    public static final float UP_RATIO = 0.75f;
+    //windows a tier has to hold before the camera is switched to its video mode
+    public static final int VIDEO_DWELL_WINDOWS = 5;
+
+    private final QualityTier[] tiers;
+    private int tier;
+    //video mode the camera was last asked for
+    private int videoMode;
+    //windows since the tier last changed
+    private int tierWindows = 0;
+
+    private final long[] window;
+    private final long[] sorted;
+    private int windowCount = 0;
+
+    private int overWindows = 0;
+    private int underWindows = 0;
+    private int upWindows = DEFAULT_UP_WINDOWS;
+    //windows since the last step up, -1 if the last change was a step down
+    private int sinceUp = -1;
+
+    //metrics
+    private long lastP50 = 0;
+    private long lastP95 = 0;
+    private int stepsDown = 0;
+    private int stepsUp = 0;
+
+    public QualityGovernor() {
+        this(QualityTier.TIERS, QualityTier.DEFAULT_TIER, DEFAULT_WINDOW_FRAMES);
+    }
+
+    /**
+     * @param tiers from the best looking to the cheapest
+     * @param startTier index of the tier to start at
+     * @param windowFrames frames every percentile is taken over
+     */
+    public QualityGovernor(QualityTier[] tiers, int startTier, int windowFrames) {
+        this.tiers = tiers;
+        window = new long[windowFrames];
+        sorted = new long[windowFrames];
+        setTier(startTier);
+    }//QualityGovernor
+
+    /**
+     * Jumps to a tier, such as the one a previous run ended at, and starts a new window. Its video mode
+     * applies at once, the camera is not running yet.
+     * @param index index of the tier, clamped to the tiers there are
+     */
+    public void setTier(int index) {
+        changeTier(index);
+        videoMode = tiers[tier].getVideoMode();
+    }//setTier
+
+    private void changeTier(int index) {
+        tier = Math.max(0, Math.min(tiers.length - 1, index));
+        windowCount = 0;
+        overWindows = 0;
+        underWindows = 0;
+        tierWindows = 0;
+    }//changeTier
+
+    /**
+     * Call for every timed frame
+     * @param frameNanos time the frame took, GPU included
+     * @return whether the tier or the video mode changed, see getTier and getVideoMode
+     */
+    public boolean recordFrame(long frameNanos) {
+        window[windowCount++] = frameNanos;
+        if (windowCount < window.length) {
+            return false;
+        }//if
+        windowCount = 0;
+
+        System.arraycopy(window, 0, sorted, 0, window.length);
+        sort(sorted);
+        lastP50 = percentile(sorted, 50);
+        lastP95 = percentile(sorted, 95);
+        if (sinceUp >= 0) {
+            sinceUp++;
+        }//if
+        tierWindows++;
+
+        if (lastP95 > tiers[tier].getFrameBudgetNanos()) {
+            underWindows = 0;
+            overWindows++;
+            if (overWindows >= DOWN_WINDOWS && tier < tiers.length - 1) {
+                stepDown();
+                return true;
+            }//if
+        } else if (tier > 0 && lastP95 < tiers[tier - 1].getFrameBudgetNanos() * UP_RATIO) {
+            overWindows = 0;
+            underWindows++;
+            if (underWindows >= upWindows) {
+                stepUp();
+                return true;
+            }//if
+        } else {
+            // Inside the band between the two, nothing moves
+            overWindows = 0;
+            underWindows = 0;
+        }//else
+
+        // The tier held long enough for a camera restart to pay off
+        if (videoMode != tiers[tier].getVideoMode() && tierWindows >= VIDEO_DWELL_WINDOWS) {
+            videoMode = tiers[tier].getVideoMode();
+            return true;
+        }//if
+        return false;
+    }//recordFrame
+
+    private void stepDown() {
+        // Taken back soon after stepping up, the better tier is not sustainable yet
+        upWindows = sinceUp >= 0 && sinceUp <= upWindows
+                ? Math.min(upWindows * 2, MAX_UP_WINDOWS) : DEFAULT_UP_WINDOWS;
+        sinceUp = -1;
+        changeTier(tier + 1);
+        stepsDown++;
+    }//stepDown
+
+    private void stepUp() {
+        sinceUp = 0;
+        changeTier(tier - 1);
+        stepsUp++;
+    }//stepUp
+
+    //insertion sort, windows are short
+    static void sort(long[] values) {
+        for (int i = 1; i < values.length; i++) {
+            long value = values[i];
+            int j = i - 1;
+            while (j >= 0 && values[j] > value) {
+                values[j + 1] = values[j];
+                j--;
+            }//while
+            values[j + 1] = value;
+        }//for
+    }//sort
+
+    //nearest rank of a sorted array
+    static long percentile(long[] sorted, double percentile) {
+        int rank = (int) Math.ceil(sorted.length * percentile / 100.0);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }//percentile
+
+    public QualityTier getTier() {
+        return tiers[tier];
+    }
+
+    public int getTierIndex() {
+        return tier;
+    }
+
+    /**
+     * @return one of QualityTier's VIDEO_ constants, lags the tier's own mode until the tier held
+     */
+    public int getVideoMode() {
+        return videoMode;
+    }
+
+    /**
+     * @return windows under budget the next step up needs
+     */
+    public int getUpWindows() {
+        return upWindows;
+    }
+
+    /*******************
+     * METRICS
+     *******************/
+
+    /**
+     * @return median frame time of the last full window, in nanoseconds
+     */
+    public long getLastP50() {
+        return lastP50;
+    }
+
+    /**
+     * @return 95th percentile frame time of the last full window, in nanoseconds
+     */
+    public long getLastP95() {
+        return lastP95;
+    }
+
+    public int getStepsDown() {
+        return stepsDown;
+    }
+
+    public int getStepsUp() {
+        return stepsUp;
+    }
+}
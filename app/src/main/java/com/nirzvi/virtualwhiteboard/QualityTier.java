@@ -0,0 +1,75 @@
+package com.nirzvi.virtualwhiteboard;
+
+/**
+ * One step of rendering quality the QualityGovernor can pick, immutable.
+ */
+public class QualityTier {
+
+    /** Camera modes, mapped to Vuforia's CameraDevice.MODE by VuforiaManager. */
+    public static final int VIDEO_QUALITY = 0;
+    public static final int VIDEO_DEFAULT = 1;
+    public static final int VIDEO_SPEED = 2;
+
+    /** From the best looking tier to the cheapest, the app starts at DEFAULT_TIER. */
+    public static final QualityTier[] TIERS = {
+            new QualityTier("quality", VIDEO_QUALITY, 0, 60, 4),
+            new QualityTier("default", VIDEO_DEFAULT, 0, 30, 4),
+            new QualityTier("reduced", VIDEO_DEFAULT, 1, 30, 0),
+            new QualityTier("low", VIDEO_SPEED, 1, 24, 0),
+            new QualityTier("minimum", VIDEO_SPEED, 2, 15, 0)
+    };
+    public static final int DEFAULT_TIER = 1;
+
+    private final String name;
+    private final int videoMode;
+    private final int minLevel;
+    private final int targetFps;
+    private final int maxSamples;
+
+    /**
+     * @param name shown in logs
+     * @param videoMode one of the VIDEO_ constants
+     * @param minLevel finest pyramid level boards are drawn from, 0 for full resolution
+     * @param targetFps frame rate asked of the camera and renderer, sets the frame budget
+     * @param maxSamples most MSAA samples the surface is created with next, whatever calibration found
+     */
+    public QualityTier(String name, int videoMode, int minLevel, int targetFps, int maxSamples) {
+        this.name = name;
+        this.videoMode = videoMode;
+        this.minLevel = minLevel;
+        this.targetFps = targetFps;
+        this.maxSamples = maxSamples;
+    }//QualityTier
+
+    public String getName() {
+        return name;
+    }
+
+    public int getVideoMode() {
+        return videoMode;
+    }
+
+    public int getMinLevel() {
+        return minLevel;
+    }
+
+    public int getTargetFps() {
+        return targetFps;
+    }
+
+    /**
+     * @return nanoseconds a frame may take at the target frame rate
+     */
+    public long getFrameBudgetNanos() {
+        return 1000000000L / targetFps;
+    }
+
+    public int getMaxSamples() {
+        return maxSamples;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + targetFps + " fps)";
+    }
+}
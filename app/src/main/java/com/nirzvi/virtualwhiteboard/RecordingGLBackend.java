@@ -0,0 +1,815 @@
+package com.nirzvi.virtualwhiteboard;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+import java.nio.Buffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * GLBackend that never touches a GPU. It tracks the bound state, counts draw calls, state changes
+ * and redundant binds, and can log every call, so render code runs headless in unit tests and benchmarks.
+ *
+ * Handles are handed out in increasing order and programs always link.
+ * Only the GLES20 constants are used, they are inlined at compile time so no Android classes are loaded.
+ */
+public class RecordingGLBackend implements GLBackend {
+
+    private static final int MAX_TEXTURE_UNITS = 32;
+    private static final int MAX_VERTEX_ATTRIBS = 16;
+
+    private final int maxVertexUniformVectors;
+
+    private boolean shadersCompile = true;
+    //every GLES2 Android device has ETC1
+    private int[] compressedFormats = {Etc1.GL_ETC1_RGB8_OES};
+    private boolean logging = false;
+    private final List<String> log = new ArrayList<>();
+
+    //timer queries, off by default like on a GLES2 context
+    private boolean timerQueries = false;
+    private long gpuFrameNanos = 0;
+    private boolean queryResultsReady = true;
+    private boolean disjoint = false;
+
+    private int nextHandle = 1;
+
+    //bound state
+    private int program = 0;
+    private int arrayBuffer = 0;
+    private int elementBuffer = 0;
+    private int activeTexture = GLES20.GL_TEXTURE0;
+    private final int[] boundTextures = new int[MAX_TEXTURE_UNITS];
+    //GL enums fit in 16 bits, arrays keep the counting free of boxing
+    private final boolean[] enabledCaps = new boolean[0x10000];
+    private final boolean[] enabledAttribs = new boolean[MAX_VERTEX_ATTRIBS];
+
+    //locations are stable per program and name, like a real driver
+    private final Map<String, Integer> locations = new HashMap<>();
+    //bytes given to every buffer, and a copy of the short indices given to element buffers
+    private final Map<Integer, Integer> bufferSizes = new HashMap<>();
+    private final Map<Integer, short[]> elementIndices = new HashMap<>();
+
+    //counters
+    private int callCount = 0;
+    private int drawCallCount = 0;
+    private int indexCount = 0;
+    private int stateChangeCount = 0;
+    private int redundantBindCount = 0;
+    private int uniformUploadCount = 0;
+    private int textureUploadCount = 0;
+    private long textureUploadBytes = 0;
+    private int maxIndex = -1;
+    private int outOfRangeDrawCount = 0;
+
+    public RecordingGLBackend() {
+        this(128);
+    }
+
+    /**
+     * @param maxVertexUniformVectors what GL_MAX_VERTEX_UNIFORM_VECTORS reports, 128 is the GLES2 minimum
+     */
+    public RecordingGLBackend(int maxVertexUniformVectors) {
+        this.maxVertexUniformVectors = maxVertexUniformVectors;
+    }
+
+    /**
+     * Makes every later shader compile fail or succeed, they succeed by default
+     */
+    public void setShadersCompile(boolean shadersCompile) {
+        this.shadersCompile = shadersCompile;
+    }
+
+    /**
+     * Sets what GL_COMPRESSED_TEXTURE_FORMATS reports, ETC1 by default
+     */
+    public void setCompressedFormats(int... compressedFormats) {
+        this.compressedFormats = compressedFormats.clone();
+    }
+
+    /**
+     * Reports a GLES3 context with GL_EXT_disjoint_timer_query, or a plain GLES2 one, which is the default
+     */
+    public void setTimerQueries(boolean timerQueries) {
+        this.timerQueries = timerQueries;
+    }
+
+    /**
+     * @param gpuFrameNanos what every time elapsed query measures
+     */
+    public void setGpuFrameNanos(long gpuFrameNanos) {
+        this.gpuFrameNanos = gpuFrameNanos;
+    }
+
+    /**
+     * Makes query results available or keeps them pending, they are available at once by default
+     */
+    public void setQueryResultsReady(boolean queryResultsReady) {
+        this.queryResultsReady = queryResultsReady;
+    }
+
+    /**
+     * Makes the next read of GL_GPU_DISJOINT_EXT report a disjoint operation, as after a clock change
+     */
+    public void setDisjoint(boolean disjoint) {
+        this.disjoint = disjoint;
+    }
+
+    /**
+     * Keeps a line of text per call, see getLog. Off by default since it allocates.
+     */
+    public void setLogging(boolean logging) {
+        this.logging = logging;
+    }
+
+    public List<String> getLog() {
+        return log;
+    }
+
+    /**
+     * Zeroes the counters and clears the log, the bound state is kept
+     */
+    public void resetCounters() {
+        log.clear();
+        callCount = 0;
+        drawCallCount = 0;
+        indexCount = 0;
+        stateChangeCount = 0;
+        redundantBindCount = 0;
+        uniformUploadCount = 0;
+        textureUploadCount = 0;
+        textureUploadBytes = 0;
+        maxIndex = -1;
+        outOfRangeDrawCount = 0;
+    }//resetCounters
+
+    public int getCallCount() {
+        return callCount;
+    }
+
+    public int getDrawCallCount() {
+        return drawCallCount;
+    }
+
+    /**
+     * @return indices submitted by every draw call together, vertices for glDrawArrays
+     */
+    public int getIndexCount() {
+        return indexCount;
+    }
+
+    /**
+     * @return binds, enables, disables and other calls that change pipeline state
+     */
+    public int getStateChangeCount() {
+        return stateChangeCount;
+    }
+
+    /**
+     * @return state changes that set what was already set
+     */
+    public int getRedundantBindCount() {
+        return redundantBindCount;
+    }
+
+    public int getUniformUploadCount() {
+        return uniformUploadCount;
+    }
+
+    public int getTextureUploadCount() {
+        return textureUploadCount;
+    }
+
+    /**
+     * @return pixel bytes passed to glTexImage2D and glTexSubImage2D, and compressed bytes to glCompressedTexImage2D
+     */
+    public long getTextureUploadBytes() {
+        return textureUploadBytes;
+    }
+
+    /**
+     * @return largest vertex index read by draws from an element buffer, -1 if there were none
+     */
+    public int getMaxIndex() {
+        return maxIndex;
+    }
+
+    /**
+     * @return draws from an element buffer that read past the end of its data
+     */
+    public int getOutOfRangeDrawCount() {
+        return outOfRangeDrawCount;
+    }
+
+    public int getCurrentProgram() {
+        return program;
+    }
+
+    public int getBoundTexture(int unit) {
+        return boundTextures[unit - GLES20.GL_TEXTURE0];
+    }
+
+    //counts a call, and says whether to log it so the arguments are only boxed while logging
+    private boolean countCall() {
+        callCount++;
+        return logging;
+    }//countCall
+
+    private void log(String name, Object... args) {
+        StringBuilder line = new StringBuilder(name).append('(');
+        for (int i = 0; i < args.length; i++) {
+            if (i > 0) {
+                line.append(", ");
+            }//if
+            line.append(args[i]);
+        }//for
+        log.add(line.append(')').toString());
+    }//log
+
+    //counts a state change, and a redundant one if nothing actually changes
+    private void stateChange(boolean changed) {
+        stateChangeCount++;
+        if (!changed) {
+            redundantBindCount++;
+        }//if
+    }//stateChange
+
+    /*******************
+     * STATE
+     *******************/
+
+    @Override
+    public void glClear(int mask) {
+        if (countCall()) {
+            log("glClear", mask);
+        }//if
+    }
+
+    @Override
+    public void glFinish() {
+        if (countCall()) {
+            log("glFinish");
+        }//if
+    }
+
+    @Override
+    public void glEnable(int cap) {
+        if (countCall()) {
+            log("glEnable", cap);
+        }//if
+        stateChange(!enabledCaps[cap & 0xFFFF]);
+        enabledCaps[cap & 0xFFFF] = true;
+    }
+
+    @Override
+    public void glDisable(int cap) {
+        if (countCall()) {
+            log("glDisable", cap);
+        }//if
+        stateChange(enabledCaps[cap & 0xFFFF]);
+        enabledCaps[cap & 0xFFFF] = false;
+    }
+
+    @Override
+    public void glFrontFace(int mode) {
+        if (countCall()) {
+            log("glFrontFace", mode);
+        }//if
+        stateChange(true);
+    }
+
+    @Override
+    public void glBlendFunc(int sfactor, int dfactor) {
+        if (countCall()) {
+            log("glBlendFunc", sfactor, dfactor);
+        }//if
+        stateChange(true);
+    }
+
+    @Override
+    public void glViewport(int x, int y, int width, int height) {
+        if (countCall()) {
+            log("glViewport", x, y, width, height);
+        }//if
+        stateChange(true);
+    }
+
+    @Override
+    public void glScissor(int x, int y, int width, int height) {
+        if (countCall()) {
+            log("glScissor", x, y, width, height);
+        }//if
+        stateChange(true);
+    }
+
+    @Override
+    public void glGetIntegerv(int pname, int[] params, int offset) {
+        if (countCall()) {
+            log("glGetIntegerv", pname);
+        }//if
+        switch (pname) {
+            case GLES20.GL_MAX_VERTEX_UNIFORM_VECTORS:
+                params[offset] = maxVertexUniformVectors;
+                break;
+            case GLES20.GL_NUM_COMPRESSED_TEXTURE_FORMATS:
+                params[offset] = compressedFormats.length;
+                break;
+            case GLES20.GL_COMPRESSED_TEXTURE_FORMATS:
+                System.arraycopy(compressedFormats, 0, params, offset, compressedFormats.length);
+                break;
+            case GpuFrameTimer.GL_GPU_DISJOINT_EXT:
+                params[offset] = disjoint ? 1 : 0;
+                disjoint = false;
+                break;
+            default:
+                params[offset] = 0;
+        }//switch
+    }
+
+    @Override
+    public String glGetString(int name) {
+        if (countCall()) {
+            log("glGetString", name);
+        }//if
+        switch (name) {
+            case GLES20.GL_VERSION:
+                return timerQueries ? "OpenGL ES 3.0 recording" : "OpenGL ES 2.0 recording";
+            case GLES20.GL_EXTENSIONS:
+                return timerQueries ? "GL_OES_compressed_ETC1_RGB8_texture " + GpuFrameTimer.EXTENSION
+                        : "GL_OES_compressed_ETC1_RGB8_texture";
+            default:
+                return "";
+        }//switch
+    }
+
+    /*******************
+     * SHADERS
+     *******************/
+
+    @Override
+    public int glCreateShader(int type) {
+        if (countCall()) {
+            log("glCreateShader", type);
+        }//if
+        return nextHandle++;
+    }
+
+    @Override
+    public void glShaderSource(int shader, String source) {
+        if (countCall()) {
+            log("glShaderSource", shader);
+        }//if
+    }
+
+    @Override
+    public void glCompileShader(int shader) {
+        if (countCall()) {
+            log("glCompileShader", shader);
+        }//if
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+        if (countCall()) {
+            log("glGetShaderiv", shader, pname);
+        }//if
+        params[offset] = shadersCompile ? GLES20.GL_TRUE : GLES20.GL_FALSE;
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int shader) {
+        if (countCall()) {
+            log("glGetShaderInfoLog", shader);
+        }//if
+        return "";
+    }
+
+    @Override
+    public void glDeleteShader(int shader) {
+        if (countCall()) {
+            log("glDeleteShader", shader);
+        }//if
+    }
+
+    @Override
+    public int glCreateProgram() {
+        if (countCall()) {
+            log("glCreateProgram");
+        }//if
+        return nextHandle++;
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader) {
+        if (countCall()) {
+            log("glAttachShader", program, shader);
+        }//if
+    }
+
+    @Override
+    public void glBindAttribLocation(int program, int index, String name) {
+        if (countCall()) {
+            log("glBindAttribLocation", program, index, name);
+        }//if
+        locations.put(program + "/" + name, index);
+    }
+
+    @Override
+    public void glLinkProgram(int program) {
+        if (countCall()) {
+            log("glLinkProgram", program);
+        }//if
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+        if (countCall()) {
+            log("glGetProgramiv", program, pname);
+        }//if
+        params[offset] = GLES20.GL_TRUE;
+    }
+
+    @Override
+    public String glGetProgramInfoLog(int program) {
+        if (countCall()) {
+            log("glGetProgramInfoLog", program);
+        }//if
+        return "";
+    }
+
+    @Override
+    public void glDeleteProgram(int program) {
+        if (countCall()) {
+            log("glDeleteProgram", program);
+        }//if
+        if (this.program == program) {
+            this.program = 0;
+        }//if
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+        if (countCall()) {
+            log("glUseProgram", program);
+        }//if
+        stateChange(this.program != program);
+        this.program = program;
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name) {
+        if (countCall()) {
+            log("glGetAttribLocation", program, name);
+        }//if
+        return locationOf(program, name);
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name) {
+        if (countCall()) {
+            log("glGetUniformLocation", program, name);
+        }//if
+        return locationOf(program, name);
+    }
+
+    private int locationOf(int program, String name) {
+        String key = program + "/" + name;
+        Integer location = locations.get(key);
+        if (location == null) {
+            location = locations.size();
+            locations.put(key, location);
+        }//if
+        return location;
+    }//locationOf
+
+    @Override
+    public void glUniform1i(int location, int x) {
+        if (countCall()) {
+            log("glUniform1i", location, x);
+        }//if
+        uniformUploadCount++;
+    }
+
+    @Override
+    public void glUniform1f(int location, float x) {
+        if (countCall()) {
+            log("glUniform1f", location, x);
+        }//if
+        uniformUploadCount++;
+    }
+
+    @Override
+    public void glUniform1fv(int location, int count, float[] v, int offset) {
+        if (countCall()) {
+            log("glUniform1fv", location, count);
+        }//if
+        uniformUploadCount++;
+    }
+
+    @Override
+    public void glUniform4fv(int location, int count, float[] v, int offset) {
+        if (countCall()) {
+            log("glUniform4fv", location, count);
+        }//if
+        uniformUploadCount++;
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+        if (countCall()) {
+            log("glUniformMatrix4fv", location, count);
+        }//if
+        uniformUploadCount++;
+    }
+
+    /*******************
+     * BUFFERS AND VERTICES
+     *******************/
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset) {
+        if (countCall()) {
+            log("glGenBuffers", n);
+        }//if
+        for (int i = 0; i < n; i++) {
+            buffers[offset + i] = nextHandle++;
+        }//for
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset) {
+        if (countCall()) {
+            log("glDeleteBuffers", n);
+        }//if
+        for (int i = 0; i < n; i++) {
+            if (arrayBuffer == buffers[offset + i]) {
+                arrayBuffer = 0;
+            }//if
+            if (elementBuffer == buffers[offset + i]) {
+                elementBuffer = 0;
+            }//if
+        }//for
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        if (countCall()) {
+            log("glBindBuffer", target, buffer);
+        }//if
+        if (target == GLES20.GL_ELEMENT_ARRAY_BUFFER) {
+            stateChange(elementBuffer != buffer);
+            elementBuffer = buffer;
+        } else {
+            stateChange(arrayBuffer != buffer);
+            arrayBuffer = buffer;
+        }//else
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage) {
+        if (countCall()) {
+            log("glBufferData", target, size, usage);
+        }//if
+        int buffer = target == GLES20.GL_ELEMENT_ARRAY_BUFFER ? elementBuffer : arrayBuffer;
+        bufferSizes.put(buffer, size);
+        if (target == GLES20.GL_ELEMENT_ARRAY_BUFFER && data instanceof ShortBuffer) {
+            ShortBuffer shorts = ((ShortBuffer) data).duplicate();
+            shorts.position(0);
+            short[] indices = new short[Math.min(shorts.remaining(), size / 2)];
+            shorts.get(indices);
+            elementIndices.put(buffer, indices);
+        }//if
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+        if (countCall()) {
+            log("glEnableVertexAttribArray", index);
+        }//if
+        stateChange(!enabledAttribs[index]);
+        enabledAttribs[index] = true;
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index) {
+        if (countCall()) {
+            log("glDisableVertexAttribArray", index);
+        }//if
+        stateChange(enabledAttribs[index]);
+        enabledAttribs[index] = false;
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer ptr) {
+        if (countCall()) {
+            log("glVertexAttribPointer", index, size, type, normalized, stride, "client");
+        }//if
+        stateChange(true);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+        if (countCall()) {
+            log("glVertexAttribPointer", index, size, type, normalized, stride, offset);
+        }//if
+        stateChange(true);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, Buffer indices) {
+        if (countCall()) {
+            log("glDrawElements", mode, count, type, "client");
+        }//if
+        drawCallCount++;
+        indexCount += count;
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset) {
+        if (countCall()) {
+            log("glDrawElements", mode, count, type, offset);
+        }//if
+        drawCallCount++;
+        indexCount += count;
+        checkIndices(count, type, offset);
+    }
+
+    //reads the indices a draw uses from the bound element buffer, as far as its data is known
+    private void checkIndices(int count, int type, int offset) {
+        Integer size = bufferSizes.get(elementBuffer);
+        int indexBytes = type == GLES20.GL_UNSIGNED_SHORT ? 2 : 1;
+        if (size == null || offset + count * indexBytes > size) {
+            outOfRangeDrawCount++;
+            return;
+        }//if
+        short[] indices = elementIndices.get(elementBuffer);
+        if (indices == null || type != GLES20.GL_UNSIGNED_SHORT) {
+            return;
+        }//if
+        for (int i = offset / 2; i < offset / 2 + count; i++) {
+            maxIndex = Math.max(maxIndex, indices[i] & 0xFFFF);
+        }//for
+    }//checkIndices
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count) {
+        if (countCall()) {
+            log("glDrawArrays", mode, first, count);
+        }//if
+        drawCallCount++;
+        indexCount += count;
+    }
+
+    /*******************
+     * TEXTURES
+     *******************/
+
+    @Override
+    public void glGenTextures(int n, int[] textures, int offset) {
+        if (countCall()) {
+            log("glGenTextures", n);
+        }//if
+        for (int i = 0; i < n; i++) {
+            textures[offset + i] = nextHandle++;
+        }//for
+    }
+
+    @Override
+    public void glDeleteTextures(int n, int[] textures, int offset) {
+        if (countCall()) {
+            log("glDeleteTextures", n);
+        }//if
+        for (int i = 0; i < n; i++) {
+            for (int unit = 0; unit < MAX_TEXTURE_UNITS; unit++) {
+                if (boundTextures[unit] == textures[offset + i]) {
+                    boundTextures[unit] = 0;
+                }//if
+            }//for
+        }//for
+    }
+
+    @Override
+    public void glActiveTexture(int texture) {
+        if (countCall()) {
+            log("glActiveTexture", texture);
+        }//if
+        stateChange(activeTexture != texture);
+        activeTexture = texture;
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture) {
+        if (countCall()) {
+            log("glBindTexture", target, texture);
+        }//if
+        stateChange(getBoundTexture(activeTexture) != texture);
+        boundTextures[activeTexture - GLES20.GL_TEXTURE0] = texture;
+    }
+
+    @Override
+    public void glTexParameteri(int target, int pname, int param) {
+        if (countCall()) {
+            log("glTexParameteri", target, pname, param);
+        }//if
+    }
+
+    @Override
+    public void glTexImage2D(int target, int level, int internalformat, int width, int height, int border,
+                             int format, int type, Buffer pixels) {
+        if (countCall()) {
+            log("glTexImage2D", target, level, internalformat, width, height, format, type);
+        }//if
+        if (pixels != null) {
+            textureUploadCount++;
+            textureUploadBytes += (long) width * height * bytesPerPixel(format, type);
+        }//if
+    }
+
+    @Override
+    public void glTexSubImage2D(int target, int level, int xoffset, int yoffset, int width, int height,
+                                int format, int type, Buffer pixels) {
+        if (countCall()) {
+            log("glTexSubImage2D", target, level, xoffset, yoffset, width, height, format, type);
+        }//if
+        textureUploadCount++;
+        textureUploadBytes += (long) width * height * bytesPerPixel(format, type);
+    }
+
+    @Override
+    public void glCompressedTexImage2D(int target, int level, int internalformat, int width, int height, int border,
+                                       int imageSize, Buffer data) {
+        if (countCall()) {
+            log("glCompressedTexImage2D", target, level, internalformat, width, height, imageSize);
+        }//if
+        textureUploadCount++;
+        textureUploadBytes += imageSize;
+    }
+
+    /*******************
+     * QUERIES
+     *******************/
+
+    @Override
+    public void glGenQueries(int n, int[] ids, int offset) {
+        if (countCall()) {
+            log("glGenQueries", n);
+        }//if
+        for (int i = 0; i < n; i++) {
+            ids[offset + i] = nextHandle++;
+        }//for
+    }
+
+    @Override
+    public void glDeleteQueries(int n, int[] ids, int offset) {
+        if (countCall()) {
+            log("glDeleteQueries", n);
+        }//if
+    }
+
+    @Override
+    public void glBeginQuery(int target, int id) {
+        if (countCall()) {
+            log("glBeginQuery", target, id);
+        }//if
+    }
+
+    @Override
+    public void glEndQuery(int target) {
+        if (countCall()) {
+            log("glEndQuery", target);
+        }//if
+    }
+
+    @Override
+    public void glGetQueryObjectuiv(int id, int pname, int[] params, int offset) {
+        if (countCall()) {
+            log("glGetQueryObjectuiv", id, pname);
+        }//if
+        if (pname == GLES30.GL_QUERY_RESULT_AVAILABLE) {
+            params[offset] = queryResultsReady ? 1 : 0;
+        } else {
+            params[offset] = (int) gpuFrameNanos;
+        }//else
+    }
+
+    private static int bytesPerPixel(int format, int type) {
+        if (type != GLES20.GL_UNSIGNED_BYTE) {
+            //the packed 16 bit types
+            return 2;
+        }//if
+        switch (format) {
+            case GLES20.GL_RGBA:
+                return 4;
+            case GLES20.GL_RGB:
+                return 3;
+            case GLES20.GL_LUMINANCE_ALPHA:
+                return 2;
+            default:
+                return 1;
+        }//switch
+    }//bytesPerPixel
+}
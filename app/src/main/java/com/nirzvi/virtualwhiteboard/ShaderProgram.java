@@ -0,0 +1,59 @@
+package com.nirzvi.virtualwhiteboard;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A linked program and its attribute and uniform locations.
+ * Locations are looked up once and cached, so callers can ask for them by name at init time.
+ */
+public class ShaderProgram {
+
+    private final GLBackend gl;
+    private final int handle;
+
+    private final Map<String, Integer> attribLocations = new HashMap<>();
+    private final Map<String, Integer> uniformLocations = new HashMap<>();
+
+    ShaderProgram(GLBackend gl, int handle) {
+        this.gl = gl;
+        this.handle = handle;
+    }
+
+    public int getHandle() {
+        return handle;
+    }
+
+    /**
+     * Makes this the current program
+     */
+    public void use() {
+        gl.glUseProgram(handle);
+    }
+
+    /**
+     * @param name attribute in the vertex shader
+     * @return its location, -1 if the shader does not use it
+     */
+    public int getAttribLocation(String name) {
+        Integer location = attribLocations.get(name);
+        if (location == null) {
+            location = gl.glGetAttribLocation(handle, name);
+            attribLocations.put(name, location);
+        }//if
+        return location;
+    }//getAttribLocation
+
+    /**
+     * @param name uniform in either shader
+     * @return its location, -1 if the shaders do not use it
+     */
+    public int getUniformLocation(String name) {
+        Integer location = uniformLocations.get(name);
+        if (location == null) {
+            location = gl.glGetUniformLocation(handle, name);
+            uniformLocations.put(name, location);
+        }//if
+        return location;
+    }//getUniformLocation
+}
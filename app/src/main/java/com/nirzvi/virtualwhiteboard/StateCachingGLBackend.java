@@ -0,0 +1,434 @@
+package com.nirzvi.virtualwhiteboard;
+
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+import java.util.Arrays;
+
+/**
+ * Wraps another GLBackend and drops binds and enables that would set what is already set.
+ * It tracks the current program, array and element buffers, active texture unit, bound textures,
+ * capabilities and enabled vertex attributes.
+ *
+ * Anything that changes GL state behind its back, like Vuforia updating the video background texture,
+ * must be followed by invalidate().
+ */
+public class StateCachingGLBackend implements GLBackend {
+
+    private static final int UNKNOWN = -1;
+
+    private static final int MAX_TEXTURE_UNITS = 32;
+    private static final int MAX_VERTEX_ATTRIBS = 16;
+
+    //capability states, GL enums fit in 16 bits
+    private static final byte CAP_UNKNOWN = 0;
+    private static final byte CAP_ENABLED = 1;
+    private static final byte CAP_DISABLED = 2;
+
+    private final GLBackend gl;
+
+    private int program;
+    private int arrayBuffer;
+    private int elementBuffer;
+    private int activeTexture;
+    private final int[] boundTextures = new int[MAX_TEXTURE_UNITS];
+    private final byte[] caps = new byte[0x10000];
+    private final byte[] attribs = new byte[MAX_VERTEX_ATTRIBS];
+
+    private int skippedCount = 0;
+
+    public StateCachingGLBackend(GLBackend gl) {
+        this.gl = gl;
+        invalidate();
+    }
+
+    /**
+     * Forgets all cached state, so the next call of each kind goes through
+     */
+    public void invalidate() {
+        program = UNKNOWN;
+        arrayBuffer = UNKNOWN;
+        elementBuffer = UNKNOWN;
+        activeTexture = UNKNOWN;
+        Arrays.fill(boundTextures, UNKNOWN);
+        Arrays.fill(caps, CAP_UNKNOWN);
+        Arrays.fill(attribs, CAP_UNKNOWN);
+    }//invalidate
+
+    /**
+     * Forgets the active texture unit and bound textures only, for code that just binds textures
+     */
+    public void invalidateTextures() {
+        activeTexture = UNKNOWN;
+        Arrays.fill(boundTextures, UNKNOWN);
+    }//invalidateTextures
+
+    /**
+     * @return how many calls were dropped as redundant
+     */
+    public int getSkippedCount() {
+        return skippedCount;
+    }
+
+    public void resetSkippedCount() {
+        skippedCount = 0;
+    }
+
+    /*******************
+     * CACHED STATE
+     *******************/
+
+    @Override
+    public void glEnable(int cap) {
+        if (caps[cap & 0xFFFF] == CAP_ENABLED) {
+            skippedCount++;
+            return;
+        }//if
+        caps[cap & 0xFFFF] = CAP_ENABLED;
+        gl.glEnable(cap);
+    }
+
+    @Override
+    public void glDisable(int cap) {
+        if (caps[cap & 0xFFFF] == CAP_DISABLED) {
+            skippedCount++;
+            return;
+        }//if
+        caps[cap & 0xFFFF] = CAP_DISABLED;
+        gl.glDisable(cap);
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+        if (this.program == program) {
+            skippedCount++;
+            return;
+        }//if
+        this.program = program;
+        gl.glUseProgram(program);
+    }
+
+    @Override
+    public void glDeleteProgram(int program) {
+        if (this.program == program) {
+            this.program = UNKNOWN;
+        }//if
+        gl.glDeleteProgram(program);
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        if (target == GLES20.GL_ELEMENT_ARRAY_BUFFER) {
+            if (elementBuffer == buffer) {
+                skippedCount++;
+                return;
+            }//if
+            elementBuffer = buffer;
+        } else {
+            if (arrayBuffer == buffer) {
+                skippedCount++;
+                return;
+            }//if
+            arrayBuffer = buffer;
+        }//else
+        gl.glBindBuffer(target, buffer);
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset) {
+        //deleting a bound buffer unbinds it
+        for (int i = 0; i < n; i++) {
+            if (arrayBuffer == buffers[offset + i]) {
+                arrayBuffer = 0;
+            }//if
+            if (elementBuffer == buffers[offset + i]) {
+                elementBuffer = 0;
+            }//if
+        }//for
+        gl.glDeleteBuffers(n, buffers, offset);
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+        if (index >= 0 && index < MAX_VERTEX_ATTRIBS) {
+            if (attribs[index] == CAP_ENABLED) {
+                skippedCount++;
+                return;
+            }//if
+            attribs[index] = CAP_ENABLED;
+        }//if
+        gl.glEnableVertexAttribArray(index);
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index) {
+        if (index >= 0 && index < MAX_VERTEX_ATTRIBS) {
+            if (attribs[index] == CAP_DISABLED) {
+                skippedCount++;
+                return;
+            }//if
+            attribs[index] = CAP_DISABLED;
+        }//if
+        gl.glDisableVertexAttribArray(index);
+    }
+
+    @Override
+    public void glActiveTexture(int texture) {
+        if (activeTexture == texture) {
+            skippedCount++;
+            return;
+        }//if
+        activeTexture = texture;
+        gl.glActiveTexture(texture);
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture) {
+        //only 2D textures are cached, and only once the active unit is known
+        int unit = activeTexture - GLES20.GL_TEXTURE0;
+        if (target == GLES20.GL_TEXTURE_2D && activeTexture != UNKNOWN && unit < MAX_TEXTURE_UNITS) {
+            if (boundTextures[unit] == texture) {
+                skippedCount++;
+                return;
+            }//if
+            boundTextures[unit] = texture;
+        }//if
+        gl.glBindTexture(target, texture);
+    }
+
+    @Override
+    public void glDeleteTextures(int n, int[] textures, int offset) {
+        for (int i = 0; i < n; i++) {
+            for (int unit = 0; unit < MAX_TEXTURE_UNITS; unit++) {
+                if (boundTextures[unit] == textures[offset + i]) {
+                    boundTextures[unit] = 0;
+                }//if
+            }//for
+        }//for
+        gl.glDeleteTextures(n, textures, offset);
+    }
+
+    /*******************
+     * PASSED THROUGH
+     *******************/
+
+    @Override
+    public void glClear(int mask) {
+        gl.glClear(mask);
+    }
+
+    @Override
+    public void glFinish() {
+        gl.glFinish();
+    }
+
+    @Override
+    public void glFrontFace(int mode) {
+        gl.glFrontFace(mode);
+    }
+
+    @Override
+    public void glBlendFunc(int sfactor, int dfactor) {
+        gl.glBlendFunc(sfactor, dfactor);
+    }
+
+    @Override
+    public void glViewport(int x, int y, int width, int height) {
+        gl.glViewport(x, y, width, height);
+    }
+
+    @Override
+    public void glScissor(int x, int y, int width, int height) {
+        gl.glScissor(x, y, width, height);
+    }
+
+    @Override
+    public void glGetIntegerv(int pname, int[] params, int offset) {
+        gl.glGetIntegerv(pname, params, offset);
+    }
+
+    @Override
+    public String glGetString(int name) {
+        return gl.glGetString(name);
+    }
+
+    @Override
+    public int glCreateShader(int type) {
+        return gl.glCreateShader(type);
+    }
+
+    @Override
+    public void glShaderSource(int shader, String source) {
+        gl.glShaderSource(shader, source);
+    }
+
+    @Override
+    public void glCompileShader(int shader) {
+        gl.glCompileShader(shader);
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+        gl.glGetShaderiv(shader, pname, params, offset);
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int shader) {
+        return gl.glGetShaderInfoLog(shader);
+    }
+
+    @Override
+    public void glDeleteShader(int shader) {
+        gl.glDeleteShader(shader);
+    }
+
+    @Override
+    public int glCreateProgram() {
+        return gl.glCreateProgram();
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader) {
+        gl.glAttachShader(program, shader);
+    }
+
+    @Override
+    public void glBindAttribLocation(int program, int index, String name) {
+        gl.glBindAttribLocation(program, index, name);
+    }
+
+    @Override
+    public void glLinkProgram(int program) {
+        gl.glLinkProgram(program);
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+        gl.glGetProgramiv(program, pname, params, offset);
+    }
+
+    @Override
+    public String glGetProgramInfoLog(int program) {
+        return gl.glGetProgramInfoLog(program);
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name) {
+        return gl.glGetAttribLocation(program, name);
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name) {
+        return gl.glGetUniformLocation(program, name);
+    }
+
+    @Override
+    public void glUniform1i(int location, int x) {
+        gl.glUniform1i(location, x);
+    }
+
+    @Override
+    public void glUniform1f(int location, float x) {
+        gl.glUniform1f(location, x);
+    }
+
+    @Override
+    public void glUniform1fv(int location, int count, float[] v, int offset) {
+        gl.glUniform1fv(location, count, v, offset);
+    }
+
+    @Override
+    public void glUniform4fv(int location, int count, float[] v, int offset) {
+        gl.glUniform4fv(location, count, v, offset);
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+        gl.glUniformMatrix4fv(location, count, transpose, value, offset);
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset) {
+        gl.glGenBuffers(n, buffers, offset);
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage) {
+        gl.glBufferData(target, size, data, usage);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer ptr) {
+        gl.glVertexAttribPointer(index, size, type, normalized, stride, ptr);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+        gl.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, Buffer indices) {
+        gl.glDrawElements(mode, count, type, indices);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset) {
+        gl.glDrawElements(mode, count, type, offset);
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count) {
+        gl.glDrawArrays(mode, first, count);
+    }
+
+    @Override
+    public void glGenTextures(int n, int[] textures, int offset) {
+        gl.glGenTextures(n, textures, offset);
+    }
+
+    @Override
+    public void glTexParameteri(int target, int pname, int param) {
+        gl.glTexParameteri(target, pname, param);
+    }
+
+    @Override
+    public void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format, int type, Buffer pixels) {
+        gl.glTexImage2D(target, level, internalformat, width, height, border, format, type, pixels);
+    }
+
+    @Override
+    public void glTexSubImage2D(int target, int level, int xoffset, int yoffset, int width, int height, int format, int type, Buffer pixels) {
+        gl.glTexSubImage2D(target, level, xoffset, yoffset, width, height, format, type, pixels);
+    }
+
+    @Override
+    public void glCompressedTexImage2D(int target, int level, int internalformat, int width, int height, int border, int imageSize, Buffer data) {
+        gl.glCompressedTexImage2D(target, level, internalformat, width, height, border, imageSize, data);
+    }
+
+    @Override
+    public void glGenQueries(int n, int[] ids, int offset) {
+        gl.glGenQueries(n, ids, offset);
+    }
+
+    @Override
+    public void glDeleteQueries(int n, int[] ids, int offset) {
+        gl.glDeleteQueries(n, ids, offset);
+    }
+
+    @Override
+    public void glBeginQuery(int target, int id) {
+        gl.glBeginQuery(target, id);
+    }
+
+    @Override
+    public void glEndQuery(int target) {
+        gl.glEndQuery(target);
+    }
+
+    @Override
+    public void glGetQueryObjectuiv(int id, int pname, int[] params, int offset) {
+        gl.glGetQueryObjectuiv(id, pname, params, offset);
+    }
+}
@@ -0,0 +1,231 @@
+package com.nirzvi.virtualwhiteboard;
+
+import java.util.Arrays;
+
+/**
+ * Compact binary form of strokes, for saving a board's ink or sending it elsewhere.
+ *
+ * Coordinates are quantized to an eighth of a pixel and pressure to 255 steps, then every point is
+ * written as the difference from the previous one, zigzag and varint encoded. Neighbouring points of
+ * a stroke are close, so most differences fit in a byte, against the 12 bytes of three floats.
+ *
+ * Layout, all varints unless noted:
+ * <pre>
+ *   version, stroke count, then per stroke:
+ *   point count, color (4 bytes, big endian), width in 16ths of a pixel, then per point dx, dy, dpressure
+ * </pre>
+ *
+ * Not thread safe, the encoder reuses its buffer.
+ */
+public class StrokeCodec {
+
+    public static final int VERSION = 1;
+    /** Quantization steps per pixel. */
+    public static final int POSITION_STEPS = 8;
+    public static final int PRESSURE_STEPS = 255;
+    public static final int WIDTH_STEPS = 16;
+
+    private byte[] buffer = new byte[1024];
+    private int length = 0;
+
+    /**
+     * @return encoded bytes, valid up to getLength()
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, length);
+    }
+
+    public void reset() {
+        length = 0;
+    }
+
+    /*******************
+     * ENCODING
+     *******************/
+
+    /**
+     * Encodes every live stroke of a store, replacing what was encoded before
+     * @return number of bytes written
+     */
+    public int encode(StrokeStore store) {
+        reset();
+        writeVarint(VERSION);
+        writeVarint(store.getLiveStrokeCount());
+
+        float[] points = store.getPoints();
+        for (int id = 0; id < store.getStrokeCount(); id++) {
+            if (!store.isErased(id)) {
+                encodeStroke(points, store.getStart(id) * StrokeStore.FLOATS_PER_POINT, store.getLength(id),
+                        store.getColor(id), store.getStrokeWidth(id));
+            }//if
+        }//for
+        return length;
+    }//encode
+
+    /**
+     * Appends one stroke, without the header encode() writes
+     * @param points StrokeStore.FLOATS_PER_POINT floats per point
+     */
+    public void encodeStroke(float[] points, int offset, int numPoints, int color, float width) {
+        // Room for the longest varints, so the loop below needs no checks
+        ensureCapacity(length + 5 + 4 + 5 + numPoints * 3 * 5);
+        int n = putVarint(buffer, length, numPoints);
+        buffer[n++] = (byte) (color >>> 24);
+        buffer[n++] = (byte) (color >>> 16);
+        buffer[n++] = (byte) (color >>> 8);
+        buffer[n++] = (byte) color;
+        n = putVarint(buffer, n, Math.round(width * WIDTH_STEPS));
+
+        int lastX = 0;
+        int lastY = 0;
+        int lastPressure = 0;
+        for (int i = 0; i < numPoints; i++) {
+            int p = offset + i * StrokeStore.FLOATS_PER_POINT;
+            int x = Math.round(points[p] * POSITION_STEPS);
+            int y = Math.round(points[p + 1] * POSITION_STEPS);
+            int pressure = Math.round(points[p + 2] * PRESSURE_STEPS);
+
+            // Differences of the quantized values, so rounding never adds up along the stroke
+            n = putVarint(buffer, n, zigzag(x - lastX));
+            n = putVarint(buffer, n, zigzag(y - lastY));
+            n = putVarint(buffer, n, zigzag(pressure - lastPressure));
+            lastX = x;
+            lastY = y;
+            lastPressure = pressure;
+        }//for
+        length = n;
+    }//encodeStroke
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+        }//if
+    }//ensureCapacity
+
+    private void writeVarint(int value) {
+        ensureCapacity(length + 5);
+        length = putVarint(buffer, length, value);
+    }
+
+    //writes value at offset, returns the offset after it
+    private static int putVarint(byte[] buffer, int offset, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }//while
+        buffer[offset++] = (byte) value;
+        return offset;
+    }//putVarint
+
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /*******************
+     * DECODING
+     *******************/
+
+    /**
+     * Adds the strokes written by encode() to a store. The whole payload is checked first, bad data
+     * leaves the store as it was
+     * @return number of strokes added
+     * @throws IllegalArgumentException if the data is truncated, malformed or of another version
+     */
+    public static int decode(byte[] data, int offset, int length, StrokeStore store) {
+        Reader reader = new Reader(data, offset, offset + length);
+        int strokes = readHeader(reader);
+        for (int s = 0; s < strokes; s++) {
+            int numPoints = reader.readVarint();
+            if (numPoints < 0) {
+                throw new IllegalArgumentException("Malformed point count in stroke data");
+            }//if
+            reader.skip(4);
+            reader.readVarint();
+            for (int i = 0; i < numPoints; i++) {
+                reader.readVarint();
+                reader.readVarint();
+                reader.readVarint();
+            }//for
+        }//for
+
+        reader = new Reader(data, offset, offset + length);
+        readHeader(reader);
+        for (int s = 0; s < strokes; s++) {
+            int numPoints = reader.readVarint();
+            int color = (reader.readByte() << 24) | (reader.readByte() << 16) | (reader.readByte() << 8) | reader.readByte();
+            float width = reader.readVarint() / (float) WIDTH_STEPS;
+
+            store.beginStroke(color, width);
+            int x = 0;
+            int y = 0;
+            int pressure = 0;
+            for (int i = 0; i < numPoints; i++) {
+                x += unzigzag(reader.readVarint());
+                y += unzigzag(reader.readVarint());
+                pressure += unzigzag(reader.readVarint());
+                store.addPoint(x / (float) POSITION_STEPS, y / (float) POSITION_STEPS, pressure / (float) PRESSURE_STEPS);
+            }//for
+            store.endStroke();
+        }//for
+        return strokes;
+    }//decode
+
+    //checks the version, returns the stroke count
+    private static int readHeader(Reader reader) {
+        int version = reader.readVarint();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unknown stroke data version " + version);
+        }//if
+        return reader.readVarint();
+    }//readHeader
+
+    private static class Reader {
+        private final byte[] data;
+        private final int end;
+        private int position;
+
+        Reader(byte[] data, int position, int end) {
+            this.data = data;
+            this.position = position;
+            this.end = end;
+        }
+
+        int readByte() {
+            if (position >= end) {
+                throw new IllegalArgumentException("Truncated stroke data");
+            }//if
+            return data[position++] & 0xFF;
+        }//readByte
+
+        void skip(int bytes) {
+            if (bytes > end - position) {
+                throw new IllegalArgumentException("Truncated stroke data");
+            }//if
+            position += bytes;
+        }//skip
+
+        int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }//if
+            }//for
+            throw new IllegalArgumentException("Malformed varint in stroke data");
+        }//readVarint
+    }
+}
@@ -0,0 +1,131 @@
+package com.nirzvi.virtualwhiteboard;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid over the board that finds strokes by their bounding boxes.
+ *
+ * Every cell lists the strokes whose bounds overlap it, so a query only looks at the cells
+ * under its rectangle. A stroke spanning several cells is listed in each, queries report it once.
+ * Ink is spread fairly evenly over a board of known size, which suits a fixed grid better than a tree.
+ */
+public class StrokeGrid {
+
+    private static final int INITIAL_CELL_CAPACITY = 4;
+
+    private final float cellSize;
+    private final int cols;
+    private final int rows;
+
+    private final int[][] cells;
+    private final int[] cellCounts;
+
+    //query number that last reported each stroke, so strokes in several cells come out once
+    private int[] stamps = new int[0];
+    private int query = 0;
+
+    /**
+     * @param width width of the area covered, anything outside is clamped to the edge cells
+     * @param height height of the area covered
+     * @param cellSize side of a cell
+     */
+    public StrokeGrid(float width, float height, float cellSize) {
+        this.cellSize = cellSize;
+        cols = Math.max(1, (int) Math.ceil(width / cellSize));
+        rows = Math.max(1, (int) Math.ceil(height / cellSize));
+        cells = new int[cols * rows][];
+        cellCounts = new int[cols * rows];
+    }//StrokeGrid
+
+    public int getCellCount() {
+        return cells.length;
+    }
+
+    private int col(float x) {
+        return Math.min(cols - 1, Math.max(0, (int) (x / cellSize)));
+    }
+
+    private int row(float y) {
+        return Math.min(rows - 1, Math.max(0, (int) (y / cellSize)));
+    }
+
+    /**
+     * Lists a stroke in every cell its bounds overlap
+     */
+    public void insert(int id, float minX, float minY, float maxX, float maxY) {
+        if (id >= stamps.length) {
+            stamps = Arrays.copyOf(stamps, Math.max(id + 1, stamps.length * 2));
+        }//if
+
+        for (int r = row(minY); r <= row(maxY); r++) {
+            for (int c = col(minX); c <= col(maxX); c++) {
+                int cell = r * cols + c;
+                if (cells[cell] == null) {
+                    cells[cell] = new int[INITIAL_CELL_CAPACITY];
+                } else if (cellCounts[cell] == cells[cell].length) {
+                    cells[cell] = Arrays.copyOf(cells[cell], cellCounts[cell] * 2);
+                }//else if
+                cells[cell][cellCounts[cell]++] = id;
+            }//for
+        }//for
+    }//insert
+
+    /**
+     * Removes a stroke, with the same bounds it was inserted with
+     */
+    public void remove(int id, float minX, float minY, float maxX, float maxY) {
+        for (int r = row(minY); r <= row(maxY); r++) {
+            for (int c = col(minX); c <= col(maxX); c++) {
+                int cell = r * cols + c;
+                int[] list = cells[cell];
+                for (int i = 0; i < cellCounts[cell]; i++) {
+                    if (list[i] == id) {
+                        //order within a cell does not matter
+                        list[i] = list[--cellCounts[cell]];
+                        break;
+                    }//if
+                }//for
+            }//for
+        }//for
+    }//remove
+
+    /**
+     * Finds the strokes whose bounds may overlap a rectangle, in no particular order
+     * @param out receives the ids, up to its length
+     * @return number of strokes found, may be more than out holds
+     */
+    public int query(float minX, float minY, float maxX, float maxY, int[] out) {
+        query++;
+        if (query == 0) {
+            //wrapped around, old stamps could match again
+            Arrays.fill(stamps, 0);
+            query = 1;
+        }//if
+
+        int found = 0;
+        for (int r = row(minY); r <= row(maxY); r++) {
+            for (int c = col(minX); c <= col(maxX); c++) {
+                int cell = r * cols + c;
+                int[] list = cells[cell];
+                for (int i = 0; i < cellCounts[cell]; i++) {
+                    int id = list[i];
+                    if (stamps[id] != query) {
+                        stamps[id] = query;
+                        if (found < out.length) {
+                            out[found] = id;
+                        }//if
+                        found++;
+                    }//if
+                }//for
+            }//for
+        }//for
+        return found;
+    }//query
+
+    /**
+     * Empties every cell
+     */
+    public void clear() {
+        Arrays.fill(cellCounts, 0);
+    }
+}
@@ -0,0 +1,130 @@
+package com.nirzvi.virtualwhiteboard;
+
+import java.util.Arrays;
+
+/**
+ * Draws strokes from a StrokeStore onto a TiledBoard with anti-aliased round caps.
+ *
+ * A stroke is drawn one tile-sized block at a time: the coverage of every segment near the block is
+ * combined with max, so joints do not darken, and the block is blended over the board in one go.
+ * Memory use does not depend on the stroke's size, and blocks the stroke misses are never touched.
+ * Not thread safe, keep one per thread.
+ */
+public class StrokeRasterizer {
+
+    private static final int BLOCK = TiledBoard.TILE_SIZE;
+
+    //coverage of the current block, 0 to 255
+    private final int[] coverage = new int[BLOCK * BLOCK];
+    private final int[] pixels = new int[BLOCK * BLOCK];
+
+    /**
+     * Draws a stroke, only inside a clip rectangle
+     * @param clipX left edge of the clip, in board pixels
+     * @param clipY top edge of the clip
+     * @param clipW width of the clip
+     * @param clipH height of the clip
+     */
+    public void draw(TiledBoard board, StrokeStore strokes, int id, int clipX, int clipY, int clipW, int clipH) {
+        if (strokes.getLength(id) == 0) {
+            return;
+        }//if
+
+        int left = Math.max(Math.max(0, clipX), (int) Math.floor(strokes.getMinX(id)));
+        int top = Math.max(Math.max(0, clipY), (int) Math.floor(strokes.getMinY(id)));
+        int right = Math.min(Math.min(board.getWidth(), clipX + clipW), (int) Math.ceil(strokes.getMaxX(id)) + 1);
+        int bottom = Math.min(Math.min(board.getHeight(), clipY + clipH), (int) Math.ceil(strokes.getMaxY(id)) + 1);
+
+        // Blocks line up with the board's tiles, so each block writes to a single tile
+        for (int by = top / BLOCK * BLOCK; by < bottom; by += BLOCK) {
+            for (int bx = left / BLOCK * BLOCK; bx < right; bx += BLOCK) {
+                int x0 = Math.max(left, bx);
+                int y0 = Math.max(top, by);
+                int x1 = Math.min(right, bx + BLOCK);
+                int y1 = Math.min(bottom, by + BLOCK);
+                if (x0 < x1 && y0 < y1) {
+                    drawBlock(board, strokes, id, x0, y0, x1 - x0, y1 - y0);
+                }//if
+            }//for
+        }//for
+    }//draw
+
+    /**
+     * Draws a whole stroke
+     */
+    public void draw(TiledBoard board, StrokeStore strokes, int id) {
+        draw(board, strokes, id, 0, 0, board.getWidth(), board.getHeight());
+    }
+
+    private void drawBlock(TiledBoard board, StrokeStore strokes, int id, int x, int y, int w, int h) {
+        Arrays.fill(coverage, 0, w * h, 0);
+
+        float[] points = strokes.getPoints();
+        float halfWidth = strokes.getStrokeWidth(id) * 0.5f;
+        int first = strokes.getStart(id) * StrokeStore.FLOATS_PER_POINT;
+        int last = first + (strokes.getLength(id) - 1) * StrokeStore.FLOATS_PER_POINT;
+
+        boolean covered = false;
+        // A single point is a segment of length zero, a dot
+        for (int p = first; p == first || p < last; p += StrokeStore.FLOATS_PER_POINT) {
+            int q = p == last ? p : p + StrokeStore.FLOATS_PER_POINT;
+            covered |= coverSegment(x, y, w, h,
+                    points[p], points[p + 1], halfWidth * points[p + 2],
+                    points[q], points[q + 1], halfWidth * points[q + 2]);
+        }//for
+        if (!covered) {
+            return;
+        }//if
+
+        int color = strokes.getColor(id);
+        int alpha = color >>> 24;
+        int rgb = color & 0xFFFFFF;
+        for (int i = 0; i < w * h; i++) {
+            pixels[i] = ((coverage[i] * alpha / 255) << 24) | rgb;
+        }//for
+        board.drawPixels(pixels, 0, w, x, y, w, h);
+    }//drawBlock
+
+    //adds the coverage of one segment, with its radius interpolated between the ends
+    private boolean coverSegment(int x, int y, int w, int h, float ax, float ay, float ar, float bx, float by, float br) {
+        float reach = Math.max(ar, br) + 1;
+        int c0 = Math.max(x, (int) Math.floor(Math.min(ax, bx) - reach));
+        int c1 = Math.min(x + w, (int) Math.ceil(Math.max(ax, bx) + reach));
+        int r0 = Math.max(y, (int) Math.floor(Math.min(ay, by) - reach));
+        int r1 = Math.min(y + h, (int) Math.ceil(Math.max(ay, by) + reach));
+        if (c0 >= c1 || r0 >= r1) {
+            return false;
+        }//if
+
+        float dx = bx - ax;
+        float dy = by - ay;
+        float lengthSq = dx * dx + dy * dy;
+        boolean covered = false;
+
+        for (int row = r0; row < r1; row++) {
+            float py = row + 0.5f;
+            int i = (row - y) * w + (c0 - x);
+            for (int col = c0; col < c1; col++, i++) {
+                float px = col + 0.5f;
+
+                float t = lengthSq == 0 ? 0 : ((px - ax) * dx + (py - ay) * dy) / lengthSq;
+                t = Math.max(0, Math.min(1, t));
+                float ex = px - (ax + t * dx);
+                float ey = py - (ay + t * dy);
+                float distance = (float) Math.sqrt(ex * ex + ey * ey);
+
+                // One pixel wide ramp at the edge, at least half a pixel wide so thin lines stay visible
+                float radius = Math.max(0.5f, ar + t * (br - ar));
+                float cover = radius + 0.5f - distance;
+                if (cover > 0) {
+                    int value = cover >= 1 ? 255 : (int) (cover * 255);
+                    if (value > coverage[i]) {
+                        coverage[i] = value;
+                    }//if
+                    covered = true;
+                }//if
+            }//for
+        }//for
+        return covered;
+    }//coverSegment
+}
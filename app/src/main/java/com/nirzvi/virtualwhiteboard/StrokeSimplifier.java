@@ -0,0 +1,150 @@
+package com.nirzvi.virtualwhiteboard;
+
+/**
+ * Drops redundant stroke points as they arrive, keeping the stroke within a tolerance of the input.
+ *
+ * This is a streaming take on Ramer-Douglas-Peucker: the output always ends with the latest point,
+ * and while every point since the last kept one stays within tolerance of the chord to the latest
+ * point, the latest point replaces the end instead of being appended. Once a point falls outside, the
+ * end is kept for good and becomes the start of the next chord. Points whose pressure strays from the
+ * chord's are kept too, since pressure sets the stroke's width. The window of points checked against a
+ * chord is capped, so every point costs a bounded amount of work.
+ *
+ * Not thread safe.
+ */
+public class StrokeSimplifier {
+
+    public static final int APPENDED = 0;
+    public static final int REPLACED = 1;
+
+    //points since the last kept one are checked against each new chord, at most this many
+    private static final int MAX_WINDOW = 32;
+    private static final float DEFAULT_PRESSURE_TOLERANCE = 0.05f;
+
+    private float tolerance;
+    private float pressureTolerance = DEFAULT_PRESSURE_TOLERANCE;
+
+    //last kept point
+    private float anchorX;
+    private float anchorY;
+    private float anchorPressure;
+    private boolean started = false;
+
+    //points after the anchor, the last one is the current end of the output
+    private final float[] window = new float[MAX_WINDOW * StrokeStore.FLOATS_PER_POINT];
+    private int windowCount = 0;
+
+    /**
+     * @param tolerance largest distance of a dropped point from the output, in the points' units
+     */
+    public StrokeSimplifier(float tolerance) {
+        setTolerance(tolerance);
+    }//StrokeSimplifier
+
+    public float getTolerance() {
+        return tolerance;
+    }
+
+    public void setTolerance(float tolerance) {
+        if (tolerance < 0) {
+            throw new IllegalArgumentException("Negative tolerance " + tolerance);
+        }//if
+        this.tolerance = tolerance;
+    }//setTolerance
+
+    /**
+     * @param pressureTolerance largest pressure difference of a dropped point from the output
+     */
+    public void setPressureTolerance(float pressureTolerance) {
+        this.pressureTolerance = pressureTolerance;
+    }
+
+    /**
+     * Starts a new stroke
+     */
+    public void reset() {
+        started = false;
+        windowCount = 0;
+    }//reset
+
+    /**
+     * Takes the next point of the stroke
+     * @return APPENDED if the point should be added to the output,
+     * REPLACED if it should replace the output's last point
+     */
+    public int add(float x, float y, float pressure) {
+        if (!started) {
+            anchorX = x;
+            anchorY = y;
+            anchorPressure = pressure;
+            started = true;
+            return APPENDED;
+        }//if
+
+        if (windowCount > 0 && (windowCount == MAX_WINDOW || !covers(x, y, pressure))) {
+            // The current end is needed, it becomes the start of the next chord
+            int end = (windowCount - 1) * StrokeStore.FLOATS_PER_POINT;
+            anchorX = window[end];
+            anchorY = window[end + 1];
+            anchorPressure = window[end + 2];
+            windowCount = 0;
+        }//if
+
+        int p = windowCount * StrokeStore.FLOATS_PER_POINT;
+        window[p] = x;
+        window[p + 1] = y;
+        window[p + 2] = pressure;
+        windowCount++;
+        return windowCount == 1 ? APPENDED : REPLACED;
+    }//add
+
+    //whether every point in the window is close enough to the chord from the anchor to (x, y)
+    private boolean covers(float x, float y, float pressure) {
+        float dx = x - anchorX;
+        float dy = y - anchorY;
+        float lengthSq = dx * dx + dy * dy;
+        float toleranceSq = tolerance * tolerance;
+
+        for (int i = 0; i < windowCount; i++) {
+            int p = i * StrokeStore.FLOATS_PER_POINT;
+            float px = window[p];
+            float py = window[p + 1];
+            if (StrokeStore.segmentDistanceSq(px, py, anchorX, anchorY, x, y) > toleranceSq) {
+                return false;
+            }//if
+
+            float t = lengthSq == 0 ? 0 : ((px - anchorX) * dx + (py - anchorY) * dy) / lengthSq;
+            t = Math.max(0, Math.min(1, t));
+            float chordPressure = anchorPressure + t * (pressure - anchorPressure);
+            if (Math.abs(window[p + 2] - chordPressure) > pressureTolerance) {
+                return false;
+            }//if
+        }//for
+        return true;
+    }//covers
+
+    /**
+     * Simplifies a whole stroke at once
+     * @param in StrokeStore.FLOATS_PER_POINT floats per point
+     * @param out room for numPoints points, may be the same array as in if outOffset <= inOffset
+     * @return number of points written to out
+     */
+    public int simplify(float[] in, int inOffset, int numPoints, float[] out, int outOffset) {
+        reset();
+        int count = 0;
+        for (int i = 0; i < numPoints; i++) {
+            int p = inOffset + i * StrokeStore.FLOATS_PER_POINT;
+            float x = in[p];
+            float y = in[p + 1];
+            float pressure = in[p + 2];
+            if (add(x, y, pressure) == APPENDED) {
+                count++;
+            }//if
+            int q = outOffset + (count - 1) * StrokeStore.FLOATS_PER_POINT;
+            out[q] = x;
+            out[q + 1] = y;
+            out[q + 2] = pressure;
+        }//for
+        return count;
+    }//simplify
+}
@@ -0,0 +1,469 @@
+package com.nirzvi.virtualwhiteboard;
+
+import java.util.Arrays;
+
+/**
+ * Freehand ink of one board, in board pixels.
+ *
+ * Points are packed into one float array as x, y, pressure, and every per-stroke field is its own
+ * primitive array indexed by stroke id, so a board holds hundreds of thousands of strokes without an
+ * object per point or per stroke. A StrokeGrid indexes the strokes' bounds for hit-testing, erasing and selection.
+ *
+ * Ids are handed out in drawing order and stay valid after an erase, erased strokes just stop being found.
+ * Once most points belong to erased strokes they are reclaimed a bounded number of points at a time, on
+ * later erases and stroke ends, so no single call pays for the whole board.
+ * Not thread safe.
+ */
+public class StrokeStore {
+
+    public static final int FLOATS_PER_POINT = 3;
+
+    private static final int INITIAL_STROKES = 64;
+    private static final int INITIAL_POINTS = 1024;
+    private static final float GRID_CELL = TiledBoard.TILE_SIZE;
+    //points moved per compaction step
+    static final int COMPACT_STEP_POINTS = 4096;
+
+    private final float width;
+    private final float height;
+    private final StrokeGrid grid;
+
+    //x, y, pressure of every point, strokes are contiguous runs
+    private float[] points = new float[INITIAL_POINTS * FLOATS_PER_POINT];
+    private int pointCount = 0;
+    private int erasedPoints = 0;
+
+    //per stroke
+    private int[] starts = new int[INITIAL_STROKES];
+    private int[] lengths = new int[INITIAL_STROKES];
+    private int[] colors = new int[INITIAL_STROKES];
+    private float[] widths = new float[INITIAL_STROKES];
+    //minX, minY, maxX, maxY including the stroke's width and edge
+    private float[] bounds = new float[INITIAL_STROKES * 4];
+    private boolean[] erased = new boolean[INITIAL_STROKES];
+    private int strokeCount = 0;
+    private int liveCount = 0;
+
+    //stroke being drawn, -1 if none
+    private int open = -1;
+
+    //strokes below compactId have been moved down to end before compactWrite, -1 when not compacting
+    private int compactId = -1;
+    private int compactWrite = 0;
+
+    //candidates of the last query
+    private int[] candidates = new int[256];
+
+    /**
+     * @param width board width in pixels
+     * @param height board height in pixels
+     */
+    public StrokeStore(float width, float height) {
+        this.width = width;
+        this.height = height;
+        grid = new StrokeGrid(width, height, GRID_CELL);
+    }//StrokeStore
+
+    public float getWidth() {
+        return width;
+    }
+
+    public float getHeight() {
+        return height;
+    }
+
+    /*******************
+     * ADDING
+     *******************/
+
+    /**
+     * Starts a stroke that points are then added to one at a time, e.g. while the finger moves
+     * @param color ARGB colour
+     * @param strokeWidth width at full pressure
+     * @return id of the new stroke
+     */
+    public int beginStroke(int color, float strokeWidth) {
+        if (open != -1) {
+            endStroke();
+        }//if
+        if (strokeCount == starts.length) {
+            growStrokes();
+        }//if
+
+        open = strokeCount++;
+        starts[open] = pointCount;
+        lengths[open] = 0;
+        colors[open] = color;
+        widths[open] = strokeWidth;
+        erased[open] = false;
+        bounds[open * 4] = Float.MAX_VALUE;
+        bounds[open * 4 + 1] = Float.MAX_VALUE;
+        bounds[open * 4 + 2] = -Float.MAX_VALUE;
+        bounds[open * 4 + 3] = -Float.MAX_VALUE;
+        liveCount++;
+        return open;
+    }//beginStroke
+
+    /**
+     * Adds a point to the stroke begun last
+     * @param pressure between 0 and 1, scales the width
+     */
+    public void addPoint(float x, float y, float pressure) {
+        if (open == -1) {
+            throw new IllegalStateException("No stroke begun");
+        }//if
+        if ((pointCount + 1) * FLOATS_PER_POINT > points.length) {
+            points = Arrays.copyOf(points, points.length * 2);
+        }//if
+
+        int p = pointCount * FLOATS_PER_POINT;
+        points[p] = x;
+        points[p + 1] = y;
+        points[p + 2] = pressure;
+        pointCount++;
+        lengths[open]++;
+
+        //one more pixel for the anti-aliased edge
+        float r = widths[open] * 0.5f + 1;
+        int b = open * 4;
+        bounds[b] = Math.min(bounds[b], x - r);
+        bounds[b + 1] = Math.min(bounds[b + 1], y - r);
+        bounds[b + 2] = Math.max(bounds[b + 2], x + r);
+        bounds[b + 3] = Math.max(bounds[b + 3], y + r);
+    }//addPoint
+
+    /**
+     * Finishes the open stroke and makes it findable, a stroke without points is erased
+     * @return id of the finished stroke, -1 if none was open
+     */
+    public int endStroke() {
+        int id = open;
+        if (id == -1) {
+            return -1;
+        }//if
+        open = -1;
+
+        if (lengths[id] == 0) {
+            erased[id] = true;
+            liveCount--;
+        } else {
+            grid.insert(id, bounds[id * 4], bounds[id * 4 + 1], bounds[id * 4 + 2], bounds[id * 4 + 3]);
+        }//else
+        compactStep();
+        return id;
+    }//endStroke
+
+    /**
+     * Adds a finished stroke
+     * @param xyp FLOATS_PER_POINT floats per point
+     * @param offset index of the first float
+     * @param numPoints number of points
+     * @param color ARGB colour
+     * @param strokeWidth width at full pressure
+     * @return id of the new stroke
+     */
+    public int addStroke(float[] xyp, int offset, int numPoints, int color, float strokeWidth) {
+        beginStroke(color, strokeWidth);
+        for (int i = 0; i < numPoints; i++) {
+            int p = offset + i * FLOATS_PER_POINT;
+            addPoint(xyp[p], xyp[p + 1], xyp[p + 2]);
+        }//for
+        return endStroke();
+    }//addStroke
+
+    private void growStrokes() {
+        int capacity = starts.length * 2;
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        colors = Arrays.copyOf(colors, capacity);
+        widths = Arrays.copyOf(widths, capacity);
+        bounds = Arrays.copyOf(bounds, capacity * 4);
+        erased = Arrays.copyOf(erased, capacity);
+    }//growStrokes
+
+    /*******************
+     * READING
+     *******************/
+
+    /**
+     * @return ids handed out so far, erased strokes included
+     */
+    public int getStrokeCount() {
+        return strokeCount;
+    }
+
+    /**
+     * @return strokes that are not erased
+     */
+    public int getLiveStrokeCount() {
+        return liveCount;
+    }
+
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    public boolean isErased(int id) {
+        return erased[id];
+    }
+
+    public int getColor(int id) {
+        return colors[id];
+    }
+
+    public float getStrokeWidth(int id) {
+        return widths[id];
+    }
+
+    /**
+     * @return the packed points, a stroke's run starts at getStart(id) * FLOATS_PER_POINT; never modify it
+     */
+    public float[] getPoints() {
+        return points;
+    }
+
+    /**
+     * @return index of the stroke's first point
+     */
+    public int getStart(int id) {
+        return starts[id];
+    }
+
+    /**
+     * @return number of points in the stroke
+     */
+    public int getLength(int id) {
+        return lengths[id];
+    }
+
+    public float getMinX(int id) {
+        return bounds[id * 4];
+    }
+
+    public float getMinY(int id) {
+        return bounds[id * 4 + 1];
+    }
+
+    public float getMaxX(int id) {
+        return bounds[id * 4 + 2];
+    }
+
+    public float getMaxY(int id) {
+        return bounds[id * 4 + 3];
+    }
+
+    /*******************
+     * QUERIES
+     *******************/
+
+    /**
+     * Finds the finished strokes whose bounds overlap a rectangle
+     * @param out receives the ids in drawing order, up to its length
+     * @return number of strokes found, may be more than out holds
+     */
+    public int query(float minX, float minY, float maxX, float maxY, int[] out) {
+        int count = gridQuery(minX, minY, maxX, maxY);
+
+        int found = 0;
+        for (int i = 0; i < count; i++) {
+            int id = candidates[i];
+            int b = id * 4;
+            if (bounds[b] <= maxX && bounds[b + 2] >= minX && bounds[b + 1] <= maxY && bounds[b + 3] >= minY) {
+                candidates[found++] = id;
+            }//if
+        }//for
+
+        //drawing order, later strokes cover earlier ones
+        Arrays.sort(candidates, 0, found);
+        System.arraycopy(candidates, 0, out, 0, Math.min(found, out.length));
+        return found;
+    }//query
+
+    /**
+     * @param radius how far from the stroke's edge still counts as a hit
+     * @return the topmost stroke passing within radius of the point, -1 if none
+     */
+    public int hitTest(float x, float y, float radius) {
+        int count = gridQuery(x - radius, y - radius, x + radius, y + radius);
+
+        int hit = -1;
+        for (int i = 0; i < count; i++) {
+            int id = candidates[i];
+            if (id > hit && touches(id, x, y, radius)) {
+                hit = id;
+            }//if
+        }//for
+        return hit;
+    }//hitTest
+
+    /**
+     * Erases every stroke passing within radius of the point
+     * @param damage receives minX, minY, maxX, maxY of the erased strokes, if any were erased
+     * @return number of strokes erased
+     */
+    public int eraseAt(float x, float y, float radius, float[] damage) {
+        int count = gridQuery(x - radius, y - radius, x + radius, y + radius);
+
+        int hits = 0;
+        for (int i = 0; i < count; i++) {
+            int id = candidates[i];
+            if (touches(id, x, y, radius)) {
+                candidates[hits++] = id;
+            }//if
+        }//for
+
+        for (int i = 0; i < hits; i++) {
+            int b = candidates[i] * 4;
+            if (i == 0) {
+                System.arraycopy(bounds, b, damage, 0, 4);
+            } else {
+                damage[0] = Math.min(damage[0], bounds[b]);
+                damage[1] = Math.min(damage[1], bounds[b + 1]);
+                damage[2] = Math.max(damage[2], bounds[b + 2]);
+                damage[3] = Math.max(damage[3], bounds[b + 3]);
+            }//else
+            erase(candidates[i]);
+        }//for
+        return hits;
+    }//eraseAt
+
+    /**
+     * Removes a stroke, its id is never reused
+     * @return false if it was already erased
+     */
+    public boolean erase(int id) {
+        if (erased[id]) {
+            return false;
+        }//if
+        if (id == open && endStroke() == id && erased[id]) {
+            //it had no points, so it was never in the grid
+            return true;
+        }//if
+
+        int b = id * 4;
+        grid.remove(id, bounds[b], bounds[b + 1], bounds[b + 2], bounds[b + 3]);
+        erased[id] = true;
+        liveCount--;
+        erasedPoints += lengths[id];
+
+        // Reclaim the points once most of them belong to erased strokes
+        if (compactId == -1 && erasedPoints > pointCount / 2) {
+            compactId = 0;
+            compactWrite = 0;
+        }//if
+        compactStep();
+        return true;
+    }//erase
+
+    //runs the grid query into candidates, growing it if the query did not fit
+    private int gridQuery(float minX, float minY, float maxX, float maxY) {
+        int count = grid.query(minX, minY, maxX, maxY, candidates);
+        if (count > candidates.length) {
+            candidates = new int[Integer.highestOneBit(count) * 2];
+            count = grid.query(minX, minY, maxX, maxY, candidates);
+        }//if
+        return count;
+    }//gridQuery
+
+    //whether any segment of the stroke, widened by its pressure, comes within radius of the point
+    private boolean touches(int id, float x, float y, float radius) {
+        int b = id * 4;
+        if (x < bounds[b] - radius || x > bounds[b + 2] + radius || y < bounds[b + 1] - radius || y > bounds[b + 3] + radius) {
+            return false;
+        }//if
+
+        float halfWidth = widths[id] * 0.5f;
+        int p = starts[id] * FLOATS_PER_POINT;
+        int last = p + (lengths[id] - 1) * FLOATS_PER_POINT;
+        if (p == last) {
+            float reach = radius + halfWidth * points[p + 2];
+            return distanceSq(x, y, points[p], points[p + 1]) <= reach * reach;
+        }//if
+
+        for (; p < last; p += FLOATS_PER_POINT) {
+            float reach = radius + halfWidth * Math.max(points[p + 2], points[p + 5]);
+            if (segmentDistanceSq(x, y, points[p], points[p + 1], points[p + 3], points[p + 4]) <= reach * reach) {
+                return true;
+            }//if
+        }//for
+        return false;
+    }//touches
+
+    private static float distanceSq(float x0, float y0, float x1, float y1) {
+        return (x1 - x0) * (x1 - x0) + (y1 - y0) * (y1 - y0);
+    }
+
+    /**
+     * @return squared distance from (x, y) to the segment from (ax, ay) to (bx, by)
+     */
+    static float segmentDistanceSq(float x, float y, float ax, float ay, float bx, float by) {
+        float dx = bx - ax;
+        float dy = by - ay;
+        float lengthSq = dx * dx + dy * dy;
+        float t = lengthSq == 0 ? 0 : ((x - ax) * dx + (y - ay) * dy) / lengthSq;
+        t = Math.max(0, Math.min(1, t));
+        return distanceSq(x, y, ax + t * dx, ay + t * dy);
+    }//segmentDistanceSq
+
+    /*******************
+     * MEMORY
+     *******************/
+
+    //moves up to COMPACT_STEP_POINTS of the live strokes' points together, dropping the erased ones,
+    //and stops at the open stroke until it ends
+    private void compactStep() {
+        if (compactId == -1) {
+            return;
+        }//if
+
+        int moved = 0;
+        while (compactId < strokeCount && compactId != open && moved < COMPACT_STEP_POINTS) {
+            int id = compactId++;
+            if (erased[id]) {
+                erasedPoints -= lengths[id];
+                lengths[id] = 0;
+                starts[id] = compactWrite;
+                continue;
+            }//if
+            if (starts[id] != compactWrite) {
+                System.arraycopy(points, starts[id] * FLOATS_PER_POINT, points, compactWrite * FLOATS_PER_POINT,
+                        lengths[id] * FLOATS_PER_POINT);
+                starts[id] = compactWrite;
+                moved += lengths[id];
+            }//if
+            compactWrite += lengths[id];
+        }//while
+
+        if (compactId == strokeCount) {
+            pointCount = compactWrite;
+            compactId = -1;
+        }//if
+    }//compactStep
+
+    /**
+     * @return whether erased points are still being reclaimed
+     */
+    boolean isCompacting() {
+        return compactId != -1;
+    }
+
+    /**
+     * @return bytes held by the point and stroke arrays
+     */
+    public long getMemoryBytes() {
+        return (long) points.length * 4 + (long) starts.length * (4 + 4 + 4 + 4 + 16 + 1);
+    }
+
+    /**
+     * Erases everything, ids start over from 0
+     */
+    public void clear() {
+        grid.clear();
+        pointCount = 0;
+        erasedPoints = 0;
+        strokeCount = 0;
+        liveCount = 0;
+        open = -1;
+        compactId = -1;
+    }//clear
+}
@@ -0,0 +1,165 @@
+package com.nirzvi.virtualwhiteboard;
+
+import java.util.Arrays;
+
+/**
+ * Lays text out into one textured quad per glyph, from a GlyphAtlas.
+ *
+ * Lines break at '\n' and wrap at spaces when they would pass the maximum width; a word wider than
+ * a whole line is broken between characters. Each quad is four vertices of x, y, u, v, in the order
+ * top left, bottom left, top right, bottom right, with y running down. Characters without ink, like
+ * spaces, only move the pen. Reusing one layout keeps its arrays, so laying text out again does not
+ * allocate once they are large enough.
+ */
+public class TextLayout {
+
+    public static final int FLOATS_PER_VERTEX = 4;
+    public static final int VERTICES_PER_GLYPH = 4;
+    public static final int FLOATS_PER_GLYPH = FLOATS_PER_VERTEX * VERTICES_PER_GLYPH;
+
+    private final GlyphAtlas atlas;
+
+    private float[] vertices = new float[64 * FLOATS_PER_GLYPH];
+    private int glyphCount = 0;
+    private int lineCount = 0;
+    private float width = 0;
+
+    public TextLayout(GlyphAtlas atlas) {
+        this.atlas = atlas;
+    }
+
+    /**
+     * Replaces the layout with new text
+     * @param x left edge of the text
+     * @param baseline y of the first line's baseline
+     * @param size text size, in the same units as x and y
+     * @param maxWidth width lines wrap at, or 0 to only break at '\n'
+     * @return number of glyphs laid out
+     */
+    public int layout(CharSequence text, float x, float baseline, float size, float maxWidth) {
+        float scale = size / atlas.getFontSize();
+        float lineHeight = atlas.getLineHeight() * scale;
+        float right = maxWidth > 0 ? x + maxWidth : Float.MAX_VALUE;
+
+        glyphCount = 0;
+        lineCount = text.length() > 0 ? 1 : 0;
+        width = 0;
+
+        float pen = x;
+        float y = baseline;
+        //first glyph after the last space on this line, and where the pen was after that space
+        int wrapGlyph = -1;
+        float wrapPen = 0;
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                width = Math.max(width, pen - x);
+                pen = x;
+                y += lineHeight;
+                lineCount++;
+                wrapGlyph = -1;
+                continue;
+            }//if
+
+            int index = atlas.indexOf(c);
+            if (index < 0) {
+                continue;
+            }//if
+            float advance = atlas.getAdvance(index) * scale;
+
+            if (c == ' ') {
+                pen += advance;
+                wrapGlyph = glyphCount;
+                wrapPen = pen;
+                continue;
+            }//if
+
+            if (pen + advance > right && pen > x) {
+                if (wrapGlyph >= 0) {
+                    // Carry the word started after the last space onto the next line
+                    width = Math.max(width, wrapPen - x);
+                    float shift = wrapPen - x;
+                    for (int g = wrapGlyph; g < glyphCount; g++) {
+                        for (int v = 0; v < VERTICES_PER_GLYPH; v++) {
+                            int f = g * FLOATS_PER_GLYPH + v * FLOATS_PER_VERTEX;
+                            vertices[f] -= shift;
+                            vertices[f + 1] += lineHeight;
+                        }//for
+                    }//for
+                    pen -= shift;
+                } else {
+                    width = Math.max(width, pen - x);
+                    pen = x;
+                }//else
+                y += lineHeight;
+                lineCount++;
+                wrapGlyph = -1;
+            }//if
+
+            if (atlas.getFieldWidth(index) > 0) {
+                addGlyph(index, pen, y, scale);
+            }//if
+            pen += advance;
+        }//for
+
+        width = Math.max(width, pen - x);
+        return glyphCount;
+    }//layout
+
+    private void addGlyph(int index, float pen, float baseline, float scale) {
+        if ((glyphCount + 1) * FLOATS_PER_GLYPH > vertices.length) {
+            vertices = Arrays.copyOf(vertices, vertices.length * 2);
+        }//if
+
+        float x0 = pen + atlas.getLeft(index) * scale;
+        float y0 = baseline + atlas.getTop(index) * scale;
+        float x1 = x0 + atlas.getFieldWidth(index) * scale;
+        float y1 = y0 + atlas.getFieldHeight(index) * scale;
+        float u0 = atlas.getFieldX(index) / (float) atlas.getWidth();
+        float v0 = atlas.getFieldY(index) / (float) atlas.getHeight();
+        float u1 = (atlas.getFieldX(index) + atlas.getFieldWidth(index)) / (float) atlas.getWidth();
+        float v1 = (atlas.getFieldY(index) + atlas.getFieldHeight(index)) / (float) atlas.getHeight();
+
+        int f = glyphCount * FLOATS_PER_GLYPH;
+        f = put(f, x0, y0, u0, v0);
+        f = put(f, x0, y1, u0, v1);
+        f = put(f, x1, y0, u1, v0);
+        put(f, x1, y1, u1, v1);
+        glyphCount++;
+    }//addGlyph
+
+    private int put(int f, float x, float y, float u, float v) {
+        vertices[f] = x;
+        vertices[f + 1] = y;
+        vertices[f + 2] = u;
+        vertices[f + 3] = v;
+        return f + FLOATS_PER_VERTEX;
+    }
+
+    /**
+     * @return FLOATS_PER_GLYPH floats per glyph, valid up to getGlyphCount()
+     */
+    public float[] getVertices() {
+        return vertices;
+    }
+
+    public int getGlyphCount() {
+        return glyphCount;
+    }
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return advance of the widest line
+     */
+    public float getWidth() {
+        return width;
+    }
+
+    public GlyphAtlas getAtlas() {
+        return atlas;
+    }
+}
@@ -0,0 +1,345 @@
+package com.nirzvi.virtualwhiteboard;
+
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Draws text over every board from a signed distance field glyph atlas.
+ *
+ * The atlas is uploaded once per context. Changing the text only lays it out again and uploads the
+ * small vertex buffer of its glyph quads, nothing is rasterized and the board texture is untouched.
+ * The shader cuts the distance field at its edge with a smoothstep a screen pixel wide, worked out per
+ * board from how large it is on screen, so the text stays sharp close up and does not shimmer far away.
+ *
+ * Like WhiteBoard, boards are drawn in runs: the vertex buffer holds one copy of the glyph quads per
+ * board of a run, each tagged with its index into the uModelMatrix and uSmoothing arrays, so a run
+ * costs two uniform uploads and one draw call. Long texts get fewer copies, so all of them stay
+ * addressable by 16 bit indices.
+ */
+public class TextRenderer {
+
+    private static String getVertexShader(int boardsPerDraw) {
+        return "uniform mat4 uMVPMatrix;" +
+                "uniform mat4 uModelMatrix[" + boardsPerDraw + "];" +
+                "uniform float uSmoothing[" + boardsPerDraw + "];" +
+                "attribute vec2 vPosition;" +
+                "attribute vec2 a_TexCoord;" +
+                "attribute float a_BoardIndex;" +
+                "varying vec2 v_TexCoord;" +
+                "varying float v_Smoothing;" +
+                "void main() {" +
+                "  int board = int(a_BoardIndex);" +
+                "  v_TexCoord = a_TexCoord;" +
+                "  v_Smoothing = uSmoothing[board];" +
+                "  gl_Position = uMVPMatrix * uModelMatrix[board] * vec4(vPosition, 0.0, 1.0);" +
+                "}";
+    }
+
+    private static final String FRAGMENT_SHADER =
+            "precision mediump float;" +
+            "uniform sampler2D u_Atlas;" +
+            "uniform vec4 uColor;" +
+            "varying vec2 v_TexCoord;" +
+            "varying float v_Smoothing;" +
+            "void main() {" +
+            "  float distance = texture2D(u_Atlas, v_TexCoord).a;" +
+            "  float alpha = smoothstep(0.5 - v_Smoothing, 0.5 + v_Smoothing, distance);" +
+            // Premultiplied, to blend with ONE, ONE_MINUS_SRC_ALPHA
+            "  gl_FragColor = uColor * alpha;" +
+            "}";
+
+    /** Longest text drawn, in glyphs. */
+    public static final int MAX_GLYPHS = 4096;
+
+    private static final int BYTES_PER_FLOAT = 4;
+    private static final int BYTES_PER_SHORT = 2;
+    private static final int INDICES_PER_GLYPH = 6;
+
+    //glyph quads of every copy together, as many as 16 bit indices reach
+    private static final int MAX_BATCHED_GLYPHS = 65536 / TextLayout.VERTICES_PER_GLYPH;
+    //layout position and texture coordinates, then the board index
+    private static final int FLOATS_PER_VERTEX = TextLayout.FLOATS_PER_VERTEX + 1;
+    //vertex uniform vectors kept free for the projection and driver use
+    private static final int RESERVED_UNIFORM_VECTORS = 8;
+    //a model matrix and the smoothing, which takes a vector of its own
+    private static final int VECTORS_PER_BOARD = 5;
+
+    private final GLBackend gl;
+    private final ProgramCache programs;
+
+    private ShaderProgram program;
+    private int positionHandle;
+    private int texCoordHandle;
+    private int boardIndexHandle;
+    private int mvpMatrixHandle;
+    private int modelMatrixHandle;
+    private int colorHandle;
+    private int smoothingHandle;
+
+    private int atlasTexture;
+    private int vertexBufferHandle;
+    private int indexBufferHandle;
+
+    //model matrices the shader takes in one draw call
+    private int boardsPerDraw = 1;
+    //copies of the text in the vertex buffer, boards drawn per call
+    private int copies = 1;
+
+    //trackable units per board pixel
+    private final float scaleX;
+    private final float scaleY;
+
+    private TextLayout layout;
+    private FloatBuffer vertexBuffer;
+    private float[] copyVertices = new float[0];
+    private CharSequence text;
+    private int glyphCount = 0;
+    private int uploadCount = 0;
+
+    //placement of the current text
+    private float lastX;
+    private float lastBaseline;
+    private float textSize = 1;
+    private float lastMaxWidth;
+    private final float[] color = {0, 0, 0, 1};
+
+    //scratch for the on-screen scale of a board and the smoothing of a run
+    private final float[] mvp = new float[16];
+    private float[] smoothing = new float[1];
+
+    /**
+     * @param boardWidth width of the board content in pixels, text is placed in board pixels
+     * @param boardHeight height of the board content in pixels
+     */
+    public TextRenderer(GLBackend gl, ProgramCache programs, float boardWidth, float boardHeight) {
+        this.gl = gl;
+        this.programs = programs;
+        scaleX = 2 * BoardBatch.HALF_WIDTH / boardWidth;
+        scaleY = 2 * BoardBatch.HALF_HEIGHT / boardHeight;
+    }//TextRenderer
+
+    /**
+     * Uploads the atlas and the glyph index buffer and compiles the shader, call once per context
+     */
+    public void init(GlyphAtlas atlas) {
+        // Fit as many boards into the vertex shader as the device allows
+        int[] maxVectors = new int[1];
+        gl.glGetIntegerv(GLES20.GL_MAX_VERTEX_UNIFORM_VECTORS, maxVectors, 0);
+        boardsPerDraw = Math.max(1, (maxVectors[0] - RESERVED_UNIFORM_VECTORS) / VECTORS_PER_BOARD);
+        smoothing = new float[boardsPerDraw];
+
+        program = programs.get(getVertexShader(boardsPerDraw), FRAGMENT_SHADER, "vPosition", "a_TexCoord",
+                "a_BoardIndex");
+        positionHandle = program.getAttribLocation("vPosition");
+        texCoordHandle = program.getAttribLocation("a_TexCoord");
+        boardIndexHandle = program.getAttribLocation("a_BoardIndex");
+        mvpMatrixHandle = program.getUniformLocation("uMVPMatrix");
+        modelMatrixHandle = program.getUniformLocation("uModelMatrix");
+        colorHandle = program.getUniformLocation("uColor");
+        smoothingHandle = program.getUniformLocation("uSmoothing");
+        program.use();
+        gl.glUniform1i(program.getUniformLocation("u_Atlas"), 0);
+
+        // Linear filtering is what lets a distance field scale, the field itself keeps the edges sharp
+        int[] textures = new int[1];
+        gl.glGenTextures(1, textures, 0);
+        atlasTexture = textures[0];
+        gl.glBindTexture(GLES20.GL_TEXTURE_2D, atlasTexture);
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        gl.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_ALPHA, atlas.getWidth(), atlas.getHeight(), 0,
+                GLES20.GL_ALPHA, GLES20.GL_UNSIGNED_BYTE, ByteBuffer.wrap(atlas.getPixels()));
+
+        // Every glyph is two triangles of its four vertices
+        ShortBuffer indices = ByteBuffer.allocateDirect(MAX_BATCHED_GLYPHS * INDICES_PER_GLYPH * BYTES_PER_SHORT)
+                .order(ByteOrder.nativeOrder()).asShortBuffer();
+        for (int g = 0; g < MAX_BATCHED_GLYPHS; g++) {
+            short v = (short) (g * TextLayout.VERTICES_PER_GLYPH);
+            indices.put(v).put((short) (v + 1)).put((short) (v + 2));
+            indices.put((short) (v + 2)).put((short) (v + 1)).put((short) (v + 3));
+        }//for
+        indices.position(0);
+
+        int[] buffers = new int[2];
+        gl.glGenBuffers(2, buffers, 0);
+        vertexBufferHandle = buffers[0];
+        indexBufferHandle = buffers[1];
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexBufferHandle);
+        gl.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, MAX_BATCHED_GLYPHS * INDICES_PER_GLYPH * BYTES_PER_SHORT,
+                indices, GLES20.GL_STATIC_DRAW);
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+
+        if (layout == null || layout.getAtlas() != atlas) {
+            layout = new TextLayout(atlas);
+        }//if
+        // The new context has none of the old text's vertices
+        CharSequence current = text;
+        text = null;
+        if (current != null) {
+            setText(current, lastX, lastBaseline, textSize, lastMaxWidth);
+        }//if
+    }//init
+
+    /**
+     * Lays the text out and uploads its quads, does nothing if it is the same object in the same place
+     * as last time. Call after init.
+     * @param x left edge of the text, in board pixels
+     * @param baseline baseline of the first line, in board pixels
+     * @param size text size, in board pixels
+     * @param maxWidth width lines wrap at, 0 for none
+     */
+    public void setText(CharSequence text, float x, float baseline, float size, float maxWidth) {
+        if (text == this.text && x == lastX && baseline == lastBaseline && size == textSize && maxWidth == lastMaxWidth) {
+            return;
+        }//if
+        this.text = text;
+        lastX = x;
+        lastBaseline = baseline;
+        textSize = size;
+        lastMaxWidth = maxWidth;
+
+        glyphCount = Math.min(MAX_GLYPHS, layout.layout(text, x, baseline, size, maxWidth));
+        copies = Math.max(1, Math.min(boardsPerDraw, MAX_BATCHED_GLYPHS / Math.max(1, glyphCount)));
+        int copyFloats = glyphCount * TextLayout.VERTICES_PER_GLYPH * FLOATS_PER_VERTEX;
+        int floats = copyFloats * copies;
+        if (vertexBuffer == null || vertexBuffer.capacity() < floats) {
+            vertexBuffer = ByteBuffer.allocateDirect(Math.max(floats, 64 * TextLayout.FLOATS_PER_GLYPH) * BYTES_PER_FLOAT)
+                    .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        }//if
+        if (copyVertices.length < copyFloats) {
+            copyVertices = new float[copyFloats];
+        }//if
+
+        // Board pixels to trackable space, y runs up in trackable space
+        float[] vertices = layout.getVertices();
+        int layoutFloats = glyphCount * TextLayout.FLOATS_PER_GLYPH;
+        for (int f = 0, c = 0; f < layoutFloats; f += TextLayout.FLOATS_PER_VERTEX, c += FLOATS_PER_VERTEX) {
+            copyVertices[c] = vertices[f] * scaleX - BoardBatch.HALF_WIDTH;
+            copyVertices[c + 1] = BoardBatch.HALF_HEIGHT - vertices[f + 1] * scaleY;
+            copyVertices[c + 2] = vertices[f + 2];
+            copyVertices[c + 3] = vertices[f + 3];
+        }//for
+
+        // One copy per board of a run, only the board index differs
+        vertexBuffer.position(0);
+        for (int copy = 0; copy < copies; copy++) {
+            for (int c = TextLayout.FLOATS_PER_VERTEX; c < copyFloats; c += FLOATS_PER_VERTEX) {
+                copyVertices[c] = copy;
+            }//for
+            vertexBuffer.put(copyVertices, 0, copyFloats);
+        }//for
+        vertexBuffer.position(0);
+
+        if (glyphCount > 0) {
+            gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vertexBufferHandle);
+            gl.glBufferData(GLES20.GL_ARRAY_BUFFER, floats * BYTES_PER_FLOAT, vertexBuffer, GLES20.GL_DYNAMIC_DRAW);
+            uploadCount++;
+        }//if
+    }//setText
+
+    /**
+     * @param argb colour of the text
+     */
+    public void setColor(int argb) {
+        // Premultiplied
+        float alpha = (argb >>> 24) / 255f;
+        color[0] = ((argb >> 16) & 0xFF) / 255f * alpha;
+        color[1] = ((argb >> 8) & 0xFF) / 255f * alpha;
+        color[2] = (argb & 0xFF) / 255f * alpha;
+        color[3] = alpha;
+    }//setColor
+
+    public int getGlyphCount() {
+        return glyphCount;
+    }
+
+    /**
+     * @return how many boards a single draw call covers with the current text
+     */
+    public int getBoardsPerDraw() {
+        return copies;
+    }
+
+    /**
+     * @return how many times glyph vertices were uploaded
+     */
+    public int getUploadCount() {
+        return uploadCount;
+    }
+
+    /**
+     * Draws the text over every board in the batch
+     * @param batch boards of this frame
+     * @param mvpMatrix projection for the current view
+     * @param viewport viewport of the current view
+     */
+    public void draw(BoardBatch batch, float[] mvpMatrix, int[] viewport) {
+        if (glyphCount == 0 || batch.getBoardCount() == 0) {
+            return;
+        }//if
+
+        program.use();
+        gl.glEnable(GLES20.GL_BLEND);
+        gl.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+
+        int stride = FLOATS_PER_VERTEX * BYTES_PER_FLOAT;
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vertexBufferHandle);
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexBufferHandle);
+        gl.glVertexAttribPointer(positionHandle, 2, GLES20.GL_FLOAT, false, stride, 0);
+        gl.glEnableVertexAttribArray(positionHandle);
+        gl.glVertexAttribPointer(texCoordHandle, 2, GLES20.GL_FLOAT, false, stride, 2 * BYTES_PER_FLOAT);
+        gl.glEnableVertexAttribArray(texCoordHandle);
+        gl.glVertexAttribPointer(boardIndexHandle, 1, GLES20.GL_FLOAT, false, stride,
+                TextLayout.FLOATS_PER_VERTEX * BYTES_PER_FLOAT);
+        gl.glEnableVertexAttribArray(boardIndexHandle);
+
+        gl.glActiveTexture(GLES20.GL_TEXTURE0);
+        gl.glBindTexture(GLES20.GL_TEXTURE_2D, atlasTexture);
+        gl.glUniformMatrix4fv(mvpMatrixHandle, 1, false, mvpMatrix, 0);
+        gl.glUniform4fv(colorHandle, 1, color, 0);
+
+        GlyphAtlas atlas = layout.getAtlas();
+        // Trackable units per atlas texel
+        float unitsPerTexel = textSize / atlas.getFontSize() * scaleX;
+        int boardCount = batch.getBoardCount();
+        for (int first = 0; first < boardCount; first += copies) {
+            int count = Math.min(copies, boardCount - first);
+            for (int i = 0; i < count; i++) {
+                int offset = (first + i) * BoardBatch.FLOATS_PER_MATRIX;
+                float texelsPerPixel = 1 / (unitsPerTexel * pixelsPerUnit(mvpMatrix, batch.getModelMatrices(), offset, viewport));
+                // Half a screen pixel either side of the edge, in the field's units
+                smoothing[i] = Math.max(0.01f, Math.min(0.5f, texelsPerPixel / (4f * atlas.getSpread())));
+            }//for
+
+            // The first count copies of the text belong to this run
+            gl.glUniformMatrix4fv(modelMatrixHandle, count, false, batch.getModelMatrices(),
+                    first * BoardBatch.FLOATS_PER_MATRIX);
+            gl.glUniform1fv(smoothingHandle, count, smoothing, 0);
+            gl.glDrawElements(GLES20.GL_TRIANGLES, count * glyphCount * INDICES_PER_GLYPH, GLES20.GL_UNSIGNED_SHORT, 0);
+        }//for
+
+        gl.glDisableVertexAttribArray(positionHandle);
+        gl.glDisableVertexAttribArray(texCoordHandle);
+        gl.glDisableVertexAttribArray(boardIndexHandle);
+        gl.glDisable(GLES20.GL_BLEND);
+    }//draw
+
+    //screen pixels covered by one trackable unit along the board's x axis, at its centre
+    private float pixelsPerUnit(float[] projection, float[] models, int offset, int[] viewport) {
+        PoseMath.multiplyMM(mvp, 0, projection, 0, models, offset);
+        float w0 = mvp[15];
+        float w1 = mvp[15] + mvp[3];
+        if (w0 <= 0 || w1 <= 0) {
+            return 1;
+        }//if
+        float dx = ((mvp[12] + mvp[0]) / w1 - mvp[12] / w0) * viewport[2] * 0.5f;
+        float dy = ((mvp[13] + mvp[1]) / w1 - mvp[13] / w0) * viewport[3] * 0.5f;
+        return Math.max(1e-6f, (float) Math.sqrt(dx * dx + dy * dy));
+    }//pixelsPerUnit
+}
@@ -0,0 +1,88 @@
+package com.nirzvi.virtualwhiteboard;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Uploads bitmaps through a GLBackend.
+ * GLUtils.texImage2D goes straight to the driver, so instead the pixels are copied into
+ * a direct buffer and handed to glTexImage2D in the matching format.
+ */
+public class TextureLoader {
+
+    private TextureLoader() {
+    }
+
+    /**
+     * Creates a texture holding the bitmap, with nearest filtering
+     * @param gl backend to upload through
+     * @param bitmap pixels of the texture
+     * @return texture handle
+     */
+    public static int loadTexture(GLBackend gl, Bitmap bitmap) {
+        final int[] textureHandle = new int[1];
+
+        gl.glGenTextures(1, textureHandle, 0);
+
+        if (textureHandle[0] == 0)
+        {
+            throw new RuntimeException("Error generating texture name.");
+        }//if
+
+        // Bind to the texture in OpenGL
+        gl.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle[0]);
+
+        // Set filtering
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+
+        // Load the bitmap into the bound texture.
+        texImage2D(gl, GLES20.GL_TEXTURE_2D, 0, bitmap);
+
+        return textureHandle[0];
+    }//loadTexture
+
+    /**
+     * Loads a bitmap into the bound texture, like GLUtils.texImage2D
+     * @param gl backend to upload through
+     * @param target texture target, usually GL_TEXTURE_2D
+     * @param level mipmap level
+     * @param bitmap pixels to upload, converted to ARGB_8888 if GL has no matching format
+     */
+    public static void texImage2D(GLBackend gl, int target, int level, Bitmap bitmap) {
+        int format;
+        int type;
+
+        // 16 bit rows of an odd width break the default unpack alignment of 4, those go up to 32 bits
+        Bitmap.Config config = bitmap.getConfig();
+        boolean alignedRows = bitmap.getWidth() % 2 == 0;
+
+        Bitmap source = bitmap;
+        if (config == Bitmap.Config.ARGB_4444 && alignedRows) {
+            format = GLES20.GL_RGBA;
+            type = GLES20.GL_UNSIGNED_SHORT_4_4_4_4;
+        } else if (config == Bitmap.Config.RGB_565 && alignedRows) {
+            format = GLES20.GL_RGB;
+            type = GLES20.GL_UNSIGNED_SHORT_5_6_5;
+        } else {
+            if (config != Bitmap.Config.ARGB_8888) {
+                source = bitmap.copy(Bitmap.Config.ARGB_8888, false);
+            }//if
+            format = GLES20.GL_RGBA;
+            type = GLES20.GL_UNSIGNED_BYTE;
+        }//else
+
+        ByteBuffer pixels = ByteBuffer.allocateDirect(source.getByteCount()).order(ByteOrder.nativeOrder());
+        source.copyPixelsToBuffer(pixels);
+        pixels.position(0);
+
+        gl.glTexImage2D(target, level, format, source.getWidth(), source.getHeight(), 0, format, type, pixels);
+
+        if (source != bitmap) {
+            source.recycle();
+        }//if
+    }//texImage2D
+}
@@ -0,0 +1,346 @@
+package com.nirzvi.virtualwhiteboard;
+
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Keeps a texture in step with a TiledBoard by uploading only the tiles that changed.
+ *
+ * Changed tiles are queued along with the snapshot holding their pixels. Every frame upload() sends
+ * queued tiles with glTexSubImage2D until the frame's byte budget is spent, so a large edit is spread
+ * over several frames instead of stalling one. A tile queued again before it was sent goes out once,
+ * with the newest pixels. GL thread only.
+ */
+public class TextureStreamer {
+
+    private static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+    private final GLBackend gl;
+    private int bytesPerFrame;
+
+    private int texture = 0;
+    private TiledBoard.Snapshot content;
+
+    //FIFO ring of tile indices, a tile is in it at most once
+    private boolean[] queued = new boolean[0];
+    private int[] queue = new int[0];
+    private int queueHead = 0;
+    private int queueSize = 0;
+    private int[] changed = new int[0];
+
+    //one tile converted to RGBA bytes
+    private final int[] rgba = new int[TiledBoard.TILE_PIXELS];
+    private final IntBuffer pixels = ByteBuffer.allocateDirect(TiledBoard.TILE_BYTES)
+            .order(ByteOrder.nativeOrder()).asIntBuffer();
+
+    //metrics
+    private long uploadedBytes = 0;
+    private long uploadedTiles = 0;
+    private int uploadFrames = 0;
+    private int lastFrameBytes = 0;
+    private int peakQueueDepth = 0;
+
+    /**
+     * @param gl backend to upload through
+     * @param bytesPerFrame most bytes upload() sends per call, at least one tile is always sent
+     */
+    public TextureStreamer(GLBackend gl, int bytesPerFrame) {
+        this.gl = gl;
+        this.bytesPerFrame = bytesPerFrame;
+    }//TextureStreamer
+
+    public void setBytesPerFrame(int bytesPerFrame) {
+        this.bytesPerFrame = bytesPerFrame;
+    }
+
+    public int getBytesPerFrame() {
+        return bytesPerFrame;
+    }
+
+    /**
+     * @return the streamed texture, 0 before createTexture
+     */
+    public int getTexture() {
+        return texture;
+    }
+
+    /**
+     * Creates a texture holding the whole snapshot, with linear filtering, and empties the queue.
+     * Distant boards are drawn from BoardLevelTextures instead, so it has no mipmaps.
+     * Not budgeted, call when the surface is created and a stall is expected anyway.
+     * @param snapshot board content to upload
+     * @return texture handle
+     */
+    public int createTexture(TiledBoard.Snapshot snapshot) {
+        allocateTexture(snapshot);
+        resetQueue(snapshot);
+        for (int i = 0; i < snapshot.getTileCount(); i++) {
+            uploadTile(i);
+        }//for
+
+        return texture;
+    }//createTexture
+
+    /**
+     * Creates an empty texture the size of the snapshot and queues every tile, so upload() fills it
+     * over the next frames instead of at once. Its content is undefined until the queue is empty.
+     * @param snapshot board content to stream
+     * @return texture handle
+     */
+    public int createTextureStreamed(TiledBoard.Snapshot snapshot) {
+        allocateTexture(snapshot);
+        resetQueue(snapshot);
+        queueAll(snapshot);
+        return texture;
+    }//createTextureStreamed
+
+    private void allocateTexture(TiledBoard.Snapshot snapshot) {
+        final int[] textureHandle = new int[1];
+        gl.glGenTextures(1, textureHandle, 0);
+
+        if (textureHandle[0] == 0) {
+            throw new RuntimeException("Error generating texture name.");
+        }//if
+
+        texture = textureHandle[0];
+        gl.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+
+        // Allocate the storage, the tiles fill it
+        gl.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, snapshot.getWidth(), snapshot.getHeight(), 0,
+                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+    }//allocateTexture
+
+    /**
+     * Forgets the texture without deleting it, call when the GL context was lost
+     */
+    public void clear() {
+        texture = 0;
+        if (content != null) {
+            resetQueue(content);
+        }//if
+    }//clear
+
+    /**
+     * Deletes the texture, call on the GL thread while the context is still current
+     */
+    public void release() {
+        if (texture != 0) {
+            gl.glDeleteTextures(1, new int[]{texture}, 0);
+        }//if
+        clear();
+    }//release
+
+    /**
+     * Queues changed tiles, their pixels are read from the newest snapshot queued when they are sent
+     * @param snapshot board content the tiles are taken from, the same size as the texture
+     * @param tiles indices of the changed tiles
+     * @param count number of indices in tiles
+     */
+    public void queueTiles(TiledBoard.Snapshot snapshot, int[] tiles, int count) {
+        if (content == null) {
+            resetQueue(snapshot);
+        } else if (snapshot.getWidth() != content.getWidth() || snapshot.getHeight() != content.getHeight()) {
+            throw new IllegalArgumentException("Snapshot of a different board");
+        }//else if
+        content = snapshot;
+
+        for (int i = 0; i < count; i++) {
+            int tile = tiles[i];
+            if (!queued[tile]) {
+                queued[tile] = true;
+                queue[(queueHead + queueSize) % queue.length] = tile;
+                queueSize++;
+            }//if
+        }//for
+        peakQueueDepth = Math.max(peakQueueDepth, queueSize);
+    }//queueTiles
+
+    /**
+     * Queues the tiles that are not the same array as in the newest snapshot queued so far.
+     * Snapshots share the tiles nobody wrote, so this finds every change without a dirty list.
+     * @param snapshot newer content of the same board
+     * @return number of changed tiles
+     */
+    public int queueChanges(TiledBoard.Snapshot snapshot) {
+        if (content == null) {
+            queueAll(snapshot);
+            return snapshot.getTileCount();
+        } else if (snapshot.getWidth() != content.getWidth() || snapshot.getHeight() != content.getHeight()) {
+            throw new IllegalArgumentException("Snapshot of a different board");
+        }//else if
+
+        int count = 0;
+        for (int i = 0; i < snapshot.getTileCount(); i++) {
+            if (snapshot.getTile(i) != content.getTile(i)) {
+                changed[count++] = i;
+            }//if
+        }//for
+        queueTiles(snapshot, changed, count);
+        return count;
+    }//queueChanges
+
+    /**
+     * Queues every tile of the snapshot
+     */
+    public void queueAll(TiledBoard.Snapshot snapshot) {
+        int[] tiles = new int[snapshot.getTileCount()];
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = i;
+        }//for
+        queueTiles(snapshot, tiles, tiles.length);
+    }//queueAll
+
+    /**
+     * Sends queued tiles until the byte budget is spent, call once per frame.
+     * Binds the texture on the active unit.
+     * @return bytes sent
+     */
+    public int upload() {
+        lastFrameBytes = 0;
+        if (queueSize == 0 || texture == 0) {
+            return 0;
+        }//if
+
+        gl.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+        while (queueSize > 0) {
+            int tile = queue[queueHead];
+            int bytes = tileBytes(tile);
+            // Always make progress, even with a budget smaller than a tile
+            if (lastFrameBytes > 0 && lastFrameBytes + bytes > bytesPerFrame) {
+                break;
+            }//if
+
+            queueHead = (queueHead + 1) % queue.length;
+            queueSize--;
+            queued[tile] = false;
+            uploadTile(tile);
+            lastFrameBytes += bytes;
+        }//while
+
+        uploadFrames++;
+        return lastFrameBytes;
+    }//upload
+
+    private void resetQueue(TiledBoard.Snapshot snapshot) {
+        content = snapshot;
+        int count = snapshot.getTileCount();
+        if (queued.length != count) {
+            queued = new boolean[count];
+            queue = new int[count];
+            changed = new int[count];
+        } else {
+            for (int i = 0; i < queueSize; i++) {
+                queued[queue[(queueHead + i) % queue.length]] = false;
+            }//for
+        }//else
+        queueHead = 0;
+        queueSize = 0;
+    }//resetQueue
+
+    private int tileBytes(int tile) {
+        int x = (tile % content.getTilesX()) * TiledBoard.TILE_SIZE;
+        int y = (tile / content.getTilesX()) * TiledBoard.TILE_SIZE;
+        int w = Math.min(TiledBoard.TILE_SIZE, content.getWidth() - x);
+        int h = Math.min(TiledBoard.TILE_SIZE, content.getHeight() - y);
+        return w * h * 4;
+    }//tileBytes
+
+    private void uploadTile(int tile) {
+        int x = (tile % content.getTilesX()) * TiledBoard.TILE_SIZE;
+        int y = (tile / content.getTilesX()) * TiledBoard.TILE_SIZE;
+        int w = Math.min(TiledBoard.TILE_SIZE, content.getWidth() - x);
+        int h = Math.min(TiledBoard.TILE_SIZE, content.getHeight() - y);
+
+        // Edge tiles are packed to their width, the default unpack alignment of 4 holds for RGBA rows
+        int[] src = content.getTile(tile);
+        for (int row = 0; row < h; row++) {
+            int s = row * TiledBoard.TILE_SIZE;
+            int d = row * w;
+            for (int col = 0; col < w; col++) {
+                rgba[d + col] = toRGBA(src[s + col]);
+            }//for
+        }//for
+
+        pixels.position(0);
+        pixels.put(rgba, 0, w * h);
+        pixels.position(0);
+        gl.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, x, y, w, h, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, pixels);
+
+        uploadedBytes += w * h * 4;
+        uploadedTiles++;
+    }//uploadTile
+
+    /**
+     * Converts a non-premultiplied ARGB pixel to the premultiplied R, G, B, A bytes
+     * Bitmap.copyPixelsToBuffer would produce, packed into an int in native byte order
+     */
+    static int toRGBA(int argb) {
+        int a = argb >>> 24;
+        if (a != 255) {
+            int r = ((argb >> 16) & 0xFF) * a / 255;
+            int g = ((argb >> 8) & 0xFF) * a / 255;
+            int b = (argb & 0xFF) * a / 255;
+            argb = (a << 24) | (r << 16) | (g << 8) | b;
+        }//if
+
+        if (LITTLE_ENDIAN) {
+            return (argb & 0xFF00FF00) | ((argb >> 16) & 0xFF) | ((argb & 0xFF) << 16);
+        }//if
+        return (argb << 8) | (argb >>> 24);
+    }//toRGBA
+
+    /*******************
+     * METRICS
+     *******************/
+
+    /**
+     * @return tiles waiting to be sent
+     */
+    public int getQueueDepth() {
+        return queueSize;
+    }
+
+    /**
+     * @return most tiles that were waiting at once since resetMetrics
+     */
+    public int getPeakQueueDepth() {
+        return peakQueueDepth;
+    }
+
+    public long getUploadedBytes() {
+        return uploadedBytes;
+    }
+
+    public long getUploadedTiles() {
+        return uploadedTiles;
+    }
+
+    /**
+     * @return frames in which upload() sent anything
+     */
+    public int getUploadFrames() {
+        return uploadFrames;
+    }
+
+    /**
+     * @return bytes sent by the last upload()
+     */
+    public int getLastFrameBytes() {
+        return lastFrameBytes;
+    }
+
+    public void resetMetrics() {
+        uploadedBytes = 0;
+        uploadedTiles = 0;
+        uploadFrames = 0;
+        lastFrameBytes = 0;
+        peakQueueDepth = queueSize;
+    }//resetMetrics
+}
@@ -0,0 +1,650 @@
+package com.nirzvi.virtualwhiteboard;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Board content split into fixed-size square tiles of ARGB ints, the layout Bitmap.getPixels uses.
+ *
+ * Tiles are shared copy-on-write between the board, its snapshots and its undo history,
+ * so a snapshot copies tile references and never pixels, and a write copies at most the tiles it touches.
+ * Every changed tile is also marked dirty, so only those need to reach the GPU.
+ *
+ * Edits between two calls to checkpoint() form one undo step. A step keeps the tiles it replaced,
+ * and the oldest steps are dropped once the history goes over its memory budget.
+ * Not thread safe, snapshots are immutable and can be handed to other threads.
+ */
+public class TiledBoard {
+
+    public static final int TILE_SIZE = 64;
+    public static final int TILE_PIXELS = TILE_SIZE * TILE_SIZE;
+    public static final int TILE_BYTES = TILE_PIXELS * 4;
+
+    /** Immutable view of the board at one point in time. */
+    public static class Snapshot {
+        private final int[][] tiles;
+        private final int width;
+        private final int height;
+        private final int tilesX;
+        private final long version;
+
+        private Snapshot(int[][] tiles, int width, int height, int tilesX, long version) {
+            this.tiles = tiles;
+            this.width = width;
+            this.height = height;
+            this.tilesX = tilesX;
+            this.version = version;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public int getTilesX() {
+            return tilesX;
+        }
+
+        public int getTileCount() {
+            return tiles.length;
+        }
+
+        /**
+         * @return the board version the snapshot was taken at
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * Tiles that were not written between two snapshots are the same array in both
+         * @param tile tile index, row-major
+         * @return the tile's pixels, never modify them
+         */
+        public int[] getTile(int tile) {
+            return tiles[tile];
+        }
+
+        public int getPixel(int x, int y) {
+            return tiles[(y / TILE_SIZE) * tilesX + x / TILE_SIZE][(y % TILE_SIZE) * TILE_SIZE + x % TILE_SIZE];
+        }
+    }
+
+    //one undo or redo step, the tiles it swaps back in
+    private static class Step {
+        final int[] indices;
+        final int[][] tiles;
+
+        Step(int[] indices, int[][] tiles) {
+            this.indices = indices;
+            this.tiles = tiles;
+        }
+
+        //upper bound, tiles shared with snapshots or other steps are counted in full
+        long bytes() {
+            return (long) tiles.length * TILE_BYTES;
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final int tilesX;
+    private final int tilesY;
+
+    private final int[][] tiles;
+
+    //a tile can be written in place only if the board copied it after the last snapshot or checkpoint
+    private final long[] ownedEpoch;
+    private long epoch = 1;
+
+    //tiles touched since the last checkpoint, with what they held before
+    private final boolean[] touched;
+    private final int[] touchedList;
+    private final int[][] touchedBefore;
+    private int touchedCount = 0;
+
+    //tiles changed since the last clearDirty
+    private final boolean[] dirty;
+    private final int[] dirtyList;
+    private int dirtyCount = 0;
+
+    private final Deque<Step> undoSteps = new ArrayDeque<>();
+    private final Deque<Step> redoSteps = new ArrayDeque<>();
+    private long historyBytes = 0;
+    private long historyBudget;
+
+    private long version = 0;
+    private long tileCopies = 0;
+
+    /**
+     * Creates a board filled with one colour
+     * @param width width in pixels
+     * @param height height in pixels
+     * @param argb colour of every pixel
+     * @param historyBudget most bytes of replaced tiles the undo and redo history may keep
+     */
+    public TiledBoard(int width, int height, int argb, long historyBudget) {
+        this.width = width;
+        this.height = height;
+        this.historyBudget = historyBudget;
+        tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+
+        int count = tilesX * tilesY;
+        tiles = new int[count][];
+        ownedEpoch = new long[count];
+        touched = new boolean[count];
+        touchedList = new int[count];
+        touchedBefore = new int[count][];
+        dirty = new boolean[count];
+        dirtyList = new int[count];
+
+        //every tile starts out as the same shared array
+        int[] blank = new int[TILE_PIXELS];
+        Arrays.fill(blank, argb);
+        Arrays.fill(tiles, blank);
+        for (int i = 0; i < count; i++) {
+            markDirty(i);
+        }//for
+    }//TiledBoard
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getTilesX() {
+        return tilesX;
+    }
+
+    public int getTilesY() {
+        return tilesY;
+    }
+
+    public int getTileCount() {
+        return tiles.length;
+    }
+
+    /**
+     * @return bumped by every change, snapshots carry the version they were taken at
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return how many tiles have been copied for writing, for tests and metrics
+     */
+    public long getTileCopyCount() {
+        return tileCopies;
+    }
+
+    /*******************
+     * PIXELS
+     *******************/
+
+    public int getPixel(int x, int y) {
+        return tiles[tileOf(x, y)][offsetInTile(x, y)];
+    }
+
+    public void setPixel(int x, int y, int argb) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return;
+        }//if
+        writableTile(tileOf(x, y))[offsetInTile(x, y)] = argb;
+        version++;
+    }//setPixel
+
+    /**
+     * Fills a rectangle with one colour, clipped to the board
+     */
+    public void fillRect(int x, int y, int w, int h, int argb) {
+        int left = Math.max(0, x);
+        int top = Math.max(0, y);
+        int right = Math.min(width, x + w);
+        int bottom = Math.min(height, y + h);
+        if (left >= right || top >= bottom) {
+            return;
+        }//if
+
+        for (int ty = top / TILE_SIZE; ty * TILE_SIZE < bottom; ty++) {
+            for (int tx = left / TILE_SIZE; tx * TILE_SIZE < right; tx++) {
+                int[] tile = writableTile(ty * tilesX + tx);
+
+                int x0 = Math.max(left, tx * TILE_SIZE) - tx * TILE_SIZE;
+                int x1 = Math.min(right, (tx + 1) * TILE_SIZE) - tx * TILE_SIZE;
+                int y0 = Math.max(top, ty * TILE_SIZE) - ty * TILE_SIZE;
+                int y1 = Math.min(bottom, (ty + 1) * TILE_SIZE) - ty * TILE_SIZE;
+                for (int row = y0; row < y1; row++) {
+                    Arrays.fill(tile, row * TILE_SIZE + x0, row * TILE_SIZE + x1, argb);
+                }//for
+            }//for
+        }//for
+        version++;
+    }//fillRect
+
+    /**
+     * Copies pixels in, replacing what is there, clipped to the board
+     * @param src ARGB pixels
+     * @param offset index of the first source pixel
+     * @param stride source pixels per row
+     * @param x left edge on the board
+     * @param y top edge on the board
+     * @param w width of the rectangle
+     * @param h height of the rectangle
+     */
+    public void writePixels(int[] src, int offset, int stride, int x, int y, int w, int h) {
+        copyPixels(src, offset, stride, x, y, w, h, false);
+    }
+
+    /**
+     * Draws non-premultiplied ARGB pixels over the board with source-over blending, clipped to the board
+     * @param src ARGB pixels, as Bitmap.getPixels returns them
+     * @param offset index of the first source pixel
+     * @param stride source pixels per row
+     * @param x left edge on the board
+     * @param y top edge on the board
+     * @param w width of the rectangle
+     * @param h height of the rectangle
+     */
+    public void drawPixels(int[] src, int offset, int stride, int x, int y, int w, int h) {
+        copyPixels(src, offset, stride, x, y, w, h, true);
+    }
+
+    private void copyPixels(int[] src, int offset, int stride, int x, int y, int w, int h, boolean blend) {
+        int left = Math.max(0, x);
+        int top = Math.max(0, y);
+        int right = Math.min(width, x + w);
+        int bottom = Math.min(height, y + h);
+        if (left >= right || top >= bottom) {
+            return;
+        }//if
+
+        for (int ty = top / TILE_SIZE; ty * TILE_SIZE < bottom; ty++) {
+            for (int tx = left / TILE_SIZE; tx * TILE_SIZE < right; tx++) {
+                int x0 = Math.max(left, tx * TILE_SIZE);
+                int x1 = Math.min(right, (tx + 1) * TILE_SIZE);
+                int y0 = Math.max(top, ty * TILE_SIZE);
+                int y1 = Math.min(bottom, (ty + 1) * TILE_SIZE);
+
+                //fully transparent source leaves the tile alone, and unshared
+                if (blend && isTransparent(src, offset, stride, x0 - x, y0 - y, x1 - x0, y1 - y0)) {
+                    continue;
+                }//if
+
+                int[] tile = writableTile(ty * tilesX + tx);
+                for (int py = y0; py < y1; py++) {
+                    int s = offset + (py - y) * stride + (x0 - x);
+                    int d = (py - ty * TILE_SIZE) * TILE_SIZE + (x0 - tx * TILE_SIZE);
+                    if (!blend) {
+                        System.arraycopy(src, s, tile, d, x1 - x0);
+                    } else {
+                        for (int px = x0; px < x1; px++, s++, d++) {
+                            tile[d] = blend(src[s], tile[d]);
+                        }//for
+                    }//else
+                }//for
+            }//for
+        }//for
+        version++;
+    }//copyPixels
+
+    private static boolean isTransparent(int[] src, int offset, int stride, int x, int y, int w, int h) {
+        for (int row = 0; row < h; row++) {
+            int s = offset + (y + row) * stride + x;
+            for (int col = 0; col < w; col++) {
+                if ((src[s + col] >>> 24) != 0) {
+                    return false;
+                }//if
+            }//for
+        }//for
+        return true;
+    }//isTransparent
+
+    //source-over of non-premultiplied colours
+    static int blend(int src, int dst) {
+        int sa = src >>> 24;
+        if (sa == 255) {
+            return src;
+        } else if (sa == 0) {
+            return dst;
+        }//else if
+
+        int da = dst >>> 24;
+        int outA = sa + da * (255 - sa) / 255;
+        if (outA == 0) {
+            return 0;
+        }//if
+
+        int r = (((src >> 16) & 0xFF) * sa + ((dst >> 16) & 0xFF) * da * (255 - sa) / 255) / outA;
+        int g = (((src >> 8) & 0xFF) * sa + ((dst >> 8) & 0xFF) * da * (255 - sa) / 255) / outA;
+        int b = ((src & 0xFF) * sa + (dst & 0xFF) * da * (255 - sa) / 255) / outA;
+        return (outA << 24) | (r << 16) | (g << 8) | b;
+    }//blend
+
+    /**
+     * Copies a rectangle out, clipped to the board
+     * @param dst ARGB pixels
+     * @param offset index of the first destination pixel
+     * @param stride destination pixels per row
+     */
+    public void readPixels(int[] dst, int offset, int stride, int x, int y, int w, int h) {
+        for (int py = Math.max(0, y); py < Math.min(height, y + h); py++) {
+            for (int px = Math.max(0, x); px < Math.min(width, x + w); px++) {
+                dst[offset + (py - y) * stride + (px - x)] = getPixel(px, py);
+            }//for
+        }//for
+    }//readPixels
+
+    private int tileOf(int x, int y) {
+        return (y / TILE_SIZE) * tilesX + x / TILE_SIZE;
+    }
+
+    private static int offsetInTile(int x, int y) {
+        return (y % TILE_SIZE) * TILE_SIZE + x % TILE_SIZE;
+    }
+
+    //remembers what a tile held before the current edit
+    private void touch(int index) {
+        if (!touched[index]) {
+            touched[index] = true;
+            touchedBefore[touchedCount] = tiles[index];
+            touchedList[touchedCount++] = index;
+        }//if
+    }//touch
+
+    //returns a tile that only the board holds, copying it if it is shared
+    private int[] writableTile(int index) {
+        touch(index);
+
+        if (ownedEpoch[index] != epoch) {
+            tiles[index] = tiles[index].clone();
+            ownedEpoch[index] = epoch;
+            tileCopies++;
+        }//if
+
+        markDirty(index);
+        return tiles[index];
+    }//writableTile
+
+    /*******************
+     * SNAPSHOTS
+     *******************/
+
+    /**
+     * Captures the board without copying any pixels.
+     * Later writes copy the tiles they touch, so the snapshot never changes.
+     * @return immutable view of the current content
+     */
+    public Snapshot snapshot() {
+        //every tile is now shared with the snapshot
+        epoch++;
+        return new Snapshot(tiles.clone(), width, height, tilesX, version);
+    }//snapshot
+
+    /**
+     * Makes the board match a snapshot taken from it, as one undoable edit
+     * @param snapshot snapshot of this board
+     */
+    public void restore(Snapshot snapshot) {
+        if (snapshot.getTileCount() != tiles.length) {
+            throw new IllegalArgumentException("Snapshot of a different board");
+        }//if
+
+        for (int i = 0; i < tiles.length; i++) {
+            if (tiles[i] != snapshot.tiles[i]) {
+                touch(i);
+                //the snapshot's array stays shared, it is copied before the next write
+                tiles[i] = snapshot.tiles[i];
+                ownedEpoch[i] = 0;
+                markDirty(i);
+            }//if
+        }//for
+        version++;
+    }//restore
+
+    /**
+     * Makes a rectangle of the board match a snapshot taken from it, as part of the current edit.
+     * Tiles the rectangle covers completely are shared with the snapshot instead of copied.
+     * @param snapshot snapshot of this board
+     */
+    public void restore(Snapshot snapshot, int x, int y, int w, int h) {
+        if (snapshot.getTileCount() != tiles.length) {
+            throw new IllegalArgumentException("Snapshot of a different board");
+        }//if
+
+        int left = Math.max(0, x);
+        int top = Math.max(0, y);
+        int right = Math.min(width, x + w);
+        int bottom = Math.min(height, y + h);
+        if (left >= right || top >= bottom) {
+            return;
+        }//if
+
+        for (int ty = top / TILE_SIZE; ty * TILE_SIZE < bottom; ty++) {
+            for (int tx = left / TILE_SIZE; tx * TILE_SIZE < right; tx++) {
+                int index = ty * tilesX + tx;
+                int[] source = snapshot.tiles[index];
+                if (tiles[index] == source) {
+                    continue;
+                }//if
+
+                int x0 = Math.max(left, tx * TILE_SIZE) - tx * TILE_SIZE;
+                int x1 = Math.min(right, (tx + 1) * TILE_SIZE) - tx * TILE_SIZE;
+                int y0 = Math.max(top, ty * TILE_SIZE) - ty * TILE_SIZE;
+                int y1 = Math.min(bottom, (ty + 1) * TILE_SIZE) - ty * TILE_SIZE;
+
+                //edge tiles count as covered once every pixel on the board is
+                boolean covered = x0 == 0 && y0 == 0
+                        && (x1 == TILE_SIZE || tx * TILE_SIZE + x1 == width)
+                        && (y1 == TILE_SIZE || ty * TILE_SIZE + y1 == height);
+                if (covered) {
+                    touch(index);
+                    tiles[index] = source;
+                    ownedEpoch[index] = 0;
+                    markDirty(index);
+                } else {
+                    int[] tile = writableTile(index);
+                    for (int row = y0; row < y1; row++) {
+                        System.arraycopy(source, row * TILE_SIZE + x0, tile, row * TILE_SIZE + x0, x1 - x0);
+                    }//for
+                }//else
+            }//for
+        }//for
+        version++;
+    }//restore
+
+    /*******************
+     * DIRTY TILES
+     *******************/
+
+    private void markDirty(int index) {
+        if (!dirty[index]) {
+            dirty[index] = true;
+            dirtyList[dirtyCount++] = index;
+        }//if
+    }//markDirty
+
+    /**
+     * @return number of tiles changed since the last clearDirty
+     */
+    public int getDirtyCount() {
+        return dirtyCount;
+    }
+
+    /**
+     * @param i between 0 and getDirtyCount()
+     * @return index of the i-th dirty tile
+     */
+    public int getDirtyTile(int i) {
+        return dirtyList[i];
+    }
+
+    public boolean isDirty(int tile) {
+        return dirty[tile];
+    }
+
+    /**
+     * Marks every tile clean, e.g. once they are all on the GPU
+     */
+    public void clearDirty() {
+        for (int i = 0; i < dirtyCount; i++) {
+            dirty[dirtyList[i]] = false;
+        }//for
+        dirtyCount = 0;
+    }//clearDirty
+
+    /*******************
+     * UNDO
+     *******************/
+
+    /**
+     * Ends the current edit, everything since the last checkpoint is undone as one step.
+     * Costs one reference per tile touched, no pixels are copied.
+     * @return whether there was anything to record
+     */
+    public boolean checkpoint() {
+        if (touchedCount == 0) {
+            return false;
+        }//if
+
+        Step step = takeTouched();
+        undoSteps.push(step);
+        historyBytes += step.bytes();
+
+        //a new edit makes the redo history unreachable
+        for (Step redo : redoSteps) {
+            historyBytes -= redo.bytes();
+        }//for
+        redoSteps.clear();
+
+        trimHistory();
+        return true;
+    }//checkpoint
+
+    //the touched tiles with what they held before, resets the touched set
+    private Step takeTouched() {
+        int[] indices = Arrays.copyOf(touchedList, touchedCount);
+        int[][] before = Arrays.copyOf(touchedBefore, touchedCount);
+        for (int i = 0; i < touchedCount; i++) {
+            touched[touchedList[i]] = false;
+            touchedBefore[i] = null;
+        }//for
+        touchedCount = 0;
+
+        //the history now shares the current tiles too
+        epoch++;
+        return new Step(indices, before);
+    }//takeTouched
+
+    public boolean canUndo() {
+        return touchedCount > 0 || !undoSteps.isEmpty();
+    }
+
+    public boolean canRedo() {
+        return touchedCount == 0 && !redoSteps.isEmpty();
+    }
+
+    /**
+     * Reverts the last step, ending the current edit first
+     * @return false if there was nothing to undo
+     */
+    public boolean undo() {
+        checkpoint();
+        if (undoSteps.isEmpty()) {
+            return false;
+        }//if
+
+        Step step = undoSteps.pop();
+        historyBytes -= step.bytes();
+        Step inverse = swap(step);
+        redoSteps.push(inverse);
+        historyBytes += inverse.bytes();
+        trimHistory();
+        return true;
+    }//undo
+
+    /**
+     * Reapplies the last undone step
+     * @return false if there was nothing to redo, or an edit was made since the undo
+     */
+    public boolean redo() {
+        if (!canRedo()) {
+            return false;
+        }//if
+
+        Step step = redoSteps.pop();
+        historyBytes -= step.bytes();
+        Step inverse = swap(step);
+        undoSteps.push(inverse);
+        historyBytes += inverse.bytes();
+        trimHistory();
+        return true;
+    }//redo
+
+    //puts a step's tiles back, returns the step that reverses it
+    private Step swap(Step step) {
+        int[][] current = new int[step.indices.length][];
+        for (int i = 0; i < step.indices.length; i++) {
+            int index = step.indices[i];
+            current[i] = tiles[index];
+            tiles[index] = step.tiles[i];
+            markDirty(index);
+        }//for
+
+        //both the board and the history hold these tiles now
+        epoch++;
+        version++;
+        return new Step(step.indices, current);
+    }//swap
+
+    /**
+     * Forgets every undo and redo step along with the current edit, e.g. after loading the content
+     */
+    public void clearHistory() {
+        takeTouched();
+        undoSteps.clear();
+        redoSteps.clear();
+        historyBytes = 0;
+    }//clearHistory
+
+    /**
+     * @return bytes of replaced tiles the undo and redo history holds
+     */
+    public long getHistoryBytes() {
+        return historyBytes;
+    }
+
+    public int getUndoDepth() {
+        return undoSteps.size();
+    }
+
+    public int getRedoDepth() {
+        return redoSteps.size();
+    }
+
+    /**
+     * @param historyBudget most bytes of replaced tiles the history may keep, the oldest steps go first
+     */
+    public void setHistoryBudget(long historyBudget) {
+        this.historyBudget = historyBudget;
+        trimHistory();
+    }
+
+    private void trimHistory() {
+        //the oldest edits go first, then the redo steps furthest from the present
+        while (historyBytes > historyBudget && !undoSteps.isEmpty()) {
+            historyBytes -= undoSteps.removeLast().bytes();
+        }//while
+        while (historyBytes > historyBudget && !redoSteps.isEmpty()) {
+            historyBytes -= redoSteps.removeLast().bytes();
+        }//while
+    }//trimHistory
+}
@@ -0,0 +1,123 @@
+package com.nirzvi.virtualwhiteboard;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free ring of touch samples from the UI thread to the GL thread.
+ *
+ * One producer pushes every sample of a MotionEvent, historical ones included, and one consumer
+ * drains them all at the start of a frame. Samples are kept in primitive arrays, nothing is allocated
+ * per touch. When the GL thread falls behind far enough to fill the ring, new samples are dropped and counted.
+ */
+public class TouchSampleQueue {
+
+    public static final int DOWN = 0;
+    public static final int MOVE = 1;
+    public static final int UP = 2;
+    public static final int CANCEL = 3;
+
+    private final int mask;
+    private final float[] xs;
+    private final float[] ys;
+    private final float[] pressures;
+    private final long[] times;
+    private final int[] actions;
+
+    //next slot to write and to read, only ever grow
+    private final AtomicLong head = new AtomicLong(0);
+    private final AtomicLong tail = new AtomicLong(0);
+    private final AtomicLong dropped = new AtomicLong(0);
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    public TouchSampleQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        mask = size - 1;
+        xs = new float[size];
+        ys = new float[size];
+        pressures = new float[size];
+        times = new long[size];
+        actions = new int[size];
+    }//TouchSampleQueue
+
+    /*******************
+     * PRODUCER
+     *******************/
+
+    /**
+     * @param action DOWN, MOVE, UP or CANCEL
+     * @param x surface pixels
+     * @param y surface pixels, down from the top
+     * @param pressure between 0 and 1
+     * @param timeNanos when the sample was taken, on the System.nanoTime clock
+     * @return false if the queue was full and the sample was dropped
+     */
+    public boolean push(int action, float x, float y, float pressure, long timeNanos) {
+        long h = head.get();
+        if (h - tail.get() > mask) {
+            dropped.incrementAndGet();
+            return false;
+        }//if
+
+        int i = (int) (h & mask);
+        actions[i] = action;
+        xs[i] = x;
+        ys[i] = y;
+        pressures[i] = pressure;
+        times[i] = timeNanos;
+
+        //publishes the sample
+        head.lazySet(h + 1);
+        return true;
+    }//push
+
+    /*******************
+     * CONSUMER
+     *******************/
+
+    /**
+     * @return samples waiting, read them with the getters then call release
+     */
+    public int available() {
+        return (int) (head.get() - tail.get());
+    }
+
+    public int getAction(int i) {
+        return actions[index(i)];
+    }
+
+    public float getX(int i) {
+        return xs[index(i)];
+    }
+
+    public float getY(int i) {
+        return ys[index(i)];
+    }
+
+    public float getPressure(int i) {
+        return pressures[index(i)];
+    }
+
+    public long getTime(int i) {
+        return times[index(i)];
+    }
+
+    private int index(int i) {
+        return (int) ((tail.get() + i) & mask);
+    }
+
+    /**
+     * Frees the first count samples for the producer
+     */
+    public void release(int count) {
+        tail.lazySet(tail.get() + count);
+    }
+
+    /**
+     * @return samples dropped because the queue was full
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+}
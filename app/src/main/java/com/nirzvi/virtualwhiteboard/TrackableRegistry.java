@@ -0,0 +1,90 @@
+package com.nirzvi.virtualwhiteboard;
+
+import java.util.Arrays;
+
+/**
+ * Gives every loaded trackable a dense int slot.
+ * Slots are assigned while the datasets load; after that every per-frame lookup goes
+ * from the trackable's int id to its slot without touching names.
+ */
+public class TrackableRegistry {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    //trackable ids in ascending order, with the slot of each id at the same index
+    private int[] sortedIds = new int[INITIAL_CAPACITY];
+    private int[] sortedSlots = new int[INITIAL_CAPACITY];
+
+    //names by slot, for loading and debug output only
+    private String[] names = new String[INITIAL_CAPACITY];
+
+    private int size = 0;
+
+    /**
+     * Registers a trackable, only call while loading
+     * @param id Vuforia's id of the trackable
+     * @param name name of the trackable
+     * @return the slot of the trackable
+     */
+    public int register(int id, String name) {
+        int existing = slotOf(id);
+        if (existing >= 0) {
+            return existing;
+        }//if
+
+        if (size == sortedIds.length) {
+            sortedIds = Arrays.copyOf(sortedIds, size * 2);
+            sortedSlots = Arrays.copyOf(sortedSlots, size * 2);
+            names = Arrays.copyOf(names, size * 2);
+        }//if
+
+        int slot = size;
+        int insertAt = -(Arrays.binarySearch(sortedIds, 0, size, id) + 1);
+        System.arraycopy(sortedIds, insertAt, sortedIds, insertAt + 1, size - insertAt);
+        System.arraycopy(sortedSlots, insertAt, sortedSlots, insertAt + 1, size - insertAt);
+        sortedIds[insertAt] = id;
+        sortedSlots[insertAt] = slot;
+        names[slot] = name;
+
+        size++;
+        return slot;
+    }//register
+
+    /**
+     * @param id Vuforia's id of the trackable
+     * @return the slot of the trackable, or -1 if it was never registered
+     */
+    public int slotOf(int id) {
+        int index = Arrays.binarySearch(sortedIds, 0, size, id);
+        return index >= 0 ? sortedSlots[index] : -1;
+    }//slotOf
+
+    /**
+     * Looks a trackable up by name, meant for load time and debugging
+     * @param name name of the trackable
+     * @return the slot of the trackable, or -1 if no trackable has this name
+     */
+    public int slotOf(String name) {
+        for (int slot = 0; slot < size; slot++) {
+            if (names[slot].equals(name)) {
+                return slot;
+            }//if
+        }//for
+        return -1;
+    }//slotOf
+
+    /**
+     * @param slot trackable slot
+     * @return the name of the trackable, for debug output
+     */
+    public String getName(int slot) {
+        return names[slot];
+    }
+
+    /**
+     * @return how many slots have been assigned
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,147 @@
+package com.nirzvi.virtualwhiteboard;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free, double-buffered set of poses indexed by trackable slot.
+ *
+ * A single writer (the Vuforia callback thread) fills the back buffer and publishes it,
+ * any number of readers copy the front buffer without blocking. The sequence number is a
+ * seqlock: odd while the writer is filling a buffer, even once it is published. A reader only
+ * retries if the writer lapped it and started refilling the very buffer it was copying.
+ */
+public class TrackingSnapshot {
+
+    /** thetaX, thetaY, thetaZ, x, y, z, timestamp */
+    public static final int VALUES_PER_POSE = 7;
+
+    //one extra word per slot flags whether the trackable was seen
+    private static final int STRIDE = VALUES_PER_POSE + 1;
+
+    private final int numSlots;
+
+    //both buffers back to back, every element is read and written with volatile semantics
+    private final AtomicLongArray buffers;
+    private final AtomicLong sequence = new AtomicLong(0);
+
+    //only touched by the writer
+    private int writeBuffer;
+
+    public TrackingSnapshot(int numSlots) {
+        this.numSlots = numSlots;
+        buffers = new AtomicLongArray(2 * numSlots * STRIDE);
+    }
+
+    public int getNumSlots() {
+        return numSlots;
+    }
+
+    /*******************
+     * WRITER
+     *******************/
+
+    /**
+     * Starts filling the back buffer, every slot begins untracked
+     */
+    public void beginWrite() {
+        long seq = sequence.get();
+        writeBuffer = (int) (((seq >> 1) + 1) & 1);
+
+        //odd sequence: a write is in progress
+        sequence.set(seq | 1);
+
+        int base = writeBuffer * numSlots * STRIDE;
+        for (int slot = 0; slot < numSlots; slot++) {
+            buffers.set(base + slot * STRIDE + VALUES_PER_POSE, 0);
+        }//for
+    }//beginWrite
+
+    /**
+     * Stores the pose of one trackable in the back buffer
+     * @param slot trackable slot
+     * @param values VALUES_PER_POSE values
+     */
+    public void write(int slot, double[] values) {
+        int base = (writeBuffer * numSlots + slot) * STRIDE;
+        for (int i = 0; i < VALUES_PER_POSE; i++) {
+            buffers.set(base + i, Double.doubleToRawLongBits(values[i]));
+        }//for
+        buffers.set(base + VALUES_PER_POSE, 1);
+    }//write
+
+    /**
+     * Makes the back buffer the one readers see
+     */
+    public void publish() {
+        sequence.set((sequence.get() | 1) + 1);
+    }//publish
+
+    /*******************
+     * READERS
+     *******************/
+
+    /**
+     * Copies the pose of one trackable
+     * @param slot trackable slot
+     * @param out at least VALUES_PER_POSE values
+     * @return false if the trackable was not seen in the latest frame
+     */
+    public boolean read(int slot, double[] out) {
+        while (true) {
+            long seq = sequence.get();
+            int base = (frontBuffer(seq) * numSlots + slot) * STRIDE;
+
+            boolean tracked = buffers.get(base + VALUES_PER_POSE) != 0;
+            for (int i = 0; i < VALUES_PER_POSE; i++) {
+                out[i] = Double.longBitsToDouble(buffers.get(base + i));
+            }//for
+
+            if (isConsistent(seq)) {
+                return tracked;
+            }//if
+        }//while
+    }//read
+
+    /**
+     * Copies the poses of every trackable from the same frame
+     * @param out numSlots * VALUES_PER_POSE values
+     * @param tracked numSlots flags, true if the trackable was seen
+     * @return version of the frame that was copied, 0 if nothing has been published
+     */
+    public long readAll(double[] out, boolean[] tracked) {
+        while (true) {
+            long seq = sequence.get();
+            int base = frontBuffer(seq) * numSlots * STRIDE;
+
+            for (int slot = 0; slot < numSlots; slot++) {
+                int src = base + slot * STRIDE;
+                int dst = slot * VALUES_PER_POSE;
+                for (int i = 0; i < VALUES_PER_POSE; i++) {
+                    out[dst + i] = Double.longBitsToDouble(buffers.get(src + i));
+                }//for
+                tracked[slot] = buffers.get(src + VALUES_PER_POSE) != 0;
+            }//for
+
+            if (isConsistent(seq)) {
+                return seq >> 1;
+            }//if
+        }//while
+    }//readAll
+
+    /**
+     * @return how many frames have been published
+     */
+    public long getVersion() {
+        return sequence.get() >> 1;
+    }
+
+    private static int frontBuffer(long seq) {
+        return (int) ((seq >> 1) & 1);
+    }
+
+    //the front buffer of seq is only refilled once the writer begins the write after next
+    private boolean isConsistent(long seq) {
+        return sequence.get() < (seq & ~1L) + 3;
+    }
+}
@@ -0,0 +1,159 @@
+package com.nirzvi.virtualwhiteboard;
+
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+
+/**
+ * What the renderer needs for every view that only changes with the configuration, the surface
+ * or the camera calibration: the viewport, the final projection matrices and the video background
+ * mesh, uploaded into buffer objects.
+ *
+ * invalidate() bumps a generation counter, every entry is stale until it is filled again.
+ * The mesh buffers are kept across invalidations and only re-uploaded.
+ */
+public class ViewCache {
+
+    /** Cached data of one view. */
+    public static class Entry {
+        public final int[] viewport = new int[4];
+        public final float[] projection = new float[16];
+        public final float[] backgroundProjection = new float[16];
+
+        //video background mesh, 0 while the view has none
+        int positionBuffer = 0;
+        int uvBuffer = 0;
+        int indexBuffer = 0;
+        int indexCount = 0;
+
+        private long generation = -1;
+
+        public boolean hasBackgroundMesh() {
+            return indexCount > 0;
+        }
+
+        public int getPositionBuffer() {
+            return positionBuffer;
+        }
+
+        public int getUVBuffer() {
+            return uvBuffer;
+        }
+
+        public int getIndexBuffer() {
+            return indexBuffer;
+        }
+
+        public int getIndexCount() {
+            return indexCount;
+        }
+    }
+
+    private static final int BYTES_PER_FLOAT = 4;
+    private static final int BYTES_PER_SHORT = 2;
+
+    private final GLBackend gl;
+    private final Entry[] entries;
+    private long generation = 0;
+
+    /**
+     * @param gl backend the mesh buffers are created through
+     * @param numViews number of view ids, VIEW.VIEW_COUNT for Vuforia
+     */
+    public ViewCache(GLBackend gl, int numViews) {
+        this.gl = gl;
+        entries = new Entry[numViews];
+        for (int i = 0; i < numViews; i++) {
+            entries[i] = new Entry();
+        }//for
+    }//ViewCache
+
+    public Entry get(int view) {
+        return entries[view];
+    }
+
+    /**
+     * @return whether the entry was filled since the last invalidate
+     */
+    public boolean isValid(Entry entry) {
+        return entry.generation == generation;
+    }
+
+    /**
+     * Marks an entry as filled for the current generation
+     */
+    public void validate(Entry entry) {
+        entry.generation = generation;
+    }
+
+    /**
+     * Makes every entry stale, call when the configuration, surface or calibration changes
+     */
+    public void invalidate() {
+        generation++;
+    }
+
+    /**
+     * Uploads a video background mesh into the entry's buffers, creating them the first time
+     * @param entry view to upload for
+     * @param positions 3 floats per vertex
+     * @param uvs 2 floats per vertex
+     * @param triangles 3 unsigned shorts per triangle
+     * @param numVertices number of vertices
+     * @param numTriangles number of triangles
+     */
+    public void uploadBackgroundMesh(Entry entry, Buffer positions, Buffer uvs, Buffer triangles,
+                                     int numVertices, int numTriangles) {
+        if (entry.positionBuffer == 0) {
+            int[] buffers = new int[3];
+            gl.glGenBuffers(3, buffers, 0);
+            entry.positionBuffer = buffers[0];
+            entry.uvBuffer = buffers[1];
+            entry.indexBuffer = buffers[2];
+        }//if
+
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, entry.positionBuffer);
+        gl.glBufferData(GLES20.GL_ARRAY_BUFFER, numVertices * 3 * BYTES_PER_FLOAT, positions, GLES20.GL_STATIC_DRAW);
+
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, entry.uvBuffer);
+        gl.glBufferData(GLES20.GL_ARRAY_BUFFER, numVertices * 2 * BYTES_PER_FLOAT, uvs, GLES20.GL_STATIC_DRAW);
+
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, entry.indexBuffer);
+        gl.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, numTriangles * 3 * BYTES_PER_SHORT, triangles, GLES20.GL_STATIC_DRAW);
+
+        entry.indexCount = numTriangles * 3;
+    }//uploadBackgroundMesh
+
+    /**
+     * Removes the entry's mesh, for views without a video background
+     */
+    public void clearBackgroundMesh(Entry entry) {
+        entry.indexCount = 0;
+    }
+
+    /**
+     * Forgets every buffer without deleting it and invalidates, call when the GL context was lost
+     */
+    public void clear() {
+        for (Entry entry : entries) {
+            entry.positionBuffer = 0;
+            entry.uvBuffer = 0;
+            entry.indexBuffer = 0;
+            entry.indexCount = 0;
+        }//for
+        invalidate();
+    }//clear
+
+    /**
+     * Deletes every buffer and invalidates, call on the GL thread while the context is still current
+     */
+    public void release() {
+        for (Entry entry : entries) {
+            if (entry.positionBuffer != 0) {
+                int[] buffers = {entry.positionBuffer, entry.uvBuffer, entry.indexBuffer};
+                gl.glDeleteBuffers(3, buffers, 0);
+            }//if
+        }//for
+        clear();
+    }//release
+}
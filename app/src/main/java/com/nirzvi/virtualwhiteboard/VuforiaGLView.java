@@ -21,7 +21,7 @@ import android.util.Log;
 // Responsible for setting up and configuring the OpenGL surface view.
 // This class does not contain any Vuforia specific code. 
 // You can use your own OpenGL implementation.
-public class VuforiaGLView extends GLSurfaceView
+public class VuforiaGLView extends GLSurfaceView implements FrameScheduler.Target
 {
     private static final String LOGTAG = "Vuforia_SampleGLView";
 
@@ -33,8 +33,17 @@ public class VuforiaGLView extends GLSurfaceView
     }
 
 
-    // Initialization.
-    public void init(boolean translucent, int depth, int stencil)
+    // Draws only the frames the scheduler asks for, or continuously. Call after setRenderer.
+    public void setRenderWhenDirty(FrameScheduler scheduler, boolean whenDirty)
+    {
+        setRenderMode(whenDirty ? RENDERMODE_WHEN_DIRTY : RENDERMODE_CONTINUOUSLY);
+        scheduler.setTarget(whenDirty ? this : null);
+    }
+
+
+    // Initialization. Depth and stencil are the fewest bits the drawing needs, samples the MSAA
+    // tier wanted; the closest config the device offers is used.
+    public void init(boolean translucent, int depth, int stencil, int samples)
     {
         // By default GLSurfaceView tries to find a surface that is as close
         // as possible to a 16-bit RGB frame buffer with a 16-bit depth buffer.
@@ -48,7 +57,7 @@ public class VuforiaGLView extends GLSurfaceView
         Log.i(LOGTAG, "Using OpenGL ES 2.0");
         Log.i(LOGTAG, "Using " + (translucent ? "translucent" : "opaque")
                 + " GLView, depth buffer size: " + depth + ", stencil size: "
-                + stencil);
+                + stencil + ", samples: " + samples);
 
         // If required set translucent format to allow camera image to
         // show through in the background
@@ -60,12 +69,12 @@ public class VuforiaGLView extends GLSurfaceView
         // Setup the context factory for 2.0 rendering
         setEGLContextFactory(new ContextFactory());
 
-        // We need to choose an EGLConfig that matches the format of
-        // our surface exactly. This is going to be done in our
-        // custom config chooser. See ConfigChooser class definition
-        // below.
-        setEGLConfigChooser(translucent ? new ConfigChooser(8, 8, 8, 8, depth,
-                stencil) : new ConfigChooser(5, 6, 5, 0, depth, stencil));
+        // We want an EGLConfig as close to the format of our surface as
+        // the device has, without depth or stencil we do not use. This is
+        // going to be done in our custom config chooser. See ConfigChooser
+        // class definition below.
+        setEGLConfigChooser(translucent ? new ConfigChooser(new EglConfigScorer(8, 8, 8, 8, depth,
+                stencil, samples)) : new ConfigChooser(new EglConfigScorer(5, 6, 5, 0, depth, stencil, samples)));
     }
 
     // Creates OpenGL contexts.
@@ -110,73 +119,67 @@ public class VuforiaGLView extends GLSurfaceView
         }
     }
 
-    // The config chooser.
+    // The config chooser. Scores every ES 2.0 config and returns the best,
+    // so there is always one even when nothing matches exactly.
     private static class ConfigChooser implements
             GLSurfaceView.EGLConfigChooser
     {
-        public ConfigChooser(int r, int g, int b, int a, int depth, int stencil)
+        private static final int EGL_OPENGL_ES2_BIT = 0x0004;
+
+        private final EglConfigScorer mScorer;
+        private int[] mValue = new int[1];
+
+        public ConfigChooser(EglConfigScorer scorer)
         {
-            mRedSize = r;
-            mGreenSize = g;
-            mBlueSize = b;
-            mAlphaSize = a;
-            mDepthSize = depth;
-            mStencilSize = stencil;
+            mScorer = scorer;
         }
 
 
-        private EGLConfig getMatchingConfig(EGL10 egl, EGLDisplay display,
-                                            int[] configAttribs)
+        public EGLConfig chooseConfig(EGL10 egl, EGLDisplay display)
         {
-            // Get the number of minimally matching EGL configurations
+            // Only ask for 2.0 rendering, sample buffers are left at their
+            // default of "at least 0" so multisampled configs are listed too.
+            final int[] s_configAttribs_gl20 = {
+                    EGL10.EGL_RENDERABLE_TYPE, EGL_OPENGL_ES2_BIT,
+                    EGL10.EGL_NONE };
+
+            // Get the number of matching EGL configurations
             int[] num_config = new int[1];
-            egl.eglChooseConfig(display, configAttribs, null, 0, num_config);
+            egl.eglChooseConfig(display, s_configAttribs_gl20, null, 0, num_config);
 
             int numConfigs = num_config[0];
             if (numConfigs <= 0)
-                throw new IllegalArgumentException("No matching EGL configs");
+                throw new IllegalArgumentException("No OpenGL ES 2.0 EGL configs");
 
-            // Allocate then read the array of minimally matching EGL configs
+            // Allocate then read the array of matching EGL configs
             EGLConfig[] configs = new EGLConfig[numConfigs];
-            egl.eglChooseConfig(display, configAttribs, configs, numConfigs,
+            egl.eglChooseConfig(display, s_configAttribs_gl20, configs, numConfigs,
                     num_config);
 
-            // Now return the "best" one
-            return chooseConfig(egl, display, configs);
-        }
-
-
-        public EGLConfig chooseConfig(EGL10 egl, EGLDisplay display)
-        {
-            // This EGL config specification is used to specify 2.0
-            // rendering. We use a minimum size of 4 bits for
-            // red/green/blue, but will perform actual matching in
-            // chooseConfig() below.
-            final int EGL_OPENGL_ES2_BIT = 0x0004;
-            final int[] s_configAttribs_gl20 = { EGL10.EGL_RED_SIZE, 4,
-                    EGL10.EGL_GREEN_SIZE, 4, EGL10.EGL_BLUE_SIZE, 4,
-                    EGL10.EGL_RENDERABLE_TYPE, EGL_OPENGL_ES2_BIT,
-                    EGL10.EGL_NONE };
-
-            return getMatchingConfig(egl, display, s_configAttribs_gl20);
+            // Without the depth or stencil asked for, take the closest anyway
+            EGLConfig config = chooseConfig(egl, display, configs, mScorer);
+            if (config == null)
+                config = chooseConfig(egl, display, configs, mScorer.relaxed());
+
+            Log.i(LOGTAG, "EGL config: r" + findConfigAttrib(egl, display, config, EGL10.EGL_RED_SIZE, 0)
+                    + " g" + findConfigAttrib(egl, display, config, EGL10.EGL_GREEN_SIZE, 0)
+                    + " b" + findConfigAttrib(egl, display, config, EGL10.EGL_BLUE_SIZE, 0)
+                    + " a" + findConfigAttrib(egl, display, config, EGL10.EGL_ALPHA_SIZE, 0)
+                    + " depth " + findConfigAttrib(egl, display, config, EGL10.EGL_DEPTH_SIZE, 0)
+                    + " stencil " + findConfigAttrib(egl, display, config, EGL10.EGL_STENCIL_SIZE, 0)
+                    + " samples " + findConfigAttrib(egl, display, config, EGL10.EGL_SAMPLES, 0));
+            return config;
         }
 
 
-        public EGLConfig chooseConfig(EGL10 egl, EGLDisplay display,
-                                      EGLConfig[] configs)
+        // The lowest scoring config, null if none is usable
+        private EGLConfig chooseConfig(EGL10 egl, EGLDisplay display,
+                                       EGLConfig[] configs, EglConfigScorer scorer)
         {
+            EGLConfig best = null;
+            int bestScore = EglConfigScorer.UNUSABLE;
             for (EGLConfig config : configs)
             {
-                int d = findConfigAttrib(egl, display, config,
-                        EGL10.EGL_DEPTH_SIZE, 0);
-                int s = findConfigAttrib(egl, display, config,
-                        EGL10.EGL_STENCIL_SIZE, 0);
-
-                // We need at least mDepthSize and mStencilSize bits
-                if (d < mDepthSize || s < mStencilSize)
-                    continue;
-
-                // We want an *exact* match for red/green/blue/alpha
                 int r = findConfigAttrib(egl, display, config,
                         EGL10.EGL_RED_SIZE, 0);
                 int g = findConfigAttrib(egl, display, config,
@@ -185,13 +188,25 @@ public class VuforiaGLView extends GLSurfaceView
                         EGL10.EGL_BLUE_SIZE, 0);
                 int a = findConfigAttrib(egl, display, config,
                         EGL10.EGL_ALPHA_SIZE, 0);
-
-                if (r == mRedSize && g == mGreenSize && b == mBlueSize
-                        && a == mAlphaSize)
-                    return config;
+                int d = findConfigAttrib(egl, display, config,
+                        EGL10.EGL_DEPTH_SIZE, 0);
+                int s = findConfigAttrib(egl, display, config,
+                        EGL10.EGL_STENCIL_SIZE, 0);
+                int samples = findConfigAttrib(egl, display, config,
+                        EGL10.EGL_SAMPLE_BUFFERS, 0) > 0 ? findConfigAttrib(egl, display, config,
+                        EGL10.EGL_SAMPLES, 0) : 0;
+                boolean slow = findConfigAttrib(egl, display, config,
+                        EGL10.EGL_CONFIG_CAVEAT, EGL10.EGL_NONE) == EGL10.EGL_SLOW_CONFIG;
+
+                int score = scorer.score(r, g, b, a, d, s, samples, slow);
+                if (score < bestScore)
+                {
+                    best = config;
+                    bestScore = score;
+                }
             }
 
-            return null;
+            return best;
         }
 
 
@@ -204,14 +219,5 @@ public class VuforiaGLView extends GLSurfaceView
 
             return defaultValue;
         }
-
-        // Subclasses can adjust these values:
-        protected int mRedSize;
-        protected int mGreenSize;
-        protected int mBlueSize;
-        protected int mAlphaSize;
-        protected int mDepthSize;
-        protected int mStencilSize;
-        private int[] mValue = new int[1];
     }
-}
\ No newline at end of file
+}
@@ -24,7 +24,6 @@ import com.vuforia.VideoMode;
 import com.vuforia.Vuforia;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 
 /**
  * Created by FIXIT on 2018-02-17.
@@ -35,7 +34,6 @@ public class VuforiaManager {
     private static String LOGTAG = "VuforiaManager";
 
     private static Object managementLock;
-    private static Object dataLock;
 
     private static InitVuforiaTask initTask;
     private static Runnable initCallback;
@@ -45,9 +43,18 @@ public class VuforiaManager {
     private static boolean started = false;
     private static boolean cameraRunning = false;
 
+    //one of QualityTier's VIDEO_ constants, used from the next camera start
+    private static int videoMode = QualityTier.VIDEO_DEFAULT;
+
+    //bumped every time the camera starts, which may change its calibration
+    private static volatile int cameraGeneration = 0;
+
     private static ArrayList<String> fileNames;
     private static ArrayList<DataSet> dataSets;
-    private static HashMap<String, double[]> trackingData;
+    private static TrackableRegistry trackables;
+
+    //poses by trackable slot, written by the Vuforia thread and read lock-free by everyone else
+    private static volatile TrackingSnapshot trackingData;
 
     private static Matrix44F projectionMatrix;
     private static boolean mIsPortrait;
@@ -55,45 +62,49 @@ public class VuforiaManager {
     private static int mScreenHeight;
 
     private static Vuforia.UpdateCallbackInterface callback = new Vuforia.UpdateCallbackInterface() {
+
+        //only ever touched by the Vuforia thread, so nothing is allocated per frame
+        private final double[] poseValues = new double[TrackingSnapshot.VALUES_PER_POSE];
+
         @Override
         public void Vuforia_onUpdate(State s) {
 
-            synchronized (dataLock) {
+            TrackingSnapshot snapshot = trackingData;
+            if (snapshot == null) {
+                return;
+            }//if
 
-                int numResults = s.getNumTrackableResults();
-                trackingData.clear();
+            int numResults = s.getNumTrackableResults();
+            snapshot.beginWrite();
 
-                for (int i = 0; i < numResults; i++) {
-                    TrackableResult result = s.getTrackableResult(i);
+            for (int i = 0; i < numResults; i++) {
+                TrackableResult result = s.getTrackableResult(i);
 
-                    if (result != null) {
+                if (result != null) {
+                    int slot = trackables.slotOf(result.getTrackable().getId());
+                    if (slot < 0) {
+                        continue;
+                    }//if
 
-                        // Convert values into useful trackingData
-                        //Angles are in radians distances are relative to the calibration image
-                        //Also a timestamp is added
-                        float[] data = result.getPose().getData();
-                        float[][] rotation = {{data[0], data[1], data[2]},
-                                {data[4], data[5], data[6]},
-                                {data[8], data[9], data[10]}};
+                    // Convert values into useful trackingData
+                    //Angles are in radians distances are relative to the calibration image
+                    //Also a timestamp is added
+                    float[] data = result.getPose().getData();
+                    PoseMath.poseToEuler(data, 0, poseValues, 0);
 
-                        double thetaX = Math.atan2(rotation[2][1], rotation[2][2]);
-                        double thetaY = Math.atan2(-rotation[2][0], Math.sqrt(rotation[2][1] * rotation[2][1] + rotation[2][2] * rotation[2][2]));
-                        double thetaZ = Math.atan2(rotation[1][0], rotation[0][0]);
+                    poseValues[3] = data[3];
+                    poseValues[4] = data[7];
+                    poseValues[5] = data[11];
+                    poseValues[6] = System.currentTimeMillis();
 
-                        double[] tempVuforiaData = new double[7];
+                    snapshot.write(slot, poseValues);
+                }//if
+            }//for
 
-                        tempVuforiaData[0] = thetaX;
-                        tempVuforiaData[1] = thetaY;
-                        tempVuforiaData[2] = thetaZ;
-                        tempVuforiaData[3] = data[3];
-                        tempVuforiaData[4] = data[7];
-                        tempVuforiaData[5] = data[11];
-                        tempVuforiaData[6] = System.currentTimeMillis();
+            snapshot.publish();
 
-                        trackingData.put(result.getTrackable().getName(), tempVuforiaData);
-                    }//if
-                }//for
-            }//synchronized
+            // A new camera frame is a new video background to draw
+            MainActivity.getFrameScheduler().request(FrameScheduler.REASON_CAMERA);
         }//Vuforia_onUpdate
     };
 
@@ -106,11 +117,11 @@ public class VuforiaManager {
         initCallback = callback;
 
         managementLock = new Object();
-        dataLock = new Object();
 
         fileNames = new ArrayList<>();
         dataSets = new ArrayList<>();
-        trackingData = new HashMap<>();
+        trackables = new TrackableRegistry();
+        trackingData = null;
 
         updateActivityOrientation();
 
@@ -305,10 +316,16 @@ public class VuforiaManager {
                 trackable.setUserData(name);
 
                 Log.d(LOGTAG, "UserData: Set the following user trackingData " + trackable.getUserData());
+
+                // Each trackable gets its own slot in the tracking data, the name is only used here
+                int slot = trackables.register(trackable.getId(), trackable.getName());
+                Log.d(LOGTAG, "Trackable " + trackable.getName() + " uses slot " + slot);
             }//for
 
         }//for
 
+        trackingData = new TrackingSnapshot(trackables.size());
+
 
         return true;
     }//doLoadTrackersData
@@ -358,7 +375,7 @@ public class VuforiaManager {
             return false;
         }//if
 
-        if (!CameraDevice.getInstance().selectVideoMode(CameraDevice.MODE.MODE_DEFAULT)) {
+        if (!CameraDevice.getInstance().selectVideoMode(toCameraMode(videoMode))) {
             return false;
         }//if
 
@@ -369,6 +386,7 @@ public class VuforiaManager {
         }//if
 
         setProjectionMatrix();
+        cameraGeneration++;
 
         doStartTrackers();
 
@@ -398,6 +416,75 @@ public class VuforiaManager {
 
     }//stopCamera
 
+    /**
+     * Picks the camera's video mode, restarting it if it is running. Call on the UI thread.
+     * @param mode one of QualityTier's VIDEO_ constants
+     */
+    public static void setVideoMode(int mode) {
+        if (mode == videoMode) {
+            return;
+        }//if
+        videoMode = mode;
+
+        if (cameraRunning) {
+            stopVuforiaCamera();
+            startVuforiaCamera();
+        }//if
+    }//setVideoMode
+
+    private static int toCameraMode(int mode) {
+        switch (mode) {
+            case QualityTier.VIDEO_QUALITY:
+                return CameraDevice.MODE.MODE_OPTIMIZE_QUALITY;
+            case QualityTier.VIDEO_SPEED:
+                return CameraDevice.MODE.MODE_OPTIMIZE_SPEED;
+            default:
+                return CameraDevice.MODE.MODE_DEFAULT;
+        }//switch
+    }//toCameraMode
+
+    /**
+     * Finds the slot a trackable's tracking data is stored under
+     * @param name name of the trackable
+     * @return slot, or -1 if no trackable has this name
+     */
+    public static int getTrackableSlot(String name) {
+        return trackables == null ? -1 : trackables.slotOf(name);
+    }//getTrackableSlot
+
+    /**
+     * @return the slots of every loaded trackable
+     */
+    public static TrackableRegistry getTrackableRegistry() {
+        return trackables;
+    }//getTrackableRegistry
+
+    /**
+     * Copies the latest tracking data of one trackable without blocking the Vuforia thread
+     * @param slot trackable slot from getTrackableSlot
+     * @param out thetaX, thetaY, thetaZ, x, y, z, timestamp
+     * @return true if the trackable was seen in the latest frame
+     */
+    public static boolean getTrackingData(int slot, double[] out) {
+        TrackingSnapshot snapshot = trackingData;
+        return snapshot != null && slot >= 0 && slot < snapshot.getNumSlots() && snapshot.read(slot, out);
+    }//getTrackingData
+
+    /**
+     * @return the tracking data of every trackable, or null before the trackers are loaded
+     */
+    public static TrackingSnapshot getTrackingSnapshot() {
+        return trackingData;
+    }//getTrackingSnapshot
+
+    /**
+     * Counts camera starts, anything derived from the camera calibration is stale once this changes
+     * @return the current camera generation
+     */
+    public static int getCameraGeneration() {
+        return cameraGeneration;
+    }//getCameraGeneration
+
     public static Matrix44F getProjectionMatrix() {
         return projectionMatrix;
     }//getProjectionMatrix
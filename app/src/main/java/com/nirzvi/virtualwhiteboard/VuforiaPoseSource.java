@@ -0,0 +1,43 @@
+package com.nirzvi.virtualwhiteboard;
+
+import com.vuforia.State;
+
+/**
+ * Reads poses straight out of the Vuforia state of the current frame.
+ * The Vuforia bindings still create small wrapper objects per result,
+ * everything after the copy is allocation-free.
+ */
+public class VuforiaPoseSource implements PoseSource {
+
+    private final TrackableRegistry trackables;
+    private State state;
+
+    public VuforiaPoseSource(TrackableRegistry trackables) {
+        this.trackables = trackables;
+    }
+
+    public void setState(State state) {
+        this.state = state;
+    }
+
+    @Override
+    public double getTimestamp() {
+        return state == null ? 0 : state.getFrame().getTimeStamp();
+    }
+
+    @Override
+    public int getNumPoses() {
+        return state == null ? 0 : state.getNumTrackableResults();
+    }
+
+    @Override
+    public int getSlot(int index) {
+        return trackables == null ? -1 : trackables.slotOf(state.getTrackableResult(index).getTrackable().getId());
+    }
+
+    @Override
+    public void getPose(int index, float[] out, int offset) {
+        float[] data = state.getTrackableResult(index).getPose().getData();
+        System.arraycopy(data, 0, out, offset, PoseMath.POSE_SIZE);
+    }
+}
@@ -10,20 +10,13 @@ package com.nirzvi.virtualwhiteboard;
 
 import android.annotation.TargetApi;
 import android.app.Activity;
-import android.content.Context;
 import android.content.res.Configuration;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
 import android.graphics.Point;
-import android.graphics.drawable.Drawable;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
-import android.opengl.GLUtils;
 import android.opengl.Matrix;
 import android.os.Build;
+import android.os.Debug;
 import android.util.Log;
 
 import com.vuforia.COORDINATE_SYSTEM_TYPE;
@@ -31,35 +24,24 @@ import com.vuforia.CameraDevice;
 import com.vuforia.Device;
 import com.vuforia.GLTextureUnit;
 import com.vuforia.Matrix34F;
-import com.vuforia.Matrix44F;
 import com.vuforia.Mesh;
 import com.vuforia.Renderer;
 import com.vuforia.RenderingPrimitives;
 import com.vuforia.State;
 import com.vuforia.Tool;
-import com.vuforia.TrackableResult;
 import com.vuforia.TrackerManager;
 import com.vuforia.VIDEO_BACKGROUND_REFLECTION;
 import com.vuforia.VIEW;
 import com.vuforia.Vec2F;
 import com.vuforia.Vec2I;
-import com.vuforia.Vec4I;
 import com.vuforia.VideoBackgroundConfig;
 import com.vuforia.VideoMode;
 import com.vuforia.ViewList;
 import com.vuforia.Vuforia;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
-import java.nio.ShortBuffer;
-import java.util.Arrays;
-
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
-import static android.opengl.GLES20.GL_CLAMP_TO_EDGE;
-
 public class VuforiaRenderer implements GLSurfaceView.Renderer {
     public static final String VB_VERTEX_SHADER =
             "attribute vec4 vertexPosition;\n" +
@@ -93,8 +75,77 @@ public class VuforiaRenderer implements GLSurfaceView.Renderer {
     private float mNearPlane = -1.0f;
     private float mFarPlane = -1.0f;
 
+    // Every GL call goes through this, redundant binds and enables are dropped on the way
+    private final StateCachingGLBackend gl;
+
+    // Every shader program, linked once per context
+    private final ProgramCache programs;
+
     private WhiteBoard board;
 
+    // Board edits reach the texture a few tiles per frame
+    private static final int TEXTURE_UPLOAD_BUDGET = 256 * 1024;
+    private final AdaptiveBoardTexture boardTexture;
+    // Distant boards are drawn from reduced copies, only the levels in use are kept
+    private static final int LEVEL_UPLOAD_BUDGET = 128 * 1024;
+    private final BoardLevelTextures levelTextures;
+    // Edited versions arrive here from the rasterizer's thread
+    private final BoardChannel boardChannel;
+    private long boardVersion = -1;
+
+    // Touches on the camera view become ink on the board, drawn as geometry until the texture has it
+    private static final int TOUCH_QUEUE_SIZE = 256;
+    private final TouchSampleQueue touches = new TouchSampleQueue(TOUCH_QUEUE_SIZE);
+    private final LiveInk liveInk;
+    private final LiveInkRenderer liveInkRenderer;
+    private int mSurfaceHeight = 0;
+
+    // The board's text, drawn as glyph quads over the board texture
+    private static final float TEXT_X = 50;
+    private static final float TEXT_BASELINE = 224;
+    private static final float TEXT_SIZE = 64;
+    private final TextRenderer textRenderer;
+    private final float textWidth;
+
+    // Most boards drawn in a single view
+    private static final int MAX_BOARDS = 128;
+
+    // Smooth the poses and predict them about one camera frame ahead
+    private static final int POSE_FILTER = PoseFilter.ONE_EURO_PREDICTED;
+    private static final double PREDICTION_TIME = 0.033;
+    // Boards whose corners moved less than this, in trackable units, are not culled again
+    private static final float POSE_EPSILON = 0.5f;
+    private BoardScene scene;
+    // Boards out of view or too small to see are dropped before any GL work
+    private final BoardCuller culler = new BoardCuller();
+
+    // Asked for a frame by the camera, edits and touches when the view renders on demand
+    private final FrameScheduler frameScheduler;
+
+    // Lowers the quality as frames run over budget, and raises it again once they have room
+    private final QualityGovernor governor;
+    // One frame per GPU_TIMING_INTERVAL_NANOS is timed with the GPU's work in it for the governor,
+    // every frame for the short EGL calibration
+    private static final long GPU_TIMING_INTERVAL_NANOS = 500000000L;
+    private static final int TIMED_FOR_GOVERNOR = 1;
+    private static final int TIMED_FOR_CALIBRATION = 2;
+    private final GpuFrameTimer gpuTimer;
+    private long lastGovernedFrame;
+
+    // Measures frame times for the first run's EGL calibration, null once it is done
+    private volatile EglCalibration calibration;
+    private volatile Runnable onCalibrationMeasured;
+    private VuforiaPoseSource poseSource;
+    private int numSlots;
+
+    // Per-stage frame timings, kept in a ring buffer for trace export
+    private static final int PROFILER_EVENTS = 4096;
+    private final FrameProfiler profiler = new FrameProfiler(PROFILER_EVENTS);
+
+    // Per-view matrices and background meshes, rebuilt only when something they depend on changes
+    private final ViewCache viewCache;
+    private int cameraGeneration = -1;
+
     private GLTextureUnit videoBackgroundTex = null;
 
     // Shader user to render the video background on AR mode
@@ -112,66 +163,6 @@ public class VuforiaRenderer implements GLSurfaceView.Renderer {
     private boolean mIsPortrait = false;
 
 
-    static int initShader(int shaderType, String source)
-    {
-        int shader = GLES20.glCreateShader(shaderType);
-        if (shader != 0)
-        {
-            GLES20.glShaderSource(shader, source);
-            GLES20.glCompileShader(shader);
-
-            int[] glStatusVar = { GLES20.GL_FALSE };
-            GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, glStatusVar,
-                    0);
-            if (glStatusVar[0] == GLES20.GL_FALSE)
-            {
-                Log.e(LOGTAG, "Could NOT compile shader " + shaderType + " : "
-                        + GLES20.glGetShaderInfoLog(shader));
-                GLES20.glDeleteShader(shader);
-                shader = 0;
-            }
-
-        }
-
-        return shader;
-    }
-
-
-    public static int createProgramFromShaderSrc(String vertexShaderSrc,
-                                                 String fragmentShaderSrc)
-    {
-        int vertShader = initShader(GLES20.GL_VERTEX_SHADER, vertexShaderSrc);
-        int fragShader = initShader(GLES20.GL_FRAGMENT_SHADER,
-                fragmentShaderSrc);
-
-        if (vertShader == 0 || fragShader == 0)
-            return 0;
-
-        int program = GLES20.glCreateProgram();
-        if (program != 0)
-        {
-            GLES20.glAttachShader(program, vertShader);
-
-            GLES20.glAttachShader(program, fragShader);
-
-            GLES20.glLinkProgram(program);
-            int[] glStatusVar = { GLES20.GL_FALSE };
-            GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, glStatusVar,
-                    0);
-            if (glStatusVar[0] == GLES20.GL_FALSE)
-            {
-                Log.e(
-                        LOGTAG,
-                        "Could NOT link program : "
-                                + GLES20.glGetProgramInfoLog(program));
-                GLES20.glDeleteProgram(program);
-                program = 0;
-            }
-        }
-
-        return program;
-    }
-
     public VuforiaRenderer(Activity activity, int deviceMode,
                            boolean stereo, float nearPlane, float farPlane)
     {
@@ -179,7 +170,31 @@ public class VuforiaRenderer implements GLSurfaceView.Renderer {
 
         mRenderer = Renderer.getInstance();
 
-        board = new WhiteBoard();
+        gl = new StateCachingGLBackend(new AndroidGLBackend());
+        programs = new ProgramCache(gl);
+        board = new WhiteBoard(gl, programs);
+        boardTexture = new AdaptiveBoardTexture(gl, new TextureStreamer(gl, TEXTURE_UPLOAD_BUDGET),
+                MainActivity.getWhiteBoardEncoder());
+        levelTextures = new BoardLevelTextures(gl, MainActivity.getWhiteBoardPyramids(), LEVEL_UPLOAD_BUDGET);
+        boardChannel = MainActivity.getWhiteBoardRasterizer().getChannel();
+        liveInk = new LiveInk(MainActivity.getWhiteBoardRasterizer(), MainActivity.getWhiteBoardInk());
+        frameScheduler = MainActivity.getFrameScheduler();
+        governor = MainActivity.getQualityGovernor();
+        gpuTimer = new GpuFrameTimer(gl);
+        lastGovernedFrame = System.nanoTime() - GPU_TIMING_INTERVAL_NANOS;
+        TiledBoard.Snapshot content = boardChannel.peek();
+        liveInkRenderer = new LiveInkRenderer(gl, programs, content.getWidth(), content.getHeight());
+        textRenderer = new TextRenderer(gl, programs, content.getWidth(), content.getHeight());
+        textWidth = content.getWidth() - 2 * TEXT_X;
+        viewCache = new ViewCache(gl, VIEW.VIEW_COUNT);
+        TrackableRegistry trackables = VuforiaManager.getTrackableRegistry();
+        numSlots = trackables == null ? 0 : trackables.size();
+
+        scene = new BoardScene(MAX_BOARDS, numSlots);
+        scene.setPoseFilter(PoseFilter.create(POSE_FILTER, numSlots));
+        scene.setPredictionTime(PREDICTION_TIME);
+        scene.setPoseEpsilon(POSE_EPSILON);
+        poseSource = new VuforiaPoseSource(trackables);
 
         if(farPlane < nearPlane)
         {
@@ -203,8 +218,24 @@ public class VuforiaRenderer implements GLSurfaceView.Renderer {
 
     public void onSurfaceCreated()
     {
+        // A new context starts with default state and none of the old programs
+        gl.invalidate();
+        programs.clear();
+        viewCache.clear();
+        boardTexture.clear();
+        levelTextures.clear();
+
         initRendering();
-        board.init(MainActivity.fetchWhiteBoardBitmap());
+        gpuTimer.init(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2);
+        TiledBoard.Snapshot content = boardChannel.peek();
+        boardVersion = content.getVersion();
+        int texture = boardTexture.init(content, System.nanoTime());
+        board.init(scene.getBatch(), numSlots, texture);
+        levelTextures.init(content);
+        board.setLevelTextures(levelTextures.getTextures());
+        applyQualityTier();
+        liveInkRenderer.init();
+        textRenderer.init(MainActivity.getGlyphAtlas());
 
     }
 
@@ -217,77 +248,24 @@ public class VuforiaRenderer implements GLSurfaceView.Renderer {
             configureVideoBackground();
 
         mRenderingPrimitives = Device.getInstance().getRenderingPrimitives();
-    }
-
-    public static int loadTexture(String textString)
-    {
-        final int[] textureHandle = new int[1];
-
-        GLES20.glGenTextures(1, textureHandle, 0);
-
-        if (textureHandle[0] != 0)
-        {
-
-            // Create an empty, mutable bitmap
-            Bitmap text = Bitmap.createBitmap(256, 256, Bitmap.Config.ARGB_4444).copy(Bitmap.Config.ARGB_4444, true);
-
-            // get a canvas to paint over the bitmap
-            Canvas canvas = new Canvas(text);
-            text.eraseColor(Color.WHITE);
-
-
-            // Draw the text
-            Paint textPaint = new Paint();
-            textPaint.setTextSize(32);
-            textPaint.setAntiAlias(true);
-            textPaint.setARGB(0xff, 0x00, 0x00, 0x00);
-            // draw the text centered
-            canvas.drawText(textString, 16,112, textPaint);
-
-            // Bind to the texture in OpenGL
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle[0]);
-
-            // Set filtering
-            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
-            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
-
-            // Load the bitmap into the bound texture.
-            GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, text, 0);
-            text.recycle();
-        }
-
-        if (textureHandle[0] == 0)
-        {
-            throw new RuntimeException("Error loading texture.");
-        }
-
-        return textureHandle[0];
+        viewCache.invalidate();
     }
 
     void initRendering()
     {
-        vbShaderProgramID = createProgramFromShaderSrc(VB_VERTEX_SHADER,
-                VB_FRAGMENT_SHADER);
-
-        // Rendering configuration for video background
-        if (vbShaderProgramID > 0)
-        {
-            // Activate shader:
-            GLES20.glUseProgram(vbShaderProgramID);
-
-            // Retrieve handler for texture sampler shader uniform variable:
-            vbTexSampler2DHandle = GLES20.glGetUniformLocation(vbShaderProgramID, "texSampler2D");
+        // Linked once per context, so calling this again on every surface change is cheap
+        ShaderProgram vbProgram = programs.get(VB_VERTEX_SHADER, VB_FRAGMENT_SHADER,
+                "vertexPosition", "vertexTexCoord");
+        vbShaderProgramID = vbProgram.getHandle();
 
-            // Retrieve handler for projection matrix shader uniform variable:
-            vbProjectionMatrixHandle = GLES20.glGetUniformLocation(vbShaderProgramID, "projectionMatrix");
+        // Retrieve handler for texture sampler shader uniform variable:
+        vbTexSampler2DHandle = vbProgram.getUniformLocation("texSampler2D");
 
-            vbVertexHandle = GLES20.glGetAttribLocation(vbShaderProgramID, "vertexPosition");
-            vbTexCoordHandle = GLES20.glGetAttribLocation(vbShaderProgramID, "vertexTexCoord");
-            vbTexSampler2DHandle = GLES20.glGetUniformLocation(vbShaderProgramID, "texSampler2D");
-        }//if
-
-        GLES20.glUseProgram(0);
+        // Retrieve handler for projection matrix shader uniform variable:
+        vbProjectionMatrixHandle = vbProgram.getUniformLocation("projectionMatrix");
 
+        vbVertexHandle = vbProgram.getAttribLocation("vertexPosition");
+        vbTexCoordHandle = vbProgram.getAttribLocation("vertexTexCoord");
 
         videoBackgroundTex = new GLTextureUnit();
     }
@@ -295,13 +273,39 @@ public class VuforiaRenderer implements GLSurfaceView.Renderer {
     // Main rendering method
     // The method setup state for rendering, setup 3D transformations required for AR augmentation
     // and call any specific rendering method
-    public void render(GL10 gl)
+    public void render(GL10 gl10)
     {
-        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+        profiler.begin(FrameProfiler.STAGE_FRAME);
+        long frameStart = System.nanoTime();
+        int timing = frameStart - lastGovernedFrame >= GPU_TIMING_INTERVAL_NANOS ? TIMED_FOR_GOVERNOR : 0;
+        if (calibration != null)
+            timing |= TIMED_FOR_CALIBRATION;
+        boolean timed = gpuTimer.begin(frameStart, timing);
+        if (timed && (timing & TIMED_FOR_GOVERNOR) != 0)
+            lastGovernedFrame = frameStart;
+        frameScheduler.onFrameStart(frameStart);
+        // GLSurfaceView swapped the last frame before calling us again
+        liveInk.onFramePresented(frameStart);
+        long frameCpuStart = Debug.threadCpuTimeNanos();
+
+        // The surface has no depth buffer, nothing is drawn with depth testing
+        gl.glClear(GLES20.GL_COLOR_BUFFER_BIT);
         State state;
         // Get our current state
+        profiler.begin(FrameProfiler.STAGE_UPDATE_STATE);
         state = TrackerManager.getInstance().getStateUpdater().updateState();
+        profiler.end(FrameProfiler.STAGE_UPDATE_STATE);
         mRenderer.begin(state);
+        // Vuforia may have touched GL state since the last frame
+        gl.invalidate();
+        poseSource.setState(state);
+
+        // A restarted camera may come with a new calibration
+        if (cameraGeneration != VuforiaManager.getCameraGeneration())
+        {
+            cameraGeneration = VuforiaManager.getCameraGeneration();
+            viewCache.invalidate();
+        }
 
         // We must detect if background reflection is active and adjust the
         // culling direction.
@@ -310,36 +314,162 @@ public class VuforiaRenderer implements GLSurfaceView.Renderer {
         // therefore standard counter clockwise face culling will result in
         // "inside out" models.
         if (Renderer.getInstance().getVideoBackgroundConfig().getReflection() == VIDEO_BACKGROUND_REFLECTION.VIDEO_BACKGROUND_REFLECTION_ON)
-            GLES20.glFrontFace(GLES20.GL_CW);  // Front camera
+            gl.glFrontFace(GLES20.GL_CW);  // Front camera
         else
-            GLES20.glFrontFace(GLES20.GL_CCW);   // Back camera
+            gl.glFrontFace(GLES20.GL_CCW);   // Back camera
+
+        // Scene prepare: everything that depends on the poses runs once per frame, however many views there are.
+        // Collect every tracked board into the batch, the views below only draw it.
+        profiler.begin(FrameProfiler.STAGE_SCENE);
 
         // We get a list of views which depend on the mode we are working on, for mono we have
         // only one view, in stereo we have three: left, right and postprocess
         ViewList viewList = mRenderingPrimitives.getRenderingViews();
 
-        // Cycle through the view list
+        // Boards are culled, picked by touches and given their resolution through the first view,
+        // with this frame's poses. Every eye is close enough, the culler leaves a margin for the others.
+        int touchViewID = viewList.getView(0);
+        ViewCache.Entry touchView = viewCache.get(touchViewID);
+        if (!viewCache.isValid(touchView))
+        {
+            updateView(touchView, touchViewID, state);
+            scene.invalidate();
+        }
+        // Boards that held still keep last frame's culled batch
+        if (scene.prepare(poseSource))
+            culler.cull(scene.getBatch(), touchView.projection, touchView.viewport);
+        else
+            culler.countStillFrame();
+        profiler.end(FrameProfiler.STAGE_SCENE);
+
+        // Pick up the newest edited version without waiting, then send part of what changed,
+        // the rest waits for the next frames. Content left alone is swapped for an ETC1 texture.
+        profiler.begin(FrameProfiler.STAGE_TEXTURE_UPLOAD);
+        TiledBoard.Snapshot content = boardChannel.poll(boardVersion);
+        if (content != null)
+        {
+            boardVersion = content.getVersion();
+        }
+        boardTexture.update(content, System.nanoTime());
+        board.setTexture(boardTexture.getTexture());
+        levelTextures.update(content);
+        // Only a changed text is laid out again, into a small vertex buffer
+        textRenderer.setText(MainActivity.getWhiteBoardText(), TEXT_X, TEXT_BASELINE, TEXT_SIZE, textWidth);
+        profiler.end(FrameProfiler.STAGE_TEXTURE_UPLOAD);
+
+        // Touches land on the boards left, so they are drawn this frame
+        levelTextures.select(scene.getBatch());
+        liveInk.update(touches, scene.getBatch(), touchView.projection, touchView.viewport, mSurfaceHeight,
+                boardVersion, boardTexture.isUpToDate() && levelTextures.isUpToDate());
+        liveInkRenderer.prepare(liveInk);
+
+        // Submit: cycle through the view list
         for (int v = 0; v < viewList.getNumViews(); v++)
         {
-            // Get the view id
-            int viewID = viewList.getView(v);
+            renderView(viewList.getView(v), state);
+        }
 
-            Vec4I viewport;
-            // Get the viewport for that specific view
-            viewport = mRenderingPrimitives.getViewport(viewID);
+        mRenderer.end();
 
-            // Set viewport for current view
-            GLES20.glViewport(viewport.getData()[0], viewport.getData()[1], viewport.getData()[2], viewport.getData()[3]);
+        // Uploads left over for the next frames need one even if nothing else changes, so do ink samples
+        // waiting for this frame's swap to be stamped
+        boolean inkDrawn = liveInk.onFrameDrawn();
+        if (inkDrawn || !boardTexture.isUpToDate() || !levelTextures.isUpToDate())
+            frameScheduler.request(FrameScheduler.REASON_UNFINISHED);
+        frameScheduler.onFrameEnd(Debug.threadCpuTimeNanos() - frameCpuStart);
+        profiler.end(FrameProfiler.STAGE_FRAME);
+
+        // The commands above are only queued, the GPU draws them after render() returns. Without timer
+        // queries a timed frame waits for it here, which is kept out of the frame stage and shows as
+        // its own, so its cost can be read from the trace.
+        if (timed)
+            profiler.begin(FrameProfiler.STAGE_GPU_TIMING);
+        long frameNanos = gpuTimer.end();
+        if (timed)
+            profiler.end(FrameProfiler.STAGE_GPU_TIMING);
+        if (frameNanos >= 0)
+        {
+            int tag = gpuTimer.getTag();
+            if ((tag & TIMED_FOR_GOVERNOR) != 0 && governor.recordFrame(frameNanos))
+                onQualityTierChanged();
+            EglCalibration frameCalibration = calibration;
+            if ((tag & TIMED_FOR_CALIBRATION) != 0 && frameCalibration != null
+                    && frameCalibration.recordFrame(frameNanos))
+                mActivity.runOnUiThread(onCalibrationMeasured);
+        }
+    }
 
-            // Set scissor
-            GLES20.glScissor(viewport.getData()[0], viewport.getData()[1], viewport.getData()[2], viewport.getData()[3]);
+    // Applies what the GL thread owns of the governor's tier
+    private void applyQualityTier()
+    {
+        QualityTier tier = governor.getTier();
+        mRenderer.setTargetFps(tier.getTargetFps());
+        levelTextures.setMinLevel(tier.getMinLevel());
+    }
+
+    private void onQualityTierChanged()
+    {
+        final int videoMode = governor.getVideoMode();
+        Log.i(LOGTAG, "Quality tier " + governor.getTier() + ", video mode " + videoMode + ", frame time p50 "
+                + governor.getLastP50() / 1000 + " us, p95 " + governor.getLastP95() / 1000 + " us");
+        applyQualityTier();
+
+        // The camera restarts on the UI thread once the governor lets the video mode change, which is
+        // a no-op otherwise. The MSAA samples are capped when the surface is next created.
+        mActivity.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                VuforiaManager.setVideoMode(videoMode);
+            }
+        });
+        MainActivity.saveQualityTier(mActivity, governor.getTierIndex());
+    }
+
+    // Draws the prepared scene into one view, only per-view work belongs here
+    private void renderView(int viewID, State state)
+    {
+        currentView = viewID;
+
+        // Viewports, projections and the background mesh only change with the configuration
+        ViewCache.Entry view = viewCache.get(viewID);
+        if (!viewCache.isValid(view))
+            updateView(view, viewID, state);
+
+        // Set viewport for current view
+        int[] viewport = view.viewport;
+        gl.glViewport(viewport[0], viewport[1], viewport[2], viewport[3]);
+
+        // Set scissor
+        gl.glScissor(viewport[0], viewport[1], viewport[2], viewport[3]);
+
+        // The post process view only distorts what the eye views drew
+        if (viewID == VIEW.VIEW_POSTPROCESS)
+            return;
+
+        profiler.begin(FrameProfiler.STAGE_VIDEO_BACKGROUND);
+        renderVideoBackground(view);
+        profiler.end(FrameProfiler.STAGE_VIDEO_BACKGROUND);
+
+        profiler.begin(FrameProfiler.STAGE_DRAW_BOARDS);
+        board.draw(scene.getBatch(), view.projection);
+        textRenderer.draw(scene.getBatch(), view.projection, viewport);
+        liveInkRenderer.draw(scene.getBatch(), view.projection);
+        profiler.end(FrameProfiler.STAGE_DRAW_BOARDS);
+    }
+
+    // Fills the cache entry of a view, runs again only after viewCache.invalidate()
+    private void updateView(ViewCache.Entry view, int viewID, State state)
+    {
+        // Get the viewport for that specific view
+        System.arraycopy(mRenderingPrimitives.getViewport(viewID).getData(), 0, view.viewport, 0, 4);
 
+        if (viewID != VIEW.VIEW_POSTPROCESS)
+        {
             // Get projection matrix for the current view. COORDINATE_SYSTEM_CAMERA used for AR and
             // COORDINATE_SYSTEM_WORLD for VR
             Matrix34F projMatrix = mRenderingPrimitives.getProjectionMatrix(viewID, COORDINATE_SYSTEM_TYPE.COORDINATE_SYSTEM_CAMERA,
                     state.getCameraCalibration());
 
-
             // Create GL matrix setting up the near and far planes
             float rawProjectionMatrixGL[] = Tool.convertPerspectiveProjection2GLMatrix(
                     projMatrix,
@@ -347,55 +477,135 @@ public class VuforiaRenderer implements GLSurfaceView.Renderer {
                     mFarPlane)
                     .getData();
 
-            // Apply the appropriate eye adjustment to the raw projection matrix, and assign to the global variable
+            // Apply the appropriate eye adjustment to the raw projection matrix
             float eyeAdjustmentGL[] = Tool.convert2GLMatrix(mRenderingPrimitives
                     .getEyeDisplayAdjustmentMatrix(viewID)).getData();
 
-            float projectionMatrix[] = new float[16];
             // Apply the adjustment to the projection matrix
-            Matrix.multiplyMM(projectionMatrix, 0, rawProjectionMatrixGL, 0, eyeAdjustmentGL, 0);
+            Matrix.multiplyMM(view.projection, 0, rawProjectionMatrixGL, 0, eyeAdjustmentGL, 0);
 
-            currentView = viewID;
+            updateVideoBackground(view, viewID);
+        }
 
-            renderVideoBackground();
+        viewCache.validate(view);
+    }
 
-            float[][] corners = {{-700, -579, 0, 1}, //top left
-                    {700, -579, 0, 1}, //top right
-                    {700, 579, 0, 1}, //bottom right
-                    {-700, 579, 0, 1}}; //bottom left
+    // Caches the video background projection and uploads its mesh into buffer objects
+    private void updateVideoBackground(ViewCache.Entry view, int viewID)
+    {
+        float[] vbProjectionMatrix = Tool.convert2GLMatrix(
+                mRenderingPrimitives.getVideoBackgroundProjectionMatrix(viewID, COORDINATE_SYSTEM_TYPE.COORDINATE_SYSTEM_CAMERA)).getData();
 
-            for (int i = 0; i < state.getNumTrackableResults(); ++i) {
-                TrackableResult result = state.getTrackableResult(i);
-                float[] tempData = result.getPose().getData();
-                Matrix34F pose = result.getPose();
-                Matrix44F multiply = Tool.convertPose2GLMatrix(pose);
+        // Apply the scene scale on video see-through eyewear, to scale the video background and augmentation
+        // so that the display lines up with the real world
+        // This should not be applied on optical see-through devices, as there is no video background,
+        // and the calibration ensures that the augmentation matches the real world
+        if (Device.getInstance().isViewerActive()) {
+            float sceneScaleFactor = (float)getSceneScaleFactor();
+            Matrix.scaleM(vbProjectionMatrix, 0, sceneScaleFactor, sceneScaleFactor, 1.0f);
+        }
+        System.arraycopy(vbProjectionMatrix, 0, view.backgroundProjection, 0, 16);
 
-                float[][] newCorners = new float[4][4];
-                for (int j = 0; j < newCorners.length; ++j) {
-                    Matrix.multiplyMV(newCorners[j], 0, multiply.getData(), 0, corners[j], 0);
-                }//for
+        Mesh vbMesh = mRenderingPrimitives.getVideoBackgroundMesh(viewID);
+        if (vbMesh.hasPositions() && vbMesh.hasUVs() && vbMesh.getNumTriangles() > 0)
+            viewCache.uploadBackgroundMesh(view, vbMesh.getPositions(), vbMesh.getUVs(), vbMesh.getTriangles(),
+                    vbMesh.getNumVertices(), vbMesh.getNumTriangles());
+        else
+            viewCache.clearBackgroundMesh(view);
+    }
 
-                board.setCornerPos(newCorners);
-                board.draw(projectionMatrix);
+    /**
+     * Only touch the profiler's trace from the GL thread, e.g. through GLSurfaceView.queueEvent
+     * @return the profiler timing every frame
+     */
+    public FrameProfiler getProfiler() {
+        return profiler;
+    }
 
-            }//for
+    /**
+     * Push samples from the UI thread only
+     * @return the queue touches on the camera view go through
+     */
+    public TouchSampleQueue getTouchQueue() {
+        return touches;
+    }
 
-        }
+    /**
+     * Only read on the GL thread
+     * @return time from a touch to the end of the first frame drawing it
+     */
+    public LatencyMeter getInkLatency() {
+        return liveInk.getLatency();
+    }
 
-        mRenderer.end();
+    /**
+     * Only use on the GL thread
+     * @return the board texture, streamed or compressed
+     */
+    public AdaptiveBoardTexture getBoardTexture() {
+        return boardTexture;
+    }
+
+    /**
+     * Only use on the GL thread
+     * @return the reduced copies distant boards are drawn from
+     */
+    public BoardLevelTextures getLevelTextures() {
+        return levelTextures;
+    }
+
+    /**
+     * Only use on the GL thread
+     * @return what dropped boards from the last frames, and how many were drawn
+     */
+    public BoardCuller getCuller() {
+        return culler;
+    }
+
+    /**
+     * Only use on the GL thread
+     * @return the boards drawn, and how many frames their poses held still
+     */
+    public BoardScene getScene() {
+        return scene;
+    }
+
+    /**
+     * Hands frame times to the EGL calibration, any thread
+     * @param calibration calibration measuring the current surface, null when there is none
+     * @param onMeasured run on the UI thread whenever a candidate is measured
+     */
+    public void setCalibration(EglCalibration calibration, Runnable onMeasured) {
+        this.onCalibrationMeasured = onMeasured;
+        this.calibration = calibration;
     }
 
+    /**
+     * Only use on the GL thread
+     * @return the governor picking the quality tier from frame times
+     */
+    public QualityGovernor getGovernor() {
+        return governor;
+    }
 
+    /**
+     * Only use on the GL thread
+     * @return the timer giving the governor and the calibration frame times with the GPU in them
+     */
+    public GpuFrameTimer getGpuTimer() {
+        return gpuTimer;
+    }
 
     public void setNearFarPlanes(float near, float far)
     {
         mNearPlane = near;
         mFarPlane = far;
+        viewCache.invalidate();
     }
 
-    public void renderVideoBackground()
+    public void renderVideoBackground(ViewCache.Entry view)
     {
-        if(currentView == VIEW.VIEW_POSTPROCESS)
+        if(currentView == VIEW.VIEW_POSTPROCESS || !view.hasBackgroundMesh())
             return;
 
         int vbVideoTextureUnit = 0;
@@ -406,46 +616,37 @@ public class VuforiaRenderer implements GLSurfaceView.Renderer {
             Log.e(LOGTAG, "Unable to update video background texture");
             return;
         }
+        // Vuforia bound the camera texture itself
+        gl.invalidateTextures();
 
-        float[] vbProjectionMatrix = Tool.convert2GLMatrix(
-                mRenderingPrimitives.getVideoBackgroundProjectionMatrix(currentView, COORDINATE_SYSTEM_TYPE.COORDINATE_SYSTEM_CAMERA)).getData();
-
-        // Apply the scene scale on video see-through eyewear, to scale the video background and augmentation
-        // so that the display lines up with the real world
-        // This should not be applied on optical see-through devices, as there is no video background,
-        // and the calibration ensures that the augmentation matches the real world
-        if (Device.getInstance().isViewerActive()) {
-            float sceneScaleFactor = (float)getSceneScaleFactor();
-            Matrix.scaleM(vbProjectionMatrix, 0, sceneScaleFactor, sceneScaleFactor, 1.0f);
-        }
-
-        GLES20.glDisable(GLES20.GL_DEPTH_TEST);
-        GLES20.glDisable(GLES20.GL_CULL_FACE);
-        GLES20.glDisable(GLES20.GL_SCISSOR_TEST);
+        gl.glDisable(GLES20.GL_DEPTH_TEST);
+        gl.glDisable(GLES20.GL_CULL_FACE);
+        gl.glDisable(GLES20.GL_SCISSOR_TEST);
 
-        Mesh vbMesh = mRenderingPrimitives.getVideoBackgroundMesh(currentView);
-        // Load the shader and upload the vertex/texcoord/index data
-        GLES20.glUseProgram(vbShaderProgramID);
-        GLES20.glVertexAttribPointer(vbVertexHandle, 3, GLES20.GL_FLOAT, false, 0, vbMesh.getPositions().asFloatBuffer());
-        GLES20.glVertexAttribPointer(vbTexCoordHandle, 2, GLES20.GL_FLOAT, false, 0, vbMesh.getUVs().asFloatBuffer());
+        // Load the shader and point it at the cached mesh buffers
+        gl.glUseProgram(vbShaderProgramID);
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, view.getPositionBuffer());
+        gl.glVertexAttribPointer(vbVertexHandle, 3, GLES20.GL_FLOAT, false, 0, 0);
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, view.getUVBuffer());
+        gl.glVertexAttribPointer(vbTexCoordHandle, 2, GLES20.GL_FLOAT, false, 0, 0);
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, view.getIndexBuffer());
 
-        GLES20.glUniform1i(vbTexSampler2DHandle, vbVideoTextureUnit);
+        gl.glUniform1i(vbTexSampler2DHandle, vbVideoTextureUnit);
 
         // Render the video background with the custom shader
         // First, we enable the vertex arrays
-        GLES20.glEnableVertexAttribArray(vbVertexHandle);
-        GLES20.glEnableVertexAttribArray(vbTexCoordHandle);
+        gl.glEnableVertexAttribArray(vbVertexHandle);
+        gl.glEnableVertexAttribArray(vbTexCoordHandle);
 
         // Pass the projection matrix to OpenGL
-        GLES20.glUniformMatrix4fv(vbProjectionMatrixHandle, 1, false, vbProjectionMatrix, 0);
+        gl.glUniformMatrix4fv(vbProjectionMatrixHandle, 1, false, view.backgroundProjection, 0);
 
         // Then, we issue the render call
-        GLES20.glDrawElements(GLES20.GL_TRIANGLES, vbMesh.getNumTriangles() * 3, GLES20.GL_UNSIGNED_SHORT,
-                vbMesh.getTriangles().asShortBuffer());
+        gl.glDrawElements(GLES20.GL_TRIANGLES, view.getIndexCount(), GLES20.GL_UNSIGNED_SHORT, 0);
 
         // Finally, we disable the vertex arrays
-        GLES20.glDisableVertexAttribArray(vbVertexHandle);
-        GLES20.glDisableVertexAttribArray(vbTexCoordHandle);
+        gl.glDisableVertexAttribArray(vbVertexHandle);
+        gl.glDisableVertexAttribArray(vbTexCoordHandle);
 
 
     }
@@ -573,6 +774,7 @@ public class VuforiaRenderer implements GLSurfaceView.Renderer {
     @Override
     public void onSurfaceChanged(GL10 gl, int width, int height) {
         Vuforia.onSurfaceChanged(width, height);
+        mSurfaceHeight = height;
         onConfigurationChanged(true);
         initRendering();
     }
@@ -581,18 +783,4 @@ public class VuforiaRenderer implements GLSurfaceView.Renderer {
     public void onDrawFrame(GL10 gl) {
         render(gl);
     }
-
-    public static int loadShader(int type, String shaderCode){
-
-        // create a vertex shader type (GLES20.GL_VERTEX_SHADER)
-        // or a fragment shader type (GLES20.GL_FRAGMENT_SHADER)
-        int shader = GLES20.glCreateShader(type);
-
-        // add the source code to the shader and compile it
-        GLES20.glShaderSource(shader, shaderCode);
-        GLES20.glCompileShader(shader);
-
-        return shader;
-    }
-
 }
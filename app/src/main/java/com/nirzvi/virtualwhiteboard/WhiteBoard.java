@@ -1,16 +1,11 @@
 package com.nirzvi.virtualwhiteboard;
 
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
 import android.opengl.GLES20;
-import android.opengl.GLUtils;
-import android.util.Log;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
 import java.util.Arrays;
 
 /**
@@ -18,8 +13,23 @@ import java.util.Arrays;
  */
 
 public class WhiteBoard {
-    private FloatBuffer positionBuffer;
-    private FloatBuffer texCoordBuffer;
+    /** Every GL call goes through this, so the board can be drawn headless. */
+    private final GLBackend gl;
+
+    /** Compiles the board shader once per context. */
+    private final ProgramCache mPrograms;
+
+    /** Static quad mesh for every board in a batch, uploaded once. */
+    private int mVertexBufferHandle;
+
+    /** Index stream shared by every batch, uploaded once. */
+    private int mIndexBufferHandle;
+
+    /** Vertex uniform vectors kept free for the projection and driver use. */
+    private static final int RESERVED_UNIFORM_VECTORS = 8;
+
+    /** How many model matrices the vertex shader takes in one draw call. */
+    private int mBoardsPerDraw;
 
     /** This will be used to pass in the texture. */
     private int mTextureUniformHandle;
@@ -30,40 +40,45 @@ public class WhiteBoard {
     /** This will be used to pass in model texture coordinate information. */
     private int mTextureCoordinateHandle;
 
+    /** This will be used to pass in which model matrix each vertex uses. */
+    private int mBoardIndexHandle;
+
+    /** This will be used to pass in the model matrix of every board. */
+    private int mModelMatrixHandle;
+
     /** How many bytes per float. */
     private final int mBytesPerFloat = 4;
 
-    /** This is a handle to our cube shading program. */
-    private int mProgram;
+    /** How many bytes per short. */
+    private final int mBytesPerShort = 2;
+
+    /** The board shading program, with its locations cached. */
+    private ShaderProgram mProgram;
 
     /** This is a handle to our texture data. */
     private int mTextureDataHandle;
-    private int mMVPMatrixHandle;
-
-    private final float[] texCoordData =
-            {
-                    0.0f, 1.0f,
-                    0.0f, 0.0f,
-                    1.0f, 1.0f,
 
-                    0.0f, 0.0f,
-                    1.0f, 0.0f,
-                    1.0f, 1.0f,
+    /** Texture of every trackable slot. */
+    private int[] mSlotTextures;
 
-            };
+    /** Reduced copies of the shared texture by pyramid level, 0 where a level is missing. */
+    private int[] mLevelTextures;
+    private int mMVPMatrixHandle;
 
-    protected String getVertexShader()
+    protected String getVertexShader(int boardsPerDraw)
     {
         return "uniform mat4 uMVPMatrix;" +
+                "uniform mat4 uModelMatrix[" + boardsPerDraw + "];" +
                 "attribute vec4 vPosition;" +
                 "attribute vec2 a_TexCoord;" +
+                "attribute float a_BoardIndex;" +
                 "varying vec2 v_TexCoord;" +
                 "void main() {" +
                 // the matrix must be included as a modifier of gl_Position
                 // Note that the uMVPMatrix factor *must be first* in order
                 // for the matrix multiplication product to be correct.
                 "   v_TexCoord = a_TexCoord;" +
-                "  gl_Position = uMVPMatrix * vPosition;" +
+                "  gl_Position = uMVPMatrix * uModelMatrix[int(a_BoardIndex)] * vPosition;" +
                 "}";
     }
 
@@ -77,171 +92,187 @@ public class WhiteBoard {
                 "}";
     }
 
-    public static int loadBoardTexture(Bitmap bitmap) {
-        final int[] textureHandle = new int[1];
-
-        GLES20.glGenTextures(1, textureHandle, 0);
-
-        if (textureHandle[0] == 0)
-        {
-            throw new RuntimeException("Error generating texture name.");
-        }//if
-
-        // Bind to the texture in OpenGL
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle[0]);
-
-        // Set filtering
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
-
-        // Load the bitmap into the bound texture.
-        GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
-
-        return textureHandle[0];
-    }
-
-    public void setPositionData(float[] positionData) {
-        positionBuffer = ByteBuffer.allocateDirect(positionData.length * mBytesPerFloat).order(ByteOrder.nativeOrder()).asFloatBuffer();
-        positionBuffer.put(positionData).position(0);
+    public WhiteBoard(GLBackend gl, ProgramCache programs) {
+        this.gl = gl;
+        this.mPrograms = programs;
     }
 
-    //corner should be organized starting top-left, clockwise
-    public void setCornerPos(float[][] cornerPos) {
-        setPositionData(formatCornerPositions(cornerPos));
-    }//setCornerPos
-
-    //corner should be organized starting top-left, clockwise
-    public float[] formatCornerPositions(float[][] cornerPos) {
-        float[] coord = new float[18];
-        float divide = 2000f;
-        coord[0] = cornerPos[0][0] / divide;
-        coord[1] = cornerPos[0][1] / divide;
-        coord[2] = cornerPos[0][2] / divide;
-
-        coord[3] = cornerPos[3][0] / divide;
-        coord[4] = cornerPos[3][1] / divide;
-        coord[5] = cornerPos[3][2] / divide;
-
-        coord[6] = cornerPos[1][0] / divide;
-        coord[7] = cornerPos[1][1] / divide;
-        coord[8] = cornerPos[1][2] / divide;
-
-
-        coord[9] = cornerPos[3][0] / divide;
-        coord[10] = cornerPos[3][1] / divide;
-        coord[11] = cornerPos[3][2] / divide;
-
-        coord[12] = cornerPos[2][0] / divide;
-        coord[13] = cornerPos[2][1] / divide;
-        coord[14] = cornerPos[2][2] / divide;
+    /**
+     * Uploads the board mesh and compiles the board shader
+     * @param batch batch that will be drawn, sizes the mesh
+     * @param numSlots number of trackable slots
+     * @param texture what every board shows until setSlotTexture says otherwise
+     */
+    public void init(BoardBatch batch, int numSlots, int texture) {
+        // Fit as many model matrices into the vertex shader as the device allows
+        int[] maxVectors = new int[1];
+        gl.glGetIntegerv(GLES20.GL_MAX_VERTEX_UNIFORM_VECTORS, maxVectors, 0);
+        mBoardsPerDraw = Math.max(1, Math.min(batch.getCapacity(), (maxVectors[0] - RESERVED_UNIFORM_VECTORS) / 4));
+
+        float[] vertices = BoardBatch.buildQuadVertices(mBoardsPerDraw);
+        short[] indices = BoardBatch.buildQuadIndices(mBoardsPerDraw);
+        FloatBuffer vertexBuffer = ByteBuffer.allocateDirect(vertices.length * mBytesPerFloat).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        vertexBuffer.put(vertices).position(0);
+
+        ShortBuffer indexBuffer = ByteBuffer.allocateDirect(indices.length * mBytesPerShort).order(ByteOrder.nativeOrder()).asShortBuffer();
+        indexBuffer.put(indices).position(0);
+
+        // Upload the static mesh once, it never changes after this
+        final int[] buffers = new int[2];
+        gl.glGenBuffers(2, buffers, 0);
+        mVertexBufferHandle = buffers[0];
+        mIndexBufferHandle = buffers[1];
+
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVertexBufferHandle);
+        gl.glBufferData(GLES20.GL_ARRAY_BUFFER, vertices.length * mBytesPerFloat, vertexBuffer, GLES20.GL_STATIC_DRAW);
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mIndexBufferHandle);
+        gl.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, indices.length * mBytesPerShort, indexBuffer, GLES20.GL_STATIC_DRAW);
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+
+        // Attribute locations are bound before linking, so they match between contexts
+        mProgram = mPrograms.get(getVertexShader(mBoardsPerDraw), getFragmentShader(),
+                "vPosition", "a_TexCoord", "a_BoardIndex");
+
+        // Look every location up once, draw only uses the cached values
+        mPositionHandle = mProgram.getAttribLocation("vPosition");
+        mTextureCoordinateHandle = mProgram.getAttribLocation("a_TexCoord");
+        mBoardIndexHandle = mProgram.getAttribLocation("a_BoardIndex");
+        mTextureUniformHandle = mProgram.getUniformLocation("u_Texture");
+        mMVPMatrixHandle = mProgram.getUniformLocation("uMVPMatrix");
+        mModelMatrixHandle = mProgram.getUniformLocation("uModelMatrix");
+
+        // The sampler always reads texture unit 0, and uniforms keep their value in the program
+        mProgram.use();
+        gl.glUniform1i(mTextureUniformHandle, 0);
+
+        mTextureDataHandle = texture;
+
+        // Every board shows the same content until a slot is given its own
+        mSlotTextures = new int[numSlots];
+        Arrays.fill(mSlotTextures, mTextureDataHandle);
 
-        coord[15] = cornerPos[1][0] / divide;
-        coord[16] = cornerPos[1][1] / divide;
-        coord[17] = cornerPos[1][2] / divide;
-
-        for (int i = 0; i < coord.length; i++) {
-            coord[i] = (float) Math.round(coord[i] * 1000) / 1000f;
-        }//for
-
-        return coord;
-    }//formatCornerPositions
-
-    public void init(Bitmap bit) {
-        texCoordBuffer = ByteBuffer.allocateDirect(texCoordData.length * mBytesPerFloat).order(ByteOrder.nativeOrder()).asFloatBuffer();
-        texCoordBuffer.put(texCoordData).position(0);
-
-        int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER,
-                getVertexShader());
-        int fragmentShader = loadShader(GLES20.GL_FRAGMENT_SHADER,
-                getFragmentShader());
-
-        // create empty OpenGL ES Program
-        mProgram = GLES20.glCreateProgram();
-
-        // add the vertex shader to program
-        GLES20.glAttachShader(mProgram, vertexShader);
-
-        // add the fragment shader to program
-        GLES20.glAttachShader(mProgram, fragmentShader);
-
-        // creates OpenGL ES program executables
-        GLES20.glLinkProgram(mProgram);
-
-        GLES20.glBindAttribLocation(mProgram, 0, "vPosition");
-        GLES20.glBindAttribLocation(mProgram, 1, "a_TexCoord");
-
-        mTextureDataHandle = loadBoardTexture(bit);
-
-    }
-
-    public void draw(float[] mvpMatrix) {
-        draw(mvpMatrix, 0);
-        draw(mvpMatrix, 1);
     }
 
-    public void draw(float[] mvpMatrix, int idx)
+    /**
+     * Draws every board in the batch from the static quad mesh.
+     * The only per-board work is uploading its model matrix.
+     * @param batch boards visible in the current view
+     * @param mvpMatrix projection for the current view
+     */
+    public void draw(BoardBatch batch, float[] mvpMatrix)
     {
+        if (batch.getBoardCount() == 0) {
+            return;
+        }//if
 
-        GLES20.glDisable(GLES20.GL_DEPTH_TEST);
-        GLES20.glDisable(GLES20.GL_CULL_FACE);
-        GLES20.glDisable(GLES20.GL_SCISSOR_TEST);
+        gl.glDisable(GLES20.GL_DEPTH_TEST);
+        gl.glDisable(GLES20.GL_CULL_FACE);
+        gl.glDisable(GLES20.GL_SCISSOR_TEST);
 
         // Add program to OpenGL ES environment
-        GLES20.glUseProgram(mProgram);
+        mProgram.use();
 
-        // get handle to vertex shader's vPosition member
-        mPositionHandle = GLES20.glGetAttribLocation(mProgram, "vPosition");
+        int stride = BoardBatch.FLOATS_PER_VERTEX * mBytesPerFloat;
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVertexBufferHandle);
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mIndexBufferHandle);
 
-        // Prepare the triangle coordinate data
-        positionBuffer.position(idx * 9);
-        GLES20.glVertexAttribPointer(mPositionHandle, 3, GLES20.GL_FLOAT, false, 12, positionBuffer);
+        // Positions are the first 3 floats of every vertex
+        gl.glVertexAttribPointer(mPositionHandle, 3, GLES20.GL_FLOAT, false, stride, 0);
+        gl.glEnableVertexAttribArray(mPositionHandle);
 
-        // Enable a handle to the triangle vertices
-        GLES20.glEnableVertexAttribArray(mPositionHandle);
+        // Texture coordinates follow the position in every vertex
+        gl.glVertexAttribPointer(mTextureCoordinateHandle, 2, GLES20.GL_FLOAT, false, stride, 3 * mBytesPerFloat);
+        gl.glEnableVertexAttribArray(mTextureCoordinateHandle);
 
-        mTextureUniformHandle = GLES20.glGetUniformLocation(mProgram, "u_Texture");
-        mTextureCoordinateHandle = GLES20.glGetAttribLocation(mProgram, "a_TexCoord");
+        // The board index picks the model matrix for each vertex
+        gl.glVertexAttribPointer(mBoardIndexHandle, 1, GLES20.GL_FLOAT, false, stride, 5 * mBytesPerFloat);
+        gl.glEnableVertexAttribArray(mBoardIndexHandle);
 
         // Set the active texture unit to texture unit 0.
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-
-        // Bind the texture to this unit.
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextureDataHandle);
-
-        // Tell the texture uniform sampler to use this texture in the shader by binding to texture unit 0.
-        GLES20.glUniform1i(mTextureUniformHandle, 0);
+        gl.glActiveTexture(GLES20.GL_TEXTURE0);
 
-        // Pass in the texture coordinate information
-        texCoordBuffer.position(idx * 6);
-        GLES20.glVertexAttribPointer(mTextureCoordinateHandle, 2, GLES20.GL_FLOAT, false,
-                8, texCoordBuffer);
+        // Pass the projection and view transformation to the shader
+        gl.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mvpMatrix, 0);
 
-        GLES20.glEnableVertexAttribArray(mTextureCoordinateHandle);
+        // Draw runs of boards sharing a texture, as many per call as the shader has model matrices for.
+        // Every quad in the mesh is the same, so each run draws from the start of it.
+        int boardCount = batch.getBoardCount();
+        int first = 0;
+        while (first < boardCount) {
+            int texture = textureOf(batch, first);
 
-        // get handle to shape's transformation matrix
-        mMVPMatrixHandle = GLES20.glGetUniformLocation(mProgram, "uMVPMatrix");
+            int count = 1;
+            while (count < mBoardsPerDraw && first + count < boardCount
+                    && textureOf(batch, first + count) == texture) {
+                count++;
+            }//while
 
-        // Pass the projection and view transformation to the shader
-        GLES20.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mvpMatrix, 0);
+            gl.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+            gl.glUniformMatrix4fv(mModelMatrixHandle, count, false, batch.getModelMatrices(),
+                    first * BoardBatch.FLOATS_PER_MATRIX);
+            gl.glDrawElements(GLES20.GL_TRIANGLES, count * BoardBatch.INDICES_PER_BOARD, GLES20.GL_UNSIGNED_SHORT, 0);
 
-        // Draw the triangle
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, 3);
+            first += count;
+        }//while
 
         // Disable vertex array
-        GLES20.glDisableVertexAttribArray(mPositionHandle);
-        GLES20.glDisableVertexAttribArray(mTextureCoordinateHandle);
-    }
+        gl.glDisableVertexAttribArray(mPositionHandle);
+        gl.glDisableVertexAttribArray(mTextureCoordinateHandle);
+        gl.glDisableVertexAttribArray(mBoardIndexHandle);
 
-    public static int loadShader(int type, String shaderCode){
+        // The mesh buffers stay bound, whoever draws from client memory next unbinds them
+    }
 
-        // create a vertex shader type (GLES20.GL_VERTEX_SHADER)
-        // or a fragment shader type (GLES20.GL_FRAGMENT_SHADER)
-        int shader = GLES20.glCreateShader(type);
+    //the slot's texture, or the level of the shared texture the batch picked for the board
+    private int textureOf(BoardBatch batch, int board) {
+        int texture = mSlotTextures[batch.getSlot(board)];
+        int level = batch.getLevel(board);
+        if (level > 0 && mLevelTextures != null && texture == mTextureDataHandle && mLevelTextures[level] != 0) {
+            return mLevelTextures[level];
+        }//if
+        return texture;
+    }//textureOf
+
+    /**
+     * Draws boards the batch gives a level above 0 from a reduced copy of the shared texture.
+     * Slots with their own texture always use it.
+     * @param textures texture per pyramid level, read at every draw, 0 where a level is missing
+     */
+    public void setLevelTextures(int[] textures) {
+        mLevelTextures = textures;
+    }
 
-        // add the source code to the shader and compile it
-        GLES20.glShaderSource(shader, shaderCode);
-        GLES20.glCompileShader(shader);
+    /**
+     * Shows different content on one trackable
+     * @param slot trackable slot
+     * @param texture texture handle for its board
+     */
+    public void setSlotTexture(int slot, int texture) {
+        mSlotTextures[slot] = texture;
+    }
 
-        return shader;
+    /**
+     * Replaces the shared content texture, slots given their own keep it
+     * @param texture texture handle every other board shows
+     */
+    public void setTexture(int texture) {
+        if (texture == mTextureDataHandle) {
+            return;
+        }//if
+        for (int i = 0; i < mSlotTextures.length; i++) {
+            if (mSlotTextures[i] == mTextureDataHandle) {
+                mSlotTextures[i] = texture;
+            }//if
+        }//for
+        mTextureDataHandle = texture;
+    }//setTexture
+
+    /**
+     * @return how many boards a single draw call covers on this device
+     */
+    public int getBoardsPerDraw() {
+        return mBoardsPerDraw;
     }
-}
+}
\ No newline at end of file
@@ -0,0 +1,126 @@
+package com.nirzvi.virtualwhiteboard;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives the switch between the streamed and the ETC1 board texture with a synthetic clock, encoding
+ * on the test thread instead of the worker.
+ */
+public class AdaptiveBoardTextureTest {
+
+    private static final int WHITE = 0xFFFFFFFF;
+    private static final int BLACK = 0xFF000000;
+    private static final long FRAME = 16000000L;
+
+    private final RecordingGLBackend gl = new RecordingGLBackend();
+    private final TiledBoard board = new TiledBoard(256, 256, WHITE, 0);
+    private final Etc1BoardEncoder encoder = new Etc1BoardEncoder();
+    private final AdaptiveBoardTexture texture =
+            new AdaptiveBoardTexture(gl, new TextureStreamer(gl, 4 * TiledBoard.TILE_BYTES), encoder);
+    private long now = 0;
+
+    //runs frames until the content has been still long enough and encodes what was requested
+    private void holdStill() {
+        long until = now + texture.getStableNanos();
+        while (now <= until) {
+            frame(null);
+        }//while
+        encoder.encodePending();
+        frame(null);
+    }
+
+    private void frame(TiledBoard.Snapshot snapshot) {
+        now += FRAME;
+        texture.update(snapshot, now);
+    }
+
+    @Test
+    public void stillContentIsCompressed() throws Exception {
+        int rgba = texture.init(board.snapshot(), now);
+        assertTrue(texture.isSupported());
+        assertEquals(256 * 256 * 4, texture.getTextureBytes());
+
+        holdStill();
+        assertTrue(texture.isCompressed());
+        assertTrue(texture.isUpToDate());
+        assertNotEquals(rgba, texture.getTexture());
+        assertEquals(0, texture.getStreamer().getTexture());
+        assertEquals(Etc1.getEncodedSize(256, 256), texture.getTextureBytes());
+        assertEquals(1, texture.getCompressCount());
+    }
+
+    @Test
+    public void editsStreamBackBehindTheCompressedTexture() throws Exception {
+        texture.init(board.snapshot(), now);
+        holdStill();
+        int compressed = texture.getTexture();
+
+        board.fillRect(0, 0, 4, 4, BLACK);
+        frame(board.snapshot());
+        // The whole board is streamed again, 16 tiles at 4 a frame, showing the stale ETC1 meanwhile
+        assertEquals(compressed, texture.getTexture());
+        assertFalse(texture.isUpToDate());
+        frame(null);
+        frame(null);
+        frame(null);
+
+        assertFalse(texture.isCompressed());
+        assertTrue(texture.isUpToDate());
+        assertEquals(texture.getStreamer().getTexture(), texture.getTexture());
+        assertEquals(256 * 256 * 4, texture.getTextureBytes());
+        assertEquals(1, texture.getDecompressCount());
+    }
+
+    @Test
+    public void staleEncodesAreNotUsed() throws Exception {
+        texture.init(board.snapshot(), now);
+        long until = now + texture.getStableNanos();
+        while (now <= until) {
+            frame(null);
+        }//while
+
+        // The content changes while the requested version is being encoded
+        board.fillRect(0, 0, 4, 4, BLACK);
+        frame(board.snapshot());
+        assertTrue(encoder.encodePending());
+        frame(null);
+        assertFalse(texture.isCompressed());
+
+        holdStill();
+        assertTrue(texture.isCompressed());
+    }
+
+    @Test
+    public void frequentEditsBackOff() throws Exception {
+        texture.init(board.snapshot(), now);
+        holdStill();
+        assertEquals(AdaptiveBoardTexture.DEFAULT_STABLE_NANOS, texture.getStableNanos());
+
+        // Edited right after compressing, wait twice as long next time
+        board.fillRect(0, 0, 4, 4, BLACK);
+        frame(board.snapshot());
+        assertEquals(2 * AdaptiveBoardTexture.DEFAULT_STABLE_NANOS, texture.getStableNanos());
+
+        holdStill();
+        assertTrue(texture.isCompressed());
+
+        // Left compressed for longer than the wait, back to the default
+        now += 2 * texture.getStableNanos();
+        board.fillRect(0, 0, 4, 4, WHITE);
+        frame(board.snapshot());
+        assertEquals(AdaptiveBoardTexture.DEFAULT_STABLE_NANOS, texture.getStableNanos());
+    }
+
+    @Test
+    public void withoutEtc1TheStreamedTextureStays() throws Exception {
+        gl.setCompressedFormats();
+        texture.init(board.snapshot(), now);
+        assertFalse(texture.isSupported());
+
+        holdStill();
+        assertFalse(texture.isCompressed());
+        assertEquals(0, encoder.getEncodedTiles());
+    }
+}
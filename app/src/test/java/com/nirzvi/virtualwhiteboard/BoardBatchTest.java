@@ -0,0 +1,103 @@
+package com.nirzvi.virtualwhiteboard;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the batched board data and how many draw calls 1, 10 and 100 boards take.
+ * BoardBatchBenchmark in the benchmark module times building it.
+ */
+public class BoardBatchTest {
+
+    //identity rotation, translated 1000 units along x
+    private static final float[] POSE = {
+            1, 0, 0, 0,
+            0, 1, 0, 0,
+            0, 0, 1, 0,
+            1000, 0, 0, 1
+    };
+
+    //minimum GLES 2.0 vertex uniform vectors leave room for this many model matrices
+    private static final int BOARDS_PER_DRAW = 30;
+
+    @Test
+    public void quadsShareOneIndexStream() throws Exception {
+        short[] indices = BoardBatch.buildQuadIndices(2);
+        assertEquals(12, indices.length);
+
+        //the second quad indexes its own four vertices
+        assertEquals(4, indices[6]);
+        assertEquals(7, indices[7]);
+        assertEquals(5, indices[8]);
+    }
+
+    @Test
+    public void modelMatrixIsScaledWithoutRounding() throws Exception {
+        BoardBatch batch = new BoardBatch(1);
+        batch.addBoard(0, POSE, 0);
+
+        float[] m = batch.getModelMatrices();
+        assertEquals(1 / 2000f, m[0], 0f);
+        assertEquals(0.5f, m[12], 0f);
+        assertEquals(1f, m[15], 0f);
+    }
+
+    @Test
+    public void quadMeshCarriesBoardIndex() throws Exception {
+        float[] vertices = BoardBatch.buildQuadVertices(2);
+
+        int boardStride = BoardBatch.VERTICES_PER_BOARD * BoardBatch.FLOATS_PER_VERTEX;
+        assertEquals(2 * boardStride, vertices.length);
+
+        //top left corner of the first board
+        assertEquals(-700f, vertices[0], 0f);
+        assertEquals(-579f, vertices[1], 0f);
+        assertEquals(0f, vertices[3], 0f);
+        assertEquals(1f, vertices[4], 0f);
+
+        //each quad picks its own model matrix
+        assertEquals(0f, vertices[5], 0f);
+        assertEquals(1f, vertices[boardStride + 5], 0f);
+    }
+
+    @Test
+    public void boardsRememberTheirSlot() throws Exception {
+        BoardBatch batch = new BoardBatch(2);
+        batch.addBoard(3, POSE, 0);
+        batch.addBoard(0, POSE, 0);
+
+        assertEquals(3, batch.getSlot(0));
+        assertEquals(0, batch.getSlot(1));
+    }
+
+    @Test
+    public void fullBatchRejectsBoards() throws Exception {
+        BoardBatch batch = new BoardBatch(1);
+        assertTrue(batch.addBoard(0, POSE, 0));
+        assertFalse(batch.addBoard(0, POSE, 0));
+
+        batch.reset();
+        assertEquals(0, batch.getBoardCount());
+    }
+
+    @Test
+    public void boardsAreDrawnInRunsOfTheShadersMatrices() throws Exception {
+        int[] boardCounts = {1, 10, 100};
+        for (int boards : boardCounts) {
+            BoardBatch batch = new BoardBatch(boards);
+            buildFrame(batch, boards);
+            assertEquals(boards, batch.getBoardCount());
+
+            //the old path issued two draw calls per board
+            assertEquals((boards + BOARDS_PER_DRAW - 1) / BOARDS_PER_DRAW, batch.getDrawCallCount(BOARDS_PER_DRAW));
+        }//for
+    }
+
+    private static void buildFrame(BoardBatch batch, int boards) {
+        batch.reset();
+        for (int i = 0; i < boards; i++) {
+            batch.addBoard(i, POSE, 0);
+        }//for
+    }
+}
@@ -0,0 +1,268 @@
+package com.nirzvi.virtualwhiteboard;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Culls boards a perspective camera cannot see, picks pyramid levels for the rest at different
+ * distances, builds the pyramids and keeps only the level textures in use.
+ */
+public class BoardLodTest {
+
+    private static final int WHITE = 0xFFFFFFFF;
+    private static final int BLACK = 0xFF000000;
+
+    private static final int[] VIEWPORT = {0, 0, 1000, 1000};
+
+    private static final float[] PROJECTION = TestMatrices.perspective(60, 0.01f, 5);
+
+    //GL pose of a board facing the camera, distance trackable units in front of it
+    private static float[] pose(float distance) {
+        return new float[]{
+                1, 0, 0, 0,
+                0, 1, 0, 0,
+                0, 0, 1, 0,
+                0, 0, -distance, 1
+        };
+    }
+
+    private static BoardBatch batch(float... distances) {
+        BoardBatch batch = new BoardBatch(8);
+        for (float distance : distances) {
+            batch.addBoard(0, pose(distance), 0);
+        }//for
+        return batch;
+    }
+
+    //the batch as the renderer hands it to BoardLevelTextures, with the area of every board
+    private static BoardBatch culled(float... distances) {
+        BoardBatch batch = batch(distances);
+        new BoardCuller().cull(batch, PROJECTION, VIEWPORT);
+        return batch;
+    }
+
+    @Test
+    public void projectedAreaMatchesTheBoardOnScreen() throws Exception {
+        BoardBatch batch = batch(1500);
+        float area = new BoardLod().projectedArea(PROJECTION, batch.getModelMatrices(), 0, VIEWPORT);
+
+        // Scaled to GL units the board is 0.75 away, its half sizes land on screen through the focal length
+        float f = PROJECTION[0];
+        float halfWidth = BoardBatch.HALF_WIDTH / 2000 / 0.75f * f * 500;
+        float halfHeight = BoardBatch.HALF_HEIGHT / 2000 / 0.75f * f * 500;
+        assertEquals(4 * halfWidth * halfHeight, area, area * 1e-3);
+    }
+
+    @Test
+    public void fartherBoardsGetCoarserLevels() throws Exception {
+        BoardBatch batch = batch(1500, 3000, 6000, 100000);
+        BoardLod lod = new BoardLod();
+        int levels = BoardPyramid.getLevelCount(1400, 1158);
+        assertEquals(6, levels);
+
+        int last = -1;
+        for (int b = 0; b < batch.getBoardCount(); b++) {
+            float area = lod.projectedArea(PROJECTION, batch.getModelMatrices(), b * BoardBatch.FLOATS_PER_MATRIX, VIEWPORT);
+            int level = BoardLod.selectLevel(area, 1400, 1158, levels);
+            assertTrue(level > last);
+            last = level;
+        }//for
+        assertEquals(levels - 1, last);
+    }
+
+    @Test
+    public void levelsKeepAtLeastATexelPerPixel() throws Exception {
+        assertEquals(0, BoardLod.selectLevel(1000 * 1000, 1000, 1000, 6));
+        assertEquals(0, BoardLod.selectLevel(600 * 600, 1000, 1000, 6));
+        assertEquals(1, BoardLod.selectLevel(300 * 300, 1000, 1000, 6));
+        assertEquals(1, BoardLod.selectLevel(500 * 500, 1000, 1000, 6));
+        assertEquals(2, BoardLod.selectLevel(250 * 250, 1000, 1000, 6));
+        assertEquals(5, BoardLod.selectLevel(0, 1000, 1000, 6));
+    }
+
+    @Test
+    public void boardsReachingBehindTheEyeUseFullResolution() throws Exception {
+        BoardBatch batch = batch(-1500);
+        float area = new BoardLod().projectedArea(PROJECTION, batch.getModelMatrices(), 0, VIEWPORT);
+        assertEquals(0, BoardLod.selectLevel(area, 1400, 1158, 6));
+    }
+
+    //GL pose of a board distance in front of the camera, moved sideways and turned about its vertical axis
+    private static float[] pose(float distance, float sideways, double turn) {
+        float c = (float) Math.cos(turn);
+        float s = (float) Math.sin(turn);
+        return new float[]{
+                c, 0, -s, 0,
+                0, 1, 0, 0,
+                s, 0, c, 0,
+                sideways, 0, -distance, 1
+        };
+    }
+
+    @Test
+    public void boardsOutOfViewAreCulled() throws Exception {
+        BoardBatch batch = new BoardBatch(8);
+        batch.addBoard(0, pose(1500), 0);
+        //far off to the side
+        batch.addBoard(1, pose(1500, 5000, 0), 0);
+        //behind the camera
+        batch.addBoard(2, pose(-1500), 0);
+        batch.addBoard(3, pose(3000), 0);
+        //past the far plane
+        batch.addBoard(4, pose(20000), 0);
+        //seen edge-on
+        batch.addBoard(5, pose(1500, 0, Math.PI / 2), 0);
+
+        BoardCuller culler = new BoardCuller();
+        assertEquals(2, culler.cull(batch, PROJECTION, VIEWPORT));
+
+        // The boards left keep their order, matrices and area
+        assertEquals(2, batch.getBoardCount());
+        assertEquals(0, batch.getSlot(0));
+        assertEquals(3, batch.getSlot(1));
+        assertEquals(-3000f / 2000, batch.getModelMatrices()[BoardBatch.FLOATS_PER_MATRIX + 14], 1e-6);
+        float area = new BoardLod().projectedArea(PROJECTION, batch(3000).getModelMatrices(), 0, VIEWPORT);
+        assertEquals(area, batch.getArea(1), 1e-3);
+
+        assertEquals(2, culler.getLastDrawn());
+        assertEquals(3, culler.getLastOutside());
+        assertEquals(1, culler.getLastTooSmall());
+        assertEquals(4, culler.getTotalCulled());
+    }
+
+    @Test
+    public void stillFramesCountTheLastCull() throws Exception {
+        BoardBatch batch = new BoardBatch(8);
+        batch.addBoard(0, pose(1500), 0);
+        batch.addBoard(1, pose(-1500), 0);
+        BoardCuller culler = new BoardCuller();
+        assertEquals(1, culler.cull(batch, PROJECTION, VIEWPORT));
+
+        // Nothing moved, the renderer draws the culled batch again
+        culler.countStillFrame();
+        culler.countStillFrame();
+
+        assertEquals(3, culler.getFrames());
+        assertEquals(3, culler.getTotalDrawn());
+        assertEquals(3, culler.getTotalCulled());
+        assertEquals(1, culler.getLastDrawn());
+    }
+
+    @Test
+    public void boardsCrossingTheEdgeOfTheViewAreKept() throws Exception {
+        BoardBatch batch = new BoardBatch(8);
+        //half of it on screen
+        batch.addBoard(0, pose(1500, 1500 * (float) Math.tan(Math.toRadians(30)), 0), 0);
+        //reaching behind the eye
+        batch.addBoard(1, pose(100, 0, Math.PI / 3), 0);
+
+        BoardCuller culler = new BoardCuller();
+        assertEquals(2, culler.cull(batch, PROJECTION, VIEWPORT));
+        assertEquals(Float.MAX_VALUE, batch.getArea(1), 0);
+    }
+
+    @Test
+    public void pyramidLevelsAreBoxFiltered() throws Exception {
+        TiledBoard board = new TiledBoard(200, 130, WHITE, 0);
+        board.fillRect(0, 0, 2, 2, BLACK);
+        board.fillRect(100, 64, 1, 2, BLACK);
+
+        BoardPyramid pyramid = new BoardPyramidBuilder().build(board.snapshot());
+        assertEquals(4, pyramid.getLevelCount());
+        assertEquals(100, pyramid.getWidth(1));
+        assertEquals(65, pyramid.getHeight(1));
+        assertEquals(25, pyramid.getWidth(3));
+        assertEquals(16, pyramid.getHeight(3));
+
+        int[] level1 = pyramid.getPixels(1);
+        assertEquals(BLACK, level1[0]);
+        assertEquals(WHITE, level1[1]);
+        //half black, half white
+        assertEquals(0xFF808080, level1[32 * 100 + 50]);
+        //a quarter black at level 2
+        assertEquals(0xFFBFBFBF, pyramid.getPixels(2)[0]);
+    }
+
+    @Test
+    public void rebuildsOnlyFilterChangedTiles() throws Exception {
+        TiledBoard board = new TiledBoard(256, 256, WHITE, 0);
+        BoardPyramidBuilder builder = new BoardPyramidBuilder();
+        BoardPyramid first = builder.build(board.snapshot());
+        assertEquals(16, builder.getFilteredTiles());
+
+        board.fillRect(130, 70, 20, 20, BLACK);
+        BoardPyramid second = builder.build(board.snapshot());
+        assertEquals(17, builder.getFilteredTiles());
+
+        // Same as building from scratch, and the earlier pyramid is untouched
+        BoardPyramid full = new BoardPyramidBuilder().build(board.snapshot());
+        for (int l = 1; l < full.getLevelCount(); l++) {
+            assertArrayEquals(full.getPixels(l), second.getPixels(l));
+        }//for
+        assertEquals(WHITE, first.getPixels(1)[40 * 128 + 70]);
+        assertEquals(BLACK, second.getPixels(1)[40 * 128 + 70]);
+    }
+
+    @Test
+    public void onlyLevelsInUseStayResident() throws Exception {
+        RecordingGLBackend gl = new RecordingGLBackend();
+        TiledBoard board = new TiledBoard(1400, 1158, WHITE, 0);
+        BoardPyramidBuilder builder = new BoardPyramidBuilder();
+        BoardLevelTextures levels = new BoardLevelTextures(gl, builder, 1024 * 1024);
+        levels.init(board.snapshot());
+
+        // A distant board wants a reduced level, it uses full resolution until the level is filled
+        BoardBatch batch = culled(6000);
+        levels.update(null);
+        levels.select(batch);
+        assertEquals(0, batch.getLevel(0));
+        assertEquals(0, levels.getResidentLevels());
+
+        levels.update(null);
+        assertEquals(1, levels.getResidentLevels());
+        assertTrue(builder.buildPending());
+        for (int i = 0; i < 4; i++) {
+            levels.update(null);
+            batch = culled(6000);
+            levels.select(batch);
+        }//for
+        assertEquals(2, batch.getLevel(0));
+        assertTrue(levels.getTextures()[2] != 0);
+        assertEquals(350 * 289 * 4, levels.getResidentBytes());
+        assertTrue(levels.isUpToDate());
+
+        // Once nothing wants it the level is deleted
+        for (int i = 0; i <= BoardLevelTextures.RESIDENT_FRAMES; i++) {
+            levels.update(null);
+            levels.select(culled(1500));
+        }//for
+        assertEquals(0, levels.getResidentLevels());
+        assertEquals(0, levels.getTextures()[2]);
+    }
+
+    @Test
+    public void editsRebuildTheLevelsInUse() throws Exception {
+        RecordingGLBackend gl = new RecordingGLBackend();
+        TiledBoard board = new TiledBoard(1400, 1158, WHITE, 0);
+        BoardPyramidBuilder builder = new BoardPyramidBuilder();
+        BoardLevelTextures levels = new BoardLevelTextures(gl, builder, 1024 * 1024);
+        levels.init(board.snapshot());
+        for (int i = 0; i < 3; i++) {
+            levels.update(null);
+            levels.select(culled(6000));
+            builder.buildPending();
+        }//for
+        assertTrue(levels.getTextures()[2] != 0);
+
+        board.fillRect(0, 0, 64, 64, BLACK);
+        levels.update(board.snapshot());
+        levels.select(culled(6000));
+        assertFalse(levels.isUpToDate());
+
+        assertTrue(builder.buildPending());
+        levels.update(null);
+        levels.select(culled(6000));
+        assertTrue(levels.isUpToDate());
+    }
+}
@@ -0,0 +1,128 @@
+package com.nirzvi.virtualwhiteboard;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that edits are coalesced into versions and handed to the consumer without blocking.
+ */
+public class BoardRasterizerTest {
+
+    private static final int WHITE = 0xFFFFFFFF;
+    private static final int BLACK = 0xFF000000;
+
+    private static BoardRasterizer.Edit fill(final int x, final int y) {
+        return new BoardRasterizer.Edit() {
+            @Override
+            public void apply(TiledBoard board) {
+                board.fillRect(x, y, 8, 8, BLACK);
+            }
+        };
+    }
+
+    @Test
+    public void pendingEditsArePublishedAsOneVersion() throws Exception {
+        BoardRasterizer rasterizer = new BoardRasterizer(new TiledBoard(512, 512, WHITE, Long.MAX_VALUE));
+        BoardChannel channel = rasterizer.getChannel();
+        long initial = channel.peek().getVersion();
+
+        for (int i = 0; i < 50; i++) {
+            rasterizer.submit(fill(i * 8, i * 8));
+        }//for
+        assertTrue(rasterizer.applyPending());
+        assertFalse(rasterizer.applyPending());
+
+        assertEquals(50, rasterizer.getEditCount());
+        assertEquals(1, rasterizer.getBatchCount());
+        assertEquals(1, channel.getPublishedCount());
+
+        TiledBoard.Snapshot content = channel.poll(initial);
+        assertNotNull(content);
+        assertEquals(BLACK, content.getPixel(49 * 8, 49 * 8));
+        assertNull(channel.poll(content.getVersion()));
+    }
+
+    @Test
+    public void slowConsumerOnlySeesTheNewestVersion() throws Exception {
+        BoardRasterizer rasterizer = new BoardRasterizer(new TiledBoard(256, 256, WHITE, Long.MAX_VALUE));
+        BoardChannel channel = rasterizer.getChannel();
+        long seen = channel.peek().getVersion();
+
+        for (int i = 0; i < 3; i++) {
+            rasterizer.submit(fill(i * 64, 0));
+            rasterizer.applyPending();
+        }//for
+
+        TiledBoard.Snapshot content = channel.poll(seen);
+        assertEquals(BLACK, content.getPixel(128, 0));
+        assertEquals(3, channel.getPublishedCount());
+        assertEquals(1, channel.getConsumedCount());
+    }
+
+    @Test
+    public void changedTilesAreFoundByReference() throws Exception {
+        BoardRasterizer rasterizer = new BoardRasterizer(new TiledBoard(512, 512, WHITE, Long.MAX_VALUE));
+        BoardChannel channel = rasterizer.getChannel();
+        RecordingGLBackend gl = new RecordingGLBackend();
+        TextureStreamer streamer = new TextureStreamer(gl, Integer.MAX_VALUE);
+        streamer.createTexture(channel.peek());
+
+        rasterizer.submit(fill(0, 0));
+        rasterizer.submit(fill(300, 300));
+        rasterizer.applyPending();
+
+        assertEquals(2, streamer.queueChanges(channel.poll(-1)));
+        assertEquals(2, streamer.getQueueDepth());
+    }
+
+    @Test
+    public void aFailingEditIsSkipped() throws Exception {
+        BoardRasterizer rasterizer = new BoardRasterizer(new TiledBoard(256, 256, WHITE, Long.MAX_VALUE));
+        rasterizer.submit(fill(0, 0));
+        rasterizer.submit(new BoardRasterizer.Edit() {
+            @Override
+            public void apply(TiledBoard board) {
+                throw new IllegalStateException("bad edit");
+            }
+        });
+        rasterizer.submit(fill(64, 64));
+        assertTrue(rasterizer.applyPending());
+
+        assertEquals(2, rasterizer.getEditCount());
+        assertEquals(1, rasterizer.getFailedCount());
+        assertEquals(BLACK, rasterizer.getChannel().peek().getPixel(64, 64));
+
+        // Later batches still go through
+        rasterizer.submit(fill(128, 128));
+        assertTrue(rasterizer.applyPending());
+        assertEquals(BLACK, rasterizer.getChannel().peek().getPixel(128, 128));
+    }
+
+    @Test
+    public void workerAppliesEditsInTheBackground() throws Exception {
+        BoardRasterizer rasterizer = new BoardRasterizer(new TiledBoard(256, 256, WHITE, Long.MAX_VALUE));
+        final CountDownLatch applied = new CountDownLatch(1);
+
+        rasterizer.start();
+        try {
+            rasterizer.submit(fill(10, 10));
+            rasterizer.submit(new BoardRasterizer.Edit() {
+                @Override
+                public void apply(TiledBoard board) {
+                    applied.countDown();
+                }
+            });
+            assertTrue(applied.await(5, TimeUnit.SECONDS));
+        } finally {
+            rasterizer.stop();
+        }//finally
+
+        //the version is published right after the batch, the stop above waited for it
+        assertEquals(BLACK, rasterizer.getChannel().peek().getPixel(10, 10));
+        assertEquals(2, rasterizer.getEditCount());
+    }
+}
@@ -0,0 +1,143 @@
+package com.nirzvi.virtualwhiteboard;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Scores EGL configs the way the camera view's chooser does, and calibrates MSAA tiers from synthetic
+ * frame times.
+ */
+public class EglConfigTest {
+
+    private static final long MS = 1000000L;
+
+    //r, g, b, a, depth, stencil, samples, slow of a typical device's configs
+    private static final int[][] CONFIGS = {
+            {5, 6, 5, 0, 0, 0, 0, 0},
+            {5, 6, 5, 0, 16, 0, 0, 0},
+            {8, 8, 8, 8, 24, 8, 0, 0},
+            {8, 8, 8, 8, 16, 0, 0, 0},
+            {8, 8, 8, 8, 0, 0, 0, 0},
+            {8, 8, 8, 8, 24, 8, 4, 0},
+            {8, 8, 8, 8, 0, 0, 4, 0},
+            {8, 8, 8, 8, 0, 0, 0, 1},
+    };
+
+    //index of the lowest scoring config, -1 if none is usable
+    private static int choose(EglConfigScorer scorer, int[][] configs) {
+        int best = -1;
+        int bestScore = EglConfigScorer.UNUSABLE;
+        for (int i = 0; i < configs.length; i++) {
+            int[] c = configs[i];
+            int score = scorer.score(c[0], c[1], c[2], c[3], c[4], c[5], c[6], c[7] != 0);
+            if (score < bestScore) {
+                best = i;
+                bestScore = score;
+            }//if
+        }//for
+        return best;
+    }
+
+    @Test
+    public void unusedDepthAndStencilAreDropped() throws Exception {
+        assertEquals(4, choose(new EglConfigScorer(8, 8, 8, 8, 0, 0, 0), CONFIGS));
+        assertEquals(0, choose(new EglConfigScorer(5, 6, 5, 0, 0, 0, 0), CONFIGS));
+        // Depth that is needed is still honoured, with as few bits as possible
+        assertEquals(3, choose(new EglConfigScorer(8, 8, 8, 8, 16, 0, 0), CONFIGS));
+    }
+
+    @Test
+    public void msaaTiersPickTheClosestSampleCount() throws Exception {
+        assertEquals(6, choose(new EglConfigScorer(8, 8, 8, 8, 0, 0, 4), CONFIGS));
+        //only 4x is offered, it is nearer to 8x than none
+        assertEquals(6, choose(new EglConfigScorer(8, 8, 8, 8, 0, 0, 8), CONFIGS));
+    }
+
+    @Test
+    public void aConfigIsFoundWithoutAnExactMatch() throws Exception {
+        // No 8888 at all: alpha still wins over exact color, then the fewest missing bits
+        int[][] configs = {
+                {5, 6, 5, 0, 16, 0, 0, 0},
+                {4, 4, 4, 4, 16, 0, 0, 0},
+                {8, 8, 8, 0, 24, 8, 0, 0},
+        };
+        EglConfigScorer scorer = new EglConfigScorer(8, 8, 8, 8, 0, 0, 0);
+        assertEquals(1, choose(scorer, configs));
+
+        // Asked for more depth than any config has, the relaxed request still finds one
+        EglConfigScorer deep = new EglConfigScorer(8, 8, 8, 8, 32, 0, 0);
+        assertEquals(-1, choose(deep, configs));
+        assertEquals(1, choose(deep.relaxed(), configs));
+    }
+
+    @Test
+    public void slowConfigsAreTheLastResort() throws Exception {
+        int[][] configs = {
+                {8, 8, 8, 8, 0, 0, 0, 1},
+                {5, 6, 5, 0, 24, 8, 0, 0},
+        };
+        assertEquals(1, choose(new EglConfigScorer(5, 6, 5, 0, 0, 0, 0), configs));
+    }
+
+    //measures every candidate at its frame time, returns the best for the budget
+    private static int calibrate(EglCalibration calibration, long[] frameNanosBySamples, long budget) {
+        for (int samples = calibration.next(); samples >= 0; samples = calibration.next()) {
+            int frames = 0;
+            while (!calibration.recordFrame(frameNanosBySamples[samples])) {
+                frames++;
+                assertTrue(frames < 1000);
+            }//while
+            assertEquals(14, frames);
+        }//for
+        return calibration.getBest(budget);
+    }
+
+    @Test
+    public void calibrationKeepsTheMostSamplesThatHoldTheBudget() throws Exception {
+        long[] fast = new long[5];
+        fast[0] = 8 * MS;
+        fast[2] = 12 * MS;
+        fast[4] = 20 * MS;
+        assertEquals(4, calibrate(new EglCalibration(new int[]{0, 2, 4}, 5, 10), fast, 33 * MS));
+        assertEquals(2, calibrate(new EglCalibration(new int[]{0, 2, 4}, 5, 10), fast, 16 * MS));
+        // Nothing holds it, the fastest is kept
+        assertEquals(0, calibrate(new EglCalibration(new int[]{4, 2, 0}, 5, 10), fast, 5 * MS));
+    }
+
+    @Test
+    public void calibrationRanksByTheSlowFrames() throws Exception {
+        EglCalibration calibration = new EglCalibration(new int[]{4}, 2, 20);
+        assertEquals(4, calibration.next());
+        // Warm-up frames are left out, the 95th percentile of the rest is kept
+        for (int f = 0; f < 22; f++) {
+            long frame = f < 2 ? 500 * MS : (f == 10 ? 40 * MS : 10 * MS);
+            assertEquals(f == 21, calibration.recordFrame(frame));
+        }//for
+        assertEquals(10 * MS, calibration.getP95(0));
+        assertFalse(calibration.recordFrame(10 * MS));
+        assertEquals(-1, calibration.next());
+    }
+
+    @Test
+    public void aRecreatedViewMeasuresItsCandidateAgain() throws Exception {
+        EglCalibration calibration = new EglCalibration(new int[]{4, 0}, 2, 5);
+        assertEquals(4, calibration.resume());
+        for (int f = 0; f < 4; f++) {
+            assertFalse(calibration.recordFrame(500 * MS));
+        }//for
+
+        // The activity was recreated halfway, the same candidate warms up and is measured from the start
+        assertEquals(4, calibration.resume());
+        for (int f = 0; f < 6; f++) {
+            assertFalse(calibration.recordFrame(f < 2 ? 500 * MS : 20 * MS));
+        }//for
+        assertTrue(calibration.recordFrame(20 * MS));
+        assertEquals(20 * MS, calibration.getP95(0));
+
+        // Recreated after the measurement but before advancing, the next candidate is not skipped
+        assertEquals(0, calibration.resume());
+        assertEquals(0, calibration.resume());
+        assertEquals(0, calibration.getP95(1));
+    }
+}
@@ -0,0 +1,199 @@
+package com.nirzvi.virtualwhiteboard;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Decodes blocks written from the ETC1 spec, encodes blocks and boards to ETC1, decodes them again and
+ * checks how close they come back.
+ */
+public class Etc1Test {
+
+    private static final int WHITE = 0xFFFFFFFF;
+    private static final int BLACK = 0xFF000000;
+
+    private static int[] roundTrip(int[] block) {
+        byte[] encoded = new byte[Etc1.ENCODED_BLOCK_BYTES];
+        new Etc1().encodeBlock(block, 0, 4, encoded, 0);
+        int[] decoded = new int[16];
+        Etc1.decodeBlock(encoded, 0, decoded, 0, 4);
+        return decoded;
+    }
+
+    private static int maxChannelError(int[] expected, int[] actual) {
+        int max = 0;
+        for (int i = 0; i < expected.length; i++) {
+            for (int shift = 0; shift < 24; shift += 8) {
+                int e = (expected[i] >> shift) & 0xFF;
+                int a = (actual[i] >> shift) & 0xFF;
+                max = Math.max(max, Math.abs(e - a));
+            }//for
+        }//for
+        return max;
+    }
+
+    /*
+     * Blocks written bit by bit from the OES_compressed_ETC1_RGB8_texture spec, with the pixels the spec's
+     * decoding rules give for them. Pixel indices are read per column, a two bit index picks +a, +b, -a
+     * or -b of the subblock's modifier table, the results are clamped to 0..255.
+     */
+
+    //individual mode, no flip: base colors 4 bit 15, 8, 2 (FF 88 22) on the left and 0, 4, 10
+    //(00 44 AA) on the right, tables 3 (13, 42) and 0 (2, 8), index (x + y) & 3
+    private static final byte[] INDIVIDUAL_BLOCK = {
+            (byte) 0xF0, (byte) 0x84, (byte) 0x2A, (byte) 0x60, (byte) 0x93, (byte) 0x6C, (byte) 0x5A, (byte) 0x5A
+    };
+    private static final int[] INDIVIDUAL_PIXELS = {
+            0xFFFF952F, 0xFFFFB24C, 0xFF0042A8, 0xFF003CA2,
+            0xFFFFB24C, 0xFFF27B15, 0xFF003CA2, 0xFF0246AC,
+            0xFFF27B15, 0xFFD55E00, 0xFF0246AC, 0xFF084CB2,
+            0xFFD55E00, 0xFFFF952F, 0xFF084CB2, 0xFF0042A8
+    };
+
+    //differential mode, flipped: base colors 5 bit 20, 10, 31 (A5 52 FF) on top and offsets -3, +3, 0
+    //(8C 6B FF) below, tables 5 (24, 80) and 7 (47, 183), index (3x + y) & 3, blue clamps at 255
+    private static final byte[] DIFFERENTIAL_BLOCK = {
+            (byte) 0xA5, (byte) 0x53, (byte) 0xF8, (byte) 0xBF, (byte) 0x63, (byte) 0x9C, (byte) 0x5A, (byte) 0x5A
+    };
+    private static final int[] DIFFERENTIAL_PIXELS = {
+            0xFFBD6AFF, 0xFF5502AF, 0xFF8D3AE7, 0xFFF5A2FF,
+            0xFFF5A2FF, 0xFFBD6AFF, 0xFF5502AF, 0xFF8D3AE7,
+            0xFF5D3CD0, 0xFFFFFFFF, 0xFFBB9AFF, 0xFF000048,
+            0xFF000048, 0xFF5D3CD0, 0xFFFFFFFF, 0xFFBB9AFF
+    };
+
+    @Test
+    public void specBlocksDecodeToTheirPixels() throws Exception {
+        int[] decoded = new int[16];
+        Etc1.decodeBlock(INDIVIDUAL_BLOCK, 0, decoded, 0, 4);
+        assertArrayEquals(INDIVIDUAL_PIXELS, decoded);
+        Etc1.decodeBlock(DIFFERENTIAL_BLOCK, 0, decoded, 0, 4);
+        assertArrayEquals(DIFFERENTIAL_PIXELS, decoded);
+    }
+
+    @Test
+    public void encodedSizeIsAnEighthOfRGBA() throws Exception {
+        assertEquals(8, Etc1.getEncodedSize(4, 4));
+        assertEquals(8, Etc1.getEncodedSize(1, 1));
+        assertEquals(1400 * 1160 * 4 / 8, Etc1.getEncodedSize(1400, 1158));
+    }
+
+    @Test
+    public void whiteAndBlackAreExact() throws Exception {
+        int[] block = new int[16];
+        for (int i = 0; i < 16; i++) {
+            block[i] = i < 8 ? WHITE : BLACK;
+        }//for
+        assertArrayEquals(block, roundTrip(block));
+    }
+
+    @Test
+    public void flatColorsAreClose() throws Exception {
+        Random random = new Random(7);
+        for (int n = 0; n < 200; n++) {
+            int color = 0xFF000000 | random.nextInt(0x1000000);
+            int[] block = new int[16];
+            Arrays.fill(block, color);
+            assertTrue(maxChannelError(block, roundTrip(block)) <= 8);
+        }//for
+    }
+
+    @Test
+    public void splitBlocksPickTheBetterOrientation() throws Exception {
+        // Top half red, bottom half blue, only the top and bottom split can show it
+        int[] block = new int[16];
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                block[y * 4 + x] = y < 2 ? 0xFFE02020 : 0xFF2020E0;
+            }//for
+        }//for
+        assertTrue(maxChannelError(block, roundTrip(block)) <= 12);
+
+        // Rotated, the left and right split
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                block[y * 4 + x] = x < 2 ? 0xFFE02020 : 0xFF2020E0;
+            }//for
+        }//for
+        assertTrue(maxChannelError(block, roundTrip(block)) <= 12);
+    }
+
+    @Test
+    public void grayscaleGradientsStayClose() throws Exception {
+        int[] block = new int[16];
+        for (int i = 0; i < 16; i++) {
+            int v = 40 + i * 10;
+            block[i] = 0xFF000000 | (v << 16) | (v << 8) | v;
+        }//for
+        assertTrue(maxChannelError(block, roundTrip(block)) <= 16);
+    }
+
+    @Test
+    public void decodingIgnoresAlphaAndRespectsStride() throws Exception {
+        int[] pixels = new int[8 * 4];
+        Arrays.fill(pixels, 0x80FFFFFF);
+        byte[] encoded = new byte[16];
+        Etc1 etc1 = new Etc1();
+        etc1.encodeBlock(pixels, 0, 8, encoded, 0);
+        etc1.encodeBlock(pixels, 4, 8, encoded, 8);
+
+        int[] decoded = new int[8 * 4];
+        Etc1.decodeBlock(encoded, 0, decoded, 0, 8);
+        Etc1.decodeBlock(encoded, 8, decoded, 4, 8);
+        for (int pixel : decoded) {
+            assertEquals(WHITE, pixel);
+        }//for
+    }
+
+    @Test
+    public void boardImageHasTheBlocksInRowOrder() throws Exception {
+        TiledBoard board = new TiledBoard(100, 70, WHITE, 0);
+        board.fillRect(68, 64, 8, 4, BLACK);
+
+        Etc1BoardEncoder.Image image = new Etc1BoardEncoder().encode(board.snapshot());
+        assertTrue(image.isOpaque());
+        assertEquals(Etc1.getEncodedSize(100, 70), image.getSize());
+
+        // Block (17, 16) and (18, 16) are black, everything else white
+        ByteBuffer data = image.getData();
+        byte[] bytes = new byte[image.getSize()];
+        data.get(bytes);
+        int blocksX = 25;
+        int[] decoded = new int[16];
+        for (int by = 0; by < 18; by++) {
+            for (int bx = 0; bx < blocksX; bx++) {
+                Etc1.decodeBlock(bytes, (by * blocksX + bx) * 8, decoded, 0, 4);
+                boolean black = by == 16 && (bx == 17 || bx == 18);
+                assertEquals("block " + bx + ", " + by, black ? BLACK : WHITE, decoded[5]);
+            }//for
+        }//for
+    }
+
+    @Test
+    public void onlyChangedTilesAreEncodedAgain() throws Exception {
+        TiledBoard board = new TiledBoard(256, 256, WHITE, 0);
+        Etc1BoardEncoder encoder = new Etc1BoardEncoder();
+        encoder.encode(board.snapshot());
+        assertEquals(16, encoder.getEncodedTiles());
+
+        board.fillRect(10, 10, 4, 4, BLACK);
+        encoder.encode(board.snapshot());
+        assertEquals(17, encoder.getEncodedTiles());
+        assertEquals(15, encoder.getReusedTiles());
+    }
+
+    @Test
+    public void translucentBoardsAreNotEncoded() throws Exception {
+        TiledBoard board = new TiledBoard(128, 128, WHITE, 0);
+        board.fillRect(0, 0, 1, 1, 0x80FF0000);
+
+        Etc1BoardEncoder.Image image = new Etc1BoardEncoder().encode(board.snapshot());
+        assertFalse(image.isOpaque());
+        assertNull(image.getData());
+    }
+}
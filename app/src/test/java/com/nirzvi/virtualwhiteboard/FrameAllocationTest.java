@@ -0,0 +1,194 @@
+package com.nirzvi.virtualwhiteboard;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs the per-frame path of VuforiaRenderer.render against a stubbed tracking state and the recording
+ * GL backend, and fails if anything is allocated once it has warmed up.
+ *
+ * Everything the renderer does per frame off the Vuforia library is covered: preparing and culling the
+ * scene, the content and level textures, text, live ink, drawing the boards, the scheduler, profiler,
+ * GPU frame timing and governor. Left out are the calls into Vuforia, which need its native library:
+ * the state update, the video background and the per-view projections of ViewCache.
+ */
+public class FrameAllocationTest {
+
+    private static final int WARM_UP_FRAMES = 20000;
+    private static final int MEASURED_FRAMES = 100000;
+
+    /** A fixed set of tracked poses, moving up and down a little every frame. */
+    private static class StubPoseSource implements PoseSource {
+        private final float[] poses;
+        private final int numPoses;
+        private float drift = 0;
+        private float step = 0.5f;
+        private double timestamp = 0;
+
+        StubPoseSource(int numPoses) {
+            this.numPoses = numPoses;
+            poses = new float[numPoses * PoseMath.POSE_SIZE];
+
+            for (int i = 0; i < numPoses; i++) {
+                int p = i * PoseMath.POSE_SIZE;
+                poses[p] = 1;
+                poses[p + 5] = 1;
+                poses[p + 10] = 1;
+                poses[p + 3] = i * 100;
+                poses[p + 11] = 1500;
+            }//for
+        }
+
+        void nextFrame() {
+            drift += step;
+            if (Math.abs(drift) >= 50) {
+                step = -step;
+            }//if
+            timestamp += 1 / 30.0;
+        }
+
+        @Override
+        public double getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public int getNumPoses() {
+            return numPoses;
+        }
+
+        @Override
+        public int getSlot(int index) {
+            return index;
+        }
+
+        @Override
+        public void getPose(int index, float[] out, int offset) {
+            System.arraycopy(poses, index * PoseMath.POSE_SIZE, out, offset, PoseMath.POSE_SIZE);
+            out[offset + 7] += drift;
+        }
+    }
+
+    /** What VuforiaRenderer keeps between frames, set up as onSurfaceCreated does. */
+    private static class Frame {
+        final RecordingGLBackend gl = new RecordingGLBackend();
+        final ProgramCache programs = new ProgramCache(gl);
+        final TiledBoard content = new TiledBoard(1400, 1158, 0xFFFFFFFF, Long.MAX_VALUE);
+        final TiledBoard.Snapshot snapshot = content.snapshot();
+        final Etc1BoardEncoder encoder = new Etc1BoardEncoder();
+        final BoardPyramidBuilder pyramids = new BoardPyramidBuilder();
+
+        final BoardScene scene = new BoardScene(128, 100);
+        final StubPoseSource source = new StubPoseSource(100);
+        final BoardCuller culler = new BoardCuller();
+        final WhiteBoard board = new WhiteBoard(gl, programs);
+        final AdaptiveBoardTexture boardTexture =
+                new AdaptiveBoardTexture(gl, new TextureStreamer(gl, 256 * 1024), encoder);
+        final BoardLevelTextures levelTextures = new BoardLevelTextures(gl, pyramids, 128 * 1024);
+        final TextRenderer textRenderer = new TextRenderer(gl, programs, 1400, 1158);
+        final TouchSampleQueue touches = new TouchSampleQueue(256);
+        final LiveInk liveInk = new LiveInk(new BoardRasterizer(content), new InkLayer(snapshot));
+        final LiveInkRenderer liveInkRenderer = new LiveInkRenderer(gl, programs, 1400, 1158);
+        final FrameScheduler scheduler = new FrameScheduler();
+        final FrameProfiler profiler = new FrameProfiler(4096);
+        final GpuFrameTimer gpuTimer = new GpuFrameTimer(gl);
+        final QualityGovernor governor = new QualityGovernor();
+        long now = 0;
+
+        Frame() {
+            scene.setPoseFilter(PoseFilter.create(PoseFilter.ONE_EURO_PREDICTED, 100));
+            scene.setPredictionTime(0.033);
+            board.init(scene.getBatch(), 100, boardTexture.init(snapshot, now));
+            levelTextures.init(snapshot);
+            board.setLevelTextures(levelTextures.getTextures());
+            textRenderer.init(TextLayoutTest.boxAtlas());
+            liveInkRenderer.init();
+            gpuTimer.init(true);
+        }
+    }
+
+    //looks down +z like Vuforia's projections, where the stub's boards are
+    private static final float[] PROJECTION = TestMatrices.perspective(60, 0.01f, 5);
+    static {
+        for (int i = 8; i < 12; i++) {
+            PROJECTION[i] = -PROJECTION[i];
+        }//for
+    }
+    private static final int[] VIEWPORT = {0, 0, 1280, 720};
+
+    @Test
+    public void steadyStateFrameDoesNotAllocate() throws Exception {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue("thread allocation counting unsupported", threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        long thread = Thread.currentThread().getId();
+        Frame frame = new Frame();
+
+        // Halfway through the warm-up the still board is compressed and its levels are built,
+        // as the worker threads would have done by then
+        for (int f = 0; f < WARM_UP_FRAMES; f++) {
+            runFrame(frame);
+            if (f == WARM_UP_FRAMES / 2) {
+                frame.encoder.encodePending();
+                frame.pyramids.buildPending();
+            }//if
+        }//for
+
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int f = 0; f < MEASURED_FRAMES; f++) {
+            runFrame(frame);
+        }//for
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        assertEquals("bytes allocated over " + MEASURED_FRAMES + " frames", 0, allocated);
+        assertTrue(frame.culler.getLastDrawn() > 0);
+        assertEquals(frame.culler.getLastDrawn(), frame.scene.getBatch().getBoardCount());
+        assertTrue(frame.gl.getDrawCallCount() > 0);
+    }
+
+    //the steps of VuforiaRenderer.render in its order, for one view
+    private static void runFrame(Frame frame) {
+        frame.now += 33000000L;
+        frame.profiler.begin(FrameProfiler.STAGE_FRAME);
+        boolean timed = frame.gpuTimer.begin(System.nanoTime(), 1);
+        frame.scheduler.onFrameStart(frame.now);
+        frame.liveInk.onFramePresented(frame.now);
+
+        frame.source.nextFrame();
+        BoardBatch batch = frame.scene.getBatch();
+        if (frame.scene.prepare(frame.source)) {
+            frame.culler.cull(batch, PROJECTION, VIEWPORT);
+        } else {
+            frame.culler.countStillFrame();
+        }//else
+
+        frame.boardTexture.update(null, frame.now);
+        frame.board.setTexture(frame.boardTexture.getTexture());
+        frame.levelTextures.update(null);
+        frame.textRenderer.setText("steady text", 50, 224, 64, 1300);
+
+        frame.levelTextures.select(batch);
+        frame.liveInk.update(frame.touches, batch, PROJECTION, VIEWPORT, VIEWPORT[3], frame.snapshot.getVersion(),
+                frame.boardTexture.isUpToDate() && frame.levelTextures.isUpToDate());
+        frame.liveInkRenderer.prepare(frame.liveInk);
+
+        frame.board.draw(batch, PROJECTION);
+        frame.textRenderer.draw(batch, PROJECTION, VIEWPORT);
+        frame.liveInkRenderer.draw(batch, PROJECTION);
+
+        frame.liveInk.onFrameDrawn();
+        frame.scheduler.onFrameEnd(1000000L);
+        frame.profiler.end(FrameProfiler.STAGE_FRAME);
+
+        long frameNanos = frame.gpuTimer.end();
+        if (timed && frameNanos >= 0) {
+            frame.governor.recordFrame(frameNanos);
+        }//if
+    }
+}
@@ -0,0 +1,67 @@
+package com.nirzvi.virtualwhiteboard;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the frame profiler's histograms, ring buffer and trace export.
+ */
+public class FrameProfilerTest {
+
+    @Test
+    public void durationsLandInLog2Buckets() throws Exception {
+        assertEquals(0, FrameProfiler.bucketOf(500));
+        assertEquals(1, FrameProfiler.bucketOf(1000));
+        assertEquals(2, FrameProfiler.bucketOf(3000));
+        assertEquals(14, FrameProfiler.bucketOf(16000000));
+        assertEquals(FrameProfiler.NUM_BUCKETS - 1, FrameProfiler.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentilesComeFromTheHistogram() throws Exception {
+        FrameProfiler profiler = new FrameProfiler(16);
+
+        //99 fast frames and one slow one
+        for (int i = 0; i < 99; i++) {
+            profiler.record(FrameProfiler.STAGE_FRAME, i, 5000000);
+        }//for
+        profiler.record(FrameProfiler.STAGE_FRAME, 100, 40000000);
+
+        assertEquals(100, profiler.getCount(FrameProfiler.STAGE_FRAME));
+        assertEquals(8192, profiler.getPercentileMicros(FrameProfiler.STAGE_FRAME, 50));
+        assertEquals(65536, profiler.getPercentileMicros(FrameProfiler.STAGE_FRAME, 100));
+        assertEquals(0, profiler.getPercentileMicros(FrameProfiler.STAGE_SCENE, 50));
+    }
+
+    @Test
+    public void traceKeepsOnlyTheLatestEvents() throws Exception {
+        FrameProfiler profiler = new FrameProfiler(2);
+        profiler.record(FrameProfiler.STAGE_UPDATE_STATE, 1000, 1000);
+        profiler.record(FrameProfiler.STAGE_SCENE, 2000, 1500);
+        profiler.record(FrameProfiler.STAGE_DRAW_BOARDS, 4000, 42);
+
+        StringBuilder trace = new StringBuilder();
+        profiler.exportTrace(trace);
+
+        assertEquals("{\"displayTimeUnit\":\"ms\",\"traceEvents\":["
+                + "{\"name\":\"scene\",\"cat\":\"render\",\"ph\":\"X\",\"pid\":1,\"tid\":1,\"ts\":2.000,\"dur\":1.500},"
+                + "{\"name\":\"drawBoards\",\"cat\":\"render\",\"ph\":\"X\",\"pid\":1,\"tid\":1,\"ts\":4.000,\"dur\":0.042}"
+                + "]}", trace.toString());
+    }
+
+    @Test
+    public void disabledProfilerRecordsNothing() throws Exception {
+        FrameProfiler profiler = new FrameProfiler(16);
+        profiler.setEnabled(false);
+
+        profiler.begin(FrameProfiler.STAGE_FRAME);
+        profiler.end(FrameProfiler.STAGE_FRAME);
+        assertEquals(0, profiler.getCount(FrameProfiler.STAGE_FRAME));
+
+        profiler.setEnabled(true);
+        profiler.begin(FrameProfiler.STAGE_FRAME);
+        profiler.end(FrameProfiler.STAGE_FRAME);
+        assertEquals(1, profiler.getCount(FrameProfiler.STAGE_FRAME));
+    }
+}
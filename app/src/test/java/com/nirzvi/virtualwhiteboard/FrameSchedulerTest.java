@@ -0,0 +1,152 @@
+package com.nirzvi.virtualwhiteboard;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Requests frames on demand the way the camera, edits and touches do, and leaves the batch alone
+ * while the poses hold still.
+ */
+public class FrameSchedulerTest {
+
+    private static final long FRAME_NANOS = 1000000000L / 60;
+
+    private static class CountingTarget implements FrameScheduler.Target {
+        int renders = 0;
+
+        @Override
+        public void requestRender() {
+            renders++;
+        }
+    }
+
+    /** One board, moved by hand between frames. */
+    private static class StillPoseSource implements PoseSource {
+        final float[] pose = new float[PoseMath.POSE_SIZE];
+        int numPoses = 1;
+        double timestamp = 0;
+
+        StillPoseSource() {
+            pose[0] = 1;
+            pose[5] = 1;
+            pose[10] = 1;
+            pose[11] = 1500;
+        }
+
+        @Override
+        public double getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public int getNumPoses() {
+            return numPoses;
+        }
+
+        @Override
+        public int getSlot(int index) {
+            return index;
+        }
+
+        @Override
+        public void getPose(int index, float[] out, int offset) {
+            System.arraycopy(pose, 0, out, offset, PoseMath.POSE_SIZE);
+        }
+    }
+
+    @Test
+    public void requestsBeforeAFrameShareIt() throws Exception {
+        FrameScheduler scheduler = new FrameScheduler();
+        CountingTarget target = new CountingTarget();
+        scheduler.setTarget(target);
+        assertTrue(scheduler.isOnDemand());
+        assertEquals(1, target.renders);
+
+        scheduler.request(FrameScheduler.REASON_CAMERA);
+        scheduler.requester(FrameScheduler.REASON_CONTENT).run();
+        assertEquals(1, target.renders);
+
+        // A request while the frame is drawn gets the next one
+        scheduler.onFrameStart(0);
+        scheduler.request(FrameScheduler.REASON_TOUCH);
+        scheduler.onFrameEnd(1000);
+        assertEquals(2, target.renders);
+
+        assertEquals(1, scheduler.getRequests(FrameScheduler.REASON_CAMERA));
+        assertEquals(2, scheduler.getRequests(FrameScheduler.REASON_CONTENT));
+        assertEquals(1, scheduler.getRequests(FrameScheduler.REASON_TOUCH));
+    }
+
+    @Test
+    public void continuousRenderingOnlyCounts() throws Exception {
+        FrameScheduler scheduler = new FrameScheduler();
+        CountingTarget target = new CountingTarget();
+        scheduler.setTarget(target);
+        scheduler.setTarget(null);
+        assertFalse(scheduler.isOnDemand());
+
+        scheduler.onFrameStart(0);
+        scheduler.request(FrameScheduler.REASON_CAMERA);
+        scheduler.onFrameEnd(0);
+        assertEquals(1, target.renders);
+        assertEquals(1, scheduler.getRequests(FrameScheduler.REASON_CAMERA));
+    }
+
+    @Test
+    public void cameraRateFramesSaveHalfOfASixtyHertzDisplay() throws Exception {
+        FrameScheduler scheduler = new FrameScheduler();
+        scheduler.setTarget(new CountingTarget());
+        scheduler.setDisplayRate(60);
+
+        // A 30 fps camera asks for every other display frame over one second
+        for (int f = 0; f <= 60; f += 2) {
+            scheduler.request(FrameScheduler.REASON_CAMERA);
+            scheduler.onFrameStart(f * FRAME_NANOS);
+            scheduler.onFrameEnd(2000000);
+        }//for
+
+        assertEquals(31, scheduler.getFrames());
+        assertEquals(61, scheduler.getDisplayFrames());
+        assertEquals(30, scheduler.getSkippedFrames());
+        assertEquals(2000000, scheduler.getAverageFrameCpuNanos());
+        assertEquals(30 * 2000000L, scheduler.getSavedCpuNanos());
+    }
+
+    @Test
+    public void stillPosesKeepTheBatch() throws Exception {
+        BoardScene scene = new BoardScene(8, 4);
+        scene.setPoseEpsilon(0.5f);
+        StillPoseSource source = new StillPoseSource();
+
+        assertTrue(scene.prepare(source));
+        assertEquals(1, scene.getBatch().getBoardCount());
+
+        // Culling empties the batch, a board that held still does not come back
+        scene.getBatch().truncate(0);
+        source.pose[3] += 0.1f;
+        source.timestamp += 1 / 30.0;
+        assertFalse(scene.prepare(source));
+        assertEquals(0, scene.getBatch().getBoardCount());
+        assertEquals(1, scene.getStillFrames());
+
+        // Small moves add up against the batch, not the last frame
+        source.pose[3] += 0.3f;
+        assertFalse(scene.prepare(source));
+        source.pose[3] += 0.3f;
+        assertTrue(scene.prepare(source));
+        assertEquals(1, scene.getBatch().getBoardCount());
+
+        // A turn moves the corners further than the centre
+        source.pose[1] = 0.001f;
+        assertTrue(scene.prepare(source));
+
+        // Boards lost or found, or a new view, always refill it
+        source.numPoses = 0;
+        assertTrue(scene.prepare(source));
+        assertEquals(0, scene.getBatch().getBoardCount());
+        assertFalse(scene.prepare(source));
+        scene.invalidate();
+        assertTrue(scene.prepare(source));
+    }
+}
@@ -0,0 +1,99 @@
+package com.nirzvi.virtualwhiteboard;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Times frames through the recording backend, with and without timer queries.
+ */
+public class GpuFrameTimerTest {
+
+    private static final long MS = 1000000L;
+
+    private static GpuFrameTimer timer(RecordingGLBackend gl, boolean queriesAllowed) {
+        GpuFrameTimer timer = new GpuFrameTimer(gl);
+        timer.init(queriesAllowed);
+        gl.setLogging(true);
+        gl.resetCounters();
+        return timer;
+    }
+
+    @Test
+    public void withoutQueriesOnlyTimedFramesWaitForTheGpu() throws Exception {
+        RecordingGLBackend gl = new RecordingGLBackend();
+        GpuFrameTimer timer = timer(gl, true);
+        assertFalse(timer.isUsingQueries());
+
+        assertFalse(timer.begin(System.nanoTime(), 0));
+        assertEquals(-1, timer.end());
+        assertFalse(gl.getLog().contains("glFinish()"));
+
+        assertTrue(timer.begin(System.nanoTime(), 2));
+        assertTrue(timer.end() >= 0);
+        assertEquals(2, timer.getTag());
+        assertTrue(gl.getLog().contains("glFinish()"));
+    }
+
+    @Test
+    public void queriesAreReadWithoutWaiting() throws Exception {
+        RecordingGLBackend gl = new RecordingGLBackend();
+        gl.setTimerQueries(true);
+        gl.setGpuFrameNanos(40 * MS);
+        GpuFrameTimer timer = timer(gl, true);
+        assertTrue(timer.isUsingQueries());
+
+        // The GPU took longer than the CPU, it bounds the frame
+        assertTrue(timer.begin(System.nanoTime(), 1));
+        assertEquals(40 * MS, timer.end());
+        assertEquals(1, timer.getTag());
+        assertFalse(gl.getLog().contains("glFinish()"));
+    }
+
+    @Test
+    public void lateResultsAreReadOneFrameAtATime() throws Exception {
+        RecordingGLBackend gl = new RecordingGLBackend();
+        gl.setTimerQueries(true);
+        gl.setGpuFrameNanos(20 * MS);
+        gl.setQueryResultsReady(false);
+        GpuFrameTimer timer = timer(gl, true);
+
+        // Every query is in flight, the next frame goes untimed
+        for (int f = 0; f < GpuFrameTimer.QUERIES; f++) {
+            assertTrue(timer.begin(System.nanoTime(), f + 1));
+            assertEquals(-1, timer.end());
+        }//for
+        assertFalse(timer.begin(System.nanoTime(), 9));
+        assertEquals(-1, timer.end());
+
+        // Results come back in the order the frames were drawn
+        gl.setQueryResultsReady(true);
+        for (int f = 0; f < GpuFrameTimer.QUERIES; f++) {
+            assertFalse(timer.begin(System.nanoTime(), 0));
+            assertEquals(20 * MS, timer.end());
+            assertEquals(f + 1, timer.getTag());
+        }//for
+        assertEquals(-1, timer.end());
+    }
+
+    @Test
+    public void aDisjointResultIsDropped() throws Exception {
+        RecordingGLBackend gl = new RecordingGLBackend();
+        gl.setTimerQueries(true);
+        gl.setGpuFrameNanos(20 * MS);
+        GpuFrameTimer timer = timer(gl, true);
+
+        gl.setDisjoint(true);
+        assertTrue(timer.begin(System.nanoTime(), 1));
+        assertEquals(-1, timer.end());
+        assertTrue(timer.begin(System.nanoTime(), 1));
+        assertEquals(20 * MS, timer.end());
+    }
+
+    @Test
+    public void queriesNeedTheGles3Bindings() throws Exception {
+        RecordingGLBackend gl = new RecordingGLBackend();
+        gl.setTimerQueries(true);
+        assertFalse(timer(gl, false).isUsingQueries());
+    }
+}
@@ -0,0 +1,109 @@
+package com.nirzvi.virtualwhiteboard;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Rasterizes strokes into a tiled board and checks that erasing repairs exactly what it should.
+ */
+public class InkLayerTest {
+
+    private static final int WHITE = 0xFFFFFFFF;
+    private static final int BLACK = 0xFF000000;
+    private static final int RED = 0xFFFF0000;
+
+    private static float[] line(float x0, float y0, float x1, float y1) {
+        return new float[]{x0, y0, 1, x1, y1, 1};
+    }
+
+    private static TiledBoard newBoard() {
+        TiledBoard board = new TiledBoard(512, 512, WHITE, Long.MAX_VALUE);
+        board.fillRect(0, 0, 512, 20, 0xFF0000FF);
+        board.clearDirty();
+        return board;
+    }
+
+    @Test
+    public void strokeCoversItsWidthWithSoftEdges() throws Exception {
+        TiledBoard board = newBoard();
+        InkLayer ink = new InkLayer(board.snapshot());
+
+        ink.addStroke(board, line(50, 100.5f, 300, 100.5f), 0, 2, BLACK, 6);
+
+        assertEquals(BLACK, board.getPixel(150, 100));
+        assertEquals(BLACK, board.getPixel(150, 98));
+        assertEquals(WHITE, board.getPixel(150, 106));
+        //round caps reach past the end points
+        assertEquals(BLACK, board.getPixel(48, 100));
+        //the edge pixel is blended
+        int edge = board.getPixel(150, 103);
+        assertTrue(Integer.toHexString(edge), edge != BLACK && edge != WHITE);
+    }
+
+    @Test
+    public void strokeOnlyWritesTheTilesItCrosses() throws Exception {
+        TiledBoard board = newBoard();
+        InkLayer ink = new InkLayer(board.snapshot());
+
+        ink.addStroke(board, line(70, 70, 120, 70), 0, 2, BLACK, 4);
+
+        //tiles 1,1 only
+        assertEquals(1, board.getDirtyCount());
+    }
+
+    @Test
+    public void eraseRestoresTheBackgroundAndRedrawsNeighbours() throws Exception {
+        TiledBoard board = newBoard();
+        TiledBoard.Snapshot background = board.snapshot();
+        InkLayer ink = new InkLayer(background);
+
+        ink.addStroke(board, line(10, 10, 400, 10), 0, 2, BLACK, 8);
+        ink.addStroke(board, line(200, 0, 200, 400), 0, 2, RED, 8);
+
+        assertEquals(1, ink.eraseAt(board, 100, 10, 2));
+
+        //the background is back, and the red stroke still crosses where the black one was
+        assertEquals(background.getPixel(100, 10), board.getPixel(100, 10));
+        assertEquals(background.getPixel(300, 12), board.getPixel(300, 12));
+        assertEquals(RED, board.getPixel(200, 10));
+        assertEquals(RED, board.getPixel(200, 300));
+    }
+
+    @Test
+    public void erasingEverythingSharesTheBackgroundTiles() throws Exception {
+        TiledBoard board = newBoard();
+        TiledBoard.Snapshot background = board.snapshot();
+        InkLayer ink = new InkLayer(background);
+
+        ink.addStroke(board, line(100, 100, 400, 400), 0, 2, BLACK, 10);
+        ink.eraseAt(board, 250, 250, 2);
+
+        TiledBoard.Snapshot after = board.snapshot();
+        int shared = 0;
+        for (int i = 0; i < after.getTileCount(); i++) {
+            for (int p = 0; p < TiledBoard.TILE_PIXELS; p++) {
+                assertEquals(background.getTile(i)[p], after.getTile(i)[p]);
+            }//for
+            if (after.getTile(i) == background.getTile(i)) {
+                shared++;
+            }//if
+        }//for
+        //only tiles the damage rectangle cuts through are copies
+        assertTrue(shared > after.getTileCount() / 2);
+    }
+
+    @Test
+    public void newBackgroundKeepsTheInk() throws Exception {
+        TiledBoard board = newBoard();
+        InkLayer ink = new InkLayer(board.snapshot());
+        ink.addStroke(board, line(100, 300, 400, 300), 0, 2, BLACK, 6);
+
+        board.restore(ink.getBackground());
+        board.fillRect(0, 280, 512, 40, RED);
+        ink.setBackground(board, board.snapshot());
+
+        assertEquals(BLACK, board.getPixel(200, 300));
+        assertEquals(RED, board.getPixel(50, 300));
+    }
+}
@@ -0,0 +1,231 @@
+package com.nirzvi.virtualwhiteboard;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Casts touches onto a board in front of a perspective camera and follows live strokes until
+ * the board texture holds them.
+ */
+public class LiveInkTest {
+
+    private static final int WHITE = 0xFFFFFFFF;
+    private static final int BLACK = 0xFF000000;
+
+    private static final int[] VIEWPORT = {0, 0, 1000, 1000};
+    private static final int SURFACE_HEIGHT = 1000;
+
+    //GL camera looking down -z, board 1500 trackable units in front of it
+    private static final float[] POSE = {
+            1, 0, 0, 0,
+            0, 1, 0, 0,
+            0, 0, 1, 0,
+            0, 0, -1500, 1
+    };
+
+    private static final float[] PROJECTION = TestMatrices.perspective(60, 0.01f, 5);
+
+    //where a point in trackable space lands on the screen, y down from the top
+    private static float[] toScreen(BoardBatch batch, float x, float y) {
+        float[] mvp = new float[16];
+        PoseMath.multiplyMM(mvp, 0, PROJECTION, 0, batch.getModelMatrices(), 0);
+        float[] clip = new float[4];
+        for (int row = 0; row < 4; row++) {
+            clip[row] = mvp[row] * x + mvp[4 + row] * y + mvp[12 + row];
+        }//for
+        float sx = (clip[0] / clip[3] + 1) / 2 * VIEWPORT[2];
+        float sy = SURFACE_HEIGHT - (clip[1] / clip[3] + 1) / 2 * VIEWPORT[3];
+        return new float[]{sx, sy};
+    }
+
+    private static BoardBatch batch() {
+        BoardBatch batch = new BoardBatch(4);
+        batch.addBoard(3, POSE, 0);
+        return batch;
+    }
+
+    @Test
+    public void raycastFindsTheTouchedPointOfTheBoard() throws Exception {
+        BoardBatch batch = batch();
+        BoardRaycast raycast = new BoardRaycast();
+        float[] uv = new float[2];
+
+        //top-left quarter of the board in texture space
+        float x = -BoardBatch.HALF_WIDTH / 2;
+        float y = BoardBatch.HALF_HEIGHT / 2;
+        float[] screen = toScreen(batch, x, y);
+
+        assertTrue(raycast.screenToUV(PROJECTION, batch.getModelMatrices(), 0, VIEWPORT, SURFACE_HEIGHT, screen[0], screen[1], uv));
+        assertEquals(0.25f, uv[0], 1e-3);
+        assertEquals(0.25f, uv[1], 1e-3);
+        assertTrue(BoardRaycast.isOnBoard(uv));
+
+        //a corner of the screen misses the board
+        assertTrue(raycast.screenToUV(PROJECTION, batch.getModelMatrices(), 0, VIEWPORT, SURFACE_HEIGHT, 0, 0, uv));
+        assertFalse(BoardRaycast.isOnBoard(uv));
+    }
+
+    @Test
+    public void touchQueueKeepsOrderAndDropsWhenFull() throws Exception {
+        TouchSampleQueue queue = new TouchSampleQueue(4);
+        for (int i = 0; i < 6; i++) {
+            queue.push(TouchSampleQueue.MOVE, i, 0, 1, i);
+        }//for
+
+        assertEquals(4, queue.available());
+        assertEquals(2, queue.getDroppedCount());
+        assertEquals(1, queue.getX(1), 0);
+        queue.release(3);
+        assertEquals(1, queue.available());
+        assertEquals(3, queue.getX(0), 0);
+    }
+
+    @Test
+    public void strokeStaysLiveUntilTheTextureHasIt() throws Exception {
+        TiledBoard board = new TiledBoard(1400, 1158, WHITE, Long.MAX_VALUE);
+        InkLayer layer = new InkLayer(board.snapshot());
+        BoardRasterizer rasterizer = new BoardRasterizer(board);
+        LiveInk ink = new LiveInk(rasterizer, layer);
+        TouchSampleQueue touches = new TouchSampleQueue(64);
+        BoardBatch batch = batch();
+        long seen = rasterizer.getChannel().peek().getVersion();
+
+        float[] start = toScreen(batch, -200, 0);
+        float[] end = toScreen(batch, 200, 0);
+        touches.push(TouchSampleQueue.DOWN, start[0], start[1], 1, 0);
+        touches.push(TouchSampleQueue.MOVE, (start[0] + end[0]) / 2, start[1], 1, 0);
+        ink.update(touches, batch, PROJECTION, VIEWPORT, SURFACE_HEIGHT, seen, true);
+
+        assertEquals(1, ink.getStrokes().size());
+        LiveInk.Stroke stroke = ink.getStrokes().get(0);
+        assertEquals(2, stroke.getPointCount());
+        assertEquals(3, stroke.getSlot());
+        //board pixels match trackable units on this board
+        assertEquals(500, stroke.getPoints()[0], 0.5);
+        assertEquals(579, stroke.getPoints()[1], 0.5);
+
+        touches.push(TouchSampleQueue.UP, end[0], end[1], 1, 0);
+        ink.update(touches, batch, PROJECTION, VIEWPORT, SURFACE_HEIGHT, seen, true);
+        //the middle point is on the line and gets simplified away
+        assertEquals(2, stroke.getPointCount());
+        assertEquals(900, stroke.getPoints()[3], 0.5);
+
+        //not rasterized yet
+        ink.update(touches, batch, PROJECTION, VIEWPORT, SURFACE_HEIGHT, seen, true);
+        assertEquals(1, ink.getStrokes().size());
+
+        rasterizer.applyPending();
+        TiledBoard.Snapshot content = rasterizer.getChannel().poll(seen);
+        assertEquals(BLACK, content.getPixel(700, 579));
+
+        //taken, but still uploading
+        ink.update(touches, batch, PROJECTION, VIEWPORT, SURFACE_HEIGHT, content.getVersion(), false);
+        assertEquals(1, ink.getStrokes().size());
+
+        ink.update(touches, batch, PROJECTION, VIEWPORT, SURFACE_HEIGHT, content.getVersion(), true);
+        assertEquals(0, ink.getStrokes().size());
+        assertEquals(1, layer.getStrokes().getLiveStrokeCount());
+    }
+
+    @Test
+    public void aDownWithoutAnUpCommitsTheLastStroke() throws Exception {
+        TiledBoard board = new TiledBoard(1400, 1158, WHITE, Long.MAX_VALUE);
+        BoardRasterizer rasterizer = new BoardRasterizer(board);
+        LiveInk ink = new LiveInk(rasterizer, new InkLayer(board.snapshot()));
+        TouchSampleQueue touches = new TouchSampleQueue(64);
+        BoardBatch batch = batch();
+        long seen = rasterizer.getChannel().peek().getVersion();
+
+        // The UP of the first stroke was lost
+        float[] first = toScreen(batch, -200, 0);
+        float[] second = toScreen(batch, 0, 200);
+        touches.push(TouchSampleQueue.DOWN, first[0], first[1], 1, 0);
+        touches.push(TouchSampleQueue.MOVE, first[0] + 100, first[1], 1, 0);
+        touches.push(TouchSampleQueue.DOWN, second[0], second[1], 1, 0);
+        touches.push(TouchSampleQueue.MOVE, second[0] + 100, second[1], 1, 0);
+        touches.push(TouchSampleQueue.UP, second[0] + 100, second[1], 1, 0);
+        ink.update(touches, batch, PROJECTION, VIEWPORT, SURFACE_HEIGHT, seen, true);
+        assertEquals(2, ink.getStrokes().size());
+
+        rasterizer.applyPending();
+        TiledBoard.Snapshot content = rasterizer.getChannel().poll(seen);
+        assertEquals(BLACK, content.getPixel(500, 579));
+        assertEquals(2, rasterizer.getEditCount());
+
+        // Both leave once the texture has them, the first does not hold up the second
+        ink.update(touches, batch, PROJECTION, VIEWPORT, SURFACE_HEIGHT, content.getVersion(), true);
+        assertEquals(0, ink.getStrokes().size());
+    }
+
+    @Test
+    public void touchOffTheBoardStartsNoStroke() throws Exception {
+        TiledBoard board = new TiledBoard(1400, 1158, WHITE, Long.MAX_VALUE);
+        LiveInk ink = new LiveInk(new BoardRasterizer(board), new InkLayer(board.snapshot()));
+        TouchSampleQueue touches = new TouchSampleQueue(64);
+
+        touches.push(TouchSampleQueue.DOWN, 1, 1, 1, 0);
+        touches.push(TouchSampleQueue.MOVE, 500, 500, 1, 0);
+        ink.update(touches, batch(), PROJECTION, VIEWPORT, SURFACE_HEIGHT, 0, true);
+
+        assertEquals(0, ink.getStrokes().size());
+        assertEquals(0, touches.available());
+    }
+
+    @Test
+    public void latencyIsMeasuredToTheSwapOfTheFrameThatDrawsTheSample() throws Exception {
+        TiledBoard board = new TiledBoard(1400, 1158, WHITE, Long.MAX_VALUE);
+        LiveInk ink = new LiveInk(new BoardRasterizer(board), new InkLayer(board.snapshot()));
+        TouchSampleQueue touches = new TouchSampleQueue(64);
+        BoardBatch batch = batch();
+        float[] screen = toScreen(batch, 0, 0);
+        long frame = 16666667;
+
+        ink.onFramePresented(0);
+        touches.push(TouchSampleQueue.DOWN, screen[0], screen[1], 1, frame / 2);
+        ink.update(touches, batch, PROJECTION, VIEWPORT, SURFACE_HEIGHT, 0, true);
+        assertTrue(ink.onFrameDrawn());
+        //drawn, but not on screen before the swap
+        LatencyMeter latency = ink.getLatency();
+        assertEquals(0, latency.getCount());
+        ink.onFramePresented(frame);
+        assertEquals(1, latency.getCount());
+
+        touches.push(TouchSampleQueue.MOVE, screen[0] + 50, screen[1], 1, frame + frame / 4);
+        ink.update(touches, batch, PROJECTION, VIEWPORT, SURFACE_HEIGHT, 0, true);
+        assertTrue(ink.onFrameDrawn());
+        ink.onFramePresented(2 * frame);
+        assertFalse(ink.onFrameDrawn());
+        ink.onFramePresented(3 * frame);
+
+        assertEquals(2, latency.getCount());
+        assertEquals(frame * 3 / 4, latency.getPercentile(100), 1);
+        assertTrue(latency.getPercentileFrames(95) < 2);
+    }
+
+    @Test
+    public void liveStrokesAreDrawnOverTheirBoardOnly() throws Exception {
+        RecordingGLBackend gl = new RecordingGLBackend();
+        TiledBoard board = new TiledBoard(1400, 1158, WHITE, Long.MAX_VALUE);
+        LiveInk ink = new LiveInk(new BoardRasterizer(board), new InkLayer(board.snapshot()));
+        LiveInkRenderer renderer = new LiveInkRenderer(gl, new ProgramCache(gl), 1400, 1158);
+        renderer.init();
+
+        BoardBatch batch = batch();
+        //a second board on another trackable
+        batch.addBoard(5, POSE, 0);
+        TouchSampleQueue touches = new TouchSampleQueue(64);
+        float[] screen = toScreen(batch, 0, 0);
+        touches.push(TouchSampleQueue.DOWN, screen[0], screen[1], 1, 0);
+        touches.push(TouchSampleQueue.MOVE, screen[0] + 100, screen[1], 1, 0);
+        ink.update(touches, batch, PROJECTION, VIEWPORT, SURFACE_HEIGHT, 0, true);
+
+        gl.resetCounters();
+        renderer.prepare(ink);
+        renderer.draw(batch, PROJECTION);
+
+        assertEquals(1, gl.getDrawCallCount());
+        //two hexagons and a quad
+        assertEquals(2 * 18 + 6, gl.getIndexCount());
+    }
+}
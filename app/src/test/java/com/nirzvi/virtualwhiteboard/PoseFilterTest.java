@@ -0,0 +1,139 @@
+package com.nirzvi.virtualwhiteboard;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the pose filters over recorded-style pose sequences: a board held still with
+ * tracking noise, a board sliding at constant speed and a board spinning at constant rate.
+ */
+public class PoseFilterTest {
+
+    private static final double FRAME = 1 / 30.0;
+    private static final int FRAMES = 90;
+
+    @Test
+    public void noneLeavesPosesAlone() throws Exception {
+        PoseFilter filter = PoseFilter.create(PoseFilter.NONE, 1);
+        float[] pose = pose(0.3, 10, 20, 1500);
+        float[] copy = pose.clone();
+
+        filter.filter(0, pose, 0, 0, 0.05);
+        assertArrayEquals(copy, pose, 0);
+    }
+
+    @Test
+    public void oneEuroRemovesJitterWhileStill() throws Exception {
+        PoseFilter filter = PoseFilter.create(PoseFilter.ONE_EURO, 1);
+        Random noise = new Random(1);
+
+        double rawError = 0;
+        double filteredError = 0;
+        for (int f = 0; f < FRAMES; f++) {
+            float[] pose = pose(0.2 + noise.nextGaussian() * 0.01, 50 + noise.nextGaussian() * 2, 0, 1500);
+            double raw = Math.abs(pose[3] - 50);
+
+            filter.filter(0, pose, 0, f * FRAME, f * FRAME);
+
+            //skip the frames where the filter is still settling
+            if (f > 30) {
+                rawError += raw;
+                filteredError += Math.abs(pose[3] - 50);
+            }//if
+        }//for
+
+        assertTrue("filtered error " + filteredError + " vs raw " + rawError, filteredError < rawError * 0.5);
+    }
+
+    @Test
+    public void oneEuroOutputStaysARotation() throws Exception {
+        PoseFilter filter = PoseFilter.create(PoseFilter.ONE_EURO, 1);
+        float[] pose = null;
+
+        for (int f = 0; f < FRAMES; f++) {
+            pose = pose(f * 0.05, 0, 0, 1500);
+            filter.filter(0, pose, 0, f * FRAME, f * FRAME);
+        }//for
+
+        //rows of the rotation are unit length and orthogonal
+        assertEquals(1, pose[0] * pose[0] + pose[1] * pose[1] + pose[2] * pose[2], 1e-5);
+        assertEquals(0, pose[0] * pose[4] + pose[1] * pose[5] + pose[2] * pose[6], 1e-5);
+    }
+
+    @Test
+    public void constantVelocityPredictsLinearMotion() throws Exception {
+        PoseFilter filter = PoseFilter.create(PoseFilter.CONSTANT_VELOCITY, 1);
+        double speed = 300;
+        double horizon = 0.033;
+
+        float[] pose = null;
+        for (int f = 0; f < FRAMES; f++) {
+            pose = pose(0, f * FRAME * speed, 0, 1500);
+            filter.filter(0, pose, 0, f * FRAME, f * FRAME + horizon);
+        }//for
+
+        double expected = ((FRAMES - 1) * FRAME + horizon) * speed;
+        assertEquals(expected, pose[3], 0.5);
+    }
+
+    @Test
+    public void constantVelocityPredictsRotation() throws Exception {
+        PoseFilter filter = PoseFilter.create(PoseFilter.CONSTANT_VELOCITY, 1);
+        double rate = 2;
+        double horizon = 0.05;
+
+        float[] pose = null;
+        for (int f = 0; f < FRAMES; f++) {
+            pose = pose(f * FRAME * rate, 0, 0, 1500);
+            filter.filter(0, pose, 0, f * FRAME, f * FRAME + horizon);
+        }//for
+
+        double expectedAngle = ((FRAMES - 1) * FRAME + horizon) * rate;
+        assertEquals(Math.cos(expectedAngle), pose[0], 1e-3);
+        assertEquals(Math.sin(expectedAngle), pose[4], 1e-3);
+    }
+
+    @Test
+    public void predictionRestartsAfterTrackingLoss() throws Exception {
+        PoseFilter filter = PoseFilter.create(PoseFilter.CONSTANT_VELOCITY, 1);
+
+        for (int f = 0; f < 10; f++) {
+            filter.filter(0, pose(0, f * 10, 0, 1500), 0, f * FRAME, f * FRAME + 0.05);
+        }//for
+
+        //the board comes back after a second somewhere else, nothing should be extrapolated
+        float[] pose = pose(0, -200, 0, 1500);
+        filter.filter(0, pose, 0, 2, 2.05);
+        assertEquals(-200, pose[3], 1e-3);
+    }
+
+    @Test
+    public void repeatedFrameDoesNotChangeState() throws Exception {
+        PoseFilter filter = PoseFilter.create(PoseFilter.ONE_EURO_PREDICTED, 1);
+
+        float[] first = null;
+        for (int f = 0; f < 10; f++) {
+            first = pose(0, f * 10, 0, 1500);
+            filter.filter(0, first, 0, f * FRAME, f * FRAME + 0.03);
+        }//for
+
+        //the same camera frame drawn again, e.g. for the second view
+        float[] second = pose(0, 90, 0, 1500);
+        filter.filter(0, second, 0, 9 * FRAME, 9 * FRAME + 0.03);
+        assertArrayEquals(first, second, 1e-4f);
+    }
+
+    //3x4 pose rotated about z
+    private static float[] pose(double angle, double x, double y, double z) {
+        float c = (float) Math.cos(angle);
+        float s = (float) Math.sin(angle);
+        return new float[] {
+                c, -s, 0, (float) x,
+                s, c, 0, (float) y,
+                0, 0, 1, (float) z
+        };
+    }
+}
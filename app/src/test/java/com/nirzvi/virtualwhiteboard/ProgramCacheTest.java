@@ -0,0 +1,99 @@
+package com.nirzvi.virtualwhiteboard;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that programs are linked once per context, with their attributes bound before linking.
+ */
+public class ProgramCacheTest {
+
+    private static final String VERTEX = "attribute vec4 a_Position; void main() { gl_Position = a_Position; }";
+    private static final String FRAGMENT = "void main() { gl_FragColor = vec4(1.0); }";
+
+    @Test
+    public void sameSourcesLinkOnce() throws Exception {
+        RecordingGLBackend gl = new RecordingGLBackend();
+        gl.setLogging(true);
+        ProgramCache programs = new ProgramCache(gl);
+
+        ShaderProgram first = programs.get(VERTEX, FRAGMENT, "a_Position");
+        ShaderProgram second = programs.get(VERTEX, FRAGMENT, "a_Position");
+
+        assertSame(first, second);
+        assertEquals(1, programs.size());
+        assertEquals(1, count(gl.getLog(), "glLinkProgram"));
+    }
+
+    @Test
+    public void attributesAreBoundBeforeLinking() throws Exception {
+        RecordingGLBackend gl = new RecordingGLBackend();
+        gl.setLogging(true);
+        ProgramCache programs = new ProgramCache(gl);
+
+        ShaderProgram program = programs.get(VERTEX, FRAGMENT, "a_Position", "a_TexCoord");
+
+        List<String> log = gl.getLog();
+        int link = indexOf(log, "glLinkProgram");
+        assertTrue(indexOf(log, "glBindAttribLocation(" + program.getHandle() + ", 1, a_TexCoord)") < link);
+        assertEquals(1, program.getAttribLocation("a_TexCoord"));
+    }
+
+    @Test
+    public void locationsAreLookedUpOnce() throws Exception {
+        RecordingGLBackend gl = new RecordingGLBackend();
+        ShaderProgram program = new ProgramCache(gl).get(VERTEX, FRAGMENT);
+        gl.resetCounters();
+
+        int location = program.getUniformLocation("u_Color");
+        assertEquals(location, program.getUniformLocation("u_Color"));
+        assertEquals(1, gl.getCallCount());
+    }
+
+    @Test
+    public void newContextRelinks() throws Exception {
+        RecordingGLBackend gl = new RecordingGLBackend();
+        ProgramCache programs = new ProgramCache(gl);
+
+        ShaderProgram lost = programs.get(VERTEX, FRAGMENT);
+        programs.clear();
+
+        assertNotSame(lost, programs.get(VERTEX, FRAGMENT));
+    }
+
+    @Test
+    public void compileErrorsThrow() throws Exception {
+        RecordingGLBackend gl = new RecordingGLBackend();
+        gl.setShadersCompile(false);
+        ProgramCache programs = new ProgramCache(gl);
+
+        try {
+            programs.get(VERTEX, FRAGMENT);
+            fail("broken shader linked");
+        } catch (RuntimeException e) {
+            assertEquals(0, programs.size());
+        }//catch
+    }
+
+    private static int indexOf(List<String> log, String prefix) {
+        for (int i = 0; i < log.size(); i++) {
+            if (log.get(i).startsWith(prefix)) {
+                return i;
+            }//if
+        }//for
+        return -1;
+    }
+
+    private static int count(List<String> log, String prefix) {
+        int count = 0;
+        for (String call : log) {
+            if (call.startsWith(prefix)) {
+                count++;
+            }//if
+        }//for
+        return count;
+    }
+}
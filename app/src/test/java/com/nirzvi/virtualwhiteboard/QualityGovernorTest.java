@@ -0,0 +1,146 @@
+package com.nirzvi.virtualwhiteboard;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Feeds the governor synthetic frame-time traces: a phone heating up, one that cannot sustain the
+ * better tier, and short spikes it should ride out.
+ */
+public class QualityGovernorTest {
+
+    private static final int WINDOW = 90;
+    private static final long MS = 1000000L;
+    private static final int DOWN_FRAMES = WINDOW * QualityGovernor.DOWN_WINDOWS;
+
+    private static QualityGovernor governor() {
+        return new QualityGovernor(QualityTier.TIERS, QualityTier.DEFAULT_TIER, WINDOW);
+    }
+
+    //frames until the tier changes, -1 if it did not within maxFrames
+    private static int runUntilChange(QualityGovernor governor, long frameNanos, int maxFrames) {
+        for (int f = 0; f < maxFrames; f++) {
+            if (governor.recordFrame(frameNanos)) {
+                return f + 1;
+            }//if
+        }//for
+        return -1;
+    }
+
+    @Test
+    public void percentilesUseTheNearestRank() throws Exception {
+        long[] sorted = new long[100];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = i + 1;
+        }//for
+        assertEquals(50, QualityGovernor.percentile(sorted, 50));
+        assertEquals(95, QualityGovernor.percentile(sorted, 95));
+        assertEquals(100, QualityGovernor.percentile(sorted, 100));
+        assertEquals(1, QualityGovernor.percentile(sorted, 0));
+    }
+
+    @Test
+    public void framesInsideTheBandKeepTheTier() throws Exception {
+        QualityGovernor governor = governor();
+        // Over 75% of the better tier's 16.7 ms, under the default tier's 33.3 ms
+        assertEquals(-1, runUntilChange(governor, 25 * MS, WINDOW * 100));
+        assertEquals(QualityTier.DEFAULT_TIER, governor.getTierIndex());
+        assertEquals(25 * MS, governor.getLastP95());
+    }
+
+    @Test
+    public void shortSpikesAreRiddenOut() throws Exception {
+        QualityGovernor governor = governor();
+        for (int f = 0; f < WINDOW * 20; f++) {
+            //a 4% tail of long frames stays out of the 95th percentile
+            long frame = f % 25 == 0 ? 80 * MS : 20 * MS;
+            assertFalse(governor.recordFrame(frame));
+        }//for
+        assertEquals(20 * MS, governor.getLastP95());
+        assertEquals(QualityTier.DEFAULT_TIER, governor.getTierIndex());
+    }
+
+    @Test
+    public void aThrottlingPhoneStepsDownOneTierAtATime() throws Exception {
+        QualityGovernor governor = governor();
+
+        // Frames creep over the budget as the clocks drop, two windows over budget take one step
+        int frames = runUntilChange(governor, 40 * MS, WINDOW * 10);
+        assertEquals(DOWN_FRAMES, frames);
+        assertEquals("reduced", governor.getTier().getName());
+
+        // Still over the new budget, step again
+        assertEquals(DOWN_FRAMES, runUntilChange(governor, 45 * MS, WINDOW * 10));
+        assertEquals("low", governor.getTier().getName());
+        assertEquals(1000000000L / 24, governor.getTier().getFrameBudgetNanos());
+
+        // Slow enough even for the cheapest tier, it stays there and the camera follows it
+        assertEquals(DOWN_FRAMES, runUntilChange(governor, 80 * MS, WINDOW * 10));
+        assertEquals(QualityTier.VIDEO_DEFAULT, governor.getVideoMode());
+        assertEquals(WINDOW * QualityGovernor.VIDEO_DWELL_WINDOWS, runUntilChange(governor, 100 * MS, WINDOW * 10));
+        assertEquals(QualityTier.VIDEO_SPEED, governor.getVideoMode());
+        assertEquals(-1, runUntilChange(governor, 100 * MS, WINDOW * 10));
+        assertEquals(QualityTier.TIERS.length - 1, governor.getTierIndex());
+        assertEquals(3, governor.getStepsDown());
+    }
+
+    @Test
+    public void aCooledPhoneStepsBackUp() throws Exception {
+        QualityGovernor governor = governor();
+        governor.setTier(3);
+
+        // Under 75% of the reduced tier's budget for the default number of windows
+        assertEquals(WINDOW * QualityGovernor.DEFAULT_UP_WINDOWS, runUntilChange(governor, 10 * MS, WINDOW * 100));
+        assertEquals(2, governor.getTierIndex());
+        assertEquals(1, governor.getStepsUp());
+    }
+
+    @Test
+    public void stepsUpThatDoNotHoldWaitLongerEachTime() throws Exception {
+        QualityGovernor governor = governor();
+        governor.setTier(2);
+
+        // Frames cost what the tier asks of the phone: the reduced tier has room, the default tier does not
+        long[] cost = {40 * MS, 40 * MS, 12 * MS, 12 * MS, 12 * MS};
+        int changes = 0;
+        int lastChange = 0;
+        int[] waits = new int[8];
+        for (int f = 1; f <= WINDOW * 2000 && changes < waits.length; f++) {
+            if (governor.recordFrame(cost[governor.getTierIndex()])) {
+                waits[changes++] = f - lastChange;
+                lastChange = f;
+            }//if
+        }//for
+
+        // Up, taken back, and every later attempt waits twice as long, up to the limit
+        assertEquals(WINDOW * 5, waits[0]);
+        assertEquals(DOWN_FRAMES, waits[1]);
+        assertEquals(WINDOW * 10, waits[2]);
+        assertEquals(WINDOW * 20, waits[4]);
+        assertEquals(WINDOW * 40, waits[6]);
+        assertEquals(QualityGovernor.MAX_UP_WINDOWS, governor.getUpWindows());
+        assertEquals(2, governor.getTierIndex());
+    }
+
+    @Test
+    public void theCameraOnlyFollowsATierThatHolds() throws Exception {
+        QualityGovernor governor = governor();
+        governor.setTier(2);
+        assertEquals(QualityTier.VIDEO_DEFAULT, governor.getVideoMode());
+
+        // Down to the low tier and back up before it held, the camera keeps its mode
+        assertEquals(DOWN_FRAMES, runUntilChange(governor, 40 * MS, WINDOW * 10));
+        assertEquals("low", governor.getTier().getName());
+        assertEquals(WINDOW * QualityGovernor.DEFAULT_UP_WINDOWS, runUntilChange(governor, 10 * MS, WINDOW * 100));
+        assertEquals(2, governor.getTierIndex());
+        assertEquals(QualityTier.VIDEO_DEFAULT, governor.getVideoMode());
+
+        // Down again to stay, inside the low tier's band the mode changes once the dwell is over
+        assertEquals(DOWN_FRAMES, runUntilChange(governor, 40 * MS, WINDOW * 10));
+        assertEquals(WINDOW * QualityGovernor.VIDEO_DWELL_WINDOWS, runUntilChange(governor, 30 * MS, WINDOW * 100));
+        assertEquals(3, governor.getTierIndex());
+        assertEquals(QualityTier.VIDEO_SPEED, governor.getVideoMode());
+        assertEquals(-1, runUntilChange(governor, 30 * MS, WINDOW * 100));
+    }
+}
@@ -0,0 +1,183 @@
+package com.nirzvi.virtualwhiteboard;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that simplified strokes stay within tolerance of the input and that encoded strokes
+ * decode to the same ink. StrokeCodecBenchmark in the benchmark module reports the sizes and times.
+ */
+public class StrokeCodecTest {
+
+    private static final int BLACK = 0xFF000000;
+
+    //a wobbly stroke sampled every couple of pixels, like a finger at 60-120Hz
+    private static float[] handwriting(Random random, int numPoints) {
+        float[] points = new float[numPoints * StrokeStore.FLOATS_PER_POINT];
+        float x = 200 + random.nextFloat() * 600;
+        float y = 200 + random.nextFloat() * 600;
+        float heading = random.nextFloat() * 6.28f;
+        float pressure = 0.6f;
+        for (int i = 0; i < numPoints; i++) {
+            heading += (random.nextFloat() - 0.5f) * 0.3f;
+            x += 2 * (float) Math.cos(heading);
+            y += 2 * (float) Math.sin(heading);
+            pressure = Math.max(0.2f, Math.min(1, pressure + (random.nextFloat() - 0.5f) * 0.02f));
+            int p = i * StrokeStore.FLOATS_PER_POINT;
+            points[p] = x;
+            points[p + 1] = y;
+            points[p + 2] = pressure;
+        }//for
+        return points;
+    }
+
+    private static float distanceToPolyline(float x, float y, float[] line, int numPoints) {
+        float best = Float.MAX_VALUE;
+        for (int i = 0; i < numPoints; i++) {
+            int p = i * StrokeStore.FLOATS_PER_POINT;
+            int q = Math.min(i + 1, numPoints - 1) * StrokeStore.FLOATS_PER_POINT;
+            best = Math.min(best, StrokeStore.segmentDistanceSq(x, y, line[p], line[p + 1], line[q], line[q + 1]));
+        }//for
+        return (float) Math.sqrt(best);
+    }
+
+    @Test
+    public void straightLineKeepsItsEnds() throws Exception {
+        StrokeSimplifier simplifier = new StrokeSimplifier(0.5f);
+        float[] points = new float[100 * StrokeStore.FLOATS_PER_POINT];
+        for (int i = 0; i < 100; i++) {
+            points[i * StrokeStore.FLOATS_PER_POINT] = i * 3;
+            points[i * StrokeStore.FLOATS_PER_POINT + 1] = 10;
+            points[i * StrokeStore.FLOATS_PER_POINT + 2] = 1;
+        }//for
+
+        float[] out = new float[points.length];
+        int count = simplifier.simplify(points, 0, 100, out, 0);
+
+        //one kept point per full window of the chord
+        assertTrue(count <= 5);
+        assertEquals(0, out[0], 0);
+        assertEquals(297, out[(count - 1) * StrokeStore.FLOATS_PER_POINT], 0);
+    }
+
+    @Test
+    public void droppedPointsStayWithinTolerance() throws Exception {
+        Random random = new Random(3);
+        StrokeSimplifier simplifier = new StrokeSimplifier(0.75f);
+        float[] points = handwriting(random, 2000);
+        float[] out = new float[points.length];
+        int count = simplifier.simplify(points, 0, 2000, out, 0);
+
+        assertTrue(count < 1000);
+        for (int i = 0; i < 2000; i++) {
+            int p = i * StrokeStore.FLOATS_PER_POINT;
+            assertTrue(distanceToPolyline(points[p], points[p + 1], out, count) <= 0.75f + 1e-3f);
+        }//for
+    }
+
+    @Test
+    public void pressureChangesAreKept() throws Exception {
+        StrokeSimplifier simplifier = new StrokeSimplifier(1);
+        assertEquals(StrokeSimplifier.APPENDED, simplifier.add(0, 0, 1));
+        assertEquals(StrokeSimplifier.APPENDED, simplifier.add(10, 0, 1));
+        assertEquals(StrokeSimplifier.REPLACED, simplifier.add(20, 0, 1));
+        //on the line, but much lighter, so the end at 20 is kept
+        assertEquals(StrokeSimplifier.APPENDED, simplifier.add(30, 0, 0.2f));
+        assertEquals(StrokeSimplifier.APPENDED, simplifier.add(40, 0, 0.2f));
+        assertEquals(StrokeSimplifier.REPLACED, simplifier.add(50, 0, 0.2f));
+    }
+
+    @Test
+    public void strokesSurviveARoundTrip() throws Exception {
+        Random random = new Random(5);
+        StrokeStore store = new StrokeStore(1024, 1024);
+        for (int s = 0; s < 20; s++) {
+            float[] points = handwriting(random, 50 + s);
+            store.addStroke(points, 0, 50 + s, 0x80000000 | s * 0x010203, 2 + s * 0.25f);
+        }//for
+        store.erase(4);
+
+        StrokeCodec codec = new StrokeCodec();
+        codec.encode(store);
+        StrokeStore decoded = new StrokeStore(1024, 1024);
+        assertEquals(19, StrokeCodec.decode(codec.getBuffer(), 0, codec.getLength(), decoded));
+
+        int to = 0;
+        for (int id = 0; id < store.getStrokeCount(); id++) {
+            if (store.isErased(id)) {
+                continue;
+            }//if
+            assertEquals(store.getColor(id), decoded.getColor(to));
+            assertEquals(store.getStrokeWidth(id), decoded.getStrokeWidth(to), 0);
+            assertEquals(store.getLength(id), decoded.getLength(to));
+            for (int i = 0; i < store.getLength(id) * StrokeStore.FLOATS_PER_POINT; i++) {
+                float expected = store.getPoints()[store.getStart(id) * StrokeStore.FLOATS_PER_POINT + i];
+                float actual = decoded.getPoints()[decoded.getStart(to) * StrokeStore.FLOATS_PER_POINT + i];
+                float step = i % StrokeStore.FLOATS_PER_POINT == 2
+                        ? 0.5f / StrokeCodec.PRESSURE_STEPS : 0.5f / StrokeCodec.POSITION_STEPS;
+                assertEquals(expected, actual, step + 1e-4f);
+            }//for
+            to++;
+        }//for
+    }
+
+    @Test
+    public void encodingIsSmallerThanFloats() throws Exception {
+        Random random = new Random(7);
+        StrokeStore store = new StrokeStore(1024, 1024);
+        StrokeSimplifier simplifier = new StrokeSimplifier(0.75f);
+        StrokeStore simplified = new StrokeStore(1024, 1024);
+        for (int s = 0; s < 200; s++) {
+            float[] points = handwriting(random, 100);
+            store.addStroke(points, 0, 100, BLACK, 6);
+            int count = simplifier.simplify(points, 0, 100, points, 0);
+            simplified.addStroke(points, 0, count, BLACK, 6);
+        }//for
+
+        StrokeCodec codec = new StrokeCodec();
+        int raw = store.getPointCount() * StrokeStore.FLOATS_PER_POINT * 4;
+        int encoded = codec.encode(store);
+        int both = codec.encode(simplified);
+
+        assertTrue(encoded * 3 < raw);
+        assertTrue(both < encoded);
+    }
+
+    @Test
+    public void truncatedDataIsRejected() throws Exception {
+        StrokeStore store = new StrokeStore(256, 256);
+        store.addStroke(new float[]{10, 10, 1, 100, 100, 1}, 0, 2, BLACK, 4);
+        store.addStroke(new float[]{20, 20, 1, 50, 50, 1}, 0, 2, BLACK, 2);
+        StrokeCodec codec = new StrokeCodec();
+        codec.encode(store);
+
+        // Cut inside the second stroke, after the first has parsed
+        StrokeStore target = new StrokeStore(256, 256);
+        target.addStroke(new float[]{1, 1, 1, 2, 2, 1}, 0, 2, BLACK, 1);
+        try {
+            StrokeCodec.decode(codec.getBuffer(), 0, codec.getLength() - 1, target);
+            fail("truncated data decoded");
+        } catch (IllegalArgumentException e) {
+            assertEquals(1, target.getStrokeCount());
+            assertEquals(2, target.getPointCount());
+        }//catch
+
+        // The store still takes strokes afterwards
+        assertEquals(2, StrokeCodec.decode(codec.getBuffer(), 0, codec.getLength(), target));
+        assertEquals(3, target.getStrokeCount());
+        assertEquals(6, target.getPointCount());
+    }
+
+    @Test
+    public void zigzagRoundTrips() throws Exception {
+        int[] values = {0, 1, -1, 63, -64, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        for (int value : values) {
+            assertEquals(value, StrokeCodec.unzigzag(StrokeCodec.zigzag(value)));
+        }//for
+        assertEquals(1, StrokeCodec.zigzag(-1));
+        assertEquals(2, StrokeCodec.zigzag(1));
+    }
+}
@@ -0,0 +1,180 @@
+package com.nirzvi.virtualwhiteboard;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks hit-testing, erasing, compaction and queries on the stroke store. StrokeStoreBenchmark in the
+ * benchmark module times erases on a crowded board.
+ */
+public class StrokeStoreTest {
+
+    private static final int BLACK = 0xFF000000;
+
+    private static int line(StrokeStore store, float x0, float y0, float x1, float y1, float width) {
+        return store.addStroke(new float[]{x0, y0, 1, x1, y1, 1}, 0, 2, BLACK, width);
+    }
+
+    @Test
+    public void hitTestFindsTheTopmostStroke() throws Exception {
+        StrokeStore store = new StrokeStore(1024, 1024);
+        int below = line(store, 0, 100, 1000, 100, 4);
+        int above = line(store, 500, 0, 500, 1000, 4);
+
+        assertEquals(above, store.hitTest(500, 100, 1));
+        assertEquals(below, store.hitTest(200, 101, 1));
+        assertEquals(-1, store.hitTest(200, 120, 1));
+    }
+
+    @Test
+    public void pressureNarrowsTheStroke() throws Exception {
+        StrokeStore store = new StrokeStore(256, 256);
+        int id = store.addStroke(new float[]{0, 50, 0.1f, 200, 50, 0.1f}, 0, 2, BLACK, 40);
+
+        //half width 20 at full pressure, 2 at this one
+        assertEquals(-1, store.hitTest(100, 60, 1));
+        assertEquals(id, store.hitTest(100, 52, 1));
+    }
+
+    @Test
+    public void erasedStrokesAreNotFound() throws Exception {
+        StrokeStore store = new StrokeStore(1024, 1024);
+        line(store, 0, 100, 1000, 100, 4);
+        int kept = line(store, 0, 500, 1000, 500, 4);
+        float[] damage = new float[4];
+
+        assertEquals(1, store.eraseAt(300, 100, 5, damage));
+        assertTrue(damage[0] <= 0 && damage[2] >= 1000);
+        assertEquals(0, store.eraseAt(300, 100, 5, damage));
+
+        int[] found = new int[4];
+        assertEquals(1, store.query(0, 0, 1024, 1024, found));
+        assertEquals(kept, found[0]);
+        assertEquals(1, store.getLiveStrokeCount());
+    }
+
+    @Test
+    public void queryReturnsStrokesInDrawingOrder() throws Exception {
+        StrokeStore store = new StrokeStore(1024, 1024);
+        //long strokes are listed in many cells but come out once
+        for (int i = 0; i < 10; i++) {
+            line(store, 1000 - i * 50, 0, i * 50, 1000, 2);
+        }//for
+
+        int[] found = new int[16];
+        assertEquals(10, store.query(0, 0, 1024, 1024, found));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, found[i]);
+        }//for
+    }
+
+    @Test
+    public void erasingReclaimsPoints() throws Exception {
+        StrokeStore store = new StrokeStore(1024, 1024);
+        for (int i = 0; i < 100; i++) {
+            line(store, 0, i * 10, 1000, i * 10, 2);
+        }//for
+        int last = line(store, 0, 1005, 1000, 1005, 2);
+
+        for (int i = 0; i < 100; i++) {
+            store.erase(i);
+        }//for
+
+        //compaction runs once most points are erased, what is erased after it waits for the next one
+        assertTrue(store.getPointCount() < 100);
+        assertEquals(last, store.hitTest(500, 1005, 1));
+        assertEquals(1000, store.getPoints()[store.getStart(last) * StrokeStore.FLOATS_PER_POINT + 3], 0);
+    }
+
+    @Test
+    public void compactionIsSpreadOverLaterCalls() throws Exception {
+        StrokeStore store = new StrokeStore(4096, 4096);
+        int numStrokes = 4000;
+        float[] points = new float[16 * StrokeStore.FLOATS_PER_POINT];
+        for (int s = 0; s < numStrokes; s++) {
+            for (int p = 0; p < 16; p++) {
+                points[p * 3] = s;
+                points[p * 3 + 1] = p;
+                points[p * 3 + 2] = 1;
+            }//for
+            store.addStroke(points, 0, 16, BLACK, 2);
+        }//for
+
+        // Compaction starts on the erase that leaves most points erased
+        int erasedCount = 0;
+        for (int id = 0; id < numStrokes && !store.isCompacting(); id++) {
+            store.erase(id);
+            erasedCount++;
+        }//for
+        assertTrue(store.isCompacting());
+        //one step moves a bounded number of points, most are still where they were
+        assertEquals(numStrokes * 16, store.getPointCount());
+
+        int steps = 0;
+        while (store.isCompacting()) {
+            store.addStroke(points, 0, 16, BLACK, 2);
+            steps++;
+        }//while
+        assertTrue(steps > 1);
+        assertEquals((numStrokes - erasedCount + steps) * 16, store.getPointCount());
+
+        // Every live stroke still reads its own points
+        for (int id = 0; id < numStrokes; id++) {
+            if (store.isErased(id)) {
+                continue;
+            }//if
+            int start = store.getStart(id) * StrokeStore.FLOATS_PER_POINT;
+            assertEquals(16, store.getLength(id));
+            assertEquals(id, store.getPoints()[start], 0);
+            assertEquals(15, store.getPoints()[start + 15 * 3 + 1], 0);
+        }//for
+    }
+
+    @Test
+    public void pointByPointStroke() throws Exception {
+        StrokeStore store = new StrokeStore(256, 256);
+        int id = store.beginStroke(BLACK, 4);
+        store.addPoint(10, 10, 1);
+        store.addPoint(100, 10, 1);
+
+        //not findable until it ends
+        assertEquals(-1, store.hitTest(50, 10, 1));
+        assertEquals(id, store.endStroke());
+        assertEquals(id, store.hitTest(50, 10, 1));
+    }
+
+    @Test
+    public void eraseOnACrowdedBoardKeepsTheCountsInStep() throws Exception {
+        int numStrokes = 100000;
+        StrokeStore store = new StrokeStore(4096, 4096);
+        Random random = new Random(7);
+
+        //short scribbles of 16 points spread over the board
+        float[] points = new float[16 * StrokeStore.FLOATS_PER_POINT];
+        for (int s = 0; s < numStrokes; s++) {
+            float x = random.nextFloat() * 4000;
+            float y = random.nextFloat() * 4000;
+            for (int p = 0; p < 16; p++) {
+                points[p * 3] = x + p * 4;
+                points[p * 3 + 1] = y + random.nextFloat() * 20;
+                points[p * 3 + 2] = 0.5f + random.nextFloat() * 0.5f;
+            }//for
+            store.addStroke(points, 0, 16, BLACK, 3);
+        }//for
+
+        float[] damage = new float[4];
+        int erased = 0;
+        for (int i = 0; i < 10000; i++) {
+            float x = random.nextFloat() * 4096;
+            float y = random.nextFloat() * 4096;
+            erased += store.eraseAt(x, y, 10, damage);
+            assertEquals(-1, store.hitTest(x, y, 10));
+        }//for
+
+        assertTrue(erased > 0);
+        assertEquals(numStrokes - erased, store.getLiveStrokeCount());
+    }
+}
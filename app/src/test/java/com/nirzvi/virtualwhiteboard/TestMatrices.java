@@ -0,0 +1,26 @@
+package com.nirzvi.virtualwhiteboard;
+
+/**
+ * Matrices shared by the tests that cast through a camera.
+ */
+final class TestMatrices {
+
+    private TestMatrices() {
+    }
+
+    /**
+     * Same as android.opengl.Matrix.perspectiveM, which is not available off the device
+     * @param fovy vertical field of view in degrees
+     * @return column-major projection matrix
+     */
+    static float[] perspective(float fovy, float near, float far) {
+        float f = (float) (1 / Math.tan(Math.toRadians(fovy) / 2));
+        float[] m = new float[16];
+        m[0] = f;
+        m[5] = f;
+        m[10] = (far + near) / (near - far);
+        m[11] = -1;
+        m[14] = 2 * far * near / (near - far);
+        return m;
+    }
+}
@@ -0,0 +1,180 @@
+package com.nirzvi.virtualwhiteboard;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the distance fields, the atlas packing and the text layout, and that changing the text
+ * only uploads glyph vertices.
+ */
+public class TextLayoutTest {
+
+    private static final int SPREAD = 4;
+
+    //every glyph a filled box, 10 texels wide and 20 tall sitting on the baseline, advancing by 12
+    static GlyphAtlas boxAtlas() {
+        int w = 10 + 2 * SPREAD;
+        int h = 20 + 2 * SPREAD;
+        byte[] mask = new byte[w * h];
+        for (int y = SPREAD; y < h - SPREAD; y++) {
+            Arrays.fill(mask, y * w + SPREAD, y * w + w - SPREAD, (byte) 255);
+        }//for
+        byte[] field = new byte[w * h];
+        DistanceField.generate(mask, w, h, SPREAD, field, 0, w);
+
+        GlyphAtlas atlas = new GlyphAtlas(256, 256, 20, SPREAD, 20, 5);
+        for (char c = 'a'; c <= 'z'; c++) {
+            assertTrue(atlas.add(c, field, w, h, -SPREAD, -20 - SPREAD, 12));
+        }//for
+        atlas.add('?', field, w, h, -SPREAD, -20 - SPREAD, 12);
+        atlas.add(' ', null, 0, 0, 0, 0, 6);
+        return atlas;
+    }
+
+    @Test
+    public void fieldIsHalfOnTheEdge() throws Exception {
+        int size = 32;
+        byte[] mask = new byte[size * size];
+        //a filled square from 8 to 24
+        for (int y = 8; y < 24; y++) {
+            Arrays.fill(mask, y * size + 8, y * size + 24, (byte) 255);
+        }//for
+        byte[] field = new byte[size * size];
+        DistanceField.generate(mask, size, size, 4, field, 0, size);
+
+        //just inside and just outside the left edge sit either side of half
+        int inside = field[16 * size + 8] & 0xFF;
+        int outside = field[16 * size + 7] & 0xFF;
+        assertTrue(inside > 128);
+        assertTrue(outside < 128);
+        assertEquals(255, field[16 * size + 16] & 0xFF);
+        assertEquals(0, field[0] & 0xFF);
+        //one pixel further out is a quarter of the range further down
+        assertEquals(outside - 32, field[16 * size + 6] & 0xFF, 1);
+    }
+
+    @Test
+    public void glyphsArePackedWithoutOverlap() throws Exception {
+        GlyphAtlas atlas = boxAtlas();
+        for (char a = 'a'; a <= 'z'; a++) {
+            for (char b = (char) (a + 1); b <= 'z'; b++) {
+                int i = atlas.indexOf(a);
+                int j = atlas.indexOf(b);
+                boolean apart = atlas.getFieldX(i) + atlas.getFieldWidth(i) <= atlas.getFieldX(j)
+                        || atlas.getFieldX(j) + atlas.getFieldWidth(j) <= atlas.getFieldX(i)
+                        || atlas.getFieldY(i) + atlas.getFieldHeight(i) <= atlas.getFieldY(j)
+                        || atlas.getFieldY(j) + atlas.getFieldHeight(j) <= atlas.getFieldY(i);
+                assertTrue(apart);
+            }//for
+        }//for
+
+        //too big for what is left
+        assertFalse(atlas.add('A', new byte[200 * 200], 200, 200, 0, 0, 200));
+        assertEquals(atlas.indexOf('?'), atlas.indexOf('A'));
+    }
+
+    @Test
+    public void layoutPlacesQuadsOnTheBaseline() throws Exception {
+        TextLayout layout = new TextLayout(boxAtlas());
+        //twice the atlas size
+        assertEquals(2, layout.layout("ab", 100, 50, 40, 0));
+
+        float[] v = layout.getVertices();
+        //first quad, top left then bottom right, field padding included
+        assertEquals(100 - 2 * SPREAD, v[0], 1e-4);
+        assertEquals(50 - 40 - 2 * SPREAD, v[1], 1e-4);
+        assertEquals(100 + 20 + 2 * SPREAD, v[12], 1e-4);
+        assertEquals(50 + 2 * SPREAD, v[13], 1e-4);
+        //second quad starts one advance later
+        assertEquals(100 + 24 - 2 * SPREAD, v[TextLayout.FLOATS_PER_GLYPH], 1e-4);
+        assertEquals(48, layout.getWidth(), 1e-4);
+    }
+
+    @Test
+    public void linesWrapAtSpaces() throws Exception {
+        TextLayout layout = new TextLayout(boxAtlas());
+        //words of 3 glyphs are 36 wide, a space 6
+        assertEquals(9, layout.layout("abc def ghi", 0, 20, 20, 80));
+        assertEquals(2, layout.getLineCount());
+
+        float[] v = layout.getVertices();
+        float lineHeight = 25;
+        //"ghi" moved to the start of the second line
+        assertEquals(-SPREAD, v[6 * TextLayout.FLOATS_PER_GLYPH], 1e-4);
+        assertEquals(20 - 20 - SPREAD + lineHeight, v[6 * TextLayout.FLOATS_PER_GLYPH + 1], 1e-4);
+
+        //a word longer than the line breaks between letters
+        layout.layout("abcdefghij", 0, 20, 20, 50);
+        assertEquals(3, layout.getLineCount());
+
+        layout.layout("ab\n\ncd", 0, 20, 20, 0);
+        assertEquals(3, layout.getLineCount());
+        assertEquals(20 - 20 - SPREAD + 2 * lineHeight, layout.getVertices()[2 * TextLayout.FLOATS_PER_GLYPH + 1], 1e-4);
+    }
+
+    @Test
+    public void changingTextOnlyUploadsVertices() throws Exception {
+        RecordingGLBackend gl = new RecordingGLBackend();
+        TextRenderer renderer = new TextRenderer(gl, new ProgramCache(gl), 1400, 1158);
+        renderer.init(boxAtlas());
+        assertEquals(1, gl.getTextureUploadCount());
+
+        String text = "hello world";
+        renderer.setText(text, 50, 224, 64, 1300);
+        renderer.setText(text, 50, 224, 64, 1300);
+        assertEquals(10, renderer.getGlyphCount());
+        assertEquals(1, renderer.getUploadCount());
+
+        renderer.setText("hello there", 50, 224, 64, 1300);
+        assertEquals(2, renderer.getUploadCount());
+        assertEquals(1, gl.getTextureUploadCount());
+
+        BoardBatch batch = new BoardBatch(4);
+        float[] pose = new float[16];
+        pose[0] = pose[5] = pose[10] = pose[15] = 1;
+        pose[14] = -1500;
+        batch.addBoard(0, pose, 0);
+        batch.addBoard(1, pose, 0);
+
+        gl.resetCounters();
+        renderer.draw(batch, pose, new int[]{0, 0, 1000, 1000});
+        assertEquals(1, gl.getDrawCallCount());
+        assertEquals(2 * 10 * 6, gl.getIndexCount());
+    }
+
+    @Test
+    public void boardsAreDrawnInRunsOfTheShadersMatrices() throws Exception {
+        //GLES2's minimum of 128 vectors fits 24 boards
+        RecordingGLBackend gl = new RecordingGLBackend(128);
+        TextRenderer renderer = new TextRenderer(gl, new ProgramCache(gl), 1400, 1158);
+        renderer.init(boxAtlas());
+        renderer.setText("hello world", 50, 224, 64, 1300);
+        assertEquals(24, renderer.getBoardsPerDraw());
+
+        BoardBatch batch = new BoardBatch(64);
+        float[] pose = new float[16];
+        pose[0] = pose[5] = pose[10] = pose[15] = 1;
+        pose[14] = -1500;
+        for (int b = 0; b < 50; b++) {
+            batch.addBoard(0, pose, 0);
+        }//for
+
+        gl.resetCounters();
+        renderer.draw(batch, pose, new int[]{0, 0, 1000, 1000});
+        assertEquals(3, gl.getDrawCallCount());
+        assertEquals(50 * 10 * 6, gl.getIndexCount());
+        //the projection and colour, then a matrix and a smoothing array per run
+        assertEquals(2 + 3 * 2, gl.getUniformUploadCount());
+
+        // A text too long for 24 copies in 16 bit indices gets fewer
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append('a');
+        }//for
+        renderer.setText(text, 50, 224, 8, 0);
+        assertEquals(16, renderer.getBoardsPerDraw());
+    }
+}
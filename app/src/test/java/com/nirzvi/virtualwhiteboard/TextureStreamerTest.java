@@ -0,0 +1,132 @@
+package com.nirzvi.virtualwhiteboard;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Streams board edits through the recording GL backend and checks how they are spread over frames.
+ */
+public class TextureStreamerTest {
+
+    private static final int WHITE = 0xFFFFFFFF;
+    private static final int BLACK = 0xFF000000;
+
+    private static int[] dirtyTiles(TiledBoard board) {
+        int[] tiles = new int[board.getDirtyCount()];
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = board.getDirtyTile(i);
+        }//for
+        board.clearDirty();
+        return tiles;
+    }
+
+    private static void queueEdits(TextureStreamer streamer, TiledBoard board) {
+        int[] tiles = dirtyTiles(board);
+        streamer.queueTiles(board.snapshot(), tiles, tiles.length);
+    }
+
+    @Test
+    public void createTextureUploadsEveryTile() throws Exception {
+        RecordingGLBackend gl = new RecordingGLBackend();
+        TiledBoard board = new TiledBoard(200, 100, WHITE, 0);
+        TextureStreamer streamer = new TextureStreamer(gl, TiledBoard.TILE_BYTES);
+
+        assertTrue(streamer.createTexture(board.snapshot()) != 0);
+
+        //4 x 2 tiles, the last column and row are cut short
+        assertEquals(8, streamer.getUploadedTiles());
+        assertEquals(200 * 100 * 4, gl.getTextureUploadBytes());
+        assertEquals(0, streamer.getQueueDepth());
+    }
+
+    @Test
+    public void largeEditIsSpreadOverFrames() throws Exception {
+        RecordingGLBackend gl = new RecordingGLBackend();
+        TiledBoard board = new TiledBoard(512, 512, WHITE, 0);
+        TextureStreamer streamer = new TextureStreamer(gl, 16 * TiledBoard.TILE_BYTES);
+        streamer.createTexture(board.snapshot());
+        board.clearDirty();
+        streamer.resetMetrics();
+        gl.resetCounters();
+
+        board.fillRect(0, 0, 512, 512, BLACK);
+        queueEdits(streamer, board);
+        assertEquals(64, streamer.getQueueDepth());
+
+        int frames = 0;
+        while (streamer.getQueueDepth() > 0) {
+            assertTrue(streamer.upload() <= streamer.getBytesPerFrame());
+            frames++;
+        }//while
+
+        assertEquals(4, frames);
+        assertEquals(4, streamer.getUploadFrames());
+        assertEquals(64, streamer.getPeakQueueDepth());
+        assertEquals(512 * 512 * 4, streamer.getUploadedBytes());
+        assertEquals(64, gl.getTextureUploadCount());
+        assertEquals(0, streamer.upload());
+    }
+
+    @Test
+    public void requeuedTileIsSentOnce() throws Exception {
+        RecordingGLBackend gl = new RecordingGLBackend();
+        TiledBoard board = new TiledBoard(256, 256, WHITE, 0);
+        TextureStreamer streamer = new TextureStreamer(gl, TiledBoard.TILE_BYTES);
+        streamer.createTexture(board.snapshot());
+        board.clearDirty();
+        gl.resetCounters();
+
+        for (int i = 0; i < 10; i++) {
+            board.setPixel(i, 0, BLACK);
+            queueEdits(streamer, board);
+        }//for
+
+        assertEquals(1, streamer.getQueueDepth());
+        streamer.upload();
+        assertEquals(1, gl.getTextureUploadCount());
+        assertEquals(0, streamer.getQueueDepth());
+    }
+
+    @Test
+    public void budgetBelowOneTileStillMakesProgress() throws Exception {
+        RecordingGLBackend gl = new RecordingGLBackend();
+        TiledBoard board = new TiledBoard(128, 128, WHITE, 0);
+        TextureStreamer streamer = new TextureStreamer(gl, 1);
+        streamer.createTexture(board.snapshot());
+
+        streamer.queueAll(board.snapshot());
+        streamer.upload();
+
+        assertEquals(3, streamer.getQueueDepth());
+    }
+
+    @Test
+    public void nothingIsSentWithoutATexture() throws Exception {
+        RecordingGLBackend gl = new RecordingGLBackend();
+        TiledBoard board = new TiledBoard(128, 128, WHITE, 0);
+        TextureStreamer streamer = new TextureStreamer(gl, TiledBoard.TILE_BYTES);
+
+        streamer.queueAll(board.snapshot());
+        assertEquals(0, streamer.upload());
+        assertEquals(0, gl.getCallCount());
+
+        //the new texture holds everything that was queued
+        streamer.createTexture(board.snapshot());
+        assertEquals(0, streamer.getQueueDepth());
+    }
+
+    @Test
+    public void pixelsArePremultipliedRGBA() throws Exception {
+        ByteBuffer bytes = ByteBuffer.allocate(4).order(ByteOrder.nativeOrder());
+
+        bytes.putInt(0, TextureStreamer.toRGBA(0xFF102030));
+        assertArrayEquals(new byte[]{0x10, 0x20, 0x30, (byte) 0xFF}, bytes.array());
+
+        bytes.putInt(0, TextureStreamer.toRGBA(0x80FF0000));
+        assertArrayEquals(new byte[]{(byte) 0x80, 0, 0, (byte) 0x80}, bytes.array());
+    }
+}
@@ -0,0 +1,156 @@
+package com.nirzvi.virtualwhiteboard;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks copy-on-write sharing, undo and the history budget. TiledBoardBenchmark in the benchmark
+ * module times snapshots and checkpoints on a large board.
+ */
+public class TiledBoardTest {
+
+    private static final int WHITE = 0xFFFFFFFF;
+    private static final int BLACK = 0xFF000000;
+
+    private static final long UNLIMITED = Long.MAX_VALUE;
+
+    @Test
+    public void snapshotIsUnaffectedByLaterWrites() throws Exception {
+        TiledBoard board = new TiledBoard(256, 256, WHITE, UNLIMITED);
+        board.setPixel(10, 10, BLACK);
+
+        TiledBoard.Snapshot before = board.snapshot();
+        board.setPixel(10, 10, WHITE);
+        board.fillRect(0, 0, 256, 256, BLACK);
+
+        assertEquals(BLACK, before.getPixel(10, 10));
+        assertEquals(WHITE, before.getPixel(200, 200));
+        assertEquals(BLACK, board.getPixel(200, 200));
+    }
+
+    @Test
+    public void writeCopiesOnlyTheTilesItTouches() throws Exception {
+        TiledBoard board = new TiledBoard(4096, 4096, WHITE, UNLIMITED);
+        TiledBoard.Snapshot first = board.snapshot();
+
+        long copies = board.getTileCopyCount();
+        board.fillRect(60, 60, 10, 10, BLACK);
+        TiledBoard.Snapshot second = board.snapshot();
+
+        //the rectangle straddles four tiles
+        assertEquals(4, board.getTileCopyCount() - copies);
+
+        int shared = 0;
+        for (int i = 0; i < first.getTileCount(); i++) {
+            if (first.getTile(i) == second.getTile(i)) {
+                shared++;
+            }//if
+        }//for
+        assertEquals(first.getTileCount() - 4, shared);
+    }
+
+    @Test
+    public void undoAndRedoWalkTheHistory() throws Exception {
+        TiledBoard board = new TiledBoard(200, 200, WHITE, UNLIMITED);
+
+        for (int i = 0; i < 5; i++) {
+            board.fillRect(i * 30, 0, 20, 20, BLACK);
+            board.checkpoint();
+        }//for
+        assertEquals(5, board.getUndoDepth());
+
+        assertTrue(board.undo());
+        assertTrue(board.undo());
+        assertEquals(WHITE, board.getPixel(125, 5));
+        assertEquals(WHITE, board.getPixel(95, 5));
+        assertEquals(BLACK, board.getPixel(65, 5));
+
+        assertTrue(board.redo());
+        assertEquals(BLACK, board.getPixel(95, 5));
+        assertEquals(WHITE, board.getPixel(125, 5));
+
+        //a new edit drops what could still be redone
+        board.setPixel(199, 199, BLACK);
+        assertFalse(board.redo());
+        assertTrue(board.undo());
+        assertEquals(WHITE, board.getPixel(199, 199));
+        assertEquals(BLACK, board.getPixel(95, 5));
+    }
+
+    @Test
+    public void historyStaysWithinBudget() throws Exception {
+        long budget = 10L * TiledBoard.TILE_BYTES;
+        TiledBoard board = new TiledBoard(1024, 1024, WHITE, budget);
+
+        //every step replaces one tile
+        for (int i = 0; i < 50; i++) {
+            board.setPixel((i % 16) * TiledBoard.TILE_SIZE, 0, 0xFF000000 | i);
+            board.checkpoint();
+            assertTrue(board.getHistoryBytes() <= budget);
+        }//for
+
+        assertEquals(10, board.getUndoDepth());
+        int undone = 0;
+        while (board.undo()) {
+            undone++;
+        }//while
+        assertEquals(10, undone);
+        assertTrue(board.getHistoryBytes() <= budget);
+    }
+
+    @Test
+    public void restoreOnlyDirtiesDifferingTiles() throws Exception {
+        TiledBoard board = new TiledBoard(512, 512, WHITE, UNLIMITED);
+        TiledBoard.Snapshot blank = board.snapshot();
+        board.fillRect(0, 0, 64, 64, BLACK);
+        board.checkpoint();
+        board.clearDirty();
+
+        board.restore(blank);
+
+        assertEquals(1, board.getDirtyCount());
+        assertEquals(0, board.getDirtyTile(0));
+        assertEquals(WHITE, board.getPixel(0, 0));
+        assertTrue(board.undo());
+        assertEquals(BLACK, board.getPixel(0, 0));
+    }
+
+    @Test
+    public void transparentPixelsLeaveTilesShared() throws Exception {
+        TiledBoard board = new TiledBoard(256, 256, WHITE, UNLIMITED);
+        board.snapshot();
+        int[] text = new int[128 * 8];
+        text[0] = 0x80000000;
+
+        long copies = board.getTileCopyCount();
+        board.drawPixels(text, 0, 128, 0, 0, 128, 8);
+
+        assertEquals(1, board.getTileCopyCount() - copies);
+        assertEquals(0xFF7F7F7F, board.getPixel(0, 0));
+        assertEquals(WHITE, board.getPixel(64, 0));
+    }
+
+    @Test
+    public void largeBoardCopiesOnlyWhatIsWritten() throws Exception {
+        //a 8192x8192 board holds 256MB of pixels
+        long budget = 16L * 1024 * 1024;
+        TiledBoard board = new TiledBoard(8192, 8192, WHITE, budget);
+        int snapshots = 1000;
+
+        for (int i = 0; i < snapshots; i++) {
+            board.setPixel(i * 7 % 8192, i * 13 % 8192, BLACK);
+            board.snapshot();
+        }//for
+        //every snapshot made the next write copy one tile, and nothing else
+        assertEquals(snapshots, board.getTileCopyCount());
+
+        for (int i = 0; i < snapshots; i++) {
+            board.fillRect(i * 5 % 8000, i * 11 % 8000, 100, 20, BLACK);
+            board.checkpoint();
+        }//for
+        //the history keeps what fits the budget, a small part of a full copy
+        assertTrue(board.getUndoDepth() > 0);
+        assertTrue(board.getHistoryBytes() <= budget);
+    }
+}
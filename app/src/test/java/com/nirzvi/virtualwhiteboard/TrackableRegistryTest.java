@@ -0,0 +1,49 @@
+package com.nirzvi.virtualwhiteboard;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that trackables get dense slots and can be found by id.
+ */
+public class TrackableRegistryTest {
+
+    @Test
+    public void slotsAreDenseInLoadOrder() throws Exception {
+        TrackableRegistry registry = new TrackableRegistry();
+
+        assertEquals(0, registry.register(42, "FredTheStag"));
+        assertEquals(1, registry.register(7, "Poster"));
+        assertEquals(2, registry.register(1000, "Calendar"));
+
+        assertEquals(3, registry.size());
+        assertEquals(0, registry.slotOf(42));
+        assertEquals(1, registry.slotOf(7));
+        assertEquals(2, registry.slotOf(1000));
+        assertEquals("Poster", registry.getName(1));
+    }
+
+    @Test
+    public void unknownTrackablesHaveNoSlot() throws Exception {
+        TrackableRegistry registry = new TrackableRegistry();
+        registry.register(5, "FredTheStag");
+
+        assertEquals(-1, registry.slotOf(6));
+        assertEquals(-1, registry.slotOf("Nobody"));
+        assertEquals(0, registry.slotOf("FredTheStag"));
+    }
+
+    @Test
+    public void registeringTwiceKeepsTheSlot() throws Exception {
+        TrackableRegistry registry = new TrackableRegistry();
+
+        for (int id = 100; id > 0; id--) {
+            registry.register(id, "Trackable" + id);
+        }//for
+
+        assertEquals(100, registry.size());
+        assertEquals(99, registry.register(1, "Trackable1"));
+        assertEquals(0, registry.slotOf(100));
+    }
+}
@@ -0,0 +1,174 @@
+package com.nirzvi.virtualwhiteboard;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the double-buffered tracking snapshot, including a multi-threaded
+ * stress run where readers must never see a torn pose or a mixed set of frames.
+ */
+public class TrackingSnapshotTest {
+
+    private static final int SLOTS = 4;
+    private static final int READERS = 3;
+    private static final long RUN_MILLIS = 1500;
+
+    @Test
+    public void nothingTrackedBeforeFirstPublish() throws Exception {
+        TrackingSnapshot snapshot = new TrackingSnapshot(SLOTS);
+        double[] out = new double[TrackingSnapshot.VALUES_PER_POSE];
+
+        assertFalse(snapshot.read(0, out));
+        assertEquals(0, snapshot.getVersion());
+    }
+
+    @Test
+    public void readersSeeLatestPublishedFrame() throws Exception {
+        TrackingSnapshot snapshot = new TrackingSnapshot(SLOTS);
+        double[] pose = new double[TrackingSnapshot.VALUES_PER_POSE];
+        double[] out = new double[TrackingSnapshot.VALUES_PER_POSE];
+
+        fillFrame(pose, 1, 2);
+        snapshot.beginWrite();
+        snapshot.write(2, pose);
+
+        //not visible until published
+        assertFalse(snapshot.read(2, out));
+
+        snapshot.publish();
+        assertTrue(snapshot.read(2, out));
+        assertArrayEquals(pose, out, 0);
+        assertFalse(snapshot.read(1, out));
+
+        //slots not written in the next frame are no longer tracked
+        snapshot.beginWrite();
+        snapshot.publish();
+        assertFalse(snapshot.read(2, out));
+        assertEquals(2, snapshot.getVersion());
+    }
+
+    @Test
+    public void readersNeverSeeTornPoses() throws Exception {
+        final TrackingSnapshot snapshot = new TrackingSnapshot(SLOTS);
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicReference<String> failure = new AtomicReference<>();
+        final AtomicLong reads = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(READERS + 1);
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                double[] pose = new double[TrackingSnapshot.VALUES_PER_POSE];
+                long frame = 0;
+
+                while (running.get()) {
+                    frame++;
+                    snapshot.beginWrite();
+                    for (int slot = 0; slot < SLOTS; slot++) {
+                        //odd frames drop the last slot to exercise the tracked flags
+                        if (slot == SLOTS - 1 && (frame & 1) == 1) {
+                            continue;
+                        }//if
+                        fillFrame(pose, frame, slot);
+                        snapshot.write(slot, pose);
+                    }//for
+                    snapshot.publish();
+                }//while
+                done.countDown();
+            }
+        });
+
+        Runnable reader = new Runnable() {
+            @Override
+            public void run() {
+                double[] all = new double[SLOTS * TrackingSnapshot.VALUES_PER_POSE];
+                boolean[] tracked = new boolean[SLOTS];
+                double[] one = new double[TrackingSnapshot.VALUES_PER_POSE];
+                long lastVersion = 0;
+
+                while (running.get() && failure.get() == null) {
+                    long version = snapshot.readAll(all, tracked);
+                    if (version < lastVersion) {
+                        failure.set("version went backwards");
+                    }//if
+                    lastVersion = version;
+
+                    if (version > 0) {
+                        String error = checkFrame(all, tracked, version);
+                        if (error != null) {
+                            failure.set(error);
+                        }//if
+                    }//if
+
+                    if (snapshot.read(1, one)) {
+                        String error = checkPose(one, 0, (long) one[0], 1);
+                        if (error != null) {
+                            failure.set(error);
+                        }//if
+                    }//if
+
+                    reads.incrementAndGet();
+                }//while
+                done.countDown();
+            }
+        };
+
+        writer.start();
+        for (int i = 0; i < READERS; i++) {
+            new Thread(reader).start();
+        }//for
+
+        Thread.sleep(RUN_MILLIS);
+        running.set(false);
+        done.await();
+
+        assertNull(failure.get(), failure.get());
+        assertTrue("readers made progress", reads.get() > 0);
+        assertTrue("writer made progress", snapshot.getVersion() > 1);
+    }
+
+    //every value of a pose encodes the frame and slot it was written in
+    private static void fillFrame(double[] pose, long frame, int slot) {
+        for (int i = 0; i < pose.length; i++) {
+            pose[i] = frame + slot * 0.01 + i * 0.0001;
+        }//for
+        pose[0] = frame;
+    }
+
+    private static String checkFrame(double[] all, boolean[] tracked, long version) {
+        for (int slot = 0; slot < SLOTS; slot++) {
+            if (!tracked[slot]) {
+                if (slot != SLOTS - 1 || (version & 1) == 0) {
+                    return "slot " + slot + " missing from frame " + version;
+                }//if
+                continue;
+            }//if
+
+            String error = checkPose(all, slot * TrackingSnapshot.VALUES_PER_POSE, version, slot);
+            if (error != null) {
+                return error;
+            }//if
+        }//for
+        return null;
+    }
+
+    private static String checkPose(double[] values, int offset, long frame, int slot) {
+        if (values[offset] != frame) {
+            return "slot " + slot + " is from frame " + values[offset] + ", expected " + frame;
+        }//if
+
+        for (int i = 1; i < TrackingSnapshot.VALUES_PER_POSE; i++) {
+            double expected = frame + slot * 0.01 + i * 0.0001;
+            if (values[offset + i] != expected) {
+                return "torn pose in slot " + slot + " of frame " + frame;
+            }//if
+        }//for
+        return null;
+    }
+}
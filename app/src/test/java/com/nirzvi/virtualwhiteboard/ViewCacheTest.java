@@ -0,0 +1,73 @@
+package com.nirzvi.virtualwhiteboard;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that view entries go stale together and that mesh buffers are reused across updates.
+ */
+public class ViewCacheTest {
+
+    private static void upload(ViewCache cache, ViewCache.Entry entry) {
+        cache.uploadBackgroundMesh(entry, ByteBuffer.allocateDirect(4 * 3 * 4), ByteBuffer.allocateDirect(4 * 2 * 4),
+                ByteBuffer.allocateDirect(2 * 3 * 2), 4, 2);
+    }
+
+    @Test
+    public void entriesAreStaleUntilValidated() throws Exception {
+        ViewCache cache = new ViewCache(new RecordingGLBackend(), 4);
+        ViewCache.Entry left = cache.get(1);
+        ViewCache.Entry right = cache.get(2);
+
+        assertFalse(cache.isValid(left));
+        cache.validate(left);
+        cache.validate(right);
+        assertTrue(cache.isValid(left));
+
+        cache.invalidate();
+        assertFalse(cache.isValid(left));
+        assertFalse(cache.isValid(right));
+    }
+
+    @Test
+    public void meshBuffersAreCreatedOnce() throws Exception {
+        RecordingGLBackend gl = new RecordingGLBackend();
+        gl.setLogging(true);
+        ViewCache cache = new ViewCache(gl, 4);
+        ViewCache.Entry view = cache.get(0);
+
+        upload(cache, view);
+        int positions = view.getPositionBuffer();
+        cache.invalidate();
+        upload(cache, view);
+
+        assertEquals(positions, view.getPositionBuffer());
+        assertEquals(6, view.getIndexCount());
+        assertTrue(view.hasBackgroundMesh());
+
+        int generated = 0;
+        for (String call : gl.getLog()) {
+            if (call.startsWith("glGenBuffers")) {
+                generated++;
+            }//if
+        }//for
+        assertEquals(1, generated);
+    }
+
+    @Test
+    public void lostContextForgetsBuffers() throws Exception {
+        ViewCache cache = new ViewCache(new RecordingGLBackend(), 4);
+        ViewCache.Entry view = cache.get(0);
+        upload(cache, view);
+        cache.validate(view);
+
+        cache.clear();
+
+        assertEquals(0, view.getPositionBuffer());
+        assertFalse(view.hasBackgroundMesh());
+        assertFalse(cache.isValid(view));
+    }
+}
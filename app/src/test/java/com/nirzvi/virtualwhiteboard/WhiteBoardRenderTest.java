@@ -0,0 +1,186 @@
+package com.nirzvi.virtualwhiteboard;
+
+import android.opengl.GLES20;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Draws boards through the recording GL backend, so the render path is checked without a device.
+ */
+public class WhiteBoardRenderTest {
+
+    //identity rotation, translated along z
+    private static final float[] POSE = {
+            1, 0, 0, 0,
+            0, 1, 0, 0,
+            0, 0, 1, 0,
+            0, 0, 1500, 1
+    };
+
+    private static final float[] PROJECTION = {
+            1, 0, 0, 0,
+            0, 1, 0, 0,
+            0, 0, 1, 0,
+            0, 0, 0, 1
+    };
+
+    private static BoardBatch fillBatch(int boards) {
+        BoardBatch batch = new BoardBatch(128);
+        for (int i = 0; i < boards; i++) {
+            batch.addBoard(i, POSE, 0);
+        }//for
+        return batch;
+    }
+
+    private static WhiteBoard initBoard(RecordingGLBackend gl, BoardBatch batch, int numSlots) {
+        return initBoard(gl, gl, batch, numSlots);
+    }
+
+    //draws through gl, counts on recorder
+    private static WhiteBoard initBoard(GLBackend gl, RecordingGLBackend recorder, BoardBatch batch, int numSlots) {
+        WhiteBoard board = new WhiteBoard(gl, new ProgramCache(gl));
+        board.init(batch, numSlots, 1000);
+        recorder.resetCounters();
+        return board;
+    }
+
+    @Test
+    public void boardsSharingATextureDrawInOneCall() throws Exception {
+        RecordingGLBackend gl = new RecordingGLBackend(1024);
+        BoardBatch batch = fillBatch(100);
+        WhiteBoard board = initBoard(gl, batch, 100);
+
+        board.draw(batch, PROJECTION);
+
+        assertEquals(1, gl.getDrawCallCount());
+        assertEquals(100 * BoardBatch.INDICES_PER_BOARD, gl.getIndexCount());
+    }
+
+    @Test
+    public void minimumSpecDeviceSplitsByUniformSpace() throws Exception {
+        RecordingGLBackend gl = new RecordingGLBackend(128);
+        BoardBatch batch = fillBatch(100);
+        WhiteBoard board = initBoard(gl, batch, 100);
+
+        board.draw(batch, PROJECTION);
+
+        assertEquals(30, board.getBoardsPerDraw());
+        assertEquals(batch.getDrawCallCount(30), gl.getDrawCallCount());
+        assertEquals(4, gl.getDrawCallCount());
+    }
+
+    @Test
+    public void everySplitDrawStaysInsideTheMesh() throws Exception {
+        RecordingGLBackend gl = new RecordingGLBackend(128);
+        gl.setLogging(true);
+        BoardBatch batch = fillBatch(100);
+        WhiteBoard board = initBoard(gl, batch, 100);
+
+        board.draw(batch, PROJECTION);
+
+        // The mesh only holds one quad per shader matrix, every run draws from its start
+        int boardsPerDraw = board.getBoardsPerDraw();
+        assertTrue(batch.getBoardCount() > boardsPerDraw);
+        for (String call : gl.getLog()) {
+            if (call.startsWith("glDrawElements")) {
+                assertTrue(call, call.endsWith(", 0)"));
+            }//if
+        }//for
+        assertEquals(0, gl.getOutOfRangeDrawCount());
+        assertEquals(boardsPerDraw * BoardBatch.VERTICES_PER_BOARD - 1, gl.getMaxIndex());
+    }
+
+    @Test
+    public void textureChangesBreakTheRun() throws Exception {
+        RecordingGLBackend gl = new RecordingGLBackend(1024);
+        BoardBatch batch = fillBatch(4);
+        WhiteBoard board = initBoard(gl, batch, 4);
+        board.setSlotTexture(1, 2000);
+
+        board.draw(batch, PROJECTION);
+
+        //slots 0, 1 and 2-3
+        assertEquals(3, gl.getDrawCallCount());
+        assertEquals(1000, gl.getBoundTexture(GLES20.GL_TEXTURE0));
+    }
+
+    @Test
+    public void emptyBatchIssuesNoCalls() throws Exception {
+        RecordingGLBackend gl = new RecordingGLBackend();
+        WhiteBoard board = initBoard(gl, fillBatch(1), 1);
+
+        board.draw(new BoardBatch(1), PROJECTION);
+
+        assertEquals(0, gl.getCallCount());
+    }
+
+    @Test
+    public void drawOnlyUsesCachedLocations() throws Exception {
+        RecordingGLBackend gl = new RecordingGLBackend();
+        gl.setLogging(true);
+        BoardBatch batch = fillBatch(10);
+        WhiteBoard board = initBoard(gl, batch, 10);
+
+        board.draw(batch, PROJECTION);
+
+        for (String call : gl.getLog()) {
+            assertFalse(call, call.startsWith("glGet"));
+        }//for
+    }
+
+    @Test
+    public void stateCacheLeavesNoRedundantBinds() throws Exception {
+        RecordingGLBackend recorder = new RecordingGLBackend();
+        StateCachingGLBackend gl = new StateCachingGLBackend(recorder);
+        BoardBatch batch = fillBatch(10);
+        WhiteBoard board = initBoard(gl, recorder, batch, 10);
+
+        //the first draw sets everything, the cache does not know the state it starts from
+        board.draw(batch, PROJECTION);
+        recorder.resetCounters();
+        board.draw(batch, PROJECTION);
+
+        assertEquals(1, recorder.getDrawCallCount());
+        assertEquals(0, recorder.getRedundantBindCount());
+        assertTrue(gl.getSkippedCount() > 0);
+    }
+
+    @Test
+    public void redundantBindsAreFlagged() throws Exception {
+        RecordingGLBackend gl = new RecordingGLBackend();
+        gl.setLogging(true);
+
+        gl.glBindTexture(GLES20.GL_TEXTURE_2D, 5);
+        gl.glBindTexture(GLES20.GL_TEXTURE_2D, 5);
+        gl.glUseProgram(3);
+        gl.glUseProgram(3);
+        gl.glEnable(GLES20.GL_BLEND);
+        gl.glDisable(GLES20.GL_BLEND);
+
+        assertEquals(6, gl.getStateChangeCount());
+        assertEquals(2, gl.getRedundantBindCount());
+        assertEquals("glBindTexture(3553, 5)", gl.getLog().get(0));
+    }
+
+    @Test
+    public void stateCacheIssuesFewerCallsThanDrawingDirectly() throws Exception {
+        RecordingGLBackend direct = new RecordingGLBackend();
+        BoardBatch batch = fillBatch(100);
+        WhiteBoard board = initBoard(direct, batch, 100);
+        board.draw(batch, PROJECTION);
+        direct.resetCounters();
+        board.draw(batch, PROJECTION);
+
+        RecordingGLBackend recorder = new RecordingGLBackend();
+        WhiteBoard cachedBoard = initBoard(new StateCachingGLBackend(recorder), recorder, batch, 100);
+        cachedBoard.draw(batch, PROJECTION);
+        recorder.resetCounters();
+        cachedBoard.draw(batch, PROJECTION);
+
+        assertEquals(direct.getDrawCallCount(), recorder.getDrawCallCount());
+        assertTrue(direct.getRedundantBindCount() > 0);
+        assertTrue(recorder.getCallCount() < direct.getCallCount());
+    }
+}
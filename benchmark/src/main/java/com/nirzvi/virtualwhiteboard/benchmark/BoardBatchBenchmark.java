@@ -0,0 +1,57 @@
+package com.nirzvi.virtualwhiteboard.benchmark;
+
+import com.nirzvi.virtualwhiteboard.BoardBatch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building a frame's BoardBatch from poses that are already filtered: scaling every pose into a model
+ * matrix, without the pose filters BoardFrameBenchmark adds.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BoardBatchBenchmark {
+
+    //identity rotation, translated 1000 units along x
+    private static final float[] POSE = {
+            1, 0, 0, 0,
+            0, 1, 0, 0,
+            0, 0, 1, 0,
+            1000, 0, 0, 1
+    };
+
+    @Param({"1", "10", "100"})
+    public int boards;
+
+    private BoardBatch batch;
+
+    @Setup
+    public void setUp() {
+        batch = new BoardBatch(boards);
+    }
+
+    @Benchmark
+    public BoardBatch buildFrame() {
+        batch.reset();
+        for (int i = 0; i < boards; i++) {
+            batch.addBoard(i, POSE, 0);
+        }//for
+        return batch;
+    }
+}
@@ -0,0 +1,89 @@
+package com.nirzvi.virtualwhiteboard.benchmark;
+
+import com.nirzvi.virtualwhiteboard.BoardScene;
+import com.nirzvi.virtualwhiteboard.PoseFilter;
+import com.nirzvi.virtualwhiteboard.ProgramCache;
+import com.nirzvi.virtualwhiteboard.RecordingGLBackend;
+import com.nirzvi.virtualwhiteboard.WhiteBoard;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-frame board work of VuforiaRenderer.render: filtering the poses and building the batch,
+ * then issuing the draw calls. GL goes to the recording backend, so only the CPU side is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BoardFrameBenchmark {
+
+    private static final float[] PROJECTION = {
+            1, 0, 0, 0,
+            0, 1, 0, 0,
+            0, 0, 1, 0,
+            0, 0, 0, 1
+    };
+
+    @Param({"1", "10", "100"})
+    public int boards;
+
+    @Param({"NONE", "ONE_EURO", "ONE_EURO_PREDICTED"})
+    public String filter;
+
+    private SyntheticPoseSource source;
+    private BoardScene scene;
+    private WhiteBoard board;
+
+    @Setup
+    public void setUp() {
+        source = new SyntheticPoseSource(boards);
+        scene = new BoardScene(128, boards);
+        scene.setPoseFilter(PoseFilter.create(filterType(filter), boards));
+        scene.setPredictionTime(0.033);
+
+        RecordingGLBackend gl = new RecordingGLBackend();
+        board = new WhiteBoard(gl, new ProgramCache(gl));
+        board.init(scene.getBatch(), boards, 1);
+    }
+
+    private static int filterType(String name) {
+        switch (name) {
+            case "ONE_EURO":
+                return PoseFilter.ONE_EURO;
+            case "ONE_EURO_PREDICTED":
+                return PoseFilter.ONE_EURO_PREDICTED;
+            default:
+                return PoseFilter.NONE;
+        }//switch
+    }
+
+    @Benchmark
+    public BoardScene prepare() {
+        source.advance();
+        scene.prepare(source);
+        return scene;
+    }
+
+    @Benchmark
+    public BoardScene prepareAndDraw() {
+        source.advance();
+        scene.prepare(source);
+        board.draw(scene.getBatch(), PROJECTION);
+        return scene;
+    }
+}
@@ -0,0 +1,128 @@
+package com.nirzvi.virtualwhiteboard.benchmark;
+
+import com.nirzvi.virtualwhiteboard.Etc1;
+import com.nirzvi.virtualwhiteboard.Etc1BoardEncoder;
+import com.nirzvi.virtualwhiteboard.TiledBoard;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compressing a board to ETC1: a whole board from scratch, a board after one stroke, when only the tiles
+ * it touched are encoded again, and a single block. The texture memory per board, RGBA against ETC1,
+ * and the PSNR of the encoded board are printed once per trial.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class Etc1Benchmark {
+
+    //the size of the whiteboard drawable
+    private static final int BOARD_WIDTH = 1400;
+    private static final int BOARD_HEIGHT = 1158;
+    private static final int STROKES = 60;
+
+    private TiledBoard.Snapshot before;
+    private TiledBoard.Snapshot after;
+    private boolean showAfter = false;
+    private final Etc1BoardEncoder incremental = new Etc1BoardEncoder();
+
+    private final Etc1 etc1 = new Etc1();
+    private final int[] block = new int[Etc1.BLOCK_SIZE * Etc1.BLOCK_SIZE];
+    private final byte[] encodedBlock = new byte[Etc1.ENCODED_BLOCK_BYTES];
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        TiledBoard board = new TiledBoard(BOARD_WIDTH, BOARD_HEIGHT, 0xFFF4F4F0, 0);
+        int[] colors = {0xFF101010, 0xFF1030C0, 0xFFC02020, 0xFF208030};
+        for (int s = 0; s < STROKES; s++) {
+            drawStroke(board, random, colors[s % colors.length]);
+        }//for
+        before = board.snapshot();
+        drawStroke(board, random, colors[0]);
+        after = board.snapshot();
+        incremental.encode(before);
+
+        for (int i = 0; i < block.length; i++) {
+            block[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }//for
+
+        Etc1BoardEncoder.Image image = new Etc1BoardEncoder().encode(before);
+        System.out.println();
+        System.out.println(BOARD_WIDTH + "x" + BOARD_HEIGHT + " board: " + BOARD_WIDTH * BOARD_HEIGHT * 4
+                + " bytes as RGBA, " + image.getSize() + " bytes as ETC1, PSNR " + psnr(before, image) + " dB");
+    }
+
+    // A wobbly line of 3x3 dabs, like a marker
+    private static void drawStroke(TiledBoard board, Random random, int color) {
+        float x = 100 + random.nextFloat() * (BOARD_WIDTH - 200);
+        float y = 100 + random.nextFloat() * (BOARD_HEIGHT - 200);
+        float heading = random.nextFloat() * 6.28f;
+        for (int i = 0; i < 150; i++) {
+            heading += (random.nextFloat() - 0.5f) * 0.3f;
+            x = Math.max(2, Math.min(BOARD_WIDTH - 5, x + 2 * (float) Math.cos(heading)));
+            y = Math.max(2, Math.min(BOARD_HEIGHT - 5, y + 2 * (float) Math.sin(heading)));
+            board.fillRect((int) x, (int) y, 3, 3, color);
+        }//for
+    }
+
+    private static double psnr(TiledBoard.Snapshot snapshot, Etc1BoardEncoder.Image image) {
+        byte[] data = new byte[image.getSize()];
+        image.getData().get(data);
+        int blocksX = (BOARD_WIDTH + 3) / 4;
+        int[] decoded = new int[16];
+        double squared = 0;
+        long samples = 0;
+        for (int by = 0; by < BOARD_HEIGHT / 4; by++) {
+            for (int bx = 0; bx < BOARD_WIDTH / 4; bx++) {
+                Etc1.decodeBlock(data, (by * blocksX + bx) * 8, decoded, 0, 4);
+                for (int i = 0; i < 16; i++) {
+                    int expected = snapshot.getPixel(bx * 4 + i % 4, by * 4 + i / 4);
+                    for (int shift = 0; shift < 24; shift += 8) {
+                        int d = ((expected >> shift) & 0xFF) - ((decoded[i] >> shift) & 0xFF);
+                        squared += d * d;
+                        samples++;
+                    }//for
+                }//for
+            }//for
+        }//for
+        return Math.round(100 * 10 * Math.log10(255.0 * 255.0 * samples / Math.max(squared, 1))) / 100.0;
+    }
+
+    /**
+     * Every tile encoded, as after the board is loaded
+     */
+    @Benchmark
+    public int encodeBoard() {
+        return new Etc1BoardEncoder().encode(before).getSize();
+    }
+
+    /**
+     * Only the tiles one stroke touched, as after a typical edit
+     */
+    @Benchmark
+    public int encodeAfterStroke() {
+        showAfter = !showAfter;
+        return incremental.encode(showAfter ? after : before).getSize();
+    }
+
+    @Benchmark
+    public int encodeBlock() {
+        return etc1.encodeBlock(block, 0, Etc1.BLOCK_SIZE, encodedBlock, 0);
+    }
+}
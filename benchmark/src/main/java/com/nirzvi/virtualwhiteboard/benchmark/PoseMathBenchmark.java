@@ -0,0 +1,57 @@
+package com.nirzvi.virtualwhiteboard.benchmark;
+
+import com.nirzvi.virtualwhiteboard.PoseMath;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-pose conversions: the model matrix built for every board each frame,
+ * and the Euler angles the tracking callback publishes for every trackable.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PoseMathBenchmark {
+
+    private float[] pose;
+    private final float[] matrix = new float[PoseMath.MATRIX_SIZE];
+    private final double[] values = new double[7];
+
+    @Setup
+    public void setUp() {
+        pose = new SyntheticPoseSource(1).getPoses();
+    }
+
+    @Benchmark
+    public float[] poseToGL() {
+        PoseMath.poseToGL(pose, 0, matrix, 0);
+        return matrix;
+    }
+
+    @Benchmark
+    public double[] poseToEuler() {
+        PoseMath.poseToEuler(pose, 0, values, 0);
+        return values;
+    }
+
+    @Benchmark
+    public float[] quaternionRoundTrip() {
+        PoseMath.poseToQuaternion(pose, 0, values, 0);
+        PoseMath.quaternionToPose(values, 0, matrix, 0);
+        return matrix;
+    }
+}
@@ -0,0 +1,85 @@
+package com.nirzvi.virtualwhiteboard.benchmark;
+
+import com.nirzvi.virtualwhiteboard.BoardScene;
+import com.nirzvi.virtualwhiteboard.PoseFilter;
+import com.nirzvi.virtualwhiteboard.ProgramCache;
+import com.nirzvi.virtualwhiteboard.RecordingGLBackend;
+import com.nirzvi.virtualwhiteboard.StateCachingGLBackend;
+import com.nirzvi.virtualwhiteboard.WhiteBoard;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU cost of the board part of a frame in mono (one view) and stereo (two eye views).
+ * perFrame prepares the scene once and draws it into every view, the way VuforiaRenderer.render does.
+ * perView repeats the prepare for every view, the way it used to.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StereoFrameBenchmark {
+
+    private static final float[] PROJECTION = {
+            1, 0, 0, 0,
+            0, 1, 0, 0,
+            0, 0, 1, 0,
+            0, 0, 0, 1
+    };
+
+    @Param({"1", "2"})
+    public int views;
+
+    @Param({"10", "100"})
+    public int boards;
+
+    private SyntheticPoseSource source;
+    private BoardScene scene;
+    private WhiteBoard board;
+
+    @Setup
+    public void setUp() {
+        source = new SyntheticPoseSource(boards);
+        scene = new BoardScene(128, boards);
+        scene.setPoseFilter(PoseFilter.create(PoseFilter.ONE_EURO_PREDICTED, boards));
+        scene.setPredictionTime(0.033);
+
+        StateCachingGLBackend gl = new StateCachingGLBackend(new RecordingGLBackend());
+        board = new WhiteBoard(gl, new ProgramCache(gl));
+        board.init(scene.getBatch(), boards, 1);
+    }
+
+    @Benchmark
+    public BoardScene perFrame() {
+        source.advance();
+        scene.prepare(source);
+        for (int v = 0; v < views; v++) {
+            board.draw(scene.getBatch(), PROJECTION);
+        }//for
+        return scene;
+    }
+
+    @Benchmark
+    public BoardScene perView() {
+        source.advance();
+        for (int v = 0; v < views; v++) {
+            scene.prepare(source);
+            board.draw(scene.getBatch(), PROJECTION);
+        }//for
+        return scene;
+    }
+}
@@ -0,0 +1,147 @@
+package com.nirzvi.virtualwhiteboard.benchmark;
+
+import com.nirzvi.virtualwhiteboard.StrokeCodec;
+import com.nirzvi.virtualwhiteboard.StrokeSimplifier;
+import com.nirzvi.virtualwhiteboard.StrokeStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saving and loading a board's ink: the delta/varint codec against writing every point as three floats,
+ * on the raw touch points or on simplified ones. The encoded sizes are printed once per trial.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StrokeCodecBenchmark {
+
+    private static final int STROKES = 200;
+    private static final int POINTS_PER_STROKE = 100;
+    private static final int BOARD_SIZE = 1024;
+
+    @Param({"false", "true"})
+    public boolean simplified;
+
+    private StrokeStore store;
+    private final StrokeStore target = new StrokeStore(BOARD_SIZE, BOARD_SIZE);
+    private final StrokeCodec codec = new StrokeCodec();
+    private byte[] encoded;
+    private ByteBuffer floats;
+
+    private float[] raw;
+    private final float[] simplifiedPoints = new float[POINTS_PER_STROKE * StrokeStore.FLOATS_PER_POINT];
+    private final StrokeSimplifier simplifier = new StrokeSimplifier(0.75f);
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        raw = null;
+        store = new StrokeStore(BOARD_SIZE, BOARD_SIZE);
+        float[] points = new float[POINTS_PER_STROKE * StrokeStore.FLOATS_PER_POINT];
+        for (int s = 0; s < STROKES; s++) {
+            // A wobbly line sampled every couple of pixels, like a finger on the screen
+            float x = 200 + random.nextFloat() * 600;
+            float y = 200 + random.nextFloat() * 600;
+            float heading = random.nextFloat() * 6.28f;
+            for (int i = 0; i < POINTS_PER_STROKE; i++) {
+                heading += (random.nextFloat() - 0.5f) * 0.3f;
+                x += 2 * (float) Math.cos(heading);
+                y += 2 * (float) Math.sin(heading);
+                points[i * StrokeStore.FLOATS_PER_POINT] = x;
+                points[i * StrokeStore.FLOATS_PER_POINT + 1] = y;
+                points[i * StrokeStore.FLOATS_PER_POINT + 2] = 0.5f + 0.1f * (float) Math.sin(i * 0.1);
+            }//for
+
+            if (raw == null) {
+                raw = points.clone();
+            }//if
+
+            int count = POINTS_PER_STROKE;
+            if (simplified) {
+                count = simplifier.simplify(points, 0, POINTS_PER_STROKE, points, 0);
+            }//if
+            store.addStroke(points, 0, count, 0xFF000000, 6);
+        }//for
+
+        codec.encode(store);
+        encoded = codec.toByteArray();
+        floats = ByteBuffer.allocate(4 + store.getStrokeCount() * 12 + store.getPointCount() * 12);
+        encodeFloats();
+        System.out.println();
+        System.out.println(store.getPointCount() + " points: " + floats.position() + " bytes as floats, "
+                + encoded.length + " bytes encoded");
+    }
+
+    @Benchmark
+    public int encodeVarint() {
+        return codec.encode(store);
+    }
+
+    @Benchmark
+    public int decodeVarint() {
+        target.clear();
+        return StrokeCodec.decode(encoded, 0, encoded.length, target);
+    }
+
+    /**
+     * The naive format: stroke count, then per stroke point count, colour, width and three floats per point
+     */
+    @Benchmark
+    public ByteBuffer encodeFloats() {
+        floats.clear();
+        float[] points = store.getPoints();
+        floats.putInt(store.getStrokeCount());
+        for (int id = 0; id < store.getStrokeCount(); id++) {
+            int start = store.getStart(id) * StrokeStore.FLOATS_PER_POINT;
+            int end = start + store.getLength(id) * StrokeStore.FLOATS_PER_POINT;
+            floats.putInt(store.getLength(id));
+            floats.putInt(store.getColor(id));
+            floats.putFloat(store.getStrokeWidth(id));
+            for (int p = start; p < end; p++) {
+                floats.putFloat(points[p]);
+            }//for
+        }//for
+        return floats;
+    }
+
+    @Benchmark
+    public int decodeFloats() {
+        target.clear();
+        ByteBuffer in = ByteBuffer.wrap(floats.array(), 0, floats.position());
+        int strokes = in.getInt();
+        for (int s = 0; s < strokes; s++) {
+            int numPoints = in.getInt();
+            target.beginStroke(in.getInt(), in.getFloat());
+            for (int i = 0; i < numPoints; i++) {
+                target.addPoint(in.getFloat(), in.getFloat(), in.getFloat());
+            }//for
+            target.endStroke();
+        }//for
+        return strokes;
+    }
+
+    /**
+     * Simplifying one raw stroke, as LiveInk does point by point
+     */
+    @Benchmark
+    public int simplifyStroke() {
+        return simplifier.simplify(raw, 0, POINTS_PER_STROKE, simplifiedPoints, 0);
+    }
+}
@@ -0,0 +1,75 @@
+package com.nirzvi.virtualwhiteboard.benchmark;
+
+import com.nirzvi.virtualwhiteboard.StrokeStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Erasing on a crowded board: 100000 short scribbles on a 4096x4096 board, then batches of ERASES
+ * random eraser touches. Erasing empties the board, so every iteration starts again from a full one
+ * and is timed as a single shot; divide by ERASES for the cost of one eraseAt, compaction steps
+ * included. The store's memory is printed once per trial.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, batchSize = StrokeStoreBenchmark.ERASES)
+@Measurement(iterations = 10, batchSize = StrokeStoreBenchmark.ERASES)
+@Fork(1)
+@State(Scope.Thread)
+public class StrokeStoreBenchmark {
+
+    static final int ERASES = 10000;
+
+    private static final int STROKES = 100000;
+    private static final int POINTS_PER_STROKE = 16;
+    private static final int BOARD_SIZE = 4096;
+    private static final float ERASER_RADIUS = 10;
+
+    private StrokeStore store;
+    private Random random;
+    private final float[] damage = new float[4];
+    private boolean printed = false;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        store = new StrokeStore(BOARD_SIZE, BOARD_SIZE);
+        random = new Random(7);
+
+        // Short scribbles spread over the board
+        float[] points = new float[POINTS_PER_STROKE * StrokeStore.FLOATS_PER_POINT];
+        for (int s = 0; s < STROKES; s++) {
+            float x = random.nextFloat() * 4000;
+            float y = random.nextFloat() * 4000;
+            for (int p = 0; p < POINTS_PER_STROKE; p++) {
+                points[p * 3] = x + p * 4;
+                points[p * 3 + 1] = y + random.nextFloat() * 20;
+                points[p * 3 + 2] = 0.5f + random.nextFloat() * 0.5f;
+            }//for
+            store.addStroke(points, 0, POINTS_PER_STROKE, 0xFF000000, 3);
+        }//for
+
+        if (!printed) {
+            printed = true;
+            System.out.println();
+            System.out.println("StrokeStore: " + STROKES + " strokes, " + store.getMemoryBytes() / 1024 + " KB");
+        }//if
+    }
+
+    @Benchmark
+    public int eraseAt() {
+        return store.eraseAt(random.nextFloat() * BOARD_SIZE, random.nextFloat() * BOARD_SIZE, ERASER_RADIUS, damage);
+    }
+}
@@ -0,0 +1,68 @@
+package com.nirzvi.virtualwhiteboard.benchmark;
+
+import com.nirzvi.virtualwhiteboard.PoseMath;
+import com.nirzvi.virtualwhiteboard.PoseSource;
+
+/**
+ * Boards in a row in front of the camera, one new camera frame per advance.
+ */
+public class SyntheticPoseSource implements PoseSource {
+
+    private final float[] poses;
+    private final int numPoses;
+    private double timestamp = 0;
+
+    public SyntheticPoseSource(int numPoses) {
+        this.numPoses = numPoses;
+        poses = new float[numPoses * PoseMath.POSE_SIZE];
+
+        for (int i = 0; i < numPoses; i++) {
+            int p = i * PoseMath.POSE_SIZE;
+            float cos = (float) Math.cos(i * 0.01);
+            float sin = (float) Math.sin(i * 0.01);
+
+            //rotation about y, then the translation
+            poses[p] = cos;
+            poses[p + 2] = sin;
+            poses[p + 5] = 1;
+            poses[p + 8] = -sin;
+            poses[p + 10] = cos;
+            poses[p + 3] = i * 100 - numPoses * 50;
+            poses[p + 11] = 1500;
+        }//for
+    }//SyntheticPoseSource
+
+    /**
+     * Moves on to the next camera frame, every board drifts up a little
+     */
+    public void advance() {
+        timestamp += 1 / 30.0;
+        for (int p = 7; p < poses.length; p += PoseMath.POSE_SIZE) {
+            poses[p] += 0.5f;
+        }//for
+    }//advance
+
+    public float[] getPoses() {
+        return poses;
+    }
+
+    @Override
+    public double getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public int getNumPoses() {
+        return numPoses;
+    }
+
+    @Override
+    public int getSlot(int index) {
+        return index;
+    }
+
+    @Override
+    public void getPose(int index, float[] out, int offset) {
+        System.arraycopy(poses, index * PoseMath.POSE_SIZE, out, offset, PoseMath.POSE_SIZE);
+    }
+}
@@ -0,0 +1,123 @@
+package com.nirzvi.virtualwhiteboard.benchmark;
+
+import com.nirzvi.virtualwhiteboard.DistanceField;
+import com.nirzvi.virtualwhiteboard.GlyphAtlas;
+import com.nirzvi.virtualwhiteboard.ProgramCache;
+import com.nirzvi.virtualwhiteboard.RecordingGLBackend;
+import com.nirzvi.virtualwhiteboard.TextLayout;
+import com.nirzvi.virtualwhiteboard.TextRenderer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Laying the board's text out from a distance field atlas: on one line, wrapped at the board's width,
+ * and through TextRenderer.setText, which also builds a copy of the quads per board of a draw call.
+ * The atlas is made of box glyphs, Paint is not available off the device, but layout only reads metrics.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TextLayoutBenchmark {
+
+    //the size of the whiteboard drawable, and where VuforiaRenderer places the text on it
+    private static final int BOARD_WIDTH = 1400;
+    private static final int BOARD_HEIGHT = 1158;
+    private static final float TEXT_X = 50;
+    private static final float TEXT_BASELINE = 224;
+    private static final float TEXT_SIZE = 64;
+    private static final float TEXT_WIDTH = BOARD_WIDTH - 2 * TEXT_X;
+
+    private static final float FONT_SIZE = 48;
+    private static final int SPREAD = 6;
+
+    @Param({"40", "400", "2000"})
+    public int length;
+
+    private TextLayout layout;
+    private TextRenderer renderer;
+    private String text;
+    private String edited;
+    private boolean showEdited = false;
+
+    @Setup
+    public void setUp() {
+        GlyphAtlas atlas = boxAtlas();
+        layout = new TextLayout(atlas);
+
+        // Words of two to nine letters, like typed notes
+        Random random = new Random(1);
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < length) {
+            int word = 2 + random.nextInt(8);
+            for (int i = 0; i < word; i++) {
+                builder.append((char) ('a' + random.nextInt(26)));
+            }//for
+            builder.append(' ');
+        }//while
+        builder.setLength(length);
+        text = builder.toString();
+        edited = text.substring(0, length - 1) + '?';
+
+        RecordingGLBackend gl = new RecordingGLBackend();
+        renderer = new TextRenderer(gl, new ProgramCache(gl), BOARD_WIDTH, BOARD_HEIGHT);
+        renderer.init(atlas);
+        renderer.setText(text, TEXT_X, TEXT_BASELINE, TEXT_SIZE, TEXT_WIDTH);
+        gl.setLogging(false);
+    }
+
+    //every printable ASCII character as a box the size of a lower case letter
+    private static GlyphAtlas boxAtlas() {
+        int w = 24 + 2 * SPREAD;
+        int h = 36 + 2 * SPREAD;
+        byte[] mask = new byte[w * h];
+        for (int y = SPREAD; y < h - SPREAD; y++) {
+            Arrays.fill(mask, y * w + SPREAD, y * w + w - SPREAD, (byte) 255);
+        }//for
+        byte[] field = new byte[w * h];
+        DistanceField.generate(mask, w, h, SPREAD, field, 0, w);
+
+        GlyphAtlas atlas = new GlyphAtlas(1024, 1024, FONT_SIZE, SPREAD, FONT_SIZE * 0.8f, FONT_SIZE * 0.2f);
+        atlas.add(' ', null, 0, 0, 0, 0, FONT_SIZE * 0.3f);
+        for (char c = '!'; c <= '~'; c++) {
+            atlas.add(c, field, w, h, -SPREAD, -36 - SPREAD, 28);
+        }//for
+        return atlas;
+    }
+
+    @Benchmark
+    public int layoutOneLine() {
+        return layout.layout(text, TEXT_X, TEXT_BASELINE, TEXT_SIZE, 0);
+    }
+
+    @Benchmark
+    public int layoutWrapped() {
+        return layout.layout(text, TEXT_X, TEXT_BASELINE, TEXT_SIZE, TEXT_WIDTH);
+    }
+
+    /**
+     * What a frame pays when the text was edited, alternating between two texts so every call lays out
+     */
+    @Benchmark
+    public int setText() {
+        showEdited = !showEdited;
+        renderer.setText(showEdited ? edited : text, TEXT_X, TEXT_BASELINE, TEXT_SIZE, TEXT_WIDTH);
+        return renderer.getGlyphCount();
+    }
+}
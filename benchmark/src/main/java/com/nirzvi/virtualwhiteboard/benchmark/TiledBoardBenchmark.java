@@ -0,0 +1,62 @@
+package com.nirzvi.virtualwhiteboard.benchmark;
+
+import com.nirzvi.virtualwhiteboard.TiledBoard;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Editing an 8192x8192 board, 256MB of pixels: a pixel write followed by a snapshot, which makes the
+ * next write copy one tile, and a small fill followed by an undo checkpoint under a 16MB history budget.
+ * The history kept after the warm-up is printed once per trial.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TiledBoardBenchmark {
+
+    private static final int SIZE = 8192;
+    private static final long HISTORY_BUDGET = 16L * 1024 * 1024;
+
+    private TiledBoard board;
+    private int step = 0;
+
+    @Setup
+    public void setUp() {
+        board = new TiledBoard(SIZE, SIZE, 0xFFFFFFFF, HISTORY_BUDGET);
+        for (int i = 0; i < 1000; i++) {
+            editAndCheckpoint();
+        }//for
+        System.out.println();
+        System.out.println("TiledBoard " + SIZE + "x" + SIZE + ": " + board.getUndoDepth() + " undo steps in "
+                + board.getHistoryBytes() / 1024 + " KB (full copy " + (long) SIZE * SIZE * 4 / 1024 + " KB)");
+    }
+
+    @Benchmark
+    public TiledBoard.Snapshot writeAndSnapshot() {
+        step++;
+        board.setPixel(step * 7 % SIZE, step * 13 % SIZE, 0xFF000000);
+        return board.snapshot();
+    }
+
+    @Benchmark
+    public TiledBoard editAndCheckpoint() {
+        step++;
+        board.fillRect(step * 5 % 8000, step * 11 % 8000, 100, 20, 0xFF000000);
+        board.checkpoint();
+        return board;
+    }
+}
@@ -0,0 +1,56 @@
+package com.nirzvi.virtualwhiteboard.benchmark;
+
+import com.nirzvi.virtualwhiteboard.TrackingSnapshot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The tracking callback publishing every trackable while the UI thread reads them back.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class TrackingSnapshotBenchmark {
+
+    private static final int SLOTS = 16;
+
+    private final TrackingSnapshot snapshot = new TrackingSnapshot(SLOTS);
+
+    @State(Scope.Thread)
+    public static class Buffers {
+        final double[] values = new double[TrackingSnapshot.VALUES_PER_POSE];
+        final double[] all = new double[SLOTS * TrackingSnapshot.VALUES_PER_POSE];
+        final boolean[] tracked = new boolean[SLOTS];
+    }
+
+    @Benchmark
+    @Group("publish")
+    public void write(Buffers buffers) {
+        snapshot.beginWrite();
+        for (int slot = 0; slot < SLOTS; slot++) {
+            buffers.values[0] = slot;
+            snapshot.write(slot, buffers.values);
+        }//for
+        snapshot.publish();
+    }
+
+    @Benchmark
+    @Group("publish")
+    public long readAll(Buffers buffers) {
+        return snapshot.readAll(buffers.all, buffers.tracked);
+    }
+}
@@ -0,0 +1,85 @@
+package com.nirzvi.virtualwhiteboard.benchmark;
+
+import com.nirzvi.virtualwhiteboard.BoardBatch;
+import com.nirzvi.virtualwhiteboard.GLBackend;
+import com.nirzvi.virtualwhiteboard.ProgramCache;
+import com.nirzvi.virtualwhiteboard.RecordingGLBackend;
+import com.nirzvi.virtualwhiteboard.StateCachingGLBackend;
+import com.nirzvi.virtualwhiteboard.WhiteBoard;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drawing 100 boards through the GL facade, straight to the recording backend or through the state
+ * cache. The GL calls, draw calls and redundant binds of one frame are printed once per trial.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WhiteBoardDrawBenchmark {
+
+    private static final int BOARDS = 100;
+
+    //identity rotation, translated along z
+    private static final float[] POSE = {
+            1, 0, 0, 0,
+            0, 1, 0, 0,
+            0, 0, 1, 0,
+            0, 0, 1500, 1
+    };
+
+    private static final float[] PROJECTION = {
+            1, 0, 0, 0,
+            0, 1, 0, 0,
+            0, 0, 1, 0,
+            0, 0, 0, 1
+    };
+
+    @Param({"false", "true"})
+    public boolean stateCached;
+
+    private BoardBatch batch;
+    private WhiteBoard board;
+
+    @Setup
+    public void setUp() {
+        batch = new BoardBatch(128);
+        for (int i = 0; i < BOARDS; i++) {
+            batch.addBoard(i, POSE, 0);
+        }//for
+
+        RecordingGLBackend recorder = new RecordingGLBackend();
+        GLBackend gl = stateCached ? new StateCachingGLBackend(recorder) : recorder;
+        board = new WhiteBoard(gl, new ProgramCache(gl));
+        board.init(batch, BOARDS, 1000);
+
+        // The first frame sets everything, the second shows the steady state
+        board.draw(batch, PROJECTION);
+        recorder.resetCounters();
+        board.draw(batch, PROJECTION);
+        System.out.println();
+        System.out.println(BOARDS + " boards: " + recorder.getCallCount() + " GL calls, "
+                + recorder.getDrawCallCount() + " draw call(s), " + recorder.getRedundantBindCount() + " redundant");
+    }
+
+    @Benchmark
+    public WhiteBoard draw() {
+        board.draw(batch, PROJECTION);
+        return board;
+    }
+}